@@ -19,15 +19,27 @@
 package sk.opendata.odn.harvester;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -37,6 +49,7 @@ import org.slf4j.LoggerFactory;
 
 import sk.opendata.odn.model.AbstractRecord;
 import sk.opendata.odn.repository.OdnRepositoryException;
+import sk.opendata.odn.repository.OdnRepositoryStoreSession;
 import sk.opendata.odn.repository.jackrabbit.JackrabbitRepository;
 import sk.opendata.odn.serialization.AbstractSerializer;
 import sk.opendata.odn.serialization.OdnSerializationException;
@@ -73,10 +86,43 @@ public abstract class AbstractHarvester<RecordType extends AbstractRecord> {
 	
 	public final static String ODN_HARVESTER_TMP_PREF = "odn-harvester-";
 	public final static String ODN_HARVESTER_TMP_SUFF = ".tmp";
+	public final static String ODN_HARVESTER_USER_AGENT = "Open Data Node (http://opendata.sk/liferay/open-data-node)";
+	
+	public final static String SOURCE_DIGEST_ALGORITHM = "SHA-1";
+	public final static String KEY_STATE_SOURCE_ETAG = "source.etag";
+	public final static String KEY_STATE_SOURCE_LAST_MODIFIED = "source.last_modified";
+	public final static String KEY_STATE_SOURCE_DIGEST = "source.digest";
+	/**
+	 * State properties with this prefix are checkpoints of the harvest in
+	 * progress, they are removed once the harvest finishes.
+	 */
+	public final static String PREFIX_KEY_STATE_CHECKPOINT = "checkpoint.";
+	public final static String KEY_STATE_CHECKPOINT_SOURCE_DIGEST = PREFIX_KEY_STATE_CHECKPOINT + "source.digest";
+	public final static String KEY_STATE_CHECKPOINT_SOURCE_ETAG = PREFIX_KEY_STATE_CHECKPOINT + "source.etag";
+	public final static String KEY_STATE_CHECKPOINT_SOURCE_LAST_MODIFIED = PREFIX_KEY_STATE_CHECKPOINT + "source.last_modified";
+	/**
+	 * Name of the file (in the state directory) holding downloaded source
+	 * document until it is harvested.
+	 */
+	public final static String SOURCE_FILE_NAME = "source.dump";
 	
 	private URL sourceUrl = null;
 	private JackrabbitRepository primaryRepository = null;
 	private Vector<AbstractSerializer<RecordType, ?, ?>> serializers = null;
+	private HarvesterState harvesterState = null;
+	private boolean partialHarvest = false;
+	private boolean resumedHarvest = false;
+	private ExecutorService serializerExecutor = null;
+	// note: one session for each serializer, 'null' when not opened
+	private Vector<OdnRepositoryStoreSession<?>> storeSessions = null;
+	
+	/**
+	 * Work done by one of the serializers.
+	 */
+	private interface SerializerTask<RecordType extends AbstractRecord, ResultType> {
+		public ResultType run(AbstractSerializer<RecordType, ?, ?> serializer,
+				int serializerIndex) throws Exception;
+	}
 	
 	
 	/**
@@ -105,6 +151,90 @@ public abstract class AbstractHarvester<RecordType extends AbstractRecord> {
 		serializers.add(serializer);
 	}
 	
+	/**
+	 * @return name of this harvester, used for example to name the directory
+	 *         holding its state
+	 */
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+	
+	/**
+	 * Get the persistent state of this harvester, loading it if necessary.
+	 * 
+	 * @return state of this harvester
+	 * 
+	 * @throws IOException
+	 *             when state can not be loaded
+	 */
+	public synchronized HarvesterState getHarvesterState() throws IOException {
+		if (harvesterState == null)
+			harvesterState = HarvesterState.load(getName());
+		
+		return harvesterState;
+	}
+	
+	/**
+	 * Mark current harvest as partial, i.e. not all of the records in the
+	 * source were processed (say because of debugging options). State of the
+	 * source (digest, ...) is not remembered after partial harvest so that next
+	 * harvest is not skipped.
+	 * 
+	 * @param partialHarvest
+	 *            {@code true} if the current harvest is partial
+	 */
+	protected void setPartialHarvest(boolean partialHarvest) {
+		this.partialHarvest = partialHarvest;
+	}
+	
+	protected boolean isPartialHarvest() {
+		return partialHarvest;
+	}
+	
+	/**
+	 * @return {@code true} if current harvest resumes previous harvest which
+	 *         was interrupted, i.e. same source document is harvested again
+	 *         and checkpoints of previous harvest (see
+	 *         {@link #PREFIX_KEY_STATE_CHECKPOINT}) are valid
+	 */
+	protected boolean isResumedHarvest() {
+		return resumedHarvest;
+	}
+	
+	private static String formatDigest(MessageDigest messageDigest) {
+		return String.format("%0" + (messageDigest.getDigestLength() * 2) + "x",
+				new BigInteger(1, messageDigest.digest()));
+	}
+	
+	/**
+	 * Compute the digest of given file (see {@link #SOURCE_DIGEST_ALGORITHM}).
+	 * 
+	 * @param file
+	 *            file to compute the digest of
+	 * @return digest as a hexadecimal string
+	 * 
+	 * @throws IOException
+	 *             when reading of the file fails
+	 * @throws NoSuchAlgorithmException
+	 *             when digest algorithm is not available
+	 */
+	private static String computeDigest(File file) throws IOException,
+			NoSuchAlgorithmException {
+		
+		MessageDigest messageDigest = MessageDigest.getInstance(SOURCE_DIGEST_ALGORITHM);
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int count;
+			while ((count = in.read(buffer)) > 0)
+				messageDigest.update(buffer, 0, count);
+		} finally {
+			in.close();
+		}
+		
+		return formatDigest(messageDigest);
+	}
+	
 	/**
 	 * Method invoked by QUARTZ scheduler to launch this job.
 	 */
@@ -126,6 +256,14 @@ public abstract class AbstractHarvester<RecordType extends AbstractRecord> {
 	/**
 	 * Update our data using data harvested from source.
 	 * 
+	 * Downloaded source document is kept in the state directory until it is
+	 * harvested, along with its digest as a checkpoint (see
+	 * {@link #PREFIX_KEY_STATE_CHECKPOINT}). If the harvest gets interrupted
+	 * (say JVM restarts or some of the repositories fails), next harvest
+	 * resumes harvesting of the same document instead of downloading it
+	 * again, and harvester implementations may use their own checkpoints to
+	 * skip the work already done (see {@link #isResumedHarvest()}).
+	 * 
 	 * @throws OdnHarvesterException
 	 *             when some harvesting error occurs
 	 * @throws OdnSerializationException
@@ -136,54 +274,134 @@ public abstract class AbstractHarvester<RecordType extends AbstractRecord> {
 	public void update() throws OdnHarvesterException,
 			OdnSerializationException, OdnRepositoryException {
 
-		File tempFile = null;
-
 		logger.info("harvesting started (" + this.sourceUrl.toExternalForm() + ")");
 
 		try {
-			// 1) download the source data into local temporary file using 'sourceUrl'
-			//    (or, if requested on admin console, retrieve latest copy from Jackrabbit
-			//    and use that instead of downloading fresh copy - in that case skip [2]
-			//    and [3] of course)
-			tempFile = File.createTempFile(ODN_HARVESTER_TMP_PREF,
-					ODN_HARVESTER_TMP_SUFF);
-			tempFile.deleteOnExit();
+			HarvesterState state = getHarvesterState();
+			setPartialHarvest(false);
+			resumedHarvest = false;
 			
-			URLConnection csvConnection = getSourceUrl().openConnection();
-			csvConnection.setRequestProperty("User-Agent",
-							"Open Data Node (http://opendata.sk/liferay/open-data-node)");
+			File sourceFile = new File(state.getDirectory(), SOURCE_FILE_NAME);
+			String digest = state.getProperty(KEY_STATE_CHECKPOINT_SOURCE_DIGEST);
 			
-			ReadableByteChannel rbc = Channels.newChannel(csvConnection
-					.getInputStream());
-			FileOutputStream fos = new FileOutputStream(tempFile);
-			long count = fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-			logger.debug("downloaded " + Long.toString(count)
-					+ " bytes from " + sourceUrl.toExternalForm() + " to "
-					+ tempFile.getAbsolutePath());
-			fos.close();
-			rbc.close();
-
-			// 2) use 'storeOriginalData()' to store that file into Jackrabbit
-			// TODO
+			// 0) resume interrupted harvest, if the document it was
+			//    harvesting is still intact
+			if (digest != null && sourceFile.isFile()) {
+				if (digest.equals(computeDigest(sourceFile))) {
+					resumedHarvest = true;
+					logger.info("resuming interrupted harvest of "
+							+ sourceFile.getAbsolutePath() + " ("
+							+ SOURCE_DIGEST_ALGORITHM + " " + digest + ")");
+				}
+				else
+					logger.warn("digest of " + sourceFile.getAbsolutePath()
+							+ " does not match, interrupted harvest not resumed");
+			}
+			
+			if (!resumedHarvest) {
+				// checkpoints of some other document are of no use
+				state.removeProperties(PREFIX_KEY_STATE_CHECKPOINT);
+				
+				// 1) download the source data into local file using
+				//    'sourceUrl', HTTP(S) ones using 'HttpDownloader' (or, if
+				//    requested on admin console, retrieve latest copy from
+				//    Jackrabbit and use that instead of downloading fresh
+				//    copy - in that case skip [2] and [3] of course)
+				
+				// note: Datanest is not honoring conditional requests (see
+				// 'doc/README.Datanest') but other sources might, so we try
+				// and if it does not work, digest of the content is used (see
+				// [3])
+				String etag = null;
+				long lastModified = 0;
+				String protocol = getSourceUrl().getProtocol();
+				if ("http".equalsIgnoreCase(protocol)
+						|| "https".equalsIgnoreCase(protocol)) {
+					String previousLastModified = state.getProperty(KEY_STATE_SOURCE_LAST_MODIFIED);
+					HttpDownloader.Result result = HttpDownloader.getInstance().download(
+							getSourceUrl(), sourceFile,
+							state.getProperty(KEY_STATE_SOURCE_ETAG),
+							previousLastModified != null ? Long.valueOf(previousLastModified) : 0);
+					if (result == null) {
+						logger.info("source not modified since last harvest ("
+								+ sourceUrl.toExternalForm() + "), harvesting skipped");
+						return;
+					}
+					
+					etag = result.getEtag();
+					lastModified = result.getLastModified();
+					digest = computeDigest(sourceFile);
+				}
+				else {
+					URLConnection sourceConnection = getSourceUrl().openConnection();
+					
+					MessageDigest messageDigest = MessageDigest.getInstance(SOURCE_DIGEST_ALGORITHM);
+					ReadableByteChannel rbc = Channels.newChannel(new DigestInputStream(
+							sourceConnection.getInputStream(), messageDigest));
+					FileOutputStream fos = new FileOutputStream(sourceFile);
+					long count = fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+					logger.debug("downloaded " + Long.toString(count)
+							+ " bytes from " + sourceUrl.toExternalForm() + " to "
+							+ sourceFile.getAbsolutePath());
+					fos.getFD().sync();
+					fos.close();
+					rbc.close();
+					digest = formatDigest(messageDigest);
+				}
+	
+				// 2) use 'storeOriginalData()' to store that file into Jackrabbit
+				// TODO
+				
+				// 3) determine, whether source file has been changed, if not stop
+				if (digest.equals(state.getProperty(KEY_STATE_SOURCE_DIGEST))) {
+					logger.info("source not changed since last harvest ("
+							+ sourceUrl.toExternalForm() + ", " + SOURCE_DIGEST_ALGORITHM
+							+ " " + digest + "), harvesting skipped");
+					deleteSourceFile(sourceFile);
+					return;
+				}
+				
+				// checkpoint: harvest of this document started
+				state.setProperty(KEY_STATE_CHECKPOINT_SOURCE_DIGEST, digest);
+				state.setProperty(KEY_STATE_CHECKPOINT_SOURCE_ETAG, etag);
+				state.setProperty(KEY_STATE_CHECKPOINT_SOURCE_LAST_MODIFIED,
+						lastModified > 0 ? Long.toString(lastModified) : null);
+				state.save();
+			}
 			
-			// 3) determine, whether source file has been changed, if not stop
-			// TODO
+			// 4) extract data
+			performEtl(sourceFile);
 			
-			// 4) extract data (for now done in 'genericUpate()', but renamed that
-			//    to 'performEtl()' or 'processData()' or something
-			performEtl(tempFile);
+			// remember what we've harvested, but only after we have
+			// harvested all of it
+			if (isPartialHarvest())
+				logger.info("partial harvest, state of the source not remembered");
+			else {
+				state.setProperty(KEY_STATE_SOURCE_ETAG,
+						state.getProperty(KEY_STATE_CHECKPOINT_SOURCE_ETAG));
+				state.setProperty(KEY_STATE_SOURCE_LAST_MODIFIED,
+						state.getProperty(KEY_STATE_CHECKPOINT_SOURCE_LAST_MODIFIED));
+				state.setProperty(KEY_STATE_SOURCE_DIGEST, digest);
+			}
+			state.removeProperties(PREFIX_KEY_STATE_CHECKPOINT);
+			state.save();
 			
-			// 5) clean-up: delete temporary files
-			// TODO
-			if (!tempFile.delete())
-				logger.error("failed to delete temporary file "
-						+ tempFile.getAbsolutePath());
+			// 5) clean-up: delete the source document
+			deleteSourceFile(sourceFile);
+		} catch (NoSuchAlgorithmException e) {
+			logger.error("no such algorithm exception", e);
 		} catch (IOException e) {
 			logger.error("IO exception", e);
 		}
 		
 		logger.info("harvesting finished (" + this.sourceUrl.toExternalForm() + ")");
 	}
+	
+	private void deleteSourceFile(File sourceFile) {
+		if (!sourceFile.delete())
+			logger.error("failed to delete source file "
+					+ sourceFile.getAbsolutePath());
+	}
 
 	protected void storeOriginalData() {
 		// TODO: get the data as downloaded and store then into dedicated node in Jackrabbit, say /raw/datanest/ppd/2012/08/22/hh/mm
@@ -205,9 +423,300 @@ public abstract class AbstractHarvester<RecordType extends AbstractRecord> {
 	abstract public void performEtl(File sourceFile) throws OdnHarvesterException,
 			OdnSerializationException, OdnRepositoryException;
 	
+	private synchronized ExecutorService getSerializerExecutor() {
+		if (serializerExecutor == null) {
+			final String threadName = getName() + "-serializer-";
+			serializerExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private int threadNumber = 0;
+
+				@Override
+				public synchronized Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, threadName
+							+ (++threadNumber));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		return serializerExecutor;
+	}
+	
 	/**
-	 * Loop through all serializers and pass given records to them. Serializers
-	 * will serialize the records and store them.
+	 * Run given task for all serializers at once and wait until all of them
+	 * finish.
+	 * 
+	 * Failure of one serializer does not stop the others (so say unavailable
+	 * Sesame does not prevent records from being indexed in SOLR). Once all
+	 * of them finish, the first failure (in the order of serializers) is
+	 * rethrown, others are only logged.
+	 * 
+	 * @param task
+	 *            work to be done by each serializer
+	 * @return results of the task, one item for each serializer
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnSerializationException
+	 *             when serialization fails
+	 * @throws OdnRepositoryException
+	 *             when we fail to store given data into repository
+	 */
+	private <ResultType> List<ResultType> runForAllSerializers(
+			final SerializerTask<RecordType, ResultType> task)
+			throws IllegalArgumentException, OdnSerializationException,
+			OdnRepositoryException {
+		
+		Vector<Future<ResultType>> futures = new Vector<Future<ResultType>>(
+				serializers.size());
+		for (final AbstractSerializer<RecordType, ?, ?> serializer : serializers) {
+			final int serializerIndex = futures.size();
+			Callable<ResultType> callable = new Callable<ResultType>() {
+				@Override
+				public ResultType call() throws Exception {
+					return task.run(serializer, serializerIndex);
+				}
+			};
+			
+			if (serializers.size() == 1) {
+				// no need to bother other thread
+				FutureTask<ResultType> future = new FutureTask<ResultType>(callable);
+				future.run();
+				futures.add(future);
+			}
+			else
+				futures.add(getSerializerExecutor().submit(callable));
+		}
+		
+		Vector<ResultType> results = new Vector<ResultType>(serializers.size());
+		Throwable failure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results.add(futures.get(i).get());
+			} catch (ExecutionException e) {
+				logger.error("serializer "
+						+ serializers.get(i).getClass().getSimpleName()
+						+ " failed", e.getCause());
+				if (failure == null)
+					failure = e.getCause();
+				results.add(null);
+			} catch (InterruptedException e) {
+				for (Future<ResultType> future : futures)
+					future.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new OdnRepositoryException(
+						"interrupted while waiting for serializers", e);
+			}
+		}
+		
+		if (failure instanceof OdnSerializationException)
+			throw (OdnSerializationException) failure;
+		if (failure instanceof OdnRepositoryException)
+			throw (OdnRepositoryException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null)
+			throw new OdnRepositoryException(failure.getMessage(), failure);
+		
+		return results;
+	}
+	
+	/**
+	 * Let all serializers serialize given records, but do not store them yet
+	 * (see {@link #storeSerialized(List)}). Serializers run concurrently.
+	 * 
+	 * @param records
+	 *            list of records to serialize
+	 * @param updatedRecords
+	 *            records (subset of {@code records}) whose previous version
+	 *            has to be replaced in the repositories
+	 * @return serialized records, one item for each serializer
+	 * 
+	 * @throws OdnSerializationException
+	 *             when serialization fails
+	 */
+	protected List<Object> serialize(final List<RecordType> records,
+			final List<RecordType> updatedRecords)
+			throws OdnSerializationException {
+		
+		try {
+			return runForAllSerializers(new SerializerTask<RecordType, Object>() {
+				@Override
+				public Object run(
+						AbstractSerializer<RecordType, ?, ?> serializer,
+						int serializerIndex) throws OdnSerializationException {
+					return serializer.serializeForStore(records, updatedRecords);
+				}
+			});
+		} catch (OdnRepositoryException e) {
+			// only when interrupted
+			throw new OdnSerializationException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Open store sessions for all serializers, so that records stored by
+	 * {@link #storeSerialized(List)} are stored in transactions (see
+	 * {@link #commitStoreSessions()}) using one connection for each
+	 * repository.
+	 * 
+	 * Sessions have to be closed using {@link #closeStoreSessions()}.
+	 * 
+	 * @param reload
+	 *            whether the records stored in the sessions replace all
+	 *            records stored previously, once published (see
+	 *            {@link #publishStoreSessions()})
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when some of the sessions can not be opened
+	 */
+	protected void openStoreSessions(boolean reload)
+			throws OdnRepositoryException {
+		Vector<OdnRepositoryStoreSession<?>> sessions = new Vector<OdnRepositoryStoreSession<?>>(
+				serializers.size());
+		
+		try {
+			for (AbstractSerializer<RecordType, ?, ?> serializer : serializers)
+				sessions.add(serializer.openSession(reload));
+		} catch (OdnRepositoryException e) {
+			storeSessions = sessions;
+			closeStoreSessions();
+			throw e;
+		}
+		
+		storeSessions = sessions;
+	}
+	
+	/**
+	 * Commit records stored since last commit in all store sessions.
+	 * Serializers run concurrently.
+	 * 
+	 * Note: Repositories are committed independently, if one of them fails,
+	 * records stay committed in the others.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when commit fails
+	 */
+	protected void commitStoreSessions() throws OdnRepositoryException {
+		if (storeSessions == null)
+			return;
+		
+		try {
+			runForAllSerializers(new SerializerTask<RecordType, Void>() {
+				@Override
+				public Void run(AbstractSerializer<RecordType, ?, ?> serializer,
+						int serializerIndex) throws OdnRepositoryException {
+					storeSessions.get(serializerIndex).commit();
+					return null;
+				}
+			});
+		} catch (OdnSerializationException e) {
+			// not expected, nothing is serialized here
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Commit remaining records in all store sessions and make all the records
+	 * stored in them available to the readers. Serializers run concurrently.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when commit or publishing fails
+	 */
+	protected void publishStoreSessions() throws OdnRepositoryException {
+		if (storeSessions == null)
+			return;
+		
+		try {
+			runForAllSerializers(new SerializerTask<RecordType, Void>() {
+				@Override
+				public Void run(AbstractSerializer<RecordType, ?, ?> serializer,
+						int serializerIndex) throws OdnRepositoryException {
+					storeSessions.get(serializerIndex).publish();
+					return null;
+				}
+			});
+		} catch (OdnSerializationException e) {
+			// not expected, nothing is serialized here
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Close all store sessions, records not committed yet are rolled back.
+	 */
+	protected void closeStoreSessions() {
+		if (storeSessions == null)
+			return;
+		
+		for (OdnRepositoryStoreSession<?> session : storeSessions)
+			try {
+				session.close();
+			} catch (OdnRepositoryException e) {
+				logger.error("repository exception while closing session", e);
+			}
+		
+		storeSessions = null;
+	}
+	
+	/**
+	 * Let all serializers store records serialized by
+	 * {@link #serialize(List, List)}. Serializers run concurrently.
+	 * 
+	 * If store sessions are open (see {@link #openStoreSessions(boolean)}), records
+	 * are stored within them, otherwise they are committed immediately.
+	 * 
+	 * @param serializedRecords
+	 *            serialized records, one item for each serializer
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnRepositoryException
+	 *             when we fail to store given data into repository
+	 */
+	protected void storeSerialized(final List<Object> serializedRecords)
+			throws IllegalArgumentException, OdnRepositoryException {
+		
+		final Vector<OdnRepositoryStoreSession<?>> sessions = storeSessions;
+		
+		try {
+			runForAllSerializers(new SerializerTask<RecordType, Void>() {
+				@Override
+				public Void run(AbstractSerializer<RecordType, ?, ?> serializer,
+						int serializerIndex) throws OdnRepositoryException {
+					storeSerialized(serializer,
+							serializedRecords.get(serializerIndex),
+							sessions != null ? sessions.get(serializerIndex)
+									: null);
+					return null;
+				}
+			});
+		} catch (OdnSerializationException e) {
+			// not expected, nothing is serialized here
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <RepositoryStoreType> void storeSerialized(
+			AbstractSerializer<RecordType, ?, RepositoryStoreType> serializer,
+			Object serializedRecords, OdnRepositoryStoreSession<?> session)
+			throws IllegalArgumentException, OdnRepositoryException {
+		
+		if (session != null)
+			serializer.storeSerialized(
+					(RepositoryStoreType) serializedRecords,
+					(OdnRepositoryStoreSession<RepositoryStoreType>) session);
+		else
+			serializer.storeSerialized((RepositoryStoreType) serializedRecords);
+	}
+	
+	/**
+	 * Pass given records to all serializers. Serializers will serialize the
+	 * records and store them, all of them concurrently, so that the time it
+	 * takes is the time of the slowest one.
 	 * 
 	 * @param records
 	 *            list of records to serialize and store
@@ -219,14 +728,50 @@ public abstract class AbstractHarvester<RecordType extends AbstractRecord> {
 	 * @throws OdnRepositoryException
 	 *             when we fail to store given data into repository
 	 */
-	protected void store(List<RecordType> records) throws IllegalArgumentException,
+	protected void store(final List<RecordType> records) throws IllegalArgumentException,
 			OdnSerializationException, OdnRepositoryException {
 	    
 		if (records.size() <= 0)
 			// nothing to store so why bother?
 			return;
 		
+		runForAllSerializers(new SerializerTask<RecordType, Void>() {
+			@Override
+			public Void run(AbstractSerializer<RecordType, ?, ?> serializer,
+					int serializerIndex) throws OdnSerializationException,
+					OdnRepositoryException {
+				serializer.store(records);
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Let all serializers remove the records with given IDs (i.e. records
+	 * which are no longer present in the source) from their repositories.
+	 * 
+	 * Unlike when storing, serializers run one after another, in the order
+	 * they were added, and first failure stops the removal: some of them may
+	 * need our current copy of the records to find out what to remove, thus
+	 * the primary repository has to be cleaned up last.
+	 * 
+	 * @param ids
+	 *            IDs of the records to remove
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnSerializationException
+	 *             when records to remove can not be determined
+	 * @throws OdnRepositoryException
+	 *             when we fail to remove the records from repository
+	 */
+	protected void remove(List<String> ids) throws IllegalArgumentException,
+			OdnSerializationException, OdnRepositoryException {
+		
+		if (ids.isEmpty())
+			return;
+		
 		for (AbstractSerializer<RecordType, ?, ?> serializer : serializers)
-	    	serializer.store(records);
+			serializer.remove(ids);
 	}
 }
@@ -0,0 +1,201 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sk.opendata.odn.utils.ApplicationProperties;
+
+/**
+ * Local, persistent state of one harvester (i.e. stuff we need to remember
+ * between two harvests of the same source, like the digest of the last
+ * harvested document).
+ *
+ * State of each harvester lives in its own directory, by default
+ * {@code <user.home>/.odn/state/<harvester name>/}. Base directory can be
+ * changed using {@code odn.harvester.state_dir} property in
+ * {@code odn.properties}. Other components of the harvester (say change
+ * detection) are free to store their own files in that directory.
+ */
+public class HarvesterState {
+
+	public final static String ODN_PROPERTIES_NAME = "/odn.properties";
+	public final static String KEY_STATE_DIR = "odn.harvester.state_dir";
+	public final static String DEFAULT_STATE_SUBDIR = ".odn" + File.separator + "state";
+	public final static String STATE_FILE_NAME = "harvester.properties";
+
+	private static Logger logger = LoggerFactory.getLogger(HarvesterState.class);
+
+	private File directory = null;
+	private File stateFile = null;
+	private Properties properties = new Properties();
+
+
+	/**
+	 * Load (or initialize empty) state stored in given directory.
+	 *
+	 * @param directory
+	 *            directory holding the state, created if it does not exist
+	 *
+	 * @throws IOException
+	 *             when directory can not be created or state can not be loaded
+	 */
+	public HarvesterState(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("unable to create state directory "
+					+ directory.getAbsolutePath());
+
+		this.directory = directory;
+		this.stateFile = new File(directory, STATE_FILE_NAME);
+
+		if (stateFile.isFile()) {
+			FileInputStream in = new FileInputStream(stateFile);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+			logger.debug("harvester state loaded from "
+					+ stateFile.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Load the state of harvester with given name from configured state
+	 * directory.
+	 *
+	 * @param harvesterName
+	 *            name of the harvester, used as a name of the subdirectory
+	 * @return state of the harvester
+	 *
+	 * @throws IOException
+	 *             when loading of the properties or the state fails
+	 */
+	public static HarvesterState load(String harvesterName) throws IOException {
+		ApplicationProperties odnProperties = ApplicationProperties
+				.getInstance(ODN_PROPERTIES_NAME);
+
+		String stateDirName = odnProperties.getProperty(KEY_STATE_DIR);
+		File stateDir = null;
+		if (stateDirName == null || stateDirName.trim().isEmpty())
+			stateDir = new File(System.getProperty("user.home"),
+					DEFAULT_STATE_SUBDIR);
+		else
+			stateDir = new File(stateDirName.trim());
+
+		return new HarvesterState(new File(stateDir, harvesterName));
+	}
+
+	/**
+	 * @return directory where state of the harvester is stored
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	public String getProperty(String key) {
+		return properties.getProperty(key);
+	}
+
+	/**
+	 * Set (or, if {@code value} is {@code null}, remove) given state
+	 * property. Change is not persisted until {@link #save()} is called.
+	 *
+	 * @param key
+	 *            property name
+	 * @param value
+	 *            property value
+	 */
+	public void setProperty(String key, String value) {
+		if (value == null)
+			properties.remove(key);
+		else
+			properties.setProperty(key, value);
+	}
+
+	/**
+	 * Remove all state properties with given prefix. Change is not persisted
+	 * until {@link #save()} is called.
+	 *
+	 * @param prefix
+	 *            prefix of the property names
+	 */
+	public void removeProperties(String prefix) {
+		for (String key : properties.stringPropertyNames())
+			if (key.startsWith(prefix))
+				properties.remove(key);
+	}
+
+	/**
+	 * Persist the state. The state is first written into temporary file which
+	 * then replaces the old state, so that a crash while saving does not leave
+	 * us with a corrupted state.
+	 *
+	 * @throws IOException
+	 *             when saving fails
+	 */
+	public void save() throws IOException {
+		File tmpFile = new File(directory, STATE_FILE_NAME + ".tmp");
+
+		FileOutputStream out = new FileOutputStream(tmpFile);
+		try {
+			properties.store(out, "Open Data Node harvester state");
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		replaceFile(tmpFile, stateFile);
+		logger.debug("harvester state saved to " + stateFile.getAbsolutePath());
+	}
+
+	/**
+	 * Replace {@code target} with {@code source} (i.e. rename source to target
+	 * even if target already exists).
+	 *
+	 * @param source
+	 *            file which will replace the target
+	 * @param target
+	 *            file to replace
+	 *
+	 * @throws IOException
+	 *             when rename fails
+	 */
+	public static void replaceFile(File source, File target) throws IOException {
+		// note: on some platforms 'renameTo()' does not overwrite existing
+		// files
+		if (!source.renameTo(target)) {
+			if (target.exists() && !target.delete())
+				throw new IOException("unable to delete "
+						+ target.getAbsolutePath());
+			if (!source.renameTo(target))
+				throw new IOException("unable to rename "
+						+ source.getAbsolutePath() + " to "
+						+ target.getAbsolutePath());
+		}
+	}
+
+}
@@ -0,0 +1,551 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sk.opendata.odn.utils.ApplicationProperties;
+
+/**
+ * Downloads source documents over HTTP using pooled connections of Apache
+ * HttpClient.
+ * 
+ * - connect and read timeouts, so that a stalled server does not block the
+ * harvester forever
+ * - documents are requested compressed ({@code Accept-Encoding: gzip}) and
+ * decompressed once downloaded
+ * - document is downloaded into a partial file first; if the download
+ * fails, it is resumed using {@code Range} request (retried few times right
+ * away and, if still failing, on next download of the same document)
+ * - integrity of the downloaded document is checked: its length against
+ * {@code Content-Length} (or {@code Content-Range}), its MD5 against
+ * {@code Content-MD5} (if the server provides it) and, for compressed
+ * documents, the CRC of gzip stream
+ * 
+ * Downloader is shared by all harvesters, see {@link #getInstance()}.
+ */
+public class HttpDownloader {
+	
+	public final static String KEY_HTTP_CONNECT_TIMEOUT = "odn.harvester.http.connect_timeout";
+	public final static String KEY_HTTP_READ_TIMEOUT = "odn.harvester.http.read_timeout";
+	public final static String KEY_HTTP_MAX_CONNECTIONS = "odn.harvester.http.max_connections";
+	public final static String KEY_HTTP_RETRIES = "odn.harvester.http.retries";
+	
+	public final static String PARTIAL_FILE_SUFFIX = ".part";
+	public final static String PARTIAL_INFO_FILE_SUFFIX = ".part.properties";
+	
+	private final static String KEY_PARTIAL_URL = "url";
+	private final static String KEY_PARTIAL_ETAG = "etag";
+	private final static String KEY_PARTIAL_LAST_MODIFIED = "last_modified";
+	private final static String KEY_PARTIAL_CONTENT_ENCODING = "content_encoding";
+	private final static String KEY_PARTIAL_CONTENT_MD5 = "content_md5";
+	private final static String KEY_PARTIAL_LENGTH = "length";
+	
+	private static Logger logger = LoggerFactory.getLogger(HttpDownloader.class);
+	private static HttpDownloader instance = null;
+	
+	private PoolingClientConnectionManager connectionManager;
+	private DefaultHttpClient httpClient;
+	private int retries;
+	
+	/**
+	 * Result of the download.
+	 */
+	public static class Result {
+		private String etag;
+		private long lastModified;
+		private long length;
+		
+		private Result(String etag, long lastModified, long length) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+		
+		/**
+		 * @return {@code ETag} of the document or {@code null}
+		 */
+		public String getEtag() {
+			return etag;
+		}
+		
+		/**
+		 * @return {@code Last-Modified} time of the document or {@code 0}
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+		
+		/**
+		 * @return length of the (decompressed) document
+		 */
+		public long getLength() {
+			return length;
+		}
+	}
+	
+	
+	/**
+	 * @param connectTimeout
+	 *            connect timeout (in milliseconds)
+	 * @param readTimeout
+	 *            read timeout (in milliseconds), i.e. maximal time to wait
+	 *            for the data from the server
+	 * @param maxConnections
+	 *            maximal number of pooled connections
+	 * @param retries
+	 *            number of times failed download is resumed right away
+	 */
+	public HttpDownloader(int connectTimeout, int readTimeout,
+			int maxConnections, int retries) {
+		
+		connectionManager = new PoolingClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		
+		httpClient = new DefaultHttpClient(connectionManager);
+		HttpParams params = httpClient.getParams();
+		HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+		HttpConnectionParams.setSoTimeout(params, readTimeout);
+		HttpProtocolParams.setUserAgent(params,
+				AbstractHarvester.ODN_HARVESTER_USER_AGENT);
+		
+		this.retries = retries;
+	}
+	
+	/**
+	 * @return downloader shared by all harvesters, configured using
+	 *         {@code odn.harvester.http.*} properties in {@code odn.properties}
+	 * 
+	 * @throws IOException
+	 *             when loading of the properties fails
+	 */
+	public static synchronized HttpDownloader getInstance() throws IOException {
+		if (instance == null) {
+			ApplicationProperties odnProperties = ApplicationProperties
+					.getInstance(HarvesterState.ODN_PROPERTIES_NAME);
+			instance = new HttpDownloader(
+					Integer.valueOf(odnProperties.getProperty(
+							KEY_HTTP_CONNECT_TIMEOUT, "30000")),
+					Integer.valueOf(odnProperties.getProperty(
+							KEY_HTTP_READ_TIMEOUT, "300000")),
+					Integer.valueOf(odnProperties.getProperty(
+							KEY_HTTP_MAX_CONNECTIONS, "4")),
+					Integer.valueOf(odnProperties.getProperty(
+							KEY_HTTP_RETRIES, "3")));
+		}
+		
+		return instance;
+	}
+	
+	/**
+	 * Download the document from given URL into given file. If the document
+	 * was partially downloaded before (and it did not change since then),
+	 * download is resumed.
+	 * 
+	 * @param url
+	 *            HTTP(S) URL of the document
+	 * @param target
+	 *            file to store the (decompressed) document into
+	 * @param etag
+	 *            {@code ETag} of previously downloaded document (for
+	 *            conditional request) or {@code null}
+	 * @param lastModified
+	 *            {@code Last-Modified} time of previously downloaded document
+	 *            (for conditional request) or {@code 0}
+	 * @return result of the download or {@code null} if the document was not
+	 *         modified since previous download
+	 * 
+	 * @throws IOException
+	 *             when the download fails or the downloaded document is
+	 *             corrupted
+	 */
+	public Result download(URL url, File target, String etag,
+			long lastModified) throws IOException {
+		
+		File partialFile = new File(target.getPath() + PARTIAL_FILE_SUFFIX);
+		File partialInfoFile = new File(target.getPath() + PARTIAL_INFO_FILE_SUFFIX);
+		Properties partialInfo = loadPartialInfo(url, partialFile, partialInfoFile);
+		
+		IOException lastException = null;
+		for (int attempt = 0; attempt <= retries; attempt++) {
+			if (attempt > 0)
+				logger.info("resuming download of " + url.toExternalForm()
+						+ " (attempt " + (attempt + 1) + ")");
+			
+			try {
+				if (!downloadPart(url, partialFile, partialInfoFile,
+						partialInfo, etag, lastModified))
+					return null;
+				lastException = null;
+				break;
+			} catch (IOException e) {
+				logger.warn("download of " + url.toExternalForm()
+						+ " failed after " + partialFile.length() + " bytes", e);
+				lastException = e;
+			}
+		}
+		if (lastException != null)
+			// note: partial file is kept so that next download resumes it
+			throw lastException;
+		
+		try {
+			checkIntegrity(partialFile, partialInfo);
+			
+			long length = partialFile.length();
+			if ("gzip".equalsIgnoreCase(partialInfo.getProperty(KEY_PARTIAL_CONTENT_ENCODING))) {
+				length = decompress(partialFile, target);
+				if (!partialFile.delete())
+					logger.warn("failed to delete " + partialFile.getAbsolutePath());
+			}
+			else
+				HarvesterState.replaceFile(partialFile, target);
+			
+			logger.debug("downloaded " + partialInfo.getProperty(KEY_PARTIAL_LENGTH, "?")
+					+ " bytes (" + length + " bytes decompressed) from "
+					+ url.toExternalForm() + " to " + target.getAbsolutePath());
+			
+			String lastModifiedValue = partialInfo.getProperty(KEY_PARTIAL_LAST_MODIFIED);
+			return new Result(partialInfo.getProperty(KEY_PARTIAL_ETAG),
+					lastModifiedValue != null ? Long.valueOf(lastModifiedValue) : 0,
+					length);
+		} catch (IOException e) {
+			// corrupted, no point in resuming it
+			logger.error("corrupted download of " + url.toExternalForm(), e);
+			if (partialFile.exists() && !partialFile.delete())
+				logger.warn("failed to delete " + partialFile.getAbsolutePath());
+			throw e;
+		} finally {
+			if (!partialFile.exists() && partialInfoFile.exists()
+					&& !partialInfoFile.delete())
+				logger.warn("failed to delete " + partialInfoFile.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Load the information about previous partial download, if it is of the
+	 * same URL and it can be resumed (i.e. there is a validator for
+	 * {@code If-Range}).
+	 */
+	private Properties loadPartialInfo(URL url, File partialFile,
+			File partialInfoFile) throws IOException {
+		
+		Properties partialInfo = new Properties();
+		if (partialFile.isFile() && partialInfoFile.isFile()) {
+			FileInputStream in = new FileInputStream(partialInfoFile);
+			try {
+				partialInfo.load(in);
+			} finally {
+				in.close();
+			}
+			
+			if (url.toExternalForm().equals(partialInfo.getProperty(KEY_PARTIAL_URL))
+					&& (partialInfo.getProperty(KEY_PARTIAL_ETAG) != null
+					|| partialInfo.getProperty(KEY_PARTIAL_LAST_MODIFIED) != null))
+				return partialInfo;
+			partialInfo.clear();
+		}
+		
+		// nothing to resume
+		if (partialFile.exists() && !partialFile.delete())
+			throw new IOException("unable to delete "
+					+ partialFile.getAbsolutePath());
+		
+		return partialInfo;
+	}
+	
+	private void savePartialInfo(File partialInfoFile, Properties partialInfo)
+			throws IOException {
+		
+		FileOutputStream out = new FileOutputStream(partialInfoFile);
+		try {
+			partialInfo.store(out, "Open Data Node partial download");
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Download (rest of) the document into partial file.
+	 * 
+	 * @return {@code false} if the document was not modified
+	 */
+	private boolean downloadPart(URL url, File partialFile,
+			File partialInfoFile, Properties partialInfo, String etag,
+			long lastModified) throws IOException {
+		
+		HttpGet request;
+		try {
+			request = new HttpGet(url.toURI());
+		} catch (URISyntaxException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		request.setHeader("Accept-Encoding", "gzip");
+		
+		long offset = partialFile.isFile() ? partialFile.length() : 0;
+		if (offset > 0) {
+			// note: 'If-Range' makes the server send whole document (instead
+			// of the rest of it) if it changed since the partial download
+			request.setHeader("Range", "bytes=" + offset + "-");
+			String partialEtag = partialInfo.getProperty(KEY_PARTIAL_ETAG);
+			if (partialEtag != null)
+				request.setHeader("If-Range", partialEtag);
+			else
+				request.setHeader("If-Range", DateUtils.formatDate(new Date(
+						Long.valueOf(partialInfo.getProperty(KEY_PARTIAL_LAST_MODIFIED)))));
+		}
+		else {
+			if (etag != null)
+				request.setHeader("If-None-Match", etag);
+			if (lastModified > 0)
+				request.setHeader("If-Modified-Since",
+						DateUtils.formatDate(new Date(lastModified)));
+		}
+		
+		HttpEntity entity = null;
+		try {
+			HttpResponse response = httpClient.execute(request);
+			int status = response.getStatusLine().getStatusCode();
+			entity = response.getEntity();
+			
+			if (status == HttpStatus.SC_NOT_MODIFIED)
+				return false;
+			
+			if (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+				// partial file does not match the document anymore, start
+				// over on next attempt
+				if (!partialFile.delete())
+					throw new IOException("unable to delete "
+							+ partialFile.getAbsolutePath());
+				throw new IOException("range not satisfiable: "
+						+ response.getStatusLine());
+			}
+			
+			boolean append = false;
+			if (status == HttpStatus.SC_PARTIAL_CONTENT && offset > 0) {
+				long[] range = parseContentRange(response.getFirstHeader("Content-Range"));
+				if (range[0] != offset)
+					throw new IOException("unexpected range " + range[0]
+							+ " (expected " + offset + ")");
+				if (range[1] >= 0 && partialInfo.getProperty(KEY_PARTIAL_LENGTH) == null) {
+					partialInfo.setProperty(KEY_PARTIAL_LENGTH, Long.toString(range[1]));
+					savePartialInfo(partialInfoFile, partialInfo);
+				}
+				append = true;
+			}
+			else if (status == HttpStatus.SC_OK) {
+				if (offset > 0)
+					logger.info("document changed or server does not support ranges, downloading "
+							+ url.toExternalForm() + " from the beginning");
+				
+				partialInfo.clear();
+				partialInfo.setProperty(KEY_PARTIAL_URL, url.toExternalForm());
+				setProperty(partialInfo, KEY_PARTIAL_ETAG, response.getFirstHeader("ETag"));
+				setProperty(partialInfo, KEY_PARTIAL_CONTENT_ENCODING,
+						response.getFirstHeader("Content-Encoding"));
+				setProperty(partialInfo, KEY_PARTIAL_CONTENT_MD5,
+						response.getFirstHeader("Content-MD5"));
+				Header lastModifiedHeader = response.getFirstHeader("Last-Modified");
+				if (lastModifiedHeader != null)
+					try {
+						partialInfo.setProperty(KEY_PARTIAL_LAST_MODIFIED,
+								Long.toString(DateUtils.parseDate(
+										lastModifiedHeader.getValue()).getTime()));
+					} catch (DateParseException e) {
+						logger.warn("invalid Last-Modified: " + lastModifiedHeader.getValue());
+					}
+				if (entity != null && entity.getContentLength() >= 0)
+					partialInfo.setProperty(KEY_PARTIAL_LENGTH,
+							Long.toString(entity.getContentLength()));
+				savePartialInfo(partialInfoFile, partialInfo);
+			}
+			else
+				throw new IOException("unexpected response from "
+						+ url.toExternalForm() + ": " + response.getStatusLine());
+			
+			if (entity == null)
+				throw new IOException("no content in response from "
+						+ url.toExternalForm());
+			
+			InputStream in = entity.getContent();
+			try {
+				OutputStream out = new FileOutputStream(partialFile, append);
+				try {
+					byte[] buffer = new byte[64 * 1024];
+					int count;
+					while ((count = in.read(buffer)) != -1)
+						out.write(buffer, 0, count);
+				} finally {
+					out.close();
+				}
+			} finally {
+				// note: releases the connection back to the pool
+				in.close();
+			}
+			entity = null;
+		} catch (IOException e) {
+			// note: do not leave broken connection in the pool
+			request.abort();
+			entity = null;
+			throw e;
+		} finally {
+			if (entity != null)
+				EntityUtils.consume(entity);
+		}
+		
+		// note: connection closed before whole document was sent is not
+		// always detected by the client (say without 'Content-Length')
+		String length = partialInfo.getProperty(KEY_PARTIAL_LENGTH);
+		if (length != null && partialFile.length() < Long.valueOf(length))
+			throw new IOException("incomplete download, " + partialFile.length()
+					+ " of " + length + " bytes received");
+		
+		return true;
+	}
+	
+	private static void setProperty(Properties properties, String key,
+			Header header) {
+		if (header != null)
+			properties.setProperty(key, header.getValue());
+	}
+	
+	/**
+	 * @return first byte and total length from {@code Content-Range} header
+	 *         (total length is {@code -1} if not known)
+	 */
+	private static long[] parseContentRange(Header header) throws IOException {
+		// bytes <first>-<last>/<total or *>
+		try {
+			String value = header.getValue().trim();
+			int dash = value.indexOf('-');
+			int slash = value.indexOf('/');
+			long first = Long.parseLong(value.substring(
+					value.indexOf(' ') + 1, dash).trim());
+			String total = value.substring(slash + 1).trim();
+			
+			return new long[] { first,
+					"*".equals(total) ? -1 : Long.parseLong(total) };
+		} catch (RuntimeException e) {
+			throw new IOException("invalid Content-Range: " + header, e);
+		}
+	}
+	
+	/**
+	 * Check the length and MD5 (if known) of downloaded document.
+	 */
+	private void checkIntegrity(File partialFile, Properties partialInfo)
+			throws IOException {
+		
+		String length = partialInfo.getProperty(KEY_PARTIAL_LENGTH);
+		if (length != null && partialFile.length() != Long.valueOf(length))
+			throw new IOException("length mismatch, " + partialFile.length()
+					+ " bytes downloaded but " + length + " expected");
+		
+		String contentMd5 = partialInfo.getProperty(KEY_PARTIAL_CONTENT_MD5);
+		if (contentMd5 != null) {
+			MessageDigest md5;
+			try {
+				md5 = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+			
+			InputStream in = new FileInputStream(partialFile);
+			try {
+				byte[] buffer = new byte[64 * 1024];
+				int count;
+				while ((count = in.read(buffer)) != -1)
+					md5.update(buffer, 0, count);
+			} finally {
+				in.close();
+			}
+			
+			if (!Arrays.equals(md5.digest(),
+					Base64.decodeBase64(contentMd5.trim())))
+				throw new IOException("Content-MD5 mismatch");
+		}
+	}
+	
+	/**
+	 * Decompress gzip compressed file (note: CRC of the content is checked
+	 * by {@link GZIPInputStream}).
+	 * 
+	 * @return length of decompressed content
+	 */
+	private long decompress(File source, File target) throws IOException {
+		long length = 0;
+		
+		InputStream in = new GZIPInputStream(new FileInputStream(source));
+		try {
+			OutputStream out = new FileOutputStream(target);
+			try {
+				byte[] buffer = new byte[64 * 1024];
+				int count;
+				while ((count = in.read(buffer)) != -1) {
+					out.write(buffer, 0, count);
+					length += count;
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * Close all pooled connections.
+	 */
+	public void shutdown() {
+		connectionManager.shutdown();
+	}
+	
+}
@@ -0,0 +1,416 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester;
+
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simple staged pipeline: a source producing items and a chain of stages
+ * processing them, each stage running on its own executor.
+ *
+ * Stages are connected by bounded queues, so a fast stage can not run too
+ * much ahead of a slow one (back-pressure) while all the stages work at the
+ * same time. Total run time thus approaches the time of the slowest stage
+ * instead of the sum of the times of all stages.
+ *
+ * Stage with one thread processes the items in the order they were produced,
+ * stage with more threads may change the order.
+ *
+ * If any of the stages fails, the whole pipeline is cancelled and
+ * {@link #run()} throws {@link ExecutionException} with the failure as a
+ * cause.
+ *
+ * Usage:
+ *
+ * <pre>
+ * Pipeline pipeline = new Pipeline("example");
+ * Pipeline.Link&lt;A&gt; a = pipeline.source("read", source, 2);
+ * Pipeline.Link&lt;B&gt; b = pipeline.stage("transform", a, 1, 2, transformer);
+ * pipeline.sink("write", b, 1, writer);
+ * pipeline.run();
+ * </pre>
+ */
+public class Pipeline {
+
+	private static Logger logger = LoggerFactory.getLogger(Pipeline.class);
+
+	/**
+	 * Produces the items processed by the pipeline.
+	 */
+	public interface Source<OutputType> {
+		/**
+		 * @return next item or {@code null} when there are no more items
+		 *
+		 * @throws Exception
+		 *             when production of the item fails
+		 */
+		public OutputType next() throws Exception;
+	}
+
+	/**
+	 * Processes the items.
+	 */
+	public interface Stage<InputType, OutputType> {
+		/**
+		 * @param item
+		 *            item to process
+		 * @return result passed to the next stage ({@code null} means
+		 *         nothing is passed on)
+		 *
+		 * @throws Exception
+		 *             when processing of the item fails
+		 */
+		public OutputType process(InputType item) throws Exception;
+	}
+
+	/**
+	 * Output of a source or a stage, to be consumed by one of the following
+	 * stages.
+	 */
+	public final class Link<ItemType> {
+		private Runner producer;
+		private BlockingQueue<Object> queue;
+		private boolean consumed = false;
+
+		private Link(Runner producer, BlockingQueue<Object> queue) {
+			this.producer = producer;
+			this.queue = queue;
+		}
+	}
+
+	/**
+	 * Marks the end of the items in a queue.
+	 */
+	private final static Object END = new Object();
+
+	/**
+	 * Runs the source or one stage of the pipeline.
+	 */
+	private class Runner {
+		private String name;
+		private int threadCount;
+		private Source<?> source;
+		private Stage<Object, ?> stage;
+		private BlockingQueue<Object> input;
+		private int inputCapacity;
+		private BlockingQueue<Object> output;
+		private ExecutorService executor;
+		private AtomicInteger activeThreads;
+		private AtomicLong itemCount = new AtomicLong();
+		private AtomicLong busyNanos = new AtomicLong();
+
+		private Runner(String name, int threadCount) {
+			this.name = name;
+			this.threadCount = threadCount;
+			this.activeThreads = new AtomicInteger(threadCount);
+		}
+
+		private void start() {
+			final String threadName = Pipeline.this.name + "-" + name;
+			executor = Executors.newFixedThreadPool(threadCount,
+					new ThreadFactory() {
+						private int threadNumber = 0;
+
+						@Override
+						public synchronized Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, threadName
+									+ (threadCount > 1 ? "-" + (++threadNumber) : ""));
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+
+			for (int i = 0; i < threadCount; i++)
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							if (source != null)
+								runSource();
+							else
+								runStage();
+						} catch (InterruptedException e) {
+							// we've been cancelled
+						} catch (Throwable e) {
+							fail(Runner.this, e);
+						}
+					}
+				});
+			executor.shutdown();
+		}
+
+		private void runSource() throws Exception {
+			while (true) {
+				long timeStart = System.nanoTime();
+				Object item = source.next();
+				busyNanos.addAndGet(System.nanoTime() - timeStart);
+				if (item == null)
+					break;
+
+				itemCount.incrementAndGet();
+				output.put(item);
+			}
+			output.put(END);
+		}
+
+		private void runStage() throws Exception {
+			while (true) {
+				Object item = input.take();
+				if (item == END) {
+					// let also other threads of this stage know
+					input.put(END);
+					break;
+				}
+
+				long timeStart = System.nanoTime();
+				Object result = stage.process(item);
+				busyNanos.addAndGet(System.nanoTime() - timeStart);
+				itemCount.incrementAndGet();
+
+				if (result != null && output != null)
+					output.put(result);
+			}
+
+			if (activeThreads.decrementAndGet() == 0 && output != null)
+				output.put(END);
+		}
+
+		private String getStatistics() {
+			long busyMillis = busyNanos.get() / 1000000;
+			StringBuilder statistics = new StringBuilder(name);
+			statistics.append(": ");
+			statistics.append(itemCount.get());
+			statistics.append(" items, busy ");
+			statistics.append(busyMillis);
+			statistics.append(" ms");
+			if (busyMillis > 0) {
+				statistics.append(" (");
+				statistics.append(1000f * itemCount.get() / busyMillis);
+				statistics.append("/s)");
+			}
+			if (input != null) {
+				statistics.append(", queue ");
+				statistics.append(input.size());
+				statistics.append('/');
+				statistics.append(inputCapacity);
+			}
+
+			return statistics.toString();
+		}
+	}
+
+	private String name;
+	private Vector<Runner> runners = new Vector<Runner>();
+	private volatile Throwable failure = null;
+	private volatile String failedStage = null;
+
+
+	/**
+	 * @param name
+	 *            name of the pipeline (used to name the threads)
+	 */
+	public Pipeline(String name) {
+		this.name = name;
+	}
+
+	private Link<?> addRunner(Runner runner, Link<?> input, int queueCapacity) {
+		if (input != null) {
+			if (input.consumed)
+				throw new IllegalArgumentException("output of '"
+						+ input.producer.name + "' is already consumed");
+			input.consumed = true;
+			runner.input = input.queue;
+			runner.inputCapacity = input.queue.remainingCapacity();
+		}
+
+		Link<?> output = null;
+		if (queueCapacity > 0) {
+			// note: plus one for the 'END' marker
+			runner.output = new ArrayBlockingQueue<Object>(queueCapacity + 1);
+			output = new Link<Object>(runner, runner.output);
+		}
+
+		runners.add(runner);
+
+		return output;
+	}
+
+	/**
+	 * Add the source of the items.
+	 *
+	 * @param name
+	 *            name of the source
+	 * @param source
+	 *            source of the items
+	 * @param queueCapacity
+	 *            how many produced items can wait for the next stage
+	 * @return output of the source
+	 */
+	@SuppressWarnings("unchecked")
+	public <OutputType> Link<OutputType> source(String name,
+			Source<OutputType> source, int queueCapacity) {
+
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("queue capacity have to be positive");
+
+		Runner runner = new Runner(name, 1);
+		runner.source = source;
+
+		return (Link<OutputType>) addRunner(runner, null, queueCapacity);
+	}
+
+	/**
+	 * Add a processing stage.
+	 *
+	 * @param name
+	 *            name of the stage
+	 * @param input
+	 *            output of the previous stage (or source)
+	 * @param threadCount
+	 *            number of threads processing the items
+	 * @param queueCapacity
+	 *            how many processed items can wait for the next stage
+	 * @param stage
+	 *            processing of the items
+	 * @return output of the stage
+	 */
+	@SuppressWarnings("unchecked")
+	public <InputType, OutputType> Link<OutputType> stage(String name,
+			Link<InputType> input, int threadCount, int queueCapacity,
+			Stage<? super InputType, OutputType> stage) {
+
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("queue capacity have to be positive");
+
+		Runner runner = new Runner(name, threadCount);
+		runner.stage = (Stage<Object, ?>) stage;
+
+		return (Link<OutputType>) addRunner(runner, input, queueCapacity);
+	}
+
+	/**
+	 * Add the final stage (its results, if any, are thrown away).
+	 *
+	 * @param name
+	 *            name of the stage
+	 * @param input
+	 *            output of the previous stage (or source)
+	 * @param threadCount
+	 *            number of threads processing the items
+	 * @param stage
+	 *            processing of the items
+	 */
+	@SuppressWarnings("unchecked")
+	public <InputType> void sink(String name, Link<InputType> input,
+			int threadCount, Stage<? super InputType, ?> stage) {
+
+		Runner runner = new Runner(name, threadCount);
+		runner.stage = (Stage<Object, ?>) stage;
+
+		addRunner(runner, input, 0);
+	}
+
+	private synchronized void fail(Runner runner, Throwable e) {
+		if (failure == null) {
+			logger.error("pipeline " + name + " failed in stage "
+					+ runner.name, e);
+			failure = e;
+			failedStage = runner.name;
+		}
+
+		cancel();
+	}
+
+	private void cancel() {
+		for (Runner runner : runners)
+			if (runner.executor != null)
+				runner.executor.shutdownNow();
+	}
+
+	/**
+	 * Run the pipeline and wait until all items are processed.
+	 *
+	 * @throws ExecutionException
+	 *             when some of the stages failed
+	 * @throws InterruptedException
+	 *             when interrupted while waiting for the pipeline (pipeline
+	 *             is cancelled in such case)
+	 */
+	public void run() throws ExecutionException, InterruptedException {
+		for (Runner runner : runners) {
+			if (runner.output != null && !isConsumed(runner))
+				throw new IllegalStateException("output of '" + runner.name
+						+ "' is not consumed");
+		}
+
+		synchronized (this) {
+			for (Runner runner : runners)
+				runner.start();
+		}
+
+		try {
+			for (Runner runner : runners)
+				runner.executor.awaitTermination(Long.MAX_VALUE,
+						TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			cancel();
+			throw e;
+		}
+
+		if (failure != null)
+			throw new ExecutionException("pipeline " + name
+					+ " failed in stage " + failedStage, failure);
+	}
+
+	private boolean isConsumed(Runner producer) {
+		for (Runner runner : runners)
+			if (runner.input == producer.output)
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * @return number of processed items, time spent processing them and
+	 *         number of items waiting, for each stage
+	 */
+	public String getStatistics() {
+		StringBuilder statistics = new StringBuilder();
+		for (Runner runner : runners) {
+			if (statistics.length() > 0)
+				statistics.append("; ");
+			statistics.append(runner.getStatistics());
+		}
+
+		return statistics.toString();
+	}
+
+}
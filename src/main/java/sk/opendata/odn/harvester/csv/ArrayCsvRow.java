@@ -0,0 +1,60 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.csv;
+
+import sk.opendata.odn.harvester.diff.RowDigestWriter;
+
+/**
+ * CSV row backed by an array of already materialized columns.
+ */
+public class ArrayCsvRow implements CsvRow {
+
+	private String[] columns;
+
+
+	public ArrayCsvRow(String[] columns) {
+		this.columns = columns;
+	}
+
+	@Override
+	public int size() {
+		return columns.length;
+	}
+
+	@Override
+	public String get(int index) throws ArrayIndexOutOfBoundsException {
+		return columns[index];
+	}
+
+	@Override
+	public boolean isEmpty(int index) throws ArrayIndexOutOfBoundsException {
+		return columns[index] == null || columns[index].isEmpty();
+	}
+
+	@Override
+	public String[] toArray() {
+		return columns;
+	}
+
+	@Override
+	public long fingerprint() {
+		return RowDigestWriter.hashRow(columns);
+	}
+
+}
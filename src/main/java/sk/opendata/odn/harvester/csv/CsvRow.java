@@ -0,0 +1,69 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.csv;
+
+/**
+ * One row of a CSV document.
+ *
+ * Columns are materialized (i.e. converted into {@code String}s) only when
+ * asked for, so that implementations are free to keep just the positions of
+ * the columns in the source document.
+ */
+public interface CsvRow {
+
+	/**
+	 * @return number of columns in the row
+	 */
+	public int size();
+
+	/**
+	 * @param index
+	 *            index of the column
+	 * @return value of the column
+	 *
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             when there is no such column in the row
+	 */
+	public String get(int index) throws ArrayIndexOutOfBoundsException;
+
+	/**
+	 * Check whether given column is empty without materializing it.
+	 *
+	 * @param index
+	 *            index of the column
+	 * @return {@code true} if the column is empty
+	 *
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             when there is no such column in the row
+	 */
+	public boolean isEmpty(int index) throws ArrayIndexOutOfBoundsException;
+
+	/**
+	 * @return values of all the columns
+	 */
+	public String[] toArray();
+
+	/**
+	 * @return hash of the whole row, same as
+	 *         {@link sk.opendata.odn.harvester.diff.RowDigestWriter#hashRow(String[])}
+	 *         of {@link #toArray()}
+	 */
+	public long fingerprint();
+
+}
@@ -0,0 +1,713 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.csv;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import sk.opendata.odn.harvester.diff.RowDigestWriter;
+
+/**
+ * CSV reader working directly on memory-mapped UTF-8 document.
+ *
+ * The document is mapped in windows (so that also documents over 2 GB can
+ * be read) and rows are tokenized on bytes (all the characters with special
+ * meaning are ASCII, thus they can not be part of a multi-byte UTF-8
+ * sequence). For each column only its position is recorded and the column is
+ * decoded only when asked for (see {@link CsvRow#get(int)}), thus columns the
+ * harvester does not need are never turned into {@code String}s.
+ *
+ * Parsing rules are the same as used by opencsv 2.3 {@code CSVReader} with
+ * default settings, which we've used before (i.e. comma as separator, double
+ * quote as quote character, doubled quote or backslash for escaping, leading
+ * white space before quotes ignored, line breaks in quoted values turned into
+ * {@code \n}) so that harvesting results (and row digests) do not change.
+ *
+ * Reader can be limited to a range of the document (see
+ * {@link #scanRange(File, long, long)}) so that several parts of the
+ * document can be read in parallel.
+ *
+ * Note: Row returned by {@link #readNext()} is valid only until next call of
+ * {@link #readNext()}.
+ */
+public class MappedCsvReader {
+
+	public final static int DEFAULT_WINDOW_SIZE = 32 * 1024 * 1024;
+	public final static int SCAN_BUFFER_SIZE = 64 * 1024;
+	public final static String ENCODING = "UTF-8";
+
+	private final static byte SEPARATOR = ',';
+	private final static byte QUOTE = '"';
+	private final static byte ESCAPE = '\\';
+
+	private FileInputStream stream;
+	private FileChannel channel;
+	private long fileSize;
+	private long rangeEnd;
+	private int windowSize;
+	private MappedByteBuffer window = null;
+	private long windowStart = 0;
+	private int position = 0;
+	private CharsetDecoder decoder;
+	private MappedCsvRow row = new MappedCsvRow();
+
+
+	/**
+	 * Row of the document, holding only the positions of its columns either
+	 * in the current window or (for columns which needed unescaping) in the
+	 * scratch buffer.
+	 */
+	private class MappedCsvRow implements CsvRow {
+		private int size = 0;
+		private int[] starts = new int[32];
+		private int[] ends = new int[32];
+		private boolean[] inScratch = new boolean[32];
+		private String[] values = new String[32];
+		private byte[] scratch = new byte[1024];
+		private int scratchLength = 0;
+
+		// column being parsed:
+		private boolean simple;
+		private int columnStart;
+		private int columnEnd;
+		private int scratchStart;
+
+		private void reset() {
+			Arrays.fill(values, 0, size, null);
+			size = 0;
+			scratchLength = scratchStart = 0;
+			resetColumn();
+		}
+
+		private void resetColumn() {
+			simple = true;
+			columnStart = columnEnd = 0;
+			scratchLength = scratchStart;
+		}
+
+		private int columnLength() {
+			return simple ? columnEnd - columnStart : scratchLength - scratchStart;
+		}
+
+		private void toScratch() {
+			if (!simple)
+				return;
+
+			simple = false;
+			scratchStart = scratchLength;
+			for (int i = columnStart; i < columnEnd; i++)
+				appendScratch(window.get(i));
+		}
+
+		private void appendScratch(byte b) {
+			if (scratchLength >= scratch.length)
+				scratch = Arrays.copyOf(scratch, scratch.length * 2);
+			scratch[scratchLength++] = b;
+		}
+
+		/**
+		 * Append the byte on given position of the window.
+		 */
+		private void append(int position) {
+			if (simple) {
+				if (columnEnd == columnStart) {
+					columnStart = position;
+					columnEnd = position + 1;
+					return;
+				}
+				if (columnEnd == position) {
+					columnEnd++;
+					return;
+				}
+				toScratch();
+			}
+			appendScratch(window.get(position));
+		}
+
+		/**
+		 * Append given byte which is not present on the window (as is).
+		 */
+		private void appendByte(byte b) {
+			toScratch();
+			appendScratch(b);
+		}
+
+		private boolean isAllWhiteSpace() {
+			for (int i = 0; i < columnLength(); i++) {
+				byte b = simple ? window.get(columnStart + i) : scratch[scratchStart + i];
+				if (b < 0 || !Character.isWhitespace((char) b))
+					return false;
+			}
+			return true;
+		}
+
+		private void endColumn() {
+			if (size >= starts.length) {
+				int newLength = starts.length * 2;
+				starts = Arrays.copyOf(starts, newLength);
+				ends = Arrays.copyOf(ends, newLength);
+				inScratch = Arrays.copyOf(inScratch, newLength);
+				values = Arrays.copyOf(values, newLength);
+			}
+
+			if (simple) {
+				starts[size] = columnStart;
+				ends[size] = columnEnd;
+			}
+			else {
+				starts[size] = scratchStart;
+				ends[size] = scratchLength;
+			}
+			inScratch[size] = !simple;
+			size++;
+
+			scratchStart = scratchLength;
+			resetColumn();
+		}
+
+		private void checkIndex(int index) {
+			if (index < 0 || index >= size)
+				throw new ArrayIndexOutOfBoundsException(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public String get(int index) throws ArrayIndexOutOfBoundsException {
+			checkIndex(index);
+
+			if (values[index] == null)
+				values[index] = decode(index);
+
+			return values[index];
+		}
+
+		private String decode(int index) {
+			if (starts[index] == ends[index])
+				return "";
+
+			ByteBuffer bytes;
+			if (inScratch[index])
+				bytes = ByteBuffer.wrap(scratch, starts[index], ends[index]
+						- starts[index]);
+			else {
+				bytes = window.duplicate();
+				bytes.limit(ends[index]);
+				bytes.position(starts[index]);
+			}
+
+			try {
+				return decoder.decode(bytes).toString();
+			} catch (CharacterCodingException e) {
+				// should not happen as we're replacing malformed input
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public boolean isEmpty(int index) throws ArrayIndexOutOfBoundsException {
+			checkIndex(index);
+
+			return starts[index] == ends[index];
+		}
+
+		@Override
+		public String[] toArray() {
+			String[] result = new String[size];
+			for (int i = 0; i < size; i++)
+				result[i] = get(i);
+
+			return result;
+		}
+
+		@Override
+		public long fingerprint() {
+			long hash = RowDigestWriter.FNV_OFFSET_BASIS;
+
+			for (int column = 0; column < size; column++) {
+				if (inScratch[column])
+					for (int i = starts[column]; i < ends[column]; i++)
+						hash = RowDigestWriter.hashByte(hash, scratch[i]);
+				else
+					for (int i = starts[column]; i < ends[column]; i++)
+						hash = RowDigestWriter.hashByte(hash, window.get(i));
+				hash = RowDigestWriter.hashColumnSeparator(hash);
+			}
+
+			return hash;
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(toArray());
+		}
+	}
+
+
+	/**
+	 * @param file
+	 *            CSV document to read
+	 * @param rangeStart
+	 *            offset of the first row to read, has to be a start of a row
+	 * @param rangeEnd
+	 *            offset after which no more rows are read (i.e. the last row
+	 *            read is the one which starts before this offset)
+	 * @param windowSize
+	 *            size of the part of the document mapped into memory at once
+	 *            (it is enlarged if some row does not fit into it)
+	 *
+	 * @throws IOException
+	 *             when the document can not be opened
+	 */
+	public MappedCsvReader(File file, long rangeStart, long rangeEnd,
+			int windowSize) throws IOException {
+		if (windowSize <= 0)
+			throw new IllegalArgumentException("window size have to be positive");
+
+		this.windowSize = windowSize;
+
+		decoder = Charset.forName(ENCODING).newDecoder();
+		decoder.onMalformedInput(CodingErrorAction.REPLACE);
+		decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		stream = new FileInputStream(file);
+		channel = stream.getChannel();
+		fileSize = channel.size();
+		this.rangeEnd = Math.min(rangeEnd, fileSize);
+
+		map(Math.min(rangeStart, fileSize));
+
+		// skip UTF-8 byte order mark, if present
+		if (rangeStart == 0 && window.limit() >= 3
+				&& window.get(0) == (byte) 0xef
+				&& window.get(1) == (byte) 0xbb
+				&& window.get(2) == (byte) 0xbf)
+			position = 3;
+	}
+
+	/**
+	 * @param file
+	 *            CSV document to read
+	 * @param windowSize
+	 *            size of the part of the document mapped into memory at once
+	 *            (it is enlarged if some row does not fit into it)
+	 *
+	 * @throws IOException
+	 *             when the document can not be opened
+	 */
+	public MappedCsvReader(File file, int windowSize) throws IOException {
+		this(file, 0, Long.MAX_VALUE, windowSize);
+	}
+
+	public MappedCsvReader(File file) throws IOException {
+		this(file, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Where the rows start in a range of the document and whether the range
+	 * ends inside a quoted value, both for the range starting outside and
+	 * inside of a quoted value (see {@link MappedCsvReader#scanRange(File,
+	 * long, long)}).
+	 */
+	public static class RangeScan {
+		// indexed by 0 - starting outside of quotes, 1 - inside of quotes
+		private long[] firstRowStarts = new long[2];
+		private boolean[] endsInQuotes = new boolean[2];
+
+		private static int index(boolean startsInQuotes) {
+			return startsInQuotes ? 1 : 0;
+		}
+
+		/**
+		 * @param startsInQuotes
+		 *            whether the range starts inside of a quoted value
+		 * @return offset of the first row starting in the range or the end
+		 *         of the range if no row starts in it
+		 */
+		public long getFirstRowStart(boolean startsInQuotes) {
+			return firstRowStarts[index(startsInQuotes)];
+		}
+
+		/**
+		 * @param startsInQuotes
+		 *            whether the range starts inside of a quoted value
+		 * @return whether the range ends inside of a quoted value (i.e.
+		 *         next range starts there)
+		 */
+		public boolean endsInQuotes(boolean startsInQuotes) {
+			return endsInQuotes[index(startsInQuotes)];
+		}
+	}
+
+	/**
+	 * Tracks the quoting the same way as {@link #parseRow(int)} does, but
+	 * without recording the columns.
+	 */
+	private static class QuoteTracker {
+		private boolean inQuotes;
+		private boolean inField = false;
+		private boolean skipNext = false;
+		private long firstRowStart = -1;
+
+		private QuoteTracker(boolean inQuotes, long lineStart) {
+			this.inQuotes = inQuotes;
+			if (!inQuotes)
+				firstRowStart = lineStart;
+		}
+
+		/**
+		 * @param c
+		 *            next character (other than line break)
+		 * @param n
+		 *            character following it on the same line, -1 if none
+		 */
+		private void next(int c, int n) {
+			if (skipNext) {
+				// escaped character
+				skipNext = false;
+				return;
+			}
+
+			if (c == ESCAPE) {
+				if ((inQuotes || inField) && (n == QUOTE || n == ESCAPE))
+					skipNext = true;
+			}
+			else if (c == QUOTE) {
+				if ((inQuotes || inField) && n == QUOTE)
+					skipNext = true;
+				else
+					inQuotes = !inQuotes;
+				inField = !inField;
+			}
+			else if (c == SEPARATOR && !inQuotes)
+				inField = false;
+			else
+				inField = true;
+		}
+
+		private void lineBreak(long lineStart) {
+			inField = false;
+			if (!inQuotes && firstRowStart < 0)
+				firstRowStart = lineStart;
+		}
+	}
+
+	/**
+	 * Find start of the first line starting at or after given offset.
+	 *
+	 * Note: The line may be a continuation of a quoted value, see
+	 * {@link #scanRange(File, long, long)} to find out where the rows start.
+	 *
+	 * @param file
+	 *            CSV document
+	 * @param offset
+	 *            offset to start looking at
+	 * @return offset of the line start or the size of the document if no
+	 *         line starts after given offset
+	 *
+	 * @throws IOException
+	 *             when the document can not be read
+	 */
+	public static long nextLineStart(File file, long offset)
+			throws IOException {
+
+		if (offset <= 0)
+			return 0;
+
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			long fileSize = stream.getChannel().size();
+			if (offset >= fileSize)
+				return fileSize;
+
+			stream.getChannel().position(offset - 1);
+			InputStream in = new BufferedInputStream(stream, SCAN_BUFFER_SIZE);
+			int previous = in.read();
+			int c = in.read();
+			// note: line break is "\n", "\r\n" or lone "\r"
+			while (c >= 0 && previous != '\n'
+					&& (previous != '\r' || c == '\n')) {
+				previous = c;
+				c = in.read();
+				offset++;
+			}
+
+			return offset;
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Find out where the rows start in given range of the document, without
+	 * knowing whether the range starts inside of a quoted value (thus both
+	 * cases are tracked).
+	 *
+	 * This way the document can be split into ranges of roughly the same
+	 * size (see {@link #nextLineStart(File, long)}), scanned in parallel
+	 * and then only the quoting at the starts of the ranges is chained from
+	 * the first range (which starts outside of quotes) to the next ones (see
+	 * {@link RangeScan#endsInQuotes(boolean)}).
+	 *
+	 * Note: The rows are tokenized, but the columns are not recorded nor
+	 * decoded.
+	 *
+	 * @param file
+	 *            CSV document
+	 * @param start
+	 *            start of the range, has to be a start of a line
+	 * @param end
+	 *            end of the range, has to be a start of a line (or the size
+	 *            of the document)
+	 * @return row starts and quoting of the range
+	 *
+	 * @throws IOException
+	 *             when the document can not be read
+	 */
+	public static RangeScan scanRange(File file, long start, long end)
+			throws IOException {
+
+		QuoteTracker[] trackers = new QuoteTracker[] {
+				new QuoteTracker(false, start), new QuoteTracker(true, start) };
+
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			stream.getChannel().position(start);
+			InputStream in = new BufferedInputStream(stream, SCAN_BUFFER_SIZE);
+
+			long offset = start;
+			int c = in.read();
+			while (offset < end && c >= 0) {
+				int n = in.read();
+				offset++;
+
+				if (c == '\n' || c == '\r') {
+					if (c == '\r' && n == '\n') {
+						n = in.read();
+						offset++;
+					}
+					for (QuoteTracker tracker : trackers)
+						tracker.lineBreak(offset);
+				}
+				else {
+					int sameLine = (n == '\n' || n == '\r') ? -1 : n;
+					for (QuoteTracker tracker : trackers)
+						tracker.next(c, sameLine);
+				}
+
+				c = n;
+			}
+		} finally {
+			stream.close();
+		}
+
+		RangeScan result = new RangeScan();
+		for (boolean startsInQuotes : new boolean[] { false, true }) {
+			QuoteTracker tracker = trackers[RangeScan.index(startsInQuotes)];
+			result.firstRowStarts[RangeScan.index(startsInQuotes)] =
+					tracker.firstRowStart >= 0 ? tracker.firstRowStart : end;
+			result.endsInQuotes[RangeScan.index(startsInQuotes)] =
+					tracker.inQuotes;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return offset (in the document) of the next row
+	 */
+	public long getOffset() {
+		return windowStart + position;
+	}
+
+	private void map(long start) throws IOException {
+		long size = Math.min(windowSize, fileSize - start);
+
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		windowStart = start;
+		position = 0;
+	}
+
+	private boolean isLastWindow() {
+		return windowStart + window.limit() >= fileSize;
+	}
+
+	/**
+	 * Read next row.
+	 *
+	 * @return next row or {@code null} at the end of the document
+	 *
+	 * @throws IOException
+	 *             when the document can not be mapped
+	 */
+	public CsvRow readNext() throws IOException {
+		while (true) {
+			if (getOffset() >= rangeEnd
+					|| (position >= window.limit() && isLastWindow()))
+				return null;
+
+			int next = parseRow(position);
+			if (next >= 0) {
+				position = next;
+				return row;
+			}
+
+			// row does not fit into the window => map next part of the
+			// document (enlarging the window if it does not fit even into
+			// empty window)
+			if (position == 0) {
+				if (windowSize > Integer.MAX_VALUE / 2)
+					throw new IOException("row too long (at offset "
+							+ windowStart + ")");
+				windowSize *= 2;
+			}
+			map(windowStart + position);
+		}
+	}
+
+	/**
+	 * Parse the row starting at given position of the window.
+	 *
+	 * @return position of the next row or -1 if the row does not end in
+	 *         current window
+	 */
+	private int parseRow(int from) {
+		int limit = window.limit();
+		boolean lastWindow = isLastWindow();
+
+		row.reset();
+		boolean inQuotes = false;
+		boolean inField = false;
+		int lineStart = from;
+
+		int i = from;
+		while (true) {
+			if (i >= limit) {
+				if (!lastWindow)
+					return -1;
+
+				// last line without line break
+				row.endColumn();
+				return i;
+			}
+
+			byte c = window.get(i);
+
+			if (c == '\n' || c == '\r') {
+				int next = i + 1;
+				if (c == '\r') {
+					if (next >= limit && !lastWindow)
+						return -1;
+					if (next < limit && window.get(next) == '\n')
+						next++;
+				}
+
+				if (!inQuotes) {
+					row.endColumn();
+					return next;
+				}
+
+				// quoted value continues on next line
+				row.appendByte((byte) '\n');
+				inField = false;
+				lineStart = next;
+				i = next;
+				continue;
+			}
+
+			// next character on the same line, if any
+			int n = -1;
+			if (i + 1 < limit) {
+				n = window.get(i + 1) & 0xff;
+				if (n == '\n' || n == '\r')
+					n = -1;
+			}
+			else if (!lastWindow)
+				return -1;
+
+			if (c == ESCAPE) {
+				if ((inQuotes || inField) && (n == QUOTE || n == ESCAPE)) {
+					row.append(i + 1);
+					i++;
+				}
+				// note: otherwise opencsv drops the backslash
+			}
+			else if (c == QUOTE) {
+				if ((inQuotes || inField) && n == QUOTE) {
+					// escaped (doubled) quote
+					row.append(i + 1);
+					i++;
+				}
+				else {
+					// the tricky case of an embedded quote in the middle:
+					// a,bc"d"ef,g
+					if (i - lineStart > 2 && window.get(i - 1) != SEPARATOR
+							&& n != -1 && n != SEPARATOR) {
+						if (row.columnLength() > 0 && row.isAllWhiteSpace())
+							// discard white space leading up to quote
+							row.resetColumn();
+						else
+							row.append(i);
+					}
+					inQuotes = !inQuotes;
+				}
+				inField = !inField;
+			}
+			else if (c == SEPARATOR && !inQuotes) {
+				row.endColumn();
+				inField = false;
+			}
+			else {
+				row.append(i);
+				inField = true;
+			}
+
+			i++;
+		}
+	}
+
+	/**
+	 * Close the reader.
+	 *
+	 * Note: Mapped window is released only once it is garbage collected.
+	 *
+	 * @throws IOException
+	 *             when closing of the document fails
+	 */
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+		stream.close();
+	}
+
+}
@@ -18,29 +18,37 @@
 
 package sk.opendata.odn.harvester.datanest;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import sk.opendata.odn.harvester.AbstractHarvester;
+import sk.opendata.odn.harvester.HarvesterState;
 import sk.opendata.odn.harvester.OdnHarvesterException;
+import sk.opendata.odn.harvester.Pipeline;
+import sk.opendata.odn.harvester.csv.ArrayCsvRow;
+import sk.opendata.odn.harvester.csv.CsvRow;
+import sk.opendata.odn.harvester.csv.MappedCsvReader;
+import sk.opendata.odn.harvester.diff.DumpDiff;
+import sk.opendata.odn.harvester.diff.FingerprintIndex;
+import sk.opendata.odn.harvester.diff.RecordKeyIndex;
+import sk.opendata.odn.harvester.diff.RowDigestWriter;
 import sk.opendata.odn.model.AbstractRecord;
 import sk.opendata.odn.repository.OdnRepositoryException;
 import sk.opendata.odn.repository.jackrabbit.JackrabbitItem;
 import sk.opendata.odn.serialization.OdnSerializationException;
 import sk.opendata.odn.utils.ApplicationProperties;
-import au.com.bytecode.opencsv.CSVReader;
 
 /**
  * Stuff common to all Datanest harvesters.
@@ -72,14 +80,47 @@ public abstract class AbstractDatanestHarvester<RecordType extends AbstractRecor
 
 	public final static String DATANEST_PROPERTIES_NAME = "/datanest.properties";
 	public final static String KEY_DATANEST_BATCH_SIZE = "datanest.batch_size";
+	public final static String KEY_DATANEST_BATCH_SIZE_ADAPTIVE = "datanest.batch_size.adaptive";
+	public final static String KEY_DATANEST_BATCH_SIZE_MIN = "datanest.batch_size.min";
+	public final static String KEY_DATANEST_BATCH_SIZE_MAX = "datanest.batch_size.max";
+	public final static String KEY_DATANEST_BATCH_SIZE_TARGET_STORE_MILLIS = "datanest.batch_size.target_store_millis";
+	public final static String KEY_DATANEST_BATCH_SIZE_MAX_BYTES = "datanest.batch_size.max_bytes";
 	public final static String KEY_DEBUG_PROCESS_ONLY_N_ITEMS = "datanest.debug.process_only_n_items";
+	public final static String KEY_DATANEST_PARALLEL_THREADS = "datanest.parallel.threads";
+	public final static String KEY_DATANEST_PARALLEL_ORDERED = "datanest.parallel.ordered";
+	public final static String KEY_DATANEST_PIPELINE_QUEUE_CAPACITY = "datanest.pipeline.queue_capacity";
+	public final static String KEY_DATANEST_COMMIT_BATCHES = "datanest.commit_batches";
+	public final static String KEY_DATANEST_FULL_RELOAD = "datanest.full_reload";
 
+	// note: parsed by 'ParseUtil.parseDate()'
 	public final static String DATANEST_DATE_FORMAT = "yyyy-MM-dd";
+	
+	public final static String ROW_DIGESTS_FILE_NAME = "rows.digest";
+	public final static String ROW_DIGESTS_NEW_FILE_NAME = "rows.digest.new";
+	public final static String FINGERPRINT_INDEX_FILE_NAME = "fingerprints.log";
+	public final static String KEY_INDEX_FILE_NAME = "keys.log";
+	/**
+	 * Offset of the first row in the dump not committed yet, so that
+	 * interrupted harvest can be resumed from there.
+	 */
+	public final static String KEY_STATE_CHECKPOINT_OFFSET = PREFIX_KEY_STATE_CHECKPOINT + "offset";
 
 	private static Logger logger = LoggerFactory.getLogger(AbstractDatanestHarvester.class);
-	protected final static SimpleDateFormat sdf = new SimpleDateFormat(DATANEST_DATE_FORMAT);
 	
 	protected ApplicationProperties datanestProperties = null;
+	private FingerprintIndex fingerprintIndex = null;
+	private RecordKeyIndex keyIndex = null;
+	private int commitBatches = 0;
+	private int uncommittedBatchCounter = 0;
+	private boolean fullReload = false;
+	private boolean checkpointEnabled = false;
+	private long storedOffset = -1;
+	private AdaptiveBatchSizer batchSizer = null;
+	// note: each counter is updated only by one of the pipeline stages
+	private long scrapedRecordCounter = 0;
+	private long storedRecordCounter = 0;
+	private long unchangedRecordCounter = 0;
+	private long updatedRecordCounter = 0;
 	
 	
 	/**
@@ -98,48 +139,542 @@ public abstract class AbstractDatanestHarvester<RecordType extends AbstractRecor
 		setSourceUrl(sourceUrl);
 	}
 	
-	abstract public RecordType scrapOneRecord(String[] row) throws ParseException;
+	abstract public RecordType scrapOneRecord(CsvRow row) throws ParseException;
+	
+	/**
+	 * Create the ID of the record scraped from the row with given ID.
+	 * 
+	 * @param rowId
+	 *            ID of the row (see {@link #getRowId(CsvRow)})
+	 * @return ID of the record
+	 */
+	abstract protected String createRecordId(String rowId);
+	
+	/**
+	 * Convenience variant of {@link #scrapOneRecord(CsvRow)} for already
+	 * materialized rows.
+	 * 
+	 * @param row
+	 *            row from the Datanest dump
+	 * @return record scraped from the row
+	 * 
+	 * @throws ParseException
+	 *             when some of the columns can not be parsed
+	 */
+	public RecordType scrapOneRecord(String[] row) throws ParseException {
+		return scrapOneRecord(new ArrayCsvRow(row));
+	}
 	
 	/**
+	 * @return current size of the batches (see
+	 *         {@link #KEY_DATANEST_BATCH_SIZE_ADAPTIVE}), i.e. size used in
+	 *         current (or last) harvest or {@code -1} if not harvested yet
+	 */
+	public int getBatchSize() {
+		return batchSizer != null ? batchSizer.getBatchSize() : -1;
+	}
+	
+	/**
+	 * Get the key identifying given record in some of the repositories, if it
+	 * is not the record ID (like ICO of an organization, which determines its
+	 * RDF subject).
+	 * 
+	 * Keys are kept only if {@link #openKeyIndex(File)} opens the index.
+	 * 
 	 * @param record
-	 *            newly downloaded record
-	 * @return {@code true} if given record is different than our current copy
-	 *         of the record with same ID
+	 *            harvested record
+	 * @return key of the record ({@code null} by default)
+	 */
+	protected String getRecordKey(RecordType record) {
+		return null;
+	}
+	
+	/**
+	 * Open the index of record keys (see {@link #getRecordKey(AbstractRecord)})
+	 * when harvesting starts. Keys of stored records are committed into it
+	 * along with their fingerprints and removed along with the records.
+	 * 
+	 * Harvesters whose records have keys override this method to open the
+	 * index (see {@link #KEY_INDEX_FILE_NAME}) and pass it to the serializers
+	 * which need it.
+	 * 
+	 * @param stateDir
+	 *            directory holding harvester state
+	 * @return index of record keys or {@code null} if records have no keys
+	 *         (default)
+	 * 
+	 * @throws IOException
+	 *             when the index can not be opened
+	 */
+	protected RecordKeyIndex openKeyIndex(File stateDir) throws IOException {
+		return null;
+	}
+	
+	/**
+	 * Get the ID of the record in given row without scraping whole row.
+	 * 
+	 * @param row
+	 *            row from the Datanest dump
+	 * @return ID of the record (as used by Datanest, i.e. the first column in
+	 *         all Datanest dumps we're harvesting)
+	 */
+	protected String getRowId(CsvRow row) {
+		return row.get(0);
+	}
+	
+	private MappedCsvReader openCsv(File sourceFile) throws IOException {
+		MappedCsvReader csvReader = new MappedCsvReader(sourceFile);
+
+		// TODO: check the header - for now we simply skip it
+		csvReader.readNext();
+		
+		return csvReader;
+	}
+	
+	/**
+	 * Compute digests of all rows in given Datanest dump and compare them with
+	 * digests of the rows from previous harvest.
+	 * 
+	 * @param sourceFile
+	 *            Datanest dump
+	 * @param previousDigests
+	 *            row digests from previous harvest
+	 * @param currentDigests
+	 *            file to store row digests of given dump into
+	 * @return differences between previous and current dump or {@code null}
+	 *         if there are no digests from the previous harvest
+	 * 
+	 * @throws IOException
+	 *             when reading of the dump or digests fails
+	 */
+	protected DumpDiff diffWithPreviousHarvest(File sourceFile,
+			File previousDigests, File currentDigests) throws IOException {
+		
+		long timeStart = Calendar.getInstance().getTimeInMillis();
+		
+		RowDigestWriter digestWriter = new RowDigestWriter(currentDigests);
+		MappedCsvReader csvReader = openCsv(sourceFile);
+		try {
+			CsvRow row;
+			while ((row = csvReader.readNext()) != null)
+				digestWriter.add(getRowId(row), row.fingerprint());
+		} finally {
+			csvReader.close();
+			digestWriter.close();
+		}
+		
+		DumpDiff dumpDiff = null;
+		if (previousDigests.isFile())
+			dumpDiff = DumpDiff.diff(previousDigests, currentDigests);
+		
+		long timeCurrent = Calendar.getInstance().getTimeInMillis();
+		logger.info("computed digests of " + digestWriter.getRowCount()
+				+ " rows in " + (float) (timeCurrent - timeStart) / 1000f
+				+ " seconds ("
+				+ (dumpDiff == null ? "no previous digests, processing all rows"
+						: dumpDiff.toString()) + ")");
+		
+		return dumpDiff;
+	}
+	
+	/**
+	 * Determine which of given records are new or different than our current
+	 * copy of the record with same ID.
+	 * 
+	 * Records are looked up in the fingerprint index first. Records not known
+	 * to the index (say when harvesting into already populated repository
+	 * with fresh harvester state) are then retrieved from primary repository,
+	 * all of them at once, and compared with our current copy using the
+	 * content hashes (see {@link JackrabbitItem#getContentHash()}).
+	 * 
+	 * @param records
+	 *            newly downloaded records
+	 * @param fingerprints
+	 *            fingerprints of the rows from which the records were scraped
+	 * @return results for each of the records (in the same order)
 	 *
 	 * @throws IllegalArgumentException
 	 *             when some of the given arguments is not valid
 	 * @throws OdnRepositoryException
 	 *             when retrieve operation fails
 	 * @throws OdnSerializationException
-	 *             when conversion into SOLR beans fails
+	 *             when conversion into Jackrabbit items fails
 	 */
-	// TODO: rename to 'updatedSinceLastHarvest()' as I plan to introduce similar method
-	// into AbstractHarvester which would check the downloaded original document (using
-	// hash or last modification time) to detect changes at the source so as to avoid
-	// actualy parsing the file if it has not been updated.
-	protected UpdatedSinceLastHarvestResults updatedSinceLastHarvest(
-			RecordType record) throws IllegalArgumentException,
-			OdnRepositoryException, OdnSerializationException {
-		
-		JackrabbitItem ourCurrentCopyOfRecord = getPrimaryRepository()
-				.retrieve(record.getId());
+	protected UpdatedSinceLastHarvestResults[] updatedSinceLastHarvest(
+			List<RecordType> records, List<Long> fingerprints)
+			throws IllegalArgumentException, OdnRepositoryException,
+			OdnSerializationException {
+		
+		UpdatedSinceLastHarvestResults[] results = new UpdatedSinceLastHarvestResults[records.size()];
+		Vector<String> unknownIds = new Vector<String>();
 
-		if (ourCurrentCopyOfRecord == null)
-			return UpdatedSinceLastHarvestResults.NEW_RECORD;
+		for (int i = 0; i < records.size(); i++) {
+			Long ourFingerprint = fingerprintIndex.get(records.get(i).getId());
+			if (ourFingerprint == null)
+				unknownIds.add(records.get(i).getId());
+			else if (ourFingerprint.equals(fingerprints.get(i)))
+				results[i] = UpdatedSinceLastHarvestResults.RECORD_UNCHANGED;
+			else
+				results[i] = UpdatedSinceLastHarvestResults.RECORD_UPDATED;
+		}
+		
+		if (unknownIds.isEmpty())
+			return results;
 
-		JackrabbitItem freshDownloadOfRecord = JackrabbitItem
-				.createJackrabbitItem(record);
+		Map<String, JackrabbitItem> ourCurrentCopies = getPrimaryRepository()
+				.retrieveAll(unknownIds);
+		for (int i = 0; i < records.size(); i++) {
+			if (results[i] != null)
+				continue;
+			
+			JackrabbitItem ourCurrentCopyOfRecord = ourCurrentCopies.get(records
+					.get(i).getId());
+			if (ourCurrentCopyOfRecord == null)
+				results[i] = UpdatedSinceLastHarvestResults.NEW_RECORD;
+			// note: hash of our copy is stored along with it, thus only the
+			// hash of the new record needs to be computed
+			else if (ourCurrentCopyOfRecord.getContentHash() == JackrabbitItem
+					.createJackrabbitItem(records.get(i)).getContentHash())
+				results[i] = UpdatedSinceLastHarvestResults.RECORD_UNCHANGED;
+			else
+				results[i] = UpdatedSinceLastHarvestResults.RECORD_UPDATED;
+		}
 
-		if (ourCurrentCopyOfRecord.compareTo(freshDownloadOfRecord) == 0)
-			return UpdatedSinceLastHarvestResults.RECORD_UNCHANGED;
+		return results;
+	}
 
-		return UpdatedSinceLastHarvestResults.RECORD_UPDATED;
+	/**
+	 * Scrap next batch of records from given reader, skipping the rows which
+	 * did not change since last harvest.
+	 * 
+	 * Note: It is called from multiple threads when scraping in parallel.
+	 * 
+	 * @param csvReader
+	 *            reader of the dump (or its range)
+	 * @param dumpDiff
+	 *            differences since previous harvest or {@code null} if all
+	 *            rows are to be scraped
+	 * @param maxRecords
+	 *            maximum number of records in the batch
+	 * @return batch of records or {@code null} if there are no more rows
+	 * 
+	 * @throws IOException
+	 *             when reading of the dump fails
+	 */
+	protected ScrapedBatch<RecordType> scrapBatch(MappedCsvReader csvReader,
+			DumpDiff dumpDiff, int maxRecords) throws IOException {
+		
+		ScrapedBatch<RecordType> batch = new ScrapedBatch<RecordType>();
+		boolean endOfDump = true;
+		
+		CsvRow row;
+		while (batch.size() < maxRecords) {
+			long rowStart = csvReader.getOffset();
+			if ((row = csvReader.readNext()) == null)
+				break;
+			endOfDump = false;
+			
+			if (dumpDiff != null && !dumpDiff.isNewOrChanged(getRowId(row))) {
+				// row did not change since last harvest => nothing to do
+				batch.addUnchangedRow();
+				continue;
+			}
+			
+			try {
+				// whether it changed since last harvesting is determined
+				// for whole batch at once
+				batch.add(scrapOneRecord(row), row.fingerprint());
+				batch.addBytes(csvReader.getOffset() - rowStart);
+			} catch (ArrayIndexOutOfBoundsException e) {
+				// happens when connection with source server cuts
+				// prematurely - this will cause last fetched line of CSV to
+				// be incomplete
+				logger.warn("index out of bound exception (broken connection?)", e);
+				logger.warn("skipping following record: " + row);
+			} catch (ParseException e) {
+				logger.warn("parse exception", e);
+				logger.warn("skipping following record: " + row);
+			}
+		}
+		
+		batch.setEndOffset(csvReader.getOffset());
+		
+		return endOfDump ? null : batch;
+	}
+
+	/**
+	 * Classify given batch of records: pick those which are new or updated
+	 * and collect the fingerprints to be committed once they are stored.
+	 * 
+	 * @param batch
+	 *            batch of newly scraped records
+	 * @return records to store along with fingerprints to commit
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when retrieve operation fails
+	 * @throws OdnSerializationException
+	 *             when conversion into Jackrabbit items fails
+	 */
+	private ClassifiedBatch<RecordType> classifyBatch(
+			ScrapedBatch<RecordType> batch) throws OdnRepositoryException,
+			OdnSerializationException {
+		
+		List<RecordType> records = batch.getRecords();
+		List<Long> fingerprints = batch.getFingerprints();
+		ClassifiedBatch<RecordType> classifiedBatch = new ClassifiedBatch<RecordType>(
+				batch.size());
+		classifiedBatch.setEndOffset(batch.getEndOffset());
+		
+		unchangedRecordCounter += batch.getUnchangedRowCount();
+		if (records.isEmpty())
+			return classifiedBatch;
+		
+		UpdatedSinceLastHarvestResults[] results;
+		if (fullReload) {
+			// all records are stored, whether they changed or not
+			results = new UpdatedSinceLastHarvestResults[records.size()];
+			Arrays.fill(results, UpdatedSinceLastHarvestResults.NEW_RECORD);
+		}
+		else
+			results = updatedSinceLastHarvest(records, fingerprints);
+		
+		for (int i = 0; i < records.size(); i++) {
+			RecordType record = records.get(i);
+			
+			if (results[i] == UpdatedSinceLastHarvestResults.RECORD_UNCHANGED) {
+				// it did not change => nothing to do, just maintain the count
+				unchangedRecordCounter++;
+			}
+			else {
+				// note: repositories replace previous version of updated
+				// record when storing the new one (Sesame removes statements
+				// about its subjects, SOLR and Jackrabbit overwrite the
+				// item with same ID)
+				boolean updated = results[i] == UpdatedSinceLastHarvestResults.RECORD_UPDATED;
+				if (updated)
+					updatedRecordCounter++;
+
+				// add new data
+				classifiedBatch.addRecord(record, updated);
+			}
+			
+			// fingerprint gets committed along with the batch (note: also
+			// unchanged records found only in primary repository are added
+			// so that next time we do not need to retrieve them)
+			if (!fingerprints.get(i).equals(fingerprintIndex.get(record.getId())))
+				classifiedBatch.addFingerprint(record.getId(), fingerprints.get(i));
+			if (keyIndex != null) {
+				String key = getRecordKey(record);
+				String indexedKey = keyIndex.get(record.getId());
+				if (key == null ? indexedKey != null : !key.equals(indexedKey))
+					classifiedBatch.addKey(record.getId(), key);
+			}
+		}
+		
+		// note: payload estimated from the rows the records were scraped from
+		classifiedBatch.setByteCount(batch.getByteCount()
+				* classifiedBatch.getRecords().size() / records.size());
+		
+		return classifiedBatch;
+	}
+	
+	/**
+	 * Store given batch of serialized records and stage their fingerprints.
+	 * Every {@link #KEY_DATANEST_COMMIT_BATCHES} batches, stored records are
+	 * committed (see {@link #commitStoredBatches()}). They are committed
+	 * earlier if the payload of the uncommitted batches would exceed
+	 * {@link #KEY_DATANEST_BATCH_SIZE_MAX_BYTES}.
+	 * 
+	 * @param batch
+	 *            classified and serialized batch of records
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when we fail to store given data into repository
+	 * @throws IOException
+	 *             when commit of the fingerprints fails
+	 */
+	private void storeBatch(ClassifiedBatch<RecordType> batch)
+			throws OdnRepositoryException, IOException {
+		
+		if (batchSizer.isCommitNeeded(batch.getByteCount()))
+			commitStoredBatches();
+		
+		long timeStart = System.currentTimeMillis();
+		if (batch.getSerializedRecords() != null)
+			storeSerialized(batch.getSerializedRecords());
+		batchSizer.stored(batch.getScrapedRecordCount(), batch.getRecords().size(),
+				batch.getByteCount(), System.currentTimeMillis() - timeStart);
+		
+		for (int i = 0; i < batch.getFingerprintIds().size(); i++)
+			fingerprintIndex.put(batch.getFingerprintIds().get(i),
+					batch.getFingerprints().get(i));
+		for (int i = 0; i < batch.getKeyIds().size(); i++)
+			keyIndex.put(batch.getKeyIds().get(i), batch.getKeys().get(i));
+		
+		if (batch.getEndOffset() > storedOffset)
+			storedOffset = batch.getEndOffset();
+		
+		uncommittedBatchCounter++;
+		if (commitBatches > 0 && uncommittedBatchCounter >= commitBatches)
+			commitStoredBatches();
+	}
+	
+	/**
+	 * Commit records stored since last commit in all repositories and, once
+	 * committed, commit their fingerprints into the fingerprint index. Time
+	 * of the commit is accounted to the committed batches when adjusting the
+	 * batch size.
+	 * 
+	 * In full reload, fingerprints are committed only when the records are
+	 * published (see {@link #publishStoredBatches()}), since records
+	 * committed into the repositories are dropped if the reload fails.
+	 * 
+	 * Otherwise, offset of the first row not committed yet is remembered as a
+	 * checkpoint (see {@link #KEY_STATE_CHECKPOINT_OFFSET}). All repositories
+	 * are committed at once, thus one offset is enough for all of them.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when commit of the records fails
+	 * @throws IOException
+	 *             when commit of the fingerprints or the checkpoint fails
+	 */
+	private void commitStoredBatches() throws OdnRepositoryException,
+			IOException {
+		
+		if (uncommittedBatchCounter == 0)
+			return;
+		
+		long timeStart = System.currentTimeMillis();
+		commitStoreSessions();
+		batchSizer.committed(System.currentTimeMillis() - timeStart);
+		if (!fullReload)
+			commitIndexes();
+		uncommittedBatchCounter = 0;
+		
+		if (checkpointEnabled && storedOffset >= 0) {
+			HarvesterState state = getHarvesterState();
+			state.setProperty(KEY_STATE_CHECKPOINT_OFFSET,
+					Long.toString(storedOffset));
+			state.save();
+		}
+	}
+	
+	/**
+	 * Commit fingerprints (and keys) of stored records.
+	 * 
+	 * Note: Keys are committed first, so that if we fail in between, the
+	 * records are stored again (as their fingerprints are not committed).
+	 * 
+	 * @throws IOException
+	 *             when commit of the indexes fails
+	 */
+	private void commitIndexes() throws IOException {
+		if (keyIndex != null)
+			keyIndex.commit();
+		fingerprintIndex.commit();
+	}
+	
+	/**
+	 * Commit remaining records, make all stored records available to the
+	 * readers (in full reload, they replace all records stored previously)
+	 * and commit their fingerprints.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when commit or publishing of the records fails
+	 * @throws IOException
+	 *             when commit of the fingerprints fails
+	 */
+	private void publishStoredBatches() throws OdnRepositoryException,
+			IOException {
+		
+		publishStoreSessions();
+		commitIndexes();
+		uncommittedBatchCounter = 0;
+	}
+
+	/**
+	 * Remove the records which are no longer present in the Datanest dump
+	 * from all repositories, in batches, and remove their fingerprints.
+	 * 
+	 * Note: When removal fails, row digests of current dump are not
+	 * remembered, thus the removal is retried in next harvest.
+	 * 
+	 * @param removedRowIds
+	 *            IDs of the rows present in previous dump but missing in the
+	 *            current one (see {@link DumpDiff#getRemovedIds()})
+	 * @param batchSize
+	 *            number of records removed at once
+	 * 
+	 * @throws OdnSerializationException
+	 *             when records to remove can not be determined
+	 * @throws OdnRepositoryException
+	 *             when we fail to remove the records from repository
+	 * @throws IOException
+	 *             when commit of the fingerprints fails
+	 */
+	private void removeRecords(List<String> removedRowIds, int batchSize)
+			throws OdnSerializationException, OdnRepositoryException,
+			IOException {
+		
+		if (removedRowIds.isEmpty())
+			return;
+		
+		long timeStart = Calendar.getInstance().getTimeInMillis();
+		
+		for (int batchStart = 0; batchStart < removedRowIds.size();
+				batchStart += batchSize) {
+			List<String> rowIds = removedRowIds.subList(batchStart,
+					Math.min(batchStart + batchSize, removedRowIds.size()));
+			Vector<String> ids = new Vector<String>(rowIds.size());
+			for (String rowId : rowIds)
+				ids.add(createRecordId(rowId));
+			
+			remove(ids);
+			
+			for (String id : ids) {
+				fingerprintIndex.remove(id);
+				if (keyIndex != null)
+					keyIndex.remove(id);
+			}
+			commitIndexes();
+		}
+		
+		long timeCurrent = Calendar.getInstance().getTimeInMillis();
+		logger.info("removed " + removedRowIds.size()
+				+ " records no longer present in the source in "
+				+ (float) (timeCurrent - timeStart) / 1000f + " seconds");
 	}
 
 	/**
 	 * Most common implementation of harvesting code in our current Datanest
 	 * harvesters.
 	 * 
+	 * Harvesting runs as a pipeline (see {@link Pipeline}) so that scraping,
+	 * change detection, serialization and storing of consecutive batches
+	 * overlap:
+	 * 1) scrape: read and scrap the rows (sequentially or in parallel)
+	 * 2) classify: determine which of the records are new or updated
+	 * 3) serialize: serialize records to store for all repositories
+	 * 4) store: store them and commit their fingerprints
+	 * 
+	 * Each stage is single threaded, thus batches are stored (and their
+	 * fingerprints committed) in the order they were scraped.
+	 * 
+	 * Records are stored using one session for each repository and committed
+	 * every {@link #KEY_DATANEST_COMMIT_BATCHES} batches (and at the end).
+	 * If harvesting fails, records not committed yet are rolled back.
+	 * 
+	 * In full reload (see {@link #KEY_DATANEST_FULL_RELOAD}) all rows are
+	 * harvested and stored, whether they changed or not, and they replace
+	 * previously stored records once whole dump is harvested (in repositories
+	 * supporting it, see
+	 * {@link sk.opendata.odn.repository.OdnRepositorySessionInterface#openSession(boolean)}).
+	 * 
+	 * When resuming interrupted harvest (see {@link #isResumedHarvest()}),
+	 * rows before the checkpoint (see {@link #KEY_STATE_CHECKPOINT_OFFSET})
+	 * are skipped, since they were already stored. Checkpoints are not used
+	 * in full reload and with unordered parallel scraping.
+	 * 
 	 * @param sourceFile
 	 *            temporary file holding freshly obtained data to harvest from
 	 * 
@@ -157,93 +692,213 @@ public abstract class AbstractDatanestHarvester<RecordType extends AbstractRecor
 		logger.debug("ETL started (" + sourceFile.getAbsolutePath() + ")");
 
 		// sort of performance counters
-		long timeStart = Calendar.getInstance().getTimeInMillis();
+		final long timeStart = Calendar.getInstance().getTimeInMillis();
 		long timeCurrent = -1;
-		long recordCounter = 0;
-		long unchangedRecordCounter = 0;
+		scrapedRecordCounter = 0;
+		storedRecordCounter = 0;
+		unchangedRecordCounter = 0;
+		updatedRecordCounter = 0;
 		
 		OdnHarvesterException odnHarvesterException = null;
+		OdnSerializationException odnSerializationException = null;
+		OdnRepositoryException odnRepositoryException = null;
+		MappedCsvReader csvReader = null;
+		ParallelDumpScraper<RecordType> parallelScraper = null;
+		Pipeline pipeline = null;
 
 		try {
-			// "open" the CSV dump
-			CSVReader csvReader = new CSVReader(new BufferedReader(
-					new FileReader(sourceFile)));
-			// TODO: If we store also the original copy of the data (say in
-			// Jacrabbit) and perform a "diff" on that and previous version we can:
-			// a) determine also removed records (which current implementation
-			//    does not know to do)
-			// b) determine new and updated records without downloading records
-			//    for all IDs ...
-			// c) ... instead noting only changed records in say vectors and
-			//    processing only those (thus saving a LOT of resources assuming
-			//    changes and additions are small and infrequent)
-
-			Vector<RecordType> records = new Vector<RecordType>();
-
-			// TODO: check the header - for now we simply skip it
-			csvReader.readNext();
-
-			// read the rows
-			String[] row;
-			int batchSize = Integer.valueOf(datanestProperties.getProperty(KEY_DATANEST_BATCH_SIZE));
-			int debugProcessOnlyNItems = Integer.valueOf(datanestProperties
+			// "diff" the dump with the one from previous harvest so that we
+			// process only new and changed rows
+			File stateDir = getHarvesterState().getDirectory();
+			File previousDigests = new File(stateDir, ROW_DIGESTS_FILE_NAME);
+			File currentDigests = new File(stateDir, ROW_DIGESTS_NEW_FILE_NAME);
+			fullReload = Boolean.valueOf(datanestProperties.getProperty(
+					KEY_DATANEST_FULL_RELOAD, "false"));
+			DumpDiff previousHarvestDiff = diffWithPreviousHarvest(sourceFile,
+					previousDigests, currentDigests);
+			final DumpDiff dumpDiff = fullReload ? null : previousHarvestDiff;
+			if (fullReload)
+				logger.info("full reload, processing all rows");
+			
+			fingerprintIndex = new FingerprintIndex(new File(stateDir,
+					FINGERPRINT_INDEX_FILE_NAME));
+			keyIndex = openKeyIndex(stateDir);
+			
+			commitBatches = Integer.valueOf(datanestProperties.getProperty(
+					KEY_DATANEST_COMMIT_BATCHES, "10"));
+			uncommittedBatchCounter = 0;
+			openStoreSessions(fullReload);
+			
+			final int batchSize = Integer.valueOf(datanestProperties.getProperty(KEY_DATANEST_BATCH_SIZE));
+			if (Boolean.valueOf(datanestProperties.getProperty(
+					KEY_DATANEST_BATCH_SIZE_ADAPTIVE, "false"))) {
+				batchSizer = new AdaptiveBatchSizer(batchSize,
+						Integer.valueOf(datanestProperties.getProperty(
+								KEY_DATANEST_BATCH_SIZE_MIN, Integer.toString(batchSize))),
+						Integer.valueOf(datanestProperties.getProperty(
+								KEY_DATANEST_BATCH_SIZE_MAX, Integer.toString(batchSize))),
+						Long.valueOf(datanestProperties.getProperty(
+								KEY_DATANEST_BATCH_SIZE_TARGET_STORE_MILLIS, "5000")),
+						Long.valueOf(datanestProperties.getProperty(
+								KEY_DATANEST_BATCH_SIZE_MAX_BYTES, "0")));
+				logger.info("adaptive batch size, starting with "
+						+ batchSizer.getBatchSize());
+			}
+			else
+				batchSizer = new AdaptiveBatchSizer(batchSize);
+			final int debugProcessOnlyNItems = Integer.valueOf(datanestProperties
 					.getProperty(KEY_DEBUG_PROCESS_ONLY_N_ITEMS));
-			while ((row = csvReader.readNext()) != null) {
-				try {
-					RecordType record = scrapOneRecord(row);
-					recordCounter++;
-
-					// determine whether it changed since last harvesting ...
-					UpdatedSinceLastHarvestResults updated = updatedSinceLastHarvest(record);
-					if (updated == UpdatedSinceLastHarvestResults.RECORD_UNCHANGED) {
-						// it did not => nothing to do, just maintain the count
-						unchangedRecordCounter++;
-					}
-					else {
-						// clean-up data related to old record, if necessary
-						if (updated == UpdatedSinceLastHarvestResults.RECORD_UPDATED)
-							throw new OdnHarvesterException(
-									"clean-up of old records not implemented yet (record ID: "
-											+ record.getId() + ")");
-
-						// add new data
-						records.add(record);
-					}
-				} catch (ArrayIndexOutOfBoundsException e) {
-					// happens when connection with source server cuts
-					// prematurely - this will cause last fetched line of CSV to
-					// be incomplete
-					logger.warn("index out of bound exception (broken connection?)", e);
-					logger.warn("skipping following record: "
-							+ Arrays.deepToString(row));
-				} catch (ParseException e) {
-					logger.warn("parse exception", e);
-					logger.warn("skipping following record: "
-							+ Arrays.deepToString(row));
-				}
-		    	
-		    	if (records.size() >= batchSize) {
-		    		store(records);
-		    		
-		    		// report current harvesting status
-					timeCurrent = Calendar.getInstance().getTimeInMillis();
-					float harvestingSpeed = 1000f * (float) recordCounter
-							/ (float) (timeCurrent - timeStart);
-					logger.info("harvested " + recordCounter + " records ("
-							+ harvestingSpeed + "/s) so far ...");
-		    		
-		    		records.clear();
-		    	}
-
-		    	if (debugProcessOnlyNItems > 0 &&
-		    			recordCounter >= debugProcessOnlyNItems)
-					break;
+			int parallelThreads = Integer.valueOf(datanestProperties
+					.getProperty(KEY_DATANEST_PARALLEL_THREADS, "1"));
+			boolean parallelOrdered = Boolean.valueOf(datanestProperties
+					.getProperty(KEY_DATANEST_PARALLEL_ORDERED, "true"));
+			int queueCapacity = Integer.valueOf(datanestProperties
+					.getProperty(KEY_DATANEST_PIPELINE_QUEUE_CAPACITY, "2"));
+			
+			// checkpoint (i.e. offset of the first row not committed yet)
+			// makes sense only if the batches are stored in the order of
+			// the rows in the dump
+			checkpointEnabled = !fullReload
+					&& (parallelThreads <= 1 || parallelOrdered);
+			storedOffset = -1;
+			
+			// "open" the CSV dump (and, when resuming, skip the rows which
+			// are already stored)
+			csvReader = openCsv(sourceFile);
+			String checkpointOffset = getHarvesterState().getProperty(
+					KEY_STATE_CHECKPOINT_OFFSET);
+			if (checkpointEnabled && isResumedHarvest()
+					&& checkpointOffset != null
+					&& Long.valueOf(checkpointOffset) > csvReader.getOffset()) {
+				csvReader.close();
+				csvReader = new MappedCsvReader(sourceFile,
+						Long.valueOf(checkpointOffset), Long.MAX_VALUE,
+						MappedCsvReader.DEFAULT_WINDOW_SIZE);
+				logger.info("resuming from offset " + checkpointOffset);
 			}
-
-			// store the results
-			store(records);
 			
-			csvReader.close();
+			// scrap the rows: either sequentially in the "scrape" stage or
+			// in parallel by multiple threads (and "scrape" stage just picks
+			// up the batches)
+			if (parallelThreads > 1) {
+				parallelScraper = new ParallelDumpScraper<RecordType>(
+						sourceFile, csvReader.getOffset(), parallelThreads,
+						parallelOrdered,
+						new ParallelDumpScraper.RangeScraper<RecordType>() {
+							@Override
+							public ScrapedBatch<RecordType> scrapBatch(
+									MappedCsvReader rangeReader)
+									throws IOException {
+								return AbstractDatanestHarvester.this.scrapBatch(
+										rangeReader, dumpDiff,
+										batchSizer.getBatchSize());
+							}
+						});
+				csvReader.close();
+				csvReader = null;
+				logger.info("scraping using " + parallelThreads + " threads ("
+						+ (parallelOrdered ? "ordered" : "unordered") + ")");
+			}
+			
+			final MappedCsvReader finalCsvReader = csvReader;
+			final ParallelDumpScraper<RecordType> finalParallelScraper = parallelScraper;
+			pipeline = new Pipeline(getName());
+			final Pipeline finalPipeline = pipeline;
+			
+			Pipeline.Link<ScrapedBatch<RecordType>> scraped = pipeline.source(
+					"scrape", new Pipeline.Source<ScrapedBatch<RecordType>>() {
+						@Override
+						public ScrapedBatch<RecordType> next() throws IOException,
+								InterruptedException {
+							if (debugProcessOnlyNItems > 0
+									&& scrapedRecordCounter >= debugProcessOnlyNItems) {
+								setPartialHarvest(true);
+								return null;
+							}
+							
+							int maxRecords = batchSizer.getBatchSize();
+							if (debugProcessOnlyNItems > 0)
+								maxRecords = (int) Math.min(maxRecords,
+										debugProcessOnlyNItems - scrapedRecordCounter);
+							
+							ScrapedBatch<RecordType> batch;
+							if (finalParallelScraper != null)
+								batch = finalParallelScraper.nextBatch();
+							else
+								batch = scrapBatch(finalCsvReader, dumpDiff, maxRecords);
+							
+							if (batch != null)
+								scrapedRecordCounter += batch.size();
+							return batch;
+						}
+					}, queueCapacity);
+			
+			Pipeline.Link<ClassifiedBatch<RecordType>> classified = pipeline.stage(
+					"classify", scraped, 1, queueCapacity,
+					new Pipeline.Stage<ScrapedBatch<RecordType>, ClassifiedBatch<RecordType>>() {
+						@Override
+						public ClassifiedBatch<RecordType> process(
+								ScrapedBatch<RecordType> batch)
+								throws OdnRepositoryException,
+								OdnSerializationException {
+							return classifyBatch(batch);
+						}
+					});
+			
+			Pipeline.Link<ClassifiedBatch<RecordType>> serialized = pipeline.stage(
+					"serialize", classified, 1, queueCapacity,
+					new Pipeline.Stage<ClassifiedBatch<RecordType>, ClassifiedBatch<RecordType>>() {
+						@Override
+						public ClassifiedBatch<RecordType> process(
+								ClassifiedBatch<RecordType> batch)
+								throws OdnSerializationException {
+							if (!batch.getRecords().isEmpty())
+								batch.setSerializedRecords(serialize(
+										batch.getRecords(),
+										batch.getUpdatedRecords()));
+							return batch;
+						}
+					});
+			
+			pipeline.sink("store", serialized, 1,
+					new Pipeline.Stage<ClassifiedBatch<RecordType>, Void>() {
+						@Override
+						public Void process(ClassifiedBatch<RecordType> batch)
+								throws OdnRepositoryException, IOException {
+							storeBatch(batch);
+							storedRecordCounter += batch.getScrapedRecordCount();
+							
+							// report current harvesting status
+							long timeCurrent = Calendar.getInstance().getTimeInMillis();
+							float harvestingSpeed = 1000f * (float) storedRecordCounter
+									/ (float) (timeCurrent - timeStart);
+							logger.info("harvested " + storedRecordCounter
+									+ " records (" + harvestingSpeed
+									+ "/s, batch size " + batchSizer.getBatchSize()
+									+ ") so far ... ["
+									+ finalPipeline.getStatistics() + "]");
+							return null;
+						}
+					});
+			
+			pipeline.run();
+			if (fullReload && isPartialHarvest())
+				// note: records are dropped when sessions get closed
+				logger.warn("partial harvest, full reload not published");
+			else {
+				publishStoredBatches();
+				
+				// note: also in full reload, not all repositories drop
+				// records which were not reloaded
+				if (previousHarvestDiff != null)
+					removeRecords(previousHarvestDiff.getRemovedIds(),
+							batchSize);
+			}
+			
+			// remember the digests only if we've processed all the rows,
+			// otherwise next harvest would skip rows we did not process now
+			if (!isPartialHarvest())
+				HarvesterState.replaceFile(currentDigests, previousDigests);
 
 		// TODO: If there wont be any more specialized error handling here
 		// in the future, try catching only 'Exception' to simplify the
@@ -254,20 +909,68 @@ public abstract class AbstractDatanestHarvester<RecordType extends AbstractRecor
 		} catch (IOException e) {
 			logger.error("IO exception", e);
 			odnHarvesterException = new OdnHarvesterException(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			logger.error("interrupted exception", e);
+			odnHarvesterException = new OdnHarvesterException(e.getMessage(), e);
+		} catch (OdnRepositoryException e) {
+			// note: already logged by the repository
+			odnRepositoryException = e;
+		} catch (ExecutionException e) {
+			// note: failure of the stage was already logged by the pipeline
+			Throwable cause = e.getCause();
+			if (cause instanceof OdnRepositoryException)
+				odnRepositoryException = (OdnRepositoryException) cause;
+			else if (cause instanceof OdnSerializationException)
+				odnSerializationException = (OdnSerializationException) cause;
+			else
+				odnHarvesterException = new OdnHarvesterException(
+						e.getMessage(), cause);
+		} finally {
+			if (parallelScraper != null)
+				parallelScraper.close();
+			// note: records not committed yet are rolled back
+			closeStoreSessions();
+			if (csvReader != null)
+				try {
+					csvReader.close();
+				} catch (IOException e) {
+					logger.error("IO exception in 'finally' statement", e);
+				}
+			if (fingerprintIndex != null)
+				try {
+					fingerprintIndex.close();
+				} catch (IOException e) {
+					logger.error("IO exception in 'finally' statement", e);
+				}
+			fingerprintIndex = null;
+			if (keyIndex != null)
+				try {
+					keyIndex.close();
+				} catch (IOException e) {
+					logger.error("IO exception in 'finally' statement", e);
+				}
+			keyIndex = null;
 		}
 
 		if (odnHarvesterException != null)
 			throw odnHarvesterException;
+		if (odnSerializationException != null)
+			throw odnSerializationException;
+		if (odnRepositoryException != null)
+			throw odnRepositoryException;
 
 		logger.debug("ETL finished (" + sourceFile.getAbsolutePath() + ")");
 		
 		// report final harvesting status
 		timeCurrent = Calendar.getInstance().getTimeInMillis();
-		float harvestingSpeed = 1000f * (float) recordCounter
+		float harvestingSpeed = 1000f * (float) storedRecordCounter
 				/ (float) (timeCurrent - timeStart);
-		logger.info("harvested " + recordCounter + " records in "
+		logger.info("harvested " + storedRecordCounter + " records in "
 				+ (float) (timeCurrent - timeStart) / 1000f + " seconds ("
 				+ harvestingSpeed + "/s, " + unchangedRecordCounter
-				+ " records not changed)");
+				+ " records not changed, " + updatedRecordCounter
+				+ " records updated, final batch size "
+				+ batchSizer.getBatchSize() + ")");
+		logger.info("pipeline statistics: " + pipeline.getStatistics());
 	}
 }
@@ -0,0 +1,233 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.datanest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adjusts the size of the batches based on how long it takes to store them
+ * and how big they are, similar to AIMD (additive increase, multiplicative
+ * decrease) congestion control:
+ * 
+ * - while batches are stored within the target time, batch size grows by a
+ * constant step
+ * - once storing takes longer, batch size is halved
+ * 
+ * Batches are committed several at once and the commit usually takes more
+ * time than storing the batches themselves, thus stored batches are only
+ * remembered (see {@link #stored(int, int, long, long)}) and batch size is
+ * adjusted once they are committed (see {@link #committed(long)}), with the
+ * time of the commit spread evenly over them.
+ * 
+ * Additionally, batch size is limited so that the payload of one batch
+ * (estimated from the size of the rows in the dump) stays below configured
+ * limit, so that big records do not cause request size limits to be hit or
+ * memory spikes. The same limit applies to the payload of all the batches
+ * not committed yet (see {@link #isCommitNeeded(long)}).
+ * 
+ * Batches are processed in a pipeline, thus few batches scraped before the
+ * batch size was decreased are still on their way to the repositories. To
+ * not decrease the size again because of them, batches bigger than current
+ * batch size are not taken into account when decreasing.
+ * 
+ * Note: Batch size is read by the scraping threads while it is adjusted by
+ * the storing thread, thus all methods are synchronized.
+ */
+public class AdaptiveBatchSizer {
+	
+	private final int minBatchSize;
+	private final int maxBatchSize;
+	private final int increaseStep;
+	private final long targetStoreMillis;
+	private final long maxBatchBytes;
+	private int batchSize;
+	private final List<StoredBatch> uncommittedBatches = new ArrayList<StoredBatch>();
+	private long uncommittedBytes = 0;
+	
+	/**
+	 * Batch stored but not committed yet.
+	 */
+	private static class StoredBatch {
+		private final int scrapedCount;
+		private final int storedCount;
+		private final long byteCount;
+		private final long storeMillis;
+		
+		private StoredBatch(int scrapedCount, int storedCount, long byteCount,
+				long storeMillis) {
+			this.scrapedCount = scrapedCount;
+			this.storedCount = storedCount;
+			this.byteCount = byteCount;
+			this.storeMillis = storeMillis;
+		}
+	}
+	
+	
+	/**
+	 * @param initialBatchSize
+	 *            batch size to start with
+	 * @param minBatchSize
+	 *            minimal batch size
+	 * @param maxBatchSize
+	 *            maximal batch size
+	 * @param targetStoreMillis
+	 *            maximal time (in milliseconds) to store and commit one
+	 *            batch, batch size is decreased if it takes longer
+	 * @param maxBatchBytes
+	 *            maximal payload of one batch and of all uncommitted batches
+	 *            (in bytes), {@code 0} for no limit
+	 */
+	public AdaptiveBatchSizer(int initialBatchSize, int minBatchSize,
+			int maxBatchSize, long targetStoreMillis, long maxBatchBytes) {
+		
+		if (minBatchSize <= 0 || maxBatchSize < minBatchSize)
+			throw new IllegalArgumentException("invalid batch size limits: "
+					+ minBatchSize + " - " + maxBatchSize);
+		
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		// note: so that it takes some ten batches to grow from minimum
+		// to maximum
+		this.increaseStep = Math.max(1, (maxBatchSize - minBatchSize) / 10);
+		this.targetStoreMillis = targetStoreMillis;
+		this.maxBatchBytes = maxBatchBytes;
+		this.batchSize = limit(initialBatchSize);
+	}
+	
+	/**
+	 * Create batch sizer with fixed batch size.
+	 * 
+	 * @param batchSize
+	 *            batch size
+	 */
+	public AdaptiveBatchSizer(int batchSize) {
+		this(batchSize, batchSize, batchSize, 0, 0);
+	}
+	
+	private int limit(long size) {
+		return (int) Math.max(minBatchSize, Math.min(maxBatchSize, size));
+	}
+	
+	/**
+	 * @return current batch size
+	 */
+	public synchronized int getBatchSize() {
+		return batchSize;
+	}
+	
+	/**
+	 * Remember stored batch, batch size is adjusted once it is committed.
+	 * 
+	 * @param scrapedCount
+	 *            number of records scraped into the batch
+	 * @param storedCount
+	 *            number of records stored (i.e. new and updated ones)
+	 * @param byteCount
+	 *            payload of the stored records (in bytes)
+	 * @param storeMillis
+	 *            time it took to store the records (in milliseconds)
+	 */
+	public synchronized void stored(int scrapedCount, int storedCount,
+			long byteCount, long storeMillis) {
+		
+		uncommittedBytes += byteCount;
+		if (minBatchSize != maxBatchSize)
+			uncommittedBatches.add(new StoredBatch(scrapedCount, storedCount,
+					byteCount, storeMillis));
+	}
+	
+	/**
+	 * @param byteCount
+	 *            payload of the batch about to be stored (in bytes)
+	 * @return {@code true} if the batches stored so far have to be committed
+	 *         first, so that the payload of the uncommitted batches stays
+	 *         below the limit
+	 */
+	public synchronized boolean isCommitNeeded(long byteCount) {
+		return maxBatchBytes > 0 && uncommittedBytes > 0
+				&& uncommittedBytes + byteCount > maxBatchBytes;
+	}
+	
+	/**
+	 * Adjust the batch size based on the storing of the batches committed
+	 * now, each of them taking its share of the commit time.
+	 * 
+	 * @param commitMillis
+	 *            time it took to commit the batches (in milliseconds)
+	 * @return new batch size
+	 */
+	public synchronized int committed(long commitMillis) {
+		if (!uncommittedBatches.isEmpty()) {
+			long commitShare = commitMillis / uncommittedBatches.size();
+			for (StoredBatch batch : uncommittedBatches)
+				update(batch.scrapedCount, batch.storedCount, batch.byteCount,
+						batch.storeMillis + commitShare);
+			uncommittedBatches.clear();
+		}
+		uncommittedBytes = 0;
+		
+		return batchSize;
+	}
+	
+	/**
+	 * Adjust the batch size based on the storing of one batch.
+	 * 
+	 * @param scrapedCount
+	 *            number of records scraped into the batch (i.e. the size of
+	 *            the batch at the time it was scraped)
+	 * @param storedCount
+	 *            number of records stored (i.e. new and updated ones)
+	 * @param byteCount
+	 *            payload of the stored records (in bytes)
+	 * @param storeMillis
+	 *            time it took to store (and commit) the records (in
+	 *            milliseconds)
+	 * @return new batch size
+	 */
+	public synchronized int update(int scrapedCount, int storedCount,
+			long byteCount, long storeMillis) {
+		
+		if (minBatchSize == maxBatchSize)
+			return batchSize;
+		
+		boolean tooBig = maxBatchBytes > 0 && byteCount > maxBatchBytes;
+		boolean tooSlow = storeMillis > targetStoreMillis;
+		
+		if (tooBig || tooSlow) {
+			if (scrapedCount <= batchSize)
+				batchSize = limit(batchSize / 2);
+		}
+		else if (scrapedCount >= batchSize)
+			// note: grow only on full batches (i.e. not on the last one of
+			// the dump or on those scraped before the size was increased)
+			batchSize = limit((long) batchSize + increaseStep);
+		
+		// keep the payload below the limit even if all the records in the
+		// batch would need to be stored, estimating it from the size of the
+		// records stored so far
+		if (maxBatchBytes > 0 && storedCount > 0) {
+			long bytesPerRecord = Math.max(1, byteCount / storedCount);
+			batchSize = limit(Math.min(batchSize, maxBatchBytes / bytesPerRecord));
+		}
+		
+		return batchSize;
+	}
+	
+}
@@ -0,0 +1,156 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.datanest;
+
+import java.util.List;
+import java.util.Vector;
+
+import sk.opendata.odn.model.AbstractRecord;
+
+/**
+ * Batch of records which passed the change detection, i.e. records to be
+ * stored, along with the fingerprints (and record keys) to be committed into
+ * fingerprint index (and record key index) once the records are stored.
+ *
+ * @param <RecordType>
+ *            type of harvested records
+ */
+public class ClassifiedBatch<RecordType extends AbstractRecord> {
+
+	private int scrapedRecordCount;
+	private Vector<RecordType> records = new Vector<RecordType>();
+	private Vector<RecordType> updatedRecords = new Vector<RecordType>();
+	private Vector<String> fingerprintIds = new Vector<String>();
+	private Vector<Long> fingerprints = new Vector<Long>();
+	private Vector<String> keyIds = new Vector<String>();
+	private Vector<String> keys = new Vector<String>();
+	private List<Object> serializedRecords = null;
+	private long endOffset = -1;
+	private long byteCount = 0;
+
+
+	/**
+	 * @param scrapedRecordCount
+	 *            number of records in the scraped batch this batch was
+	 *            classified from
+	 */
+	public ClassifiedBatch(int scrapedRecordCount) {
+		this.scrapedRecordCount = scrapedRecordCount;
+	}
+
+	public int getScrapedRecordCount() {
+		return scrapedRecordCount;
+	}
+
+	/**
+	 * Add a new or updated record, which is to be stored.
+	 * 
+	 * @param record
+	 *            record to store
+	 * @param updated
+	 *            whether previous version of the record may be stored in the
+	 *            repositories (and thus has to be replaced)
+	 */
+	public void addRecord(RecordType record, boolean updated) {
+		records.add(record);
+		if (updated)
+			updatedRecords.add(record);
+	}
+
+	public Vector<RecordType> getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return records (subset of {@link #getRecords()}) whose previous
+	 *         version has to be replaced
+	 */
+	public Vector<RecordType> getUpdatedRecords() {
+		return updatedRecords;
+	}
+
+	/**
+	 * Add a fingerprint to be committed into fingerprint index.
+	 */
+	public void addFingerprint(String id, long fingerprint) {
+		fingerprintIds.add(id);
+		fingerprints.add(fingerprint);
+	}
+
+	public Vector<String> getFingerprintIds() {
+		return fingerprintIds;
+	}
+
+	public Vector<Long> getFingerprints() {
+		return fingerprints;
+	}
+
+	/**
+	 * Add a record key to be committed into record key index.
+	 */
+	public void addKey(String id, String key) {
+		keyIds.add(id);
+		keys.add(key);
+	}
+
+	public Vector<String> getKeyIds() {
+		return keyIds;
+	}
+
+	public Vector<String> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return records serialized for the repositories or {@code null} if
+	 *         there is nothing to store
+	 */
+	public List<Object> getSerializedRecords() {
+		return serializedRecords;
+	}
+
+	public void setSerializedRecords(List<Object> serializedRecords) {
+		this.serializedRecords = serializedRecords;
+	}
+
+	/**
+	 * @return estimated payload (in bytes) of the records to store
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	public void setByteCount(long byteCount) {
+		this.byteCount = byteCount;
+	}
+
+	/**
+	 * @return offset (in the dump) of the row following the last row of the
+	 *         scraped batch this batch was classified from or {@code -1} if
+	 *         not known
+	 */
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	public void setEndOffset(long endOffset) {
+		this.endOffset = endOffset;
+	}
+
+}
@@ -18,13 +18,11 @@
 
 package sk.opendata.odn.harvester.datanest;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.Date;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.config.RepositoryConfigException;
@@ -32,11 +30,15 @@ import org.quartz.Job;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import sk.opendata.odn.harvester.csv.CsvRow;
+import sk.opendata.odn.harvester.diff.RecordKeyIndex;
 import sk.opendata.odn.model.OrganizationRecord;
 import sk.opendata.odn.repository.sesame.SesameRepository;
 import sk.opendata.odn.repository.solr.SolrRepository;
+import sk.opendata.odn.serialization.jackrabbit.JackrabbitSerializer;
 import sk.opendata.odn.serialization.rdf.OrganizationRdfSerializer;
 import sk.opendata.odn.serialization.solr.SolrSerializer;
+import sk.opendata.odn.utils.ParseUtil;
 
 /**
  * This class contains stuff related to scraper of Register Organizacii
@@ -58,39 +60,65 @@ public class OrganizationsDatanestHarvester extends
 	
 	private static Logger logger = LoggerFactory.getLogger(OrganizationsDatanestHarvester.class);
 
+	private OrganizationRdfSerializer rdfSerializer;
 	
 	public OrganizationsDatanestHarvester() throws IOException,
-			RepositoryConfigException, RepositoryException,
-			ParserConfigurationException, TransformerConfigurationException {
+			RepositoryConfigException, RepositoryException {
 		
 		super(KEY_DATANEST_ORGANIZATIONS_URL_KEY);
 		
-		OrganizationRdfSerializer rdfSerializer = new OrganizationRdfSerializer(
-				SesameRepository.getInstance());
+		rdfSerializer = new OrganizationRdfSerializer(
+				SesameRepository.getInstance(), getPrimaryRepository());
 		addSerializer(rdfSerializer);
 
 		SolrSerializer<OrganizationRecord> solrSerializer = new SolrSerializer<OrganizationRecord>(
 				SolrRepository.getInstance());
 		addSerializer(solrSerializer);
+
+		JackrabbitSerializer<OrganizationRecord> jackrabbitSerializer = new JackrabbitSerializer<OrganizationRecord>(
+				getPrimaryRepository());
+		addSerializer(jackrabbitSerializer);
+	}
+	
+	/**
+	 * Organizations are described by their ICO in RDF repository.
+	 */
+	@Override
+	protected String getRecordKey(OrganizationRecord record) {
+		return record.getIco();
+	}
+	
+	@Override
+	protected RecordKeyIndex openKeyIndex(File stateDir) throws IOException {
+		RecordKeyIndex keyIndex = new RecordKeyIndex(new File(stateDir,
+				KEY_INDEX_FILE_NAME));
+		rdfSerializer.setKeyIndex(keyIndex);
+		
+		return keyIndex;
+	}
+	
+	@Override
+	protected String createRecordId(String rowId) {
+		return "org_" + rowId;
 	}
 	
 	@Override
-	public OrganizationRecord scrapOneRecord(String[] row) throws ParseException {
+	public OrganizationRecord scrapOneRecord(CsvRow row) throws ParseException {
 		OrganizationRecord record = new OrganizationRecord();
 		
-		record.setId("org_" + row[ATTR_INDEX_ID]);
-		record.setDatanestId(row[ATTR_INDEX_ID]);
-		record.setSource(row[ATTR_INDEX_SOURCE]);
-		record.setName(StringEscapeUtils.escapeXml(row[ATTR_INDEX_NAME]));
-		record.setLegalForm(row[ATTR_INDEX_LEGAL_FORM]);
-		record.setSeat(row[ATTR_INDEX_SEAT]);
-		record.setIco(row[ATTR_INDEX_ICO]);
+		record.setId(createRecordId(row.get(ATTR_INDEX_ID)));
+		record.setDatanestId(row.get(ATTR_INDEX_ID));
+		record.setSource(row.get(ATTR_INDEX_SOURCE));
+		record.setName(StringEscapeUtils.escapeXml(row.get(ATTR_INDEX_NAME)));
+		record.setLegalForm(row.get(ATTR_INDEX_LEGAL_FORM));
+		record.setSeat(row.get(ATTR_INDEX_SEAT));
+		record.setIco(row.get(ATTR_INDEX_ICO));
 		
-		Date dateFrom = sdf.parse(row[ATTR_INDEX_DATE_FROM]);
+		Date dateFrom = ParseUtil.parseDate(row.get(ATTR_INDEX_DATE_FROM));
 		record.setDateFrom(dateFrom);
 		
-		if (!row[ATTR_INDEX_DATE_TO].isEmpty()) {
-			Date dateTo = sdf.parse(row[ATTR_INDEX_DATE_TO]);
+		if (!row.isEmpty(ATTR_INDEX_DATE_TO)) {
+			Date dateTo = ParseUtil.parseDate(row.get(ATTR_INDEX_DATE_TO));
 			record.setDateTo(dateTo);
 		}
 		
@@ -0,0 +1,343 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.datanest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sk.opendata.odn.harvester.csv.MappedCsvReader;
+import sk.opendata.odn.harvester.csv.MappedCsvReader.RangeScan;
+import sk.opendata.odn.model.AbstractRecord;
+
+/**
+ * Scrapes a Datanest dump using multiple threads.
+ *
+ * The dump is split into ranges of roughly the same size starting at line
+ * starts (see {@link MappedCsvReader#nextLineStart(File, long)}), there are
+ * few ranges more than threads so that the threads stay busy even if some
+ * ranges take longer. Line start is not necessarily a row start (line breaks
+ * may be part of quoted values), thus the ranges are first scanned for the
+ * quoting (see {@link MappedCsvReader#scanRange(File, long, long)}) by the
+ * worker threads too. Scraping of a range then starts from its first row as
+ * soon as the ranges before it are scanned, while the other ranges are
+ * still being scanned.
+ *
+ * Each range is scraped on one of the worker threads and scraped batches are
+ * handed over to the caller of {@link #nextBatch()}, either in the order of
+ * the rows in the dump or in the order they were scraped.
+ *
+ * Number of batches waiting to be picked up is limited, so workers can not
+ * run too much ahead of the caller (which is storing the batches).
+ *
+ * @param <RecordType>
+ *            type of scraped records
+ */
+public class ParallelDumpScraper<RecordType extends AbstractRecord> {
+
+	public final static int RANGES_PER_THREAD = 4;
+	public final static int QUEUED_BATCHES_PER_RANGE = 2;
+
+	private static Logger logger = LoggerFactory.getLogger(ParallelDumpScraper.class);
+
+	/**
+	 * Scrapes the batches from one range of the dump.
+	 *
+	 * Note: Implementation is called from multiple threads at once.
+	 */
+	public interface RangeScraper<RecordType extends AbstractRecord> {
+		/**
+		 * @param csvReader
+		 *            reader of the range
+		 * @return next batch of records or {@code null} at the end of the
+		 *         range
+		 *
+		 * @throws IOException
+		 *             when reading of the dump fails
+		 */
+		public ScrapedBatch<RecordType> scrapBatch(MappedCsvReader csvReader)
+				throws IOException;
+	}
+
+	/**
+	 * Item passed from workers: a batch, failure of the worker or (when
+	 * both are {@code null}) the end of a range.
+	 */
+	private static class QueueItem<RecordType extends AbstractRecord> {
+		private ScrapedBatch<RecordType> batch;
+		private Throwable failure;
+
+		private QueueItem(ScrapedBatch<RecordType> batch, Throwable failure) {
+			this.batch = batch;
+			this.failure = failure;
+		}
+	}
+
+	private ExecutorService executor;
+	private boolean ordered;
+	private int rangeCount;
+	// line starts of the ranges, plus the size of the dump
+	private long[] rangeStarts;
+	private Vector<Future<RangeScan>> rangeScans = new Vector<Future<RangeScan>>();
+	// ordered: one queue per range, unordered: one queue shared by all ranges
+	private Vector<BlockingQueue<QueueItem<RecordType>>> queues =
+			new Vector<BlockingQueue<QueueItem<RecordType>>>();
+	private int currentQueue = 0;
+	private int finishedRanges = 0;
+
+
+	/**
+	 * Split the dump and start scraping it.
+	 *
+	 * @param sourceFile
+	 *            Datanest dump
+	 * @param dataStart
+	 *            offset of the first row to scrap (i.e. the one after the
+	 *            header)
+	 * @param threadCount
+	 *            number of worker threads
+	 * @param ordered
+	 *            whether the batches should be returned in the order of the
+	 *            rows in the dump
+	 * @param scraper
+	 *            scrapes the batches from the ranges
+	 *
+	 * @throws IOException
+	 *             when splitting of the dump fails
+	 */
+	public ParallelDumpScraper(final File sourceFile, long dataStart,
+			int threadCount, boolean ordered,
+			final RangeScraper<RecordType> scraper) throws IOException {
+
+		this.ordered = ordered;
+
+		split(sourceFile, dataStart, threadCount * RANGES_PER_THREAD);
+		logger.info("dump split into " + rangeCount + " ranges");
+
+		if (ordered)
+			for (int i = 0; i < rangeCount; i++)
+				queues.add(new ArrayBlockingQueue<QueueItem<RecordType>>(
+						QUEUED_BATCHES_PER_RANGE + 1));
+		else
+			queues.add(new ArrayBlockingQueue<QueueItem<RecordType>>(
+					QUEUED_BATCHES_PER_RANGE * threadCount + 1));
+
+		executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			private int threadNumber = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "odn-scraper-"
+						+ (++threadNumber));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// note: tasks are started in the order they are submitted: first
+		// range (which starts on a row) is scraped right away, scans follow
+		// and then the scraping of the other ranges, each waiting only for
+		// the scans which are already running or done (so the waiting can
+		// not block the threads forever); thus the range the caller is
+		// waiting for in "ordered" mode is always being worked on
+		submitScrapRange(sourceFile, 0, scraper);
+		for (int i = 0; i < rangeCount; i++) {
+			final long rangeStart = rangeStarts[i];
+			final long rangeEnd = rangeStarts[i + 1];
+
+			rangeScans.add(executor.submit(new Callable<RangeScan>() {
+				@Override
+				public RangeScan call() throws IOException {
+					return MappedCsvReader.scanRange(sourceFile, rangeStart,
+							rangeEnd);
+				}
+			}));
+		}
+		for (int i = 1; i < rangeCount; i++)
+			submitScrapRange(sourceFile, i, scraper);
+		executor.shutdown();
+	}
+
+	/**
+	 * Split the dump into ranges of roughly the same size, starting at line
+	 * starts.
+	 */
+	private void split(File sourceFile, long dataStart, int parts)
+			throws IOException {
+
+		long fileSize = sourceFile.length();
+		long partSize = Math.max(1, (fileSize - dataStart) / parts);
+
+		Vector<Long> starts = new Vector<Long>();
+		starts.add(dataStart);
+		for (int i = 1; i < parts; i++) {
+			long lineStart = MappedCsvReader.nextLineStart(sourceFile,
+					dataStart + i * partSize);
+			if (lineStart > starts.lastElement() && lineStart < fileSize)
+				starts.add(lineStart);
+		}
+		starts.add(Math.max(fileSize, dataStart));
+
+		rangeCount = starts.size() - 1;
+		rangeStarts = new long[starts.size()];
+		for (int i = 0; i < rangeStarts.length; i++)
+			rangeStarts[i] = starts.get(i);
+	}
+
+	private void submitScrapRange(final File sourceFile, final int range,
+			final RangeScraper<RecordType> scraper) {
+
+		final BlockingQueue<QueueItem<RecordType>> queue = queues
+				.get(ordered ? range : 0);
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					scrapRange(sourceFile, range, scraper, queue);
+				} catch (InterruptedException e) {
+					// we've been cancelled
+				}
+			}
+		});
+	}
+
+	/**
+	 * Find the first row of given range: first range starts on a row, for
+	 * the other ranges the quoting is chained from the first one through the
+	 * scans of the ranges.
+	 */
+	private long findFirstRow(int range) throws IOException,
+			InterruptedException {
+
+		if (range == 0)
+			return rangeStarts[0];
+
+		boolean inQuotes = false;
+		for (int i = 0; i < range; i++)
+			inQuotes = getRangeScan(i).endsInQuotes(inQuotes);
+
+		return getRangeScan(range).getFirstRowStart(inQuotes);
+	}
+
+	private RangeScan getRangeScan(int range) throws IOException,
+			InterruptedException {
+
+		try {
+			return rangeScans.get(range).get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	private void scrapRange(File sourceFile, int range,
+			RangeScraper<RecordType> scraper,
+			BlockingQueue<QueueItem<RecordType>> queue)
+			throws InterruptedException {
+
+		Throwable failure = null;
+		MappedCsvReader csvReader = null;
+
+		try {
+			// note: rows starting before the end of the range are read,
+			// thus the range ends where the first row of the next range
+			// starts
+			csvReader = new MappedCsvReader(sourceFile, findFirstRow(range),
+					rangeStarts[range + 1], MappedCsvReader.DEFAULT_WINDOW_SIZE);
+
+			ScrapedBatch<RecordType> batch;
+			while ((batch = scraper.scrapBatch(csvReader)) != null) {
+				if (Thread.interrupted())
+					throw new InterruptedException();
+				queue.put(new QueueItem<RecordType>(batch, null));
+			}
+		} catch (IOException e) {
+			logger.error("IO exception", e);
+			failure = e;
+		} catch (RuntimeException e) {
+			logger.error("runtime exception", e);
+			failure = e;
+		} finally {
+			if (csvReader != null)
+				try {
+					csvReader.close();
+				} catch (IOException e) {
+					logger.error("IO exception in 'finally' statement", e);
+				}
+		}
+
+		// end of range (or failure)
+		queue.put(new QueueItem<RecordType>(null, failure));
+	}
+
+	/**
+	 * Get next scraped batch, waiting for it if necessary.
+	 *
+	 * @return next batch or {@code null} when whole dump has been scraped
+	 *
+	 * @throws IOException
+	 *             when some of the workers failed
+	 * @throws InterruptedException
+	 *             when interrupted while waiting for the batch
+	 */
+	public ScrapedBatch<RecordType> nextBatch() throws IOException,
+			InterruptedException {
+
+		while (finishedRanges < rangeCount) {
+			QueueItem<RecordType> item = queues.get(currentQueue).take();
+
+			if (item.failure != null) {
+				if (item.failure instanceof IOException)
+					throw (IOException) item.failure;
+				throw new IOException(item.failure.getMessage(), item.failure);
+			}
+
+			if (item.batch != null)
+				return item.batch;
+
+			// end of range
+			finishedRanges++;
+			if (ordered)
+				currentQueue++;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stop the scraping (if not finished yet).
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+}
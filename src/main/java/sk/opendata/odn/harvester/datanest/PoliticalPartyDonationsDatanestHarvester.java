@@ -22,21 +22,21 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.Date;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.config.RepositoryConfigException;
 import org.quartz.Job;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import sk.opendata.odn.harvester.csv.CsvRow;
 import sk.opendata.odn.model.Currency;
 import sk.opendata.odn.model.PoliticalPartyDonationRecord;
 import sk.opendata.odn.repository.sesame.SesameRepository;
 import sk.opendata.odn.repository.solr.SolrRepository;
+import sk.opendata.odn.serialization.jackrabbit.JackrabbitSerializer;
 import sk.opendata.odn.serialization.rdf.PoliticalPartyDonationRdfSerializer;
 import sk.opendata.odn.serialization.solr.SolrSerializer;
+import sk.opendata.odn.utils.ParseUtil;
 import sk.opendata.odn.utils.PscUtil;
 
 /**
@@ -68,8 +68,7 @@ public class PoliticalPartyDonationsDatanestHarvester extends
 
 	
 	public PoliticalPartyDonationsDatanestHarvester() throws IOException,
-			RepositoryConfigException, RepositoryException,
-			ParserConfigurationException, TransformerConfigurationException {
+			RepositoryConfigException, RepositoryException {
 		
 		super(KEY_DATANEST_PPD_URL_KEY);
 		
@@ -80,45 +79,55 @@ public class PoliticalPartyDonationsDatanestHarvester extends
 		SolrSerializer<PoliticalPartyDonationRecord> solrSerializer = new SolrSerializer<PoliticalPartyDonationRecord>(
 				SolrRepository.getInstance());
 		addSerializer(solrSerializer);
+
+		JackrabbitSerializer<PoliticalPartyDonationRecord> jackrabbitSerializer = new JackrabbitSerializer<PoliticalPartyDonationRecord>(
+				getPrimaryRepository());
+		addSerializer(jackrabbitSerializer);
+	}
+	
+	@Override
+	protected String createRecordId(String rowId) {
+		return "donation_" + rowId;
 	}
 	
 	@Override
-	public PoliticalPartyDonationRecord scrapOneRecord(String[] row) throws ParseException {
+	public PoliticalPartyDonationRecord scrapOneRecord(CsvRow row) throws ParseException {
 		PoliticalPartyDonationRecord record = new PoliticalPartyDonationRecord();
 		
-		record.setId("donation_" + row[ATTR_INDEX_ID]);
-		record.setDatanestId(row[ATTR_INDEX_ID]);
-		if (!row[ATTR_INDEX_DONOR_NAME].isEmpty())
-			record.setDonorName(row[ATTR_INDEX_DONOR_NAME]);
-		if (!row[ATTR_INDEX_DONOR_SURNAME].isEmpty())
-			record.setDonorSurname(row[ATTR_INDEX_DONOR_SURNAME]);
-		if (!row[ATTR_INDEX_DONOR_TITLE].isEmpty())
-			record.setDonorTitle(row[ATTR_INDEX_DONOR_TITLE]);
-		if (!row[ATTR_INDEX_DONOR_COMPANY].isEmpty())
-			record.setName(row[ATTR_INDEX_DONOR_COMPANY]);
-		if (!row[ATTR_INDEX_DONOR_ICO].isEmpty())
-			record.setIco(row[ATTR_INDEX_DONOR_ICO]);
-		if (!row[ATTR_INDEX_DONATION_VALUE].isEmpty())
-			record.setDonationValue(Float.valueOf(row[ATTR_INDEX_DONATION_VALUE]));
+		record.setId(createRecordId(row.get(ATTR_INDEX_ID)));
+		record.setDatanestId(row.get(ATTR_INDEX_ID));
+		if (!row.isEmpty(ATTR_INDEX_DONOR_NAME))
+			record.setDonorName(row.get(ATTR_INDEX_DONOR_NAME));
+		if (!row.isEmpty(ATTR_INDEX_DONOR_SURNAME))
+			record.setDonorSurname(row.get(ATTR_INDEX_DONOR_SURNAME));
+		if (!row.isEmpty(ATTR_INDEX_DONOR_TITLE))
+			record.setDonorTitle(row.get(ATTR_INDEX_DONOR_TITLE));
+		if (!row.isEmpty(ATTR_INDEX_DONOR_COMPANY))
+			record.setName(row.get(ATTR_INDEX_DONOR_COMPANY));
+		if (!row.isEmpty(ATTR_INDEX_DONOR_ICO))
+			record.setIco(row.get(ATTR_INDEX_DONOR_ICO));
+		if (!row.isEmpty(ATTR_INDEX_DONATION_VALUE))
+			record.setDonationValueCents(ParseUtil.parseCents(
+					row.get(ATTR_INDEX_DONATION_VALUE), '.'));
 		Currency currency = Currency.UNDEFINED;
 		// note: Some "non cash" donations have empty string filled in column
 		// currency so we use "UNDEFINED" for those.
-		if (!row[ATTR_INDEX_DONATION_CURRENCY].isEmpty())
-			currency = Currency.parse(row[ATTR_INDEX_DONATION_CURRENCY]);
+		if (!row.isEmpty(ATTR_INDEX_DONATION_CURRENCY))
+			currency = Currency.parse(row.get(ATTR_INDEX_DONATION_CURRENCY));
 		record.setCurrency(currency);
-		record.setDonorAddress(row[ATTR_INDEX_DONOR_ADDRESS]);
-		if (!row[ATTR_INDEX_DONOR_PSC].isEmpty())
-			record.setDonorPsc(PscUtil.normalize(row[ATTR_INDEX_DONOR_PSC]));
-		if (!row[ATTR_INDEX_DONOR_CITY].isEmpty())
-			record.setDonorCity(row[ATTR_INDEX_DONOR_CITY]);
-		record.setRecipientParty(row[ATTR_INDEX_RECIPIENT_PARTY]);
-		record.setYear(row[ATTR_INDEX_YEAR]);
-		if (!row[ATTR_INDEX_ACCEPT_DATE].isEmpty()) {
-			Date acceptDate = sdf.parse(row[ATTR_INDEX_ACCEPT_DATE]);
+		record.setDonorAddress(row.get(ATTR_INDEX_DONOR_ADDRESS));
+		if (!row.isEmpty(ATTR_INDEX_DONOR_PSC))
+			record.setDonorPsc(PscUtil.normalize(row.get(ATTR_INDEX_DONOR_PSC)));
+		if (!row.isEmpty(ATTR_INDEX_DONOR_CITY))
+			record.setDonorCity(row.get(ATTR_INDEX_DONOR_CITY));
+		record.setRecipientParty(row.get(ATTR_INDEX_RECIPIENT_PARTY));
+		record.setYear(row.get(ATTR_INDEX_YEAR));
+		if (!row.isEmpty(ATTR_INDEX_ACCEPT_DATE)) {
+			Date acceptDate = ParseUtil.parseDate(row.get(ATTR_INDEX_ACCEPT_DATE));
 			record.setAcceptDate(acceptDate);
 		}
-		if (!row[ATTR_INDEX_NOTE].isEmpty())
-			record.setNote(row[ATTR_INDEX_NOTE]);
+		if (!row.isEmpty(ATTR_INDEX_NOTE))
+			record.setNote(row.get(ATTR_INDEX_NOTE));
 		
 		logger.debug("scrapped record of: " + record.getDatanestId());
 		
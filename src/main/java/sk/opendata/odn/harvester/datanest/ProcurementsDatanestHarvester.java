@@ -19,25 +19,23 @@
 package sk.opendata.odn.harvester.datanest;
 
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.text.ParseException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.config.RepositoryConfigException;
 import org.quartz.Job;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import sk.opendata.odn.harvester.csv.CsvRow;
 import sk.opendata.odn.model.Currency;
 import sk.opendata.odn.model.ProcurementRecord;
 import sk.opendata.odn.repository.sesame.SesameRepository;
 import sk.opendata.odn.repository.solr.SolrRepository;
+import sk.opendata.odn.serialization.jackrabbit.JackrabbitSerializer;
 import sk.opendata.odn.serialization.rdf.ProcurementRdfSerializer;
 import sk.opendata.odn.serialization.solr.SolrSerializer;
+import sk.opendata.odn.utils.ParseUtil;
 
 /**
  * This class contains stuff related to scraper of Vestník Verejného
@@ -67,12 +65,10 @@ public class ProcurementsDatanestHarvester extends
 	protected final static int ATTR_INDEX_SUPPLIER_ICO = 17;
 	
 	private static Logger logger = LoggerFactory.getLogger(ProcurementsDatanestHarvester.class);
-	private DecimalFormat priceFormat = null;
 
 	
 	public ProcurementsDatanestHarvester() throws IOException,
-			RepositoryConfigException, RepositoryException,
-			ParserConfigurationException, TransformerConfigurationException {
+			RepositoryConfigException, RepositoryException {
 		
 		super(KEY_DATANEST_PROCUREMENTS_URL_KEY);
 		
@@ -83,62 +79,62 @@ public class ProcurementsDatanestHarvester extends
 		SolrSerializer<ProcurementRecord> solrSerializer = new SolrSerializer<ProcurementRecord>(
 				SolrRepository.getInstance());
 		addSerializer(solrSerializer);
-		
-		// note: Following would be "clean":
-		//	NumberFormat.getNumberInstance(new Locale("sk", "SK"))
-		// but it requires source data to use non-breaking space instead of
-		// regular space.
-		priceFormat = new DecimalFormat();
-		DecimalFormatSymbols symbols = new DecimalFormatSymbols();
-		symbols.setGroupingSeparator(' ');
-		symbols.setDecimalSeparator(',');
-		priceFormat.setDecimalFormatSymbols(symbols);
+
+		JackrabbitSerializer<ProcurementRecord> jackrabbitSerializer = new JackrabbitSerializer<ProcurementRecord>(
+				getPrimaryRepository());
+		addSerializer(jackrabbitSerializer);
+	}
+	
+	@Override
+	protected String createRecordId(String rowId) {
+		return "procurement_" + rowId;
 	}
 	
 	@Override
-	public ProcurementRecord scrapOneRecord(String[] row) throws ParseException {
+	public ProcurementRecord scrapOneRecord(CsvRow row) throws ParseException {
 		ProcurementRecord record = new ProcurementRecord();
 		
-		record.setId("procurement_" + row[ATTR_INDEX_ID]);
-		record.setDatanestId(row[ATTR_INDEX_ID]);
-		record.setNote(row[ATTR_INDEX_NOTE]);
-		record.setYear(row[ATTR_INDEX_YEAR]);
-		record.setBulletinId(row[ATTR_INDEX_BULLETIN_ID]);
-		record.setProcurementId(row[ATTR_INDEX_PROCUREMENT_ID]);
-		record.setProcurementSubject(row[ATTR_INDEX_PROCUREMENT_SUBJECT]);
+		record.setId(createRecordId(row.get(ATTR_INDEX_ID)));
+		record.setDatanestId(row.get(ATTR_INDEX_ID));
+		record.setNote(row.get(ATTR_INDEX_NOTE));
+		record.setYear(row.get(ATTR_INDEX_YEAR));
+		record.setBulletinId(row.get(ATTR_INDEX_BULLETIN_ID));
+		record.setProcurementId(row.get(ATTR_INDEX_PROCUREMENT_ID));
+		record.setProcurementSubject(row.get(ATTR_INDEX_PROCUREMENT_SUBJECT));
 		
-		if (row[ATTR_INDEX_PRICE].isEmpty())
+		if (row.isEmpty(ATTR_INDEX_PRICE))
 			// some entries (like ID 49338, from
 			// http://www.e-vestnik.sk/EVestnik/Detail/29531) have empty string
 			// for price
 			record.addScrapNote(SC_MISSING_PRICE);
 		else
-			record.setPrice(priceFormat.parse(row[ATTR_INDEX_PRICE])
-					.floatValue());
+			// note: prices are in Slovak format, like "28 000 000,00"
+			record.setPriceCents(ParseUtil.parseCents(
+					row.get(ATTR_INDEX_PRICE), ','));
 		
-		if (!row[ATTR_INDEX_CURRENCY].isEmpty()) {
+		if (!row.isEmpty(ATTR_INDEX_CURRENCY)) {
 			try {
-				Currency currency = Currency.parse(row[ATTR_INDEX_CURRENCY]);
+				Currency currency = Currency.parse(row.get(ATTR_INDEX_CURRENCY));
 				record.setCurrency(currency);
 			}
 			catch (IllegalArgumentException e) {
 				// unknown currencies
-				record.addScrapNote(SC_UNKNOWN_CURRENCY + row[ATTR_INDEX_CURRENCY]);
+				record.addScrapNote(SC_UNKNOWN_CURRENCY + row.get(ATTR_INDEX_CURRENCY));
 			}
 		}
 		else {
 			// sometimes the currency is not filled in the source (so far only
 			// for cases where the price was 0)
 			record.setCurrency(Currency.UNDEFINED);
-			if (record.getPrice() == 0)
+			if (record.getPriceCents() == 0)
 				record.addScrapNote(SC_MISSING_CURRENCY);
 			else
 				record.addScrapNote(SC_MISSING_CURRENCY_FOR_NON_ZERO_PRICE);
 		}
 		
-		record.setVatIncluded(Boolean.valueOf(row[ATTR_INDEX_IS_VAT_INCLUDED]));
-		record.setCustomerIco(row[ATTR_INDEX_CUSTOMER_ICO]);
-		record.setSupplierIco(row[ATTR_INDEX_SUPPLIER_ICO]);
+		record.setVatIncluded(Boolean.valueOf(row.get(ATTR_INDEX_IS_VAT_INCLUDED)));
+		record.setCustomerIco(row.get(ATTR_INDEX_CUSTOMER_ICO));
+		record.setSupplierIco(row.get(ATTR_INDEX_SUPPLIER_ICO));
 		
 		logger.debug("scrapped record of: " + record.getDatanestId());
 		
@@ -0,0 +1,96 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.datanest;
+
+import java.util.Vector;
+
+import sk.opendata.odn.model.AbstractRecord;
+
+/**
+ * Batch of records scraped from a Datanest dump, along with the fingerprints
+ * of the rows they were scraped from.
+ *
+ * @param <RecordType>
+ *            type of scraped records
+ */
+public class ScrapedBatch<RecordType extends AbstractRecord> {
+
+	private Vector<RecordType> records = new Vector<RecordType>();
+	private Vector<Long> fingerprints = new Vector<Long>();
+	private long unchangedRowCount = 0;
+	private long endOffset = -1;
+	private long byteCount = 0;
+
+
+	public void add(RecordType record, long fingerprint) {
+		records.add(record);
+		fingerprints.add(fingerprint);
+	}
+
+	/**
+	 * Count the size of the row the last added record was scraped from.
+	 */
+	public void addBytes(long rowBytes) {
+		byteCount += rowBytes;
+	}
+
+	/**
+	 * @return size (in the dump) of the rows the records were scraped from
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	public Vector<RecordType> getRecords() {
+		return records;
+	}
+
+	public Vector<Long> getFingerprints() {
+		return fingerprints;
+	}
+
+	public int size() {
+		return records.size();
+	}
+
+	/**
+	 * Count a row which was skipped because it did not change since last
+	 * harvest.
+	 */
+	public void addUnchangedRow() {
+		unchangedRowCount++;
+	}
+
+	public long getUnchangedRowCount() {
+		return unchangedRowCount;
+	}
+
+	/**
+	 * @return offset (in the dump) of the row following the last row of this
+	 *         batch or {@code -1} if not known
+	 */
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	public void setEndOffset(long endOffset) {
+		this.endOffset = endOffset;
+	}
+
+}
@@ -0,0 +1,354 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.diff;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sk.opendata.odn.harvester.HarvesterState;
+
+/**
+ * Local, disk-backed index mapping record ID to some value.
+ *
+ * The index is kept in memory and persisted as an append-only log. Changes are
+ * staged using {@link #put(String, Object)} and {@link #remove(String)} and
+ * written into the log (followed by a commit marker and a sync to the disk)
+ * in {@link #commit()}. When the index is opened, only the changes followed
+ * by a commit marker are replayed, thus a batch is either fully in the index
+ * or not at all. Once the log grows well over the size of the index, it is
+ * compacted (i.e. rewritten so as to hold only the current entries).
+ *
+ * Log format is same as for row digest files ({@code <id>\t<value>}),
+ * removal is recorded as {@code <id>\t} and commit marker is a line without a
+ * separator.
+ *
+ * Methods are synchronized, so records can be classified using the index
+ * while the changes of previous batch are being committed.
+ *
+ * @param <ValueType>
+ *            type of the indexed values
+ */
+public abstract class AbstractLogIndex<ValueType> {
+
+	public final static String COMMIT_MARKER = "#commit";
+	/**
+	 * Log is compacted when it has more than
+	 * {@code COMPACTION_RATIO * size() + COMPACTION_MIN_ENTRIES} entries.
+	 */
+	public final static int COMPACTION_RATIO = 2;
+	public final static int COMPACTION_MIN_ENTRIES = 10000;
+
+	private static Logger logger = LoggerFactory.getLogger(AbstractLogIndex.class);
+
+	private File logFile;
+	private Map<String, ValueType> values = new HashMap<String, ValueType>();
+	// note: 'null' value means removal
+	private Map<String, ValueType> staged = new LinkedHashMap<String, ValueType>();
+	private long logEntries = 0;
+	private FileOutputStream logStream = null;
+	private Writer logWriter = null;
+
+
+	/**
+	 * Open the index stored in given file (or create an empty one if the file
+	 * does not exist yet).
+	 *
+	 * @param logFile
+	 *            file holding the index log
+	 *
+	 * @throws IOException
+	 *             when the log can not be read or opened for writing
+	 */
+	public AbstractLogIndex(File logFile) throws IOException {
+		this.logFile = logFile;
+
+		boolean dirtyTail = false;
+		if (logFile.isFile())
+			dirtyTail = replay();
+
+		if (dirtyTail || needsCompaction())
+			// rewriting the log also gets rid of uncommitted (possibly
+			// partially written) entries at the end of the log
+			compact();
+		else
+			openLog();
+
+		logger.debug("index opened (" + logFile.getAbsolutePath() + ", "
+				+ values.size() + " entries)");
+	}
+
+	/**
+	 * Parse the value of a log entry.
+	 *
+	 * @param value
+	 *            value as written by {@link #formatValue(Object)}, never
+	 *            empty
+	 * @return parsed value
+	 *
+	 * @throws IOException
+	 *             when value is not in expected format
+	 */
+	protected abstract ValueType parseValue(String value) throws IOException;
+
+	/**
+	 * Format given value for the log.
+	 *
+	 * @param value
+	 *            value to format
+	 * @return formatted value, not empty and without separators or line
+	 *         breaks
+	 */
+	protected abstract String formatValue(ValueType value);
+
+	/**
+	 * @return {@code true} if there were some uncommitted entries at the end
+	 *         of the log
+	 */
+	private boolean replay() throws IOException {
+		Map<String, ValueType> pending = new LinkedHashMap<String, ValueType>();
+		long pendingEntries = 0;
+		boolean dirtyTail = false;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(logFile), RowDigestWriter.ENCODING));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int separatorIndex = line.lastIndexOf(RowDigestWriter.SEPARATOR);
+				if (separatorIndex < 0) {
+					if (!line.equals(COMMIT_MARKER)) {
+						logger.warn("malformed index entry, ignoring rest of the log: "
+								+ line);
+						dirtyTail = true;
+						break;
+					}
+					apply(values, pending);
+					logEntries += pendingEntries;
+					pending.clear();
+					pendingEntries = 0;
+				}
+				else if (separatorIndex == line.length() - 1) {
+					pending.put(line.substring(0, separatorIndex), null);
+					pendingEntries++;
+				}
+				else {
+					ValueType value;
+					try {
+						value = parseValue(line.substring(separatorIndex + 1));
+					} catch (IOException e) {
+						logger.warn("malformed index entry, ignoring rest of the log: "
+								+ line);
+						dirtyTail = true;
+						break;
+					}
+					pending.put(line.substring(0, separatorIndex), value);
+					pendingEntries++;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		return dirtyTail || pendingEntries > 0;
+	}
+
+	private static <ValueType> void apply(Map<String, ValueType> target,
+			Map<String, ValueType> changes) {
+		for (Map.Entry<String, ValueType> change : changes.entrySet()) {
+			if (change.getValue() == null)
+				target.remove(change.getKey());
+			else
+				target.put(change.getKey(), change.getValue());
+		}
+	}
+
+	private void openLog() throws IOException {
+		logStream = new FileOutputStream(logFile, true);
+		logWriter = new BufferedWriter(new OutputStreamWriter(logStream,
+				RowDigestWriter.ENCODING));
+	}
+
+	private void closeLog() throws IOException {
+		if (logWriter != null)
+			logWriter.close();
+		logWriter = null;
+		logStream = null;
+	}
+
+	private void writeEntry(Writer out, String id, ValueType value)
+			throws IOException {
+		out.write(id);
+		out.write(RowDigestWriter.SEPARATOR);
+		if (value != null)
+			out.write(formatValue(value));
+		out.write('\n');
+	}
+
+	private boolean needsCompaction() {
+		return logEntries > (long) COMPACTION_RATIO * values.size()
+				+ COMPACTION_MIN_ENTRIES;
+	}
+
+	/**
+	 * Get the value for the record with given ID.
+	 *
+	 * Staged (not yet committed) changes are taken into account.
+	 *
+	 * @param id
+	 *            record ID
+	 * @return value for the record or {@code null} if the record is not in
+	 *         the index
+	 */
+	public synchronized ValueType get(String id) {
+		if (staged.containsKey(id))
+			return staged.get(id);
+
+		return values.get(id);
+	}
+
+	/**
+	 * Stage the value for given record. Change is not persisted until
+	 * {@link #commit()} is called.
+	 *
+	 * @param id
+	 *            record ID
+	 * @param value
+	 *            value for the record
+	 */
+	public synchronized void put(String id, ValueType value) {
+		staged.put(id, value);
+	}
+
+	/**
+	 * Stage the removal of given record. Change is not persisted until
+	 * {@link #commit()} is called.
+	 *
+	 * @param id
+	 *            record ID
+	 */
+	public synchronized void remove(String id) {
+		staged.put(id, null);
+	}
+
+	/**
+	 * @return number of committed entries in the index
+	 */
+	public synchronized int size() {
+		return values.size();
+	}
+
+	/**
+	 * Persist all staged changes.
+	 *
+	 * @throws IOException
+	 *             when writing into the log fails
+	 */
+	public synchronized void commit() throws IOException {
+		if (staged.isEmpty())
+			return;
+
+		if (logWriter == null)
+			// closed before, see 'close()'
+			openLog();
+		for (Map.Entry<String, ValueType> change : staged.entrySet())
+			writeEntry(logWriter, change.getKey(), change.getValue());
+		logWriter.write(COMMIT_MARKER);
+		logWriter.write('\n');
+		logWriter.flush();
+		logStream.getFD().sync();
+
+		apply(values, staged);
+		logEntries += staged.size();
+		staged.clear();
+
+		if (needsCompaction())
+			compact();
+	}
+
+	/**
+	 * Throw away all staged changes.
+	 */
+	public synchronized void rollback() {
+		staged.clear();
+	}
+
+	/**
+	 * Rewrite the log so that it contains only current entries of the index.
+	 *
+	 * @throws IOException
+	 *             when rewriting of the log fails
+	 */
+	public synchronized void compact() throws IOException {
+		long timeStart = System.currentTimeMillis();
+
+		closeLog();
+
+		File tmpFile = new File(logFile.getAbsolutePath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmpFile);
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+					RowDigestWriter.ENCODING));
+			for (Map.Entry<String, ValueType> entry : values.entrySet())
+				writeEntry(writer, entry.getKey(), entry.getValue());
+			writer.write(COMMIT_MARKER);
+			writer.write('\n');
+			writer.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		HarvesterState.replaceFile(tmpFile, logFile);
+		logEntries = values.size();
+
+		openLog();
+
+		logger.debug("index compacted (" + logFile.getAbsolutePath() + ", "
+				+ values.size() + " entries) in "
+				+ (System.currentTimeMillis() - timeStart) + " ms");
+	}
+
+	/**
+	 * Close the log of the index. Uncommitted changes are thrown away.
+	 *
+	 * Committed entries stay available in memory, thus the index can still
+	 * be used (the log is reopened on next commit).
+	 *
+	 * @throws IOException
+	 *             when closing of the log fails
+	 */
+	public synchronized void close() throws IOException {
+		rollback();
+		closeLog();
+	}
+
+}
@@ -0,0 +1,164 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.diff;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+
+import sk.opendata.odn.harvester.diff.RowDigestWriter.RowDigest;
+
+/**
+ * Result of a comparison of two consecutive versions of a source document,
+ * i.e. which records were added, changed or removed.
+ *
+ * Comparison is done on row digest files (see {@link RowDigestWriter}) which
+ * are sorted by ID, thus it is a streaming merge of two sorted files and only
+ * the differences are held in memory.
+ */
+public class DumpDiff {
+
+	private Set<String> newIds = new HashSet<String>();
+	private Set<String> changedIds = new HashSet<String>();
+	private Vector<String> removedIds = new Vector<String>();
+	private long unchangedCount = 0;
+
+
+	private DumpDiff() {
+	}
+
+	/**
+	 * Compare two row digest files.
+	 *
+	 * @param previous
+	 *            row digests of previously harvested version of the source
+	 * @param current
+	 *            row digests of freshly downloaded version of the source
+	 * @return differences between the two versions
+	 *
+	 * @throws IOException
+	 *             when reading of the files fails
+	 */
+	public static DumpDiff diff(File previous, File current) throws IOException {
+		DumpDiff result = new DumpDiff();
+
+		BufferedReader previousReader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(previous), RowDigestWriter.ENCODING));
+		BufferedReader currentReader = null;
+		try {
+			currentReader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(current), RowDigestWriter.ENCODING));
+
+			RowDigest previousRow = readRow(previousReader);
+			RowDigest currentRow = readRow(currentReader);
+			while (previousRow != null || currentRow != null) {
+				int order;
+				if (previousRow == null)
+					order = 1;
+				else if (currentRow == null)
+					order = -1;
+				else
+					order = previousRow.compareTo(currentRow);
+
+				if (order < 0) {
+					// present only in previous version
+					result.removedIds.add(previousRow.getId());
+					previousRow = readRow(previousReader);
+				}
+				else if (order > 0) {
+					// present only in current version
+					result.newIds.add(currentRow.getId());
+					currentRow = readRow(currentReader);
+				}
+				else {
+					if (previousRow.getHash() == currentRow.getHash())
+						result.unchangedCount++;
+					else
+						result.changedIds.add(currentRow.getId());
+					previousRow = readRow(previousReader);
+					currentRow = readRow(currentReader);
+				}
+			}
+		} finally {
+			previousReader.close();
+			if (currentReader != null)
+				currentReader.close();
+		}
+
+		return result;
+	}
+
+	private static RowDigest readRow(BufferedReader reader) throws IOException {
+		String line = reader.readLine();
+		return line == null ? null : RowDigest.parse(line);
+	}
+
+	/**
+	 * @param id
+	 *            record ID
+	 * @return {@code true} if record with given ID is new or has been changed
+	 *         since previous version, i.e. it needs to be processed
+	 */
+	public boolean isNewOrChanged(String id) {
+		return newIds.contains(id) || changedIds.contains(id);
+	}
+
+	/**
+	 * @return IDs of records which were not present in previous version
+	 */
+	public Set<String> getNewIds() {
+		return newIds;
+	}
+
+	/**
+	 * @return IDs of records present in both versions but with different
+	 *         content
+	 */
+	public Set<String> getChangedIds() {
+		return changedIds;
+	}
+
+	/**
+	 * @return IDs of records present in previous version but missing in the
+	 *         current one
+	 */
+	public Vector<String> getRemovedIds() {
+		return removedIds;
+	}
+
+	/**
+	 * @return number of records present in both version with same content
+	 */
+	public long getUnchangedCount() {
+		return unchangedCount;
+	}
+
+	@Override
+	public String toString() {
+		return newIds.size() + " new, " + changedIds.size() + " changed, "
+				+ removedIds.size() + " removed, " + unchangedCount
+				+ " unchanged";
+	}
+
+}
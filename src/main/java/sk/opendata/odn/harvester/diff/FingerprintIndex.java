@@ -0,0 +1,76 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.diff;
+
+import java.io.File;
+import java.io.IOException;
+
+import sk.opendata.odn.harvester.diff.RowDigestWriter.RowDigest;
+
+/**
+ * Local, disk-backed index mapping record ID to the fingerprint (hash) of the
+ * content we've stored into the repositories for that record.
+ *
+ * It allows us to classify the harvested record as new, unchanged or updated
+ * in-process, without asking the primary repository for our current copy of
+ * each record.
+ *
+ * See {@link AbstractLogIndex} for how the index is persisted.
+ */
+public class FingerprintIndex extends AbstractLogIndex<Long> {
+
+	/**
+	 * Open the index stored in given file (or create an empty one if the file
+	 * does not exist yet).
+	 *
+	 * @param logFile
+	 *            file holding the index log
+	 *
+	 * @throws IOException
+	 *             when the log can not be read or opened for writing
+	 */
+	public FingerprintIndex(File logFile) throws IOException {
+		super(logFile);
+	}
+
+	@Override
+	protected Long parseValue(String value) throws IOException {
+		// note: same format as row digests
+		return RowDigest.parse(RowDigestWriter.SEPARATOR + value).getHash();
+	}
+
+	@Override
+	protected String formatValue(Long value) {
+		return Long.toHexString(value);
+	}
+
+	/**
+	 * Stage the fingerprint of given record. Change is not persisted until
+	 * {@link #commit()} is called.
+	 *
+	 * @param id
+	 *            record ID
+	 * @param fingerprint
+	 *            fingerprint of the record
+	 */
+	public void put(String id, long fingerprint) {
+		put(id, Long.valueOf(fingerprint));
+	}
+
+}
@@ -0,0 +1,75 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.diff;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Local, disk-backed index mapping record ID to the key the record is
+ * identified by in some repository (like ICO of an organization, which
+ * determines its RDF subject).
+ *
+ * It allows us to remove the records from such repositories (when they are
+ * removed from the source or when their key changes) without asking the
+ * primary repository for our current copy of the records.
+ *
+ * Keys which can not be written into the log (empty ones and the ones
+ * containing a separator or a line break) are not indexed, i.e. putting them
+ * is same as removing the record.
+ *
+ * See {@link AbstractLogIndex} for how the index is persisted.
+ */
+public class RecordKeyIndex extends AbstractLogIndex<String> {
+
+	/**
+	 * Open the index stored in given file (or create an empty one if the file
+	 * does not exist yet).
+	 *
+	 * @param logFile
+	 *            file holding the index log
+	 *
+	 * @throws IOException
+	 *             when the log can not be read or opened for writing
+	 */
+	public RecordKeyIndex(File logFile) throws IOException {
+		super(logFile);
+	}
+
+	@Override
+	protected String parseValue(String value) {
+		return value;
+	}
+
+	@Override
+	protected String formatValue(String value) {
+		return value;
+	}
+
+	@Override
+	public void put(String id, String key) {
+		if (key == null || key.isEmpty()
+				|| key.indexOf(RowDigestWriter.SEPARATOR) >= 0
+				|| key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0)
+			remove(id);
+		else
+			super.put(id, key);
+	}
+
+}
@@ -0,0 +1,336 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.diff;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes "row digest file": one line per row of the source document, each
+ * line holding record ID and hash of the row ({@code <id>\t<hash>}), lines
+ * sorted by ID.
+ *
+ * Rows can be added in any order. To keep the memory usage bounded, rows are
+ * collected in runs of limited size, each run is sorted and spilled into
+ * temporary file and in {@link #close()} those runs are merged into the
+ * resulting file (i.e. a plain external merge sort).
+ *
+ * Two such files can then be compared using {@link DumpDiff}.
+ */
+public class RowDigestWriter {
+
+	public final static String ENCODING = "UTF-8";
+	public final static char SEPARATOR = '\t';
+	public final static int DEFAULT_RUN_SIZE = 100000;
+	public final static long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	public final static long FNV_PRIME = 0x100000001b3L;
+
+	private final static Charset UTF8 = Charset.forName(ENCODING);
+
+	private static Logger logger = LoggerFactory.getLogger(RowDigestWriter.class);
+
+	private File target;
+	private int runSize;
+	private RowDigest[] run;
+	private int runLength = 0;
+	private Vector<File> runFiles = new Vector<File>();
+	private long rowCount = 0;
+
+
+	/**
+	 * One entry of the row digest file.
+	 */
+	public static class RowDigest implements Comparable<RowDigest> {
+		private final String id;
+		private final long hash;
+
+		public RowDigest(String id, long hash) {
+			this.id = id;
+			this.hash = hash;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public long getHash() {
+			return hash;
+		}
+
+		@Override
+		public int compareTo(RowDigest o) {
+			return id.compareTo(o.id);
+		}
+
+		/**
+		 * Parse the entry from a line of row digest file.
+		 *
+		 * @param line
+		 *            line from row digest file
+		 * @return parsed entry
+		 *
+		 * @throws IOException
+		 *             when line is not in expected format
+		 */
+		public static RowDigest parse(String line) throws IOException {
+			int separatorIndex = line.lastIndexOf(SEPARATOR);
+			if (separatorIndex < 0)
+				throw new IOException("malformed row digest: " + line);
+
+			try {
+				// note: 'Long.parseLong()' does not accept hashes with highest
+				// bit set, so we parse the last digit separately
+				String hash = line.substring(separatorIndex + 1);
+				int lastDigit = Character.digit(hash.charAt(hash.length() - 1), 16);
+				if (lastDigit < 0)
+					throw new NumberFormatException(hash);
+				long value = lastDigit;
+				if (hash.length() > 1)
+					value |= Long.parseLong(hash.substring(0, hash.length() - 1), 16) << 4;
+
+				return new RowDigest(line.substring(0, separatorIndex), value);
+			} catch (NumberFormatException e) {
+				throw new IOException("malformed row digest: " + line, e);
+			}
+		}
+
+		private void write(Writer out) throws IOException {
+			out.write(id);
+			out.write(SEPARATOR);
+			out.write(Long.toHexString(hash));
+			out.write('\n');
+		}
+	}
+
+	/**
+	 * Cursor over one sorted file, used while merging the runs.
+	 */
+	private static class RunCursor implements Comparable<RunCursor> {
+		private BufferedReader reader;
+		private RowDigest current;
+
+		private RunCursor(File file) throws IOException {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), ENCODING));
+			advance();
+		}
+
+		private boolean advance() throws IOException {
+			String line = reader.readLine();
+			current = line == null ? null : RowDigest.parse(line);
+			return current != null;
+		}
+
+		@Override
+		public int compareTo(RunCursor o) {
+			return current.compareTo(o.current);
+		}
+	}
+
+
+	/**
+	 * @param target
+	 *            file into which the sorted row digests are written
+	 * @param runSize
+	 *            maximum number of rows held in memory
+	 */
+	public RowDigestWriter(File target, int runSize) {
+		if (runSize <= 0)
+			throw new IllegalArgumentException("run size have to be positive");
+
+		this.target = target;
+		this.runSize = runSize;
+		this.run = new RowDigest[runSize];
+	}
+
+	public RowDigestWriter(File target) {
+		this(target, DEFAULT_RUN_SIZE);
+	}
+
+	/**
+	 * Compute hash of given row.
+	 *
+	 * Hash is 64-bit FNV-1a computed over UTF-8 representation of all the
+	 * columns, so that any change in any of the columns is detected (assuming
+	 * no collision, which should be quite unlikely for the sizes of the data
+	 * sets we're working with).
+	 *
+	 * @param row
+	 *            row as parsed from the source document
+	 * @return hash of the row
+	 */
+	public static long hashRow(String[] row) {
+		long hash = FNV_OFFSET_BASIS;
+
+		for (String column : row) {
+			if (column != null) {
+				byte[] bytes = column.getBytes(UTF8);
+				for (int i = 0; i < bytes.length; i++)
+					hash = hashByte(hash, bytes[i]);
+			}
+			hash = hashColumnSeparator(hash);
+		}
+
+		return hash;
+	}
+
+	/**
+	 * One step of {@link #hashRow(String[])}: add given byte of a column into
+	 * the hash.
+	 *
+	 * @param hash
+	 *            hash computed so far
+	 * @param b
+	 *            byte of (UTF-8 representation of) the column
+	 * @return updated hash
+	 */
+	public static long hashByte(long hash, byte b) {
+		return (hash ^ (b & 0xff)) * FNV_PRIME;
+	}
+
+	/**
+	 * One step of {@link #hashRow(String[])}: mark the end of a column, so
+	 * that "a","bc" differs from "ab","c".
+	 *
+	 * @param hash
+	 *            hash computed so far
+	 * @return updated hash
+	 */
+	public static long hashColumnSeparator(long hash) {
+		return (hash ^ 0xffff) * FNV_PRIME;
+	}
+
+	/**
+	 * Add a digest of one row.
+	 *
+	 * @param id
+	 *            record ID
+	 * @param hash
+	 *            hash of the row
+	 *
+	 * @throws IOException
+	 *             when spilling of the run into temporary file fails
+	 */
+	public void add(String id, long hash) throws IOException {
+		if (runLength >= runSize)
+			spillRun();
+
+		run[runLength++] = new RowDigest(id, hash);
+		rowCount++;
+	}
+
+	/**
+	 * @return number of rows added so far
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	private void writeSorted(File file) throws IOException {
+		Arrays.sort(run, 0, runLength);
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), ENCODING));
+		try {
+			for (int i = 0; i < runLength; i++) {
+				run[i].write(out);
+				run[i] = null;
+			}
+		} finally {
+			out.close();
+		}
+
+		runLength = 0;
+	}
+
+	private void spillRun() throws IOException {
+		File runFile = File.createTempFile("odn-digest-run-", ".tmp",
+				target.getAbsoluteFile().getParentFile());
+		runFile.deleteOnExit();
+		writeSorted(runFile);
+		runFiles.add(runFile);
+	}
+
+	/**
+	 * Finish the writing: merge all runs into the target file.
+	 *
+	 * @throws IOException
+	 *             when sorting or merging fails
+	 */
+	public void close() throws IOException {
+		if (runFiles.isEmpty()) {
+			// everything fits into memory => no merging necessary
+			writeSorted(target);
+			return;
+		}
+
+		if (runLength > 0)
+			spillRun();
+		run = null;
+
+		logger.debug("merging " + runFiles.size() + " runs into "
+				+ target.getAbsolutePath());
+
+		PriorityQueue<RunCursor> cursors = new PriorityQueue<RunCursor>(
+				runFiles.size());
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(target), ENCODING));
+		try {
+			for (File runFile : runFiles) {
+				RunCursor cursor = new RunCursor(runFile);
+				if (cursor.current != null)
+					cursors.add(cursor);
+				else
+					cursor.reader.close();
+			}
+
+			while (!cursors.isEmpty()) {
+				RunCursor cursor = cursors.poll();
+				cursor.current.write(out);
+				if (cursor.advance())
+					cursors.add(cursor);
+				else
+					cursor.reader.close();
+			}
+		} finally {
+			out.close();
+			for (RunCursor cursor : cursors)
+				cursor.reader.close();
+			for (File runFile : runFiles)
+				if (!runFile.delete())
+					logger.warn("failed to delete temporary file "
+							+ runFile.getAbsolutePath());
+		}
+	}
+
+}
@@ -0,0 +1,202 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.model;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates amounts of money (in minor units, i.e. cents) per currency:
+ * count, sum, minimum, maximum, average and number of amounts in given
+ * buckets (like "up to 1 000 EUR", "up to 10 000 EUR", ...).
+ * 
+ * Everything is kept in primitive arrays indexed by currency, so adding an
+ * amount neither boxes nor allocates anything and the sums are exact.
+ * 
+ * Aggregator is not thread safe. To aggregate in parallel, use one
+ * aggregator per thread and {@link #add(MoneyAggregator)} them together at
+ * the end.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * MoneyAggregator aggregator = new MoneyAggregator(100000, 1000000);
+ * for (ProcurementRecord record : records)
+ * 	aggregator.add(record.getPriceCents(), record.getCurrency());
+ * long sum = aggregator.getSumCents(Currency.EUR);
+ * </pre>
+ */
+public class MoneyAggregator {
+
+	private final static int CURRENCY_COUNT = Currency.values().length;
+
+	private final long[] bucketLimits;
+	private final long[] counts = new long[CURRENCY_COUNT];
+	private final long[] sums = new long[CURRENCY_COUNT];
+	private final long[] minimums = new long[CURRENCY_COUNT];
+	private final long[] maximums = new long[CURRENCY_COUNT];
+	// bucket counts of all currencies in one array: [currency][bucket]
+	private final long[] bucketCounts;
+
+
+	/**
+	 * @param bucketLimits
+	 *            upper limits (exclusive, in cents) of the buckets, in
+	 *            ascending order; amounts not below the last limit go into
+	 *            one extra bucket
+	 * 
+	 * @throws IllegalArgumentException
+	 *             when the limits are not in ascending order
+	 */
+	public MoneyAggregator(long... bucketLimits) throws IllegalArgumentException {
+		for (int i = 1; i < bucketLimits.length; i++)
+			if (bucketLimits[i - 1] >= bucketLimits[i])
+				throw new IllegalArgumentException(
+						"bucket limits have to be in ascending order");
+
+		this.bucketLimits = bucketLimits.clone();
+		this.bucketCounts = new long[CURRENCY_COUNT * getBucketCount()];
+		Arrays.fill(minimums, Long.MAX_VALUE);
+		Arrays.fill(maximums, Long.MIN_VALUE);
+	}
+
+	private static int index(Currency currency) {
+		return (currency == null ? Currency.UNDEFINED : currency).ordinal();
+	}
+
+	/**
+	 * @return index of the bucket for given amount
+	 */
+	private int bucket(long cents) {
+		// note: first limit above the amount
+		int bucket = Arrays.binarySearch(bucketLimits, cents);
+
+		return bucket >= 0 ? bucket + 1 : -bucket - 1;
+	}
+
+	/**
+	 * Add given amount.
+	 * 
+	 * @param cents
+	 *            amount in minor units of given currency
+	 * @param currency
+	 *            currency of the amount ({@code null} is aggregated as
+	 *            {@link Currency#UNDEFINED})
+	 */
+	public void add(long cents, Currency currency) {
+		int index = index(currency);
+
+		counts[index]++;
+		sums[index] += cents;
+		if (cents < minimums[index])
+			minimums[index] = cents;
+		if (cents > maximums[index])
+			maximums[index] = cents;
+		bucketCounts[index * getBucketCount() + bucket(cents)]++;
+	}
+
+	/**
+	 * Add everything aggregated by given aggregator.
+	 * 
+	 * @param other
+	 *            aggregator with same bucket limits
+	 * 
+	 * @throws IllegalArgumentException
+	 *             when the bucket limits differ
+	 */
+	public void add(MoneyAggregator other) throws IllegalArgumentException {
+		if (!Arrays.equals(bucketLimits, other.bucketLimits))
+			throw new IllegalArgumentException("bucket limits differ");
+
+		for (int i = 0; i < CURRENCY_COUNT; i++) {
+			counts[i] += other.counts[i];
+			sums[i] += other.sums[i];
+			minimums[i] = Math.min(minimums[i], other.minimums[i]);
+			maximums[i] = Math.max(maximums[i], other.maximums[i]);
+		}
+		for (int i = 0; i < bucketCounts.length; i++)
+			bucketCounts[i] += other.bucketCounts[i];
+	}
+
+	public long getCount(Currency currency) {
+		return counts[index(currency)];
+	}
+
+	public long getSumCents(Currency currency) {
+		return sums[index(currency)];
+	}
+
+	/**
+	 * @return smallest amount in given currency or {@code 0} when there is
+	 *         none
+	 */
+	public long getMinimumCents(Currency currency) {
+		return getCount(currency) > 0 ? minimums[index(currency)] : 0;
+	}
+
+	/**
+	 * @return largest amount in given currency or {@code 0} when there is
+	 *         none
+	 */
+	public long getMaximumCents(Currency currency) {
+		return getCount(currency) > 0 ? maximums[index(currency)] : 0;
+	}
+
+	/**
+	 * @return average amount in given currency, rounded (half away from
+	 *         zero) to whole cents, or {@code 0} when there is none
+	 */
+	public long getAverageCents(Currency currency) {
+		long count = getCount(currency);
+		if (count == 0)
+			return 0;
+
+		long sum = getSumCents(currency);
+		long average = sum / count;
+		long remainder = sum % count;
+		if (Math.abs(remainder) * 2 >= count)
+			average += sum < 0 ? -1 : 1;
+
+		return average;
+	}
+
+	/**
+	 * @return number of buckets (i.e. number of bucket limits plus one)
+	 */
+	public int getBucketCount() {
+		return bucketLimits.length + 1;
+	}
+
+	/**
+	 * @param currency
+	 *            currency of the amounts
+	 * @param bucket
+	 *            index of the bucket: bucket {@code i} holds the amounts
+	 *            below {@code bucketLimits[i]} (and not below the previous
+	 *            limit)
+	 * @return number of amounts in given bucket
+	 */
+	public long getBucketCount(Currency currency, int bucket) {
+		if (bucket < 0 || bucket >= getBucketCount())
+			throw new IndexOutOfBoundsException("bucket " + bucket);
+
+		return bucketCounts[index(currency) * getBucketCount() + bucket];
+	}
+
+}
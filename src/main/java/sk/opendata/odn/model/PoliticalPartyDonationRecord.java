@@ -51,7 +51,7 @@ public class PoliticalPartyDonationRecord extends AbstractRecord {
 	private String donorTitle;
 	private String name;	// donor company
 	private String ico;		// donor ICO
-	private float donationValue;
+	private long donationValueCents;	// in minor units (cents) of 'currency', to keep sums exact
 	private Currency currency;
 	private String donorAddress;
 	private String donorPsc;
@@ -108,11 +108,11 @@ public class PoliticalPartyDonationRecord extends AbstractRecord {
 	public void setIco(String ico) {
 		this.ico = ico;
 	}
-	public float getDonationValue() {
-		return donationValue;
+	public long getDonationValueCents() {
+		return donationValueCents;
 	}
-	public void setDonationValue(float donationValue) {
-		this.donationValue = donationValue;
+	public void setDonationValueCents(long donationValueCents) {
+		this.donationValueCents = donationValueCents;
 	}
 	public Currency getCurrency() {
 		return currency;
@@ -28,7 +28,7 @@ public class ProcurementRecord extends AbstractRecord {
 	private String bulletinId;
 	private String procurementId;
 	private String procurementSubject;
-	private float price;
+	private long priceCents;	// in minor units (cents) of 'currency', to keep sums exact
 	private Currency currency;
 	private boolean isVatIncluded;
 	private String customerIco;
@@ -82,11 +82,11 @@ public class ProcurementRecord extends AbstractRecord {
 	public void setProcurementSubject(String procurementSubject) {
 		this.procurementSubject = procurementSubject;
 	}
-	public float getPrice() {
-		return price;
+	public long getPriceCents() {
+		return priceCents;
 	}
-	public void setPrice(float price) {
-		this.price = price;
+	public void setPriceCents(long priceCents) {
+		this.priceCents = priceCents;
 	}
 	public Currency getCurrency() {
 		return currency;
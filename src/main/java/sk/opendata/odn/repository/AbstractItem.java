@@ -0,0 +1,537 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.repository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Date;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.lang3.builder.CompareToBuilder;
+import org.apache.solr.client.solrj.beans.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sk.opendata.odn.model.Currency;
+import sk.opendata.odn.utils.ContentHash;
+
+/**
+ * Fields of all the record types in one flat bean, shared by the items
+ * stored into the repositories (see {@code SolrItem} and
+ * {@code JackrabbitItem}), along with their comparison and content hash.
+ * 
+ * Items are filled from the records by {@link ItemMapper}.
+ * 
+ * Note: When adding a field, add it also into {@link #compareTo(AbstractItem)},
+ * {@link #getContentHash()}, {@link ItemMapper} and into the conversions of
+ * the repositories ({@code SolrItem}, {@code JackrabbitRepository}).
+ */
+public abstract class AbstractItem implements Comparable<AbstractItem> {
+	
+	private static Logger logger = LoggerFactory.getLogger(AbstractItem.class);
+	
+	// names of the fields in SOLR index (see 'SolrItem', annotations are used
+	// only by 'DocumentObjectBinder')
+	public final static String FIELD_ID = "id";
+	public final static String FIELD_TYPE = "type";
+	public final static String FIELD_NAME = "name";
+	public final static String FIELD_LEGAL_FORM = "legal_form";
+	public final static String FIELD_SEAT = "seat";
+	public final static String FIELD_ICO = "ico";
+	public final static String FIELD_DATE_FROM = "date_from";
+	public final static String FIELD_DATE_TO = "date_to";
+	public final static String FIELD_DONOR_NAME = "donor_name";
+	public final static String FIELD_DONOR_SURNAME = "donor_surname";
+	public final static String FIELD_DONATION_VALUE_CENTS = "donation_value_cents";
+	public final static String FIELD_CURRENCY = "currency";
+	public final static String FIELD_DONOR_ADDRESS = "donor_address";
+	public final static String FIELD_DONOR_PSC = "donor_psc";
+	public final static String FIELD_DONOR_CITY = "donor_city";
+	public final static String FIELD_RECIPIENT_PARTY = "recipient_party";
+	public final static String FIELD_YEAR = "year";
+	public final static String FIELD_ACCEPT_DATE = "accept_date";
+	public final static String FIELD_NOTE = "note";
+	public final static String FIELD_BULLETIN_ID = "bulletin_id";
+	public final static String FIELD_PROCUREMENT_ID = "procurement_id";
+	public final static String FIELD_PROCUREMENT_SUBJECT = "procurement_subject";
+	public final static String FIELD_PRICE_CENTS = "price_cents";
+	public final static String FIELD_VAT_INCLUDED = "vat_included";
+	public final static String FIELD_CUSTOMER_ICO = "customer_ico";
+	public final static String FIELD_SUPPLIER_ICO = "supplier_ico";
+	
+	// common fields:
+	@Field(FIELD_ID)
+	private String id;
+	// note: name of the item type enum (see 'SolrItemType' and
+	// 'JackrabbitItemType')
+	@Field(FIELD_TYPE)
+	private String type;
+	// "organization record" fields: should match what is available in
+	// 'OrganizationRecord' and we need only those fields which are going to be
+	// used in SOLR index
+	// note: for now, to avoid changing schema, we're taking advantage of
+	// dynamic field definitions.
+	@Field(FIELD_NAME)
+	private String name;
+	@Field(FIELD_LEGAL_FORM)
+	private String legalForm;
+	@Field(FIELD_SEAT)
+	private String seat;
+	@Field(FIELD_ICO)
+	private String ico;
+	@Field(FIELD_DATE_FROM)
+	private Date dateFrom;
+	@Field(FIELD_DATE_TO)
+	private Date dateTo;
+	// "political party donation record" fields: should match what is available
+	// in 'PoliticalPartyDonationRecord' and we need only those fields which are
+	// going to be used in SOLR index
+	// note: for now, to avoid changing schema, we're taking advantage of
+	// dynamic field definitions.
+	@Field(FIELD_DONOR_NAME)
+	private String donorName;
+	@Field(FIELD_DONOR_SURNAME)
+	private String donorSurname;
+	//private String donorCompany;	- we will map it to 'name' from OrganizationRecord as it is organization name too
+	//private String donorIco;	- we will map it to 'ico' from OrganizationRecord as it is ICO of organization too
+	// note: amounts are kept exactly, in cents (i.e. in minor units of the
+	// currency)
+	@Field(FIELD_DONATION_VALUE_CENTS)
+	private long donationValueCents;
+	@Field(FIELD_CURRENCY)
+	private String currency;	// TODO: Use 'Currency' - see TODO note in the 'SolrItem' javadoc
+	@Field(FIELD_DONOR_ADDRESS)
+	private String donorAddress;
+	@Field(FIELD_DONOR_PSC)
+	private String donorPsc;	// TODO: we use "string" in SOLR schema => make sure we use same form by filtering out spaces (i.e. to prevent cases like "058 01" and "05801" being considered different PSC)
+	@Field(FIELD_DONOR_CITY)
+	private String donorCity;
+	@Field(FIELD_RECIPIENT_PARTY)
+	private String recipientParty;
+	@Field(FIELD_YEAR)
+	private String year;
+	@Field(FIELD_ACCEPT_DATE)
+	private Date acceptDate;
+	@Field(FIELD_NOTE)
+	private String note;
+	// "procurement record" fields: should match what is available in
+	// 'ProcurementRecord' and we need only those fields which are going to be
+	// used in SOLR index
+	// note: for now, to avoid changing schema, we're taking advantage of
+	// dynamic field definitions.
+	//private String note;	- same name as field in PoliticalPartyDonationRecord
+	//private String year;	- same name as field in PoliticalPartyDonationRecord
+	@Field(FIELD_BULLETIN_ID)
+	private String bulletinId;
+	@Field(FIELD_PROCUREMENT_ID)
+	private String procurementId;
+	@Field(FIELD_PROCUREMENT_SUBJECT)
+	private String procurementSubject;
+	@Field(FIELD_PRICE_CENTS)
+	private long priceCents;
+	//private Currency currency;	- same name as field in PoliticalPartyDonationRecord
+	@Field(FIELD_VAT_INCLUDED)
+	private boolean isVatIncluded;
+	@Field(FIELD_CUSTOMER_ICO)
+	private String customerIco;
+	@Field(FIELD_SUPPLIER_ICO)
+	private String supplierIco;
+	// cached result of 'getContentHash()'
+	private Long contentHash;
+	
+	
+	@Override
+	public String toString() {
+		try {
+			return BeanUtils.describe(this).toString();
+		} catch (IllegalAccessException e) {
+			logger.error("illegal access exception", e);
+		} catch (InvocationTargetException e) {
+			logger.error("invocation target exception", e);
+		} catch (NoSuchMethodException e) {
+			logger.error("no such method exception", e);
+		}
+		
+		return super.toString();
+	}
+
+
+	/**
+	 * Compare the items field by field.
+	 */
+	@Override
+	public int compareTo(AbstractItem o) {
+		return new CompareToBuilder()
+				.append(id, o.id)
+				.append(type, o.type)
+				.append(name, o.name)
+				.append(legalForm, o.legalForm)
+				.append(seat, o.seat)
+				.append(ico, o.ico)
+				.append(dateFrom, o.dateFrom)
+				.append(dateTo, o.dateTo)
+				.append(donorName, o.donorName)
+				.append(donorSurname, o.donorSurname)
+				.append(donationValueCents, o.donationValueCents)
+				.append(currency, o.currency)
+				.append(donorAddress, o.donorAddress)
+				.append(donorPsc, o.donorPsc)
+				.append(donorCity, o.donorCity)
+				.append(recipientParty, o.recipientParty)
+				.append(year, o.year)
+				.append(acceptDate, o.acceptDate)
+				.append(note, o.note)
+				.append(bulletinId, o.bulletinId)
+				.append(procurementId, o.procurementId)
+				.append(procurementSubject, o.procurementSubject)
+				.append(priceCents, o.priceCents)
+				.append(isVatIncluded, o.isVatIncluded)
+				.append(customerIco, o.customerIco)
+				.append(supplierIco, o.supplierIco)
+				.toComparison();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || obj.getClass() != getClass())
+			return false;
+		
+		AbstractItem o = (AbstractItem) obj;
+		// cheap check first: different content hashes => different items
+		if (contentHash != null && o.contentHash != null
+				&& !contentHash.equals(o.contentHash))
+			return false;
+		
+		return compareTo(o) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = getContentHash();
+		
+		return (int) (hash ^ (hash >>> 32));
+	}
+	
+	/**
+	 * Get hash of the content of this item (i.e. of all its fields). Hash is
+	 * computed only once (unless the item is modified) and it is stable, so
+	 * it can be stored along with the item and compared with the hash of a
+	 * newly harvested item later.
+	 * 
+	 * @return 64-bit hash of the content of this item
+	 */
+	public long getContentHash() {
+		if (contentHash == null)
+			contentHash = new ContentHash()
+					.append(id)
+					.append(type)
+					.append(name)
+					.append(legalForm)
+					.append(seat)
+					.append(ico)
+					.append(dateFrom)
+					.append(dateTo)
+					.append(donorName)
+					.append(donorSurname)
+					.append(donationValueCents)
+					.append(currency)
+					.append(donorAddress)
+					.append(donorPsc)
+					.append(donorCity)
+					.append(recipientParty)
+					.append(year)
+					.append(acceptDate)
+					.append(note)
+					.append(bulletinId)
+					.append(procurementId)
+					.append(procurementSubject)
+					.append(priceCents)
+					.append(isVatIncluded)
+					.append(customerIco)
+					.append(supplierIco)
+					.toLong();
+		
+		return contentHash;
+	}
+	
+	/**
+	 * Set the content hash stored along with the item (see
+	 * {@link #getContentHash()}), so that it does not need to be computed
+	 * again. Has to be called after all the fields are set (setting a field
+	 * resets it).
+	 * 
+	 * @param contentHash
+	 *            stored hash of the content of this item
+	 */
+	protected void setContentHash(long contentHash) {
+		this.contentHash = contentHash;
+	}
+
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		contentHash = null;
+		this.id = id;
+	}
+
+	protected String getTypeName() {
+		return type;
+	}
+
+	protected void setTypeName(String type) {
+		contentHash = null;
+		this.type = type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		contentHash = null;
+		this.name = name;
+	}
+
+	public String getLegalForm() {
+		return legalForm;
+	}
+
+	public void setLegalForm(String legalForm) {
+		contentHash = null;
+		this.legalForm = legalForm;
+	}
+
+	public String getSeat() {
+		return seat;
+	}
+
+	public void setSeat(String seat) {
+		contentHash = null;
+		this.seat = seat;
+	}
+
+	public String getIco() {
+		return ico;
+	}
+
+	public void setIco(String ico) {
+		contentHash = null;
+		this.ico = ico;
+	}
+
+	public Date getDateFrom() {
+		return dateFrom;
+	}
+
+	public void setDateFrom(Date dateFrom) {
+		contentHash = null;
+		this.dateFrom = dateFrom;
+	}
+
+	public Date getDateTo() {
+		return dateTo;
+	}
+
+	public void setDateTo(Date dateTo) {
+		contentHash = null;
+		this.dateTo = dateTo;
+	}
+
+	public String getDonorName() {
+		return donorName;
+	}
+
+	public void setDonorName(String donorName) {
+		contentHash = null;
+		this.donorName = donorName;
+	}
+
+	public String getDonorSurname() {
+		return donorSurname;
+	}
+
+	public void setDonorSurname(String donorSurname) {
+		contentHash = null;
+		this.donorSurname = donorSurname;
+	}
+
+	public long getDonationValueCents() {
+		return donationValueCents;
+	}
+
+	public void setDonationValueCents(long donationValueCents) {
+		contentHash = null;
+		this.donationValueCents = donationValueCents;
+	}
+
+	public String getDonorAddress() {
+		return donorAddress;
+	}
+
+	public void setDonorAddress(String donorAddress) {
+		contentHash = null;
+		this.donorAddress = donorAddress;
+	}
+
+	public String getDonorPsc() {
+		return donorPsc;
+	}
+
+	public void setDonorPsc(String donorPsc) {
+		contentHash = null;
+		this.donorPsc = donorPsc;
+	}
+
+	public String getDonorCity() {
+		return donorCity;
+	}
+
+	public void setDonorCity(String donorCity) {
+		contentHash = null;
+		this.donorCity = donorCity;
+	}
+
+	public String getRecipientParty() {
+		return recipientParty;
+	}
+
+	public void setRecipientParty(String recipientParty) {
+		contentHash = null;
+		this.recipientParty = recipientParty;
+	}
+
+	public String getYear() {
+		return year;
+	}
+
+	public void setYear(String year) {
+		contentHash = null;
+		this.year = year;
+	}
+
+	public Date getAcceptDate() {
+		return acceptDate;
+	}
+
+	public void setAcceptDate(Date acceptDate) {
+		contentHash = null;
+		this.acceptDate = acceptDate;
+	}
+
+	public String getNote() {
+		return note;
+	}
+
+	public void setNote(String note) {
+		contentHash = null;
+		this.note = note;
+	}
+
+	public String getBulletinId() {
+		return bulletinId;
+	}
+
+	public void setBulletinId(String bulletinId) {
+		contentHash = null;
+		this.bulletinId = bulletinId;
+	}
+
+	public String getProcurementId() {
+		return procurementId;
+	}
+
+	public void setProcurementId(String procurementId) {
+		contentHash = null;
+		this.procurementId = procurementId;
+	}
+
+	public String getProcurementSubject() {
+		return procurementSubject;
+	}
+
+	public void setProcurementSubject(String procurementSubject) {
+		contentHash = null;
+		this.procurementSubject = procurementSubject;
+	}
+
+	public long getPriceCents() {
+		return priceCents;
+	}
+
+	public void setPriceCents(long priceCents) {
+		contentHash = null;
+		this.priceCents = priceCents;
+	}
+
+	protected String getCurrencyName() {
+		return currency;
+	}
+
+	protected void setCurrencyName(String currency) {
+		contentHash = null;
+		this.currency = currency;
+	}
+
+	public Currency getCurrency() {
+		if (currency == null)
+			return null;
+		
+		return Currency.parse(currency);
+	}
+
+	public void setCurrency(Currency currency) {
+		contentHash = null;
+		if (currency == null)
+			this.currency = null;
+		else
+			this.currency = currency.toString();
+	}
+
+	public boolean isVatIncluded() {
+		return isVatIncluded;
+	}
+
+	public void setVatIncluded(boolean isVatIncluded) {
+		contentHash = null;
+		this.isVatIncluded = isVatIncluded;
+	}
+
+	public String getCustomerIco() {
+		return customerIco;
+	}
+
+	public void setCustomerIco(String customerIco) {
+		contentHash = null;
+		this.customerIco = customerIco;
+	}
+
+	public String getSupplierIco() {
+		return supplierIco;
+	}
+
+	public void setSupplierIco(String supplierIco) {
+		contentHash = null;
+		this.supplierIco = supplierIco;
+	}
+
+}
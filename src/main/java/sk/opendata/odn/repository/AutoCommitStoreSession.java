@@ -0,0 +1,71 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository;
+
+/**
+ * Session for repositories which do not support transactions: records are
+ * stored (and committed) immediately by
+ * {@link OdnRepositoryStoreInterface#store(Object)}, thus commit and rollback
+ * do nothing.
+ * 
+ * @param <RecordType>
+ *            type of records which are going to be stored in repository
+ */
+public class AutoCommitStoreSession<RecordType> implements
+		OdnRepositoryStoreSession<RecordType> {
+
+	private OdnRepositoryStoreInterface<RecordType> repository;
+
+	/**
+	 * @param repository
+	 *            repository to store the records into
+	 */
+	public AutoCommitStoreSession(
+			OdnRepositoryStoreInterface<RecordType> repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public void store(RecordType records) throws IllegalArgumentException,
+			OdnRepositoryException {
+		repository.store(records);
+	}
+
+	@Override
+	public void commit() {
+		// already committed in 'store()'
+	}
+
+	@Override
+	public void rollback() {
+		// nothing to roll back
+	}
+
+	@Override
+	public void publish() {
+		// already committed in 'store()'
+	}
+
+	@Override
+	public void close() {
+		// nothing to close
+	}
+
+}
@@ -0,0 +1,151 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import sk.opendata.odn.model.AbstractRecord;
+import sk.opendata.odn.model.OrganizationRecord;
+import sk.opendata.odn.model.PoliticalPartyDonationRecord;
+import sk.opendata.odn.model.ProcurementRecord;
+import sk.opendata.odn.serialization.OdnSerializationException;
+
+/**
+ * Copies the fields of a record into an item stored into the repositories
+ * (see {@link AbstractItem}).
+ * 
+ * There is one mapper for each record type, written by hand, so that we do
+ * not need to reflect over the properties of the records and items (which
+ * is what {@code PropertyUtils.copyProperties} was doing, for every record).
+ * 
+ * Note: When adding a field into a record (or into {@code AbstractItem}),
+ * add it also into the relevant mapper.
+ * 
+ * @param <RecordType>
+ *            type of the record
+ */
+public abstract class ItemMapper<RecordType extends AbstractRecord> {
+	
+	private final static Map<Class<?>, ItemMapper<?>> mappers = new HashMap<Class<?>, ItemMapper<?>>();
+	
+	
+	static {
+		mappers.put(OrganizationRecord.class, new OrganizationMapper());
+		mappers.put(PoliticalPartyDonationRecord.class, new PoliticalPartyDonationMapper());
+		mappers.put(ProcurementRecord.class, new ProcurementMapper());
+	}
+	
+	
+	/**
+	 * Copy the fields specific to the record type of given record into
+	 * given item.
+	 * 
+	 * @param source
+	 *            record - source of data
+	 * @param target
+	 *            item to fill
+	 */
+	protected abstract void copyRecordFields(RecordType source,
+			AbstractItem target);
+	
+	/**
+	 * Copy the fields of given record into given item (except the type of
+	 * the item, which is specific to each repository).
+	 * 
+	 * @param source
+	 *            record - source of data
+	 * @param target
+	 *            item to fill
+	 * 
+	 * @throws OdnSerializationException
+	 *             when there is no mapper for given record
+	 */
+	@SuppressWarnings("unchecked")
+	public static void copyFields(AbstractRecord source, AbstractItem target)
+			throws OdnSerializationException {
+		
+		ItemMapper<AbstractRecord> mapper = (ItemMapper<AbstractRecord>) mappers
+				.get(source.getClass());
+		if (mapper == null)
+			throw new OdnSerializationException("no item mapper for "
+					+ source.getClass().getCanonicalName());
+		
+		target.setId(source.getId());
+		mapper.copyRecordFields(source, target);
+	}
+	
+	
+	private static class OrganizationMapper extends
+			ItemMapper<OrganizationRecord> {
+
+		@Override
+		protected void copyRecordFields(OrganizationRecord source, AbstractItem target) {
+			target.setName(source.getName());
+			target.setLegalForm(source.getLegalForm());
+			target.setSeat(source.getSeat());
+			target.setIco(source.getIco());
+			target.setDateFrom(source.getDateFrom());
+			target.setDateTo(source.getDateTo());
+		}
+	}
+	
+	private static class PoliticalPartyDonationMapper extends
+			ItemMapper<PoliticalPartyDonationRecord> {
+
+		@Override
+		protected void copyRecordFields(PoliticalPartyDonationRecord source,
+				AbstractItem target) {
+			
+			target.setDonorName(source.getDonorName());
+			target.setDonorSurname(source.getDonorSurname());
+			target.setName(source.getName());
+			target.setIco(source.getIco());
+			target.setDonationValueCents(source.getDonationValueCents());
+			target.setCurrency(source.getCurrency());
+			target.setDonorAddress(source.getDonorAddress());
+			target.setDonorPsc(source.getDonorPsc());
+			target.setDonorCity(source.getDonorCity());
+			target.setRecipientParty(source.getRecipientParty());
+			target.setYear(source.getYear());
+			target.setAcceptDate(source.getAcceptDate());
+			target.setNote(source.getNote());
+		}
+	}
+	
+	private static class ProcurementMapper extends
+			ItemMapper<ProcurementRecord> {
+
+		@Override
+		protected void copyRecordFields(ProcurementRecord source, AbstractItem target) {
+			target.setNote(source.getNote());
+			target.setYear(source.getYear());
+			target.setBulletinId(source.getBulletinId());
+			target.setProcurementId(source.getProcurementId());
+			target.setProcurementSubject(source.getProcurementSubject());
+			target.setPriceCents(source.getPriceCents());
+			target.setCurrency(source.getCurrency());
+			target.setVatIncluded(source.isVatIncluded());
+			target.setCustomerIco(source.getCustomerIco());
+			target.setSupplierIco(source.getSupplierIco());
+		}
+	}
+	
+}
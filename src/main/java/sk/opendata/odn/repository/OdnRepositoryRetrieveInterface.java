@@ -18,6 +18,8 @@
 
 package sk.opendata.odn.repository;
 
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * This is a Open Data Node Repository interface defining "internal API" for retrieving
@@ -44,4 +46,25 @@ public interface OdnRepositoryRetrieveInterface<RetrieveRecordType> {
 	public RetrieveRecordType retrieve(String id)
 			throws IllegalArgumentException, OdnRepositoryException;
 
+	/**
+	 * Retrieve records with given IDs from the repository.
+	 * 
+	 * Implementations are expected to retrieve the records in batches (i.e.
+	 * using one query for many IDs), thus this should be preferred over
+	 * calling {@link #retrieve(String)} for each ID.
+	 * 
+	 * @param ids
+	 *            IDs of the records to retrieve
+	 * 
+	 * @return map from ID to record, records which were not found are not
+	 *         present in the map
+	 *
+	 * @throws IllegalArgumentException
+	 *             when some of the given arguments is not valid
+	 * @throws OdnRepositoryException
+	 *             when retrieve operation fails
+	 */
+	public Map<String, RetrieveRecordType> retrieveAll(Collection<String> ids)
+			throws IllegalArgumentException, OdnRepositoryException;
+
 }
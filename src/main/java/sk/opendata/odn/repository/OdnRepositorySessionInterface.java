@@ -0,0 +1,51 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository;
+
+/**
+ * Repository which is able to store the records in transactions, using a
+ * session (and thus also connection to the back-end) kept open for whole
+ * harvest.
+ * 
+ * @param <RecordType>
+ *            type of records which are going to be stored in repository
+ */
+public interface OdnRepositorySessionInterface<RecordType> extends
+		OdnRepositoryStoreInterface<RecordType> {
+
+	/**
+	 * Open new session and begin its first transaction.
+	 * 
+	 * In reload mode, records stored in the session replace all records
+	 * stored previously (with the same property key), but only once the
+	 * session is published (see {@link OdnRepositoryStoreSession#publish()}).
+	 * 
+	 * @param reload
+	 *            whether the records stored in the session replace all
+	 *            records stored previously
+	 * @return new session
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when session can not be opened
+	 */
+	public OdnRepositoryStoreSession<RecordType> openSession(boolean reload)
+			throws OdnRepositoryException;
+
+}
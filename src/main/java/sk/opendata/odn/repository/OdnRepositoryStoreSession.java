@@ -0,0 +1,88 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository;
+
+/**
+ * Session used to store records into the repository in a series of
+ * transactions.
+ * 
+ * Records stored using the session become visible (and durable) only when
+ * they are committed (or, in reload mode, when published). Session should be closed when it is no longer needed,
+ * uncommitted records are thrown away in such case.
+ * 
+ * Session is not thread safe, it is expected to be used by one thread at a
+ * time.
+ * 
+ * @param <RecordType>
+ *            type of records which are going to be stored in repository
+ */
+public interface OdnRepositoryStoreSession<RecordType> {
+
+	/**
+	 * Store given record(s) into the repository as a part of current
+	 * transaction.
+	 * 
+	 * @param records
+	 *            one or more records to store
+	 * 
+	 * @throws IllegalArgumentException
+	 *             when some of the given arguments is not valid
+	 * @throws OdnRepositoryException
+	 *             when storage operation fails
+	 */
+	public void store(RecordType records)
+			throws IllegalArgumentException, OdnRepositoryException;
+
+	/**
+	 * Commit records stored since last commit and begin new transaction.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when commit fails
+	 */
+	public void commit() throws OdnRepositoryException;
+
+	/**
+	 * Throw away records stored since last commit and begin new transaction.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when rollback fails
+	 */
+	public void rollback() throws OdnRepositoryException;
+
+	/**
+	 * Commit remaining records and make all the records stored in the
+	 * session available to the readers. Unless the session was opened in
+	 * reload mode, records are available as soon as they are committed, thus
+	 * this is same as {@link #commit()}.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when commit or publishing fails
+	 */
+	public void publish() throws OdnRepositoryException;
+
+	/**
+	 * Close the session, records not committed yet are thrown away.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when closing of the session fails
+	 */
+	public void close() throws OdnRepositoryException;
+
+}
@@ -20,36 +20,70 @@ package sk.opendata.odn.repository.jackrabbit;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Vector;
 
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
 import javax.jcr.Repository;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
 import javax.naming.NamingException;
 
 import org.apache.jackrabbit.rmi.repository.URLRemoteRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import sk.opendata.odn.model.Currency;
 import sk.opendata.odn.repository.OdnRepositoryException;
+import sk.opendata.odn.repository.OdnRepositoryRemoveInterface;
 import sk.opendata.odn.repository.OdnRepositoryRetrieveInterface;
 import sk.opendata.odn.repository.OdnRepositoryStoreInterface;
 import sk.opendata.odn.utils.ApplicationProperties;
 
 /**
  * Jackrabbit repository for Open Data Node.
+ * 
+ * Records are kept as {@code nt:unstructured} nodes below {@code /odn}, one
+ * node per record (named by escaped record ID), with one JCR property per
+ * {@link JackrabbitItem} bean property plus the content hash of the record.
  */
-public class JackrabbitRepository implements OdnRepositoryStoreInterface<List<JackrabbitItem>>, OdnRepositoryRetrieveInterface<JackrabbitItem> {
+public class JackrabbitRepository implements OdnRepositoryStoreInterface<List<JackrabbitItem>>, OdnRepositoryRetrieveInterface<JackrabbitItem>, OdnRepositoryRemoveInterface<Collection<String>> {
 
 	public final static String JACKRABBIT_REPOSITORY_PROPERTIES_NAME = "/repo-jackrabbit.properties";
 	//public final static String KEY_DEBUG_DUMP_RDF = "sesame.debug.dump_rdf";
 	public final static String KEY_REPO_URL = "jackrabbit.repo.url";
+	public final static String KEY_REPO_ENABLED = "jackrabbit.repo.enabled";
+	public final static String ROOT_NODE_NAME = "odn";
+	public final static String NODE_TYPE = "nt:unstructured";
+	/**
+	 * Node property holding the content hash of the record (see
+	 * {@link JackrabbitItem#getContentHash()}).
+	 */
+	public final static String PROPERTY_CONTENT_HASH = "contentHash";
+	/**
+	 * Maximum number of IDs we put into one query.
+	 */
+	public final static int RETRIEVE_BATCH_SIZE = 1000;
 	//public final static String KEY_ID = PREFIX_KEY_REPO + "id";
 	//public final static String PREFIX_KEY_CONTEXTS = PREFIX_KEY_REPO + "contexts.";
 
 	private static Logger logger = LoggerFactory.getLogger(JackrabbitRepository.class);
 	private ApplicationProperties srProperties = null;
-	private Session jackrabbitSession = null;
+	private boolean enabled = false;
+	private Repository repository = null;
+	// note: JCR sessions are not thread-safe, thus each call uses its own
+	// session, borrowed from this pool of idle sessions (classify and store
+	// stages of the harvesting pipeline access the repository concurrently)
+	private Vector<Session> idleSessions = new Vector<Session>();
 
 	private static JackrabbitRepository instance = null;
 
@@ -63,6 +97,9 @@ public class JackrabbitRepository implements OdnRepositoryStoreInterface<List<Ja
 		// load properties
 		srProperties = ApplicationProperties
 				.getInstance(JACKRABBIT_REPOSITORY_PROPERTIES_NAME);
+		enabled = Boolean.valueOf(srProperties.getProperty(KEY_REPO_ENABLED));
+		if (!enabled)
+			logger.info("Jackrabbit repository disabled");
 	}
 
 	/**
@@ -81,56 +118,86 @@ public class JackrabbitRepository implements OdnRepositoryStoreInterface<List<Ja
 	}
 
 	/**
-	 * Initialize Jackrabbit repository.
+	 * Log into Jackrabbit repository.
 	 * 
-	 * @return instance of session object providing read and write access to content
+	 * @return new session providing read and write access to content
 	 * @throws RepositoryException when repository initialization fails
 	 * @throws NamingException when repository lookup fails
 	 * @throws MalformedURLException ...
 	 */
-	private Session initRepo() throws RepositoryException, NamingException, MalformedURLException {
-
-		String repoUrl = srProperties.getProperty(KEY_REPO_URL);
-		//String repoID = srProperties.getProperty(KEY_ID);
+	private Session login() throws RepositoryException, NamingException, MalformedURLException {
 
-		// hopefully final: repository via environment lookup, thus it can be RMI, ...
-		// simpler RMI method
-		// note: this one works, firewall on target machine (the one running Jackrabbit) have to be disabled
-		Repository repository = new URLRemoteRepository(repoUrl);
-		Session session = null;
-		// TODO: use naming
-		//InitialContext context = new InitialContext();
-		//Context environment = (Context)context.lookup("java:comp/env");
-		//Repository repository = (Repository)environment.lookup("jcr/odnRepository");
-		//Session session = null;
+		synchronized (this) {
+			if (repository == null) {
+				String repoUrl = srProperties.getProperty(KEY_REPO_URL);
+				//String repoID = srProperties.getProperty(KEY_ID);
 		
-		try {
-			session = repository.login();
-			
-			jackrabbitSession = session;
-			
-			String user = session.getUserID();
-			String name = repository.getDescriptor(Repository.REP_NAME_DESC);
-			logger.info("Jackrabbit repository initialized (user: '" + user
-					+ "', name: '" + name + "')");
-		}
-		finally {
-			if (session != null)
-				session.logout();
+				// hopefully final: repository via environment lookup, thus it can be RMI, ...
+				// simpler RMI method
+				// note: this one works, firewall on target machine (the one running Jackrabbit) have to be disabled
+				repository = new URLRemoteRepository(repoUrl);
+				// TODO: use naming
+				//InitialContext context = new InitialContext();
+				//Context environment = (Context)context.lookup("java:comp/env");
+				//Repository repository = (Repository)environment.lookup("jcr/odnRepository");
+			}
 		}
+		
+		Session session = repository.login();
+		
+		String user = session.getUserID();
+		String name = repository.getDescriptor(Repository.REP_NAME_DESC);
+		logger.info("Jackrabbit repository session opened (user: '" + user
+				+ "', name: '" + name + "')");
 
-		return jackrabbitSession;
+		return session;
 	}
 
-	// TODO: rename to 'getSession()' - it is a private method so no need to maintain some common naming with other Repository classes, even more so if it is confusing naming in this case
-	private synchronized Session getRepo() throws RepositoryException, NamingException, MalformedURLException {
-
-		Session repo = jackrabbitSession;
-
-		if (repo == null)
-			repo = initRepo();
-
-		return repo;
+	/**
+	 * Get a session for exclusive use by the caller: idle one, if there is
+	 * some still alive, or a new one. Session has to be returned using
+	 * {@link #releaseSession(Session)}.
+	 * 
+	 * @return session
+	 * @throws RepositoryException when repository initialization fails
+	 * @throws NamingException when repository lookup fails
+	 * @throws MalformedURLException ...
+	 */
+	private Session acquireSession() throws RepositoryException, NamingException, MalformedURLException {
+		
+		synchronized (idleSessions) {
+			while (!idleSessions.isEmpty()) {
+				Session session = idleSessions.remove(idleSessions.size() - 1);
+				if (session.isLive())
+					return session;
+			}
+		}
+		
+		return login();
+	}
+	
+	/**
+	 * Return the session obtained from {@link #acquireSession()} into the pool
+	 * of idle sessions.
+	 * 
+	 * Session with unsaved changes (i.e. the operation with it failed) is
+	 * logged out instead, so that the changes do not get saved by somebody
+	 * else.
+	 * 
+	 * @param session
+	 *            session to return
+	 */
+	private void releaseSession(Session session) {
+		try {
+			if (session.isLive() && !session.hasPendingChanges()) {
+				idleSessions.add(session);
+				return;
+			}
+		} catch (RepositoryException e) {
+			logger.warn("repository exception, session discarded", e);
+		}
+		
+		session.logout();
 	}
 
 	/* TODO: remove
@@ -174,57 +241,238 @@ public class JackrabbitRepository implements OdnRepositoryStoreInterface<List<Ja
 	*/
 	
 	/**
-	 * Store given record into Jackrabbit repository with given name.
+	 * Escape given record ID so that it can be used as a node name: characters
+	 * not allowed in JCR names (and '%' itself) are replaced by '%' followed
+	 * by two hex digits, similar to {@code Text.escapeIllegalJcrChars()} from
+	 * Jackrabbit commons.
+	 * 
+	 * @param id
+	 *            record ID
+	 * @return node name
+	 */
+	static String createNodeName(String id) {
+		// note: "." and ".." are not valid names either
+		boolean dotName = id.equals(".") || id.equals("..");
+		
+		StringBuilder name = new StringBuilder(id.length() + 8);
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if (c == '%' || c == '/' || c == ':' || c == '[' || c == ']'
+					|| c == '*' || c == '|' || c == '\'' || c == '"'
+					|| c == ' ' || c == '\t' || c == '\r' || c == '\n'
+					|| (c == '.' && dotName)) {
+				name.append('%');
+				name.append(Character.toUpperCase(Character.forDigit(c / 16, 16)));
+				name.append(Character.toUpperCase(Character.forDigit(c % 16, 16)));
+			}
+			else
+				name.append(c);
+		}
+		
+		return name.toString();
+	}
+	
+	private static void setProperty(Node node, String name, String value)
+			throws RepositoryException {
+		if (value != null)
+			node.setProperty(name, value);
+	}
+	
+	private static void setProperty(Node node, String name, Date value)
+			throws RepositoryException {
+		if (value != null) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime(value);
+			node.setProperty(name, calendar);
+		}
+	}
+	
+	private static String getString(Node node, String name)
+			throws RepositoryException {
+		return node.hasProperty(name) ? node.getProperty(name).getString() : null;
+	}
+	
+	private static Date getDate(Node node, String name)
+			throws RepositoryException {
+		return node.hasProperty(name) ? node.getProperty(name).getDate()
+				.getTime() : null;
+	}
+	
+	/**
+	 * Get amount in cents stored in given property or, for nodes stored
+	 * before amounts were kept in cents, in given legacy property (as a
+	 * decimal number).
+	 */
+	private static long getCents(Node node, String name, String legacyName)
+			throws RepositoryException {
+		if (node.hasProperty(name))
+			return node.getProperty(name).getLong();
+		if (node.hasProperty(legacyName))
+			return Math.round(node.getProperty(legacyName).getDouble() * 100);
+		return 0;
+	}
+	
+	/**
+	 * Set properties of given node from given item (i.e. the other way around
+	 * than {@link #createJackrabbitItem(Node)}), along with the content hash
+	 * of the item (see {@link #PROPERTY_CONTENT_HASH}).
+	 * 
+	 * Note: When adding a field into {@code JackrabbitItem}, add it also here
+	 * and into {@link #createJackrabbitItem(Node)}.
+	 * 
+	 * @param node
+	 *            node to hold the record
+	 * @param item
+	 *            item to store
+	 */
+	private void setNodeProperties(Node node, JackrabbitItem item)
+			throws RepositoryException {
+		
+		setProperty(node, "id", item.getId());
+		setProperty(node, "type", item.getType().name());
+		setProperty(node, "name", item.getName());
+		setProperty(node, "legalForm", item.getLegalForm());
+		setProperty(node, "seat", item.getSeat());
+		setProperty(node, "ico", item.getIco());
+		setProperty(node, "dateFrom", item.getDateFrom());
+		setProperty(node, "dateTo", item.getDateTo());
+		setProperty(node, "donorName", item.getDonorName());
+		setProperty(node, "donorSurname", item.getDonorSurname());
+		node.setProperty("donationValueCents", item.getDonationValueCents());
+		if (item.getCurrency() != null)
+			node.setProperty("currency", item.getCurrency().name());
+		setProperty(node, "donorAddress", item.getDonorAddress());
+		setProperty(node, "donorPsc", item.getDonorPsc());
+		setProperty(node, "donorCity", item.getDonorCity());
+		setProperty(node, "recipientParty", item.getRecipientParty());
+		setProperty(node, "year", item.getYear());
+		setProperty(node, "acceptDate", item.getAcceptDate());
+		setProperty(node, "note", item.getNote());
+		setProperty(node, "bulletinId", item.getBulletinId());
+		setProperty(node, "procurementId", item.getProcurementId());
+		setProperty(node, "procurementSubject", item.getProcurementSubject());
+		node.setProperty("priceCents", item.getPriceCents());
+		node.setProperty("vatIncluded", item.isVatIncluded());
+		setProperty(node, "customerIco", item.getCustomerIco());
+		setProperty(node, "supplierIco", item.getSupplierIco());
+		
+		node.setProperty(PROPERTY_CONTENT_HASH, item.getContentHash());
+	}
+	
+	/**
+	 * Store given records into Jackrabbit repository.
+	 * 
+	 * Node of a record which is already in the repository (i.e. its previous
+	 * version) is replaced by new one. All the records are saved at once.
 	 * 
 	 * @param records
-	 *            records to store (in RDF format with additional info)
+	 *            records to store
 	 * 
 	 * @throws IllegalArgumentException
 	 *             if repository with given name does not exists
 	 * @throws OdnRepositoryException
-	 *             when error occurs while connecting to the XXX Sesame repository
-	 *             or when XXX Sesame "add" operation fails
-	 * @throws RepositoryException
-	 *             when initialization fails
+	 *             when error occurs while connecting to the Jackrabbit
+	 *             repository or when storing of the records fails
 	 */
 	@Override
 	public void store(List<JackrabbitItem> records)
 			throws IllegalArgumentException, OdnRepositoryException {
 
+		if (!enabled)
+			// disabled => do not store anything
+			return;
+		
 		OdnRepositoryException odnRepoException = null;
 		Session session = null;
 
 		try {
-			session = getRepo();
-			if (session == null)
-				throw new IllegalArgumentException("Jackrabbit repository not found");
-
-			/* TODO:
-			URI[] contexts = determineRdfContexts(records.getRdfContextsKey(),
-					repo.getValueFactory());
-
-			connection = repo.getConnection();
-
-			if (contexts != null && contexts.length > 0) {
-				// why we duplicate the 'add()' statements:
-				// 'getStatements(null, null, null, true);' is not the same as
-				// 'getStatements(null, null, null, true, (Resource)null);' -
-				// see
-				// http://www.openrdf.org/doc/sesame2/2.3.2/users/userguide.html#d0e1218
-				connection.add(new StringReader(records.getRdfData()),
-						records.getRdfBaseURI(), RDFFormat.RDFXML,
-						contexts);
-			} else {
-				connection.add(new StringReader(records.getRdfData()),
-						records.getRdfBaseURI(), RDFFormat.RDFXML);
+			session = acquireSession();
+			
+			Node rootNode = session.getRootNode();
+			Node odnNode;
+			if (rootNode.hasNode(ROOT_NODE_NAME))
+				odnNode = rootNode.getNode(ROOT_NODE_NAME);
+			else
+				odnNode = rootNode.addNode(ROOT_NODE_NAME, NODE_TYPE);
+			
+			int replacedCount = 0;
+			for (JackrabbitItem record : records) {
+				String nodeName = createNodeName(record.getId());
+				if (odnNode.hasNode(nodeName)) {
+					odnNode.getNode(nodeName).remove();
+					replacedCount++;
+				}
+				
+				setNodeProperties(odnNode.addNode(nodeName, NODE_TYPE), record);
 			}
+			
+			session.save();
+			
+			logger.info("pushed " + records.size() + " records ("
+					+ replacedCount
+					+ " replaced) into the Jackrabbit repository");
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} catch (NamingException e) {
+			logger.error("naming exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} catch (MalformedURLException e) {
+			logger.error("malformed URL exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} finally {
+			if (session != null)
+				releaseSession(session);
+		}
+
+		if (odnRepoException != null)
+			throw odnRepoException;
+	}
+
+	/**
+	 * Remove records with given IDs from Jackrabbit repository. All the
+	 * records are removed at once.
+	 * 
+	 * @param ids
+	 *            IDs of the records to remove
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnRepositoryException
+	 *             when error occurs while connecting to the Jackrabbit
+	 *             repository or when removal of the records fails
+	 */
+	@Override
+	public void remove(Collection<String> ids)
+			throws IllegalArgumentException, OdnRepositoryException {
 
-			logger.info("pushed " + records.getRdfData().length()
-					+ " characters of RDF into the Sesame repository");
+		if (!enabled || ids.isEmpty())
+			// disabled => nothing to remove
+			return;
+		
+		OdnRepositoryException odnRepoException = null;
+		Session session = null;
 
-			if (Boolean.valueOf(srProperties.getProperty(KEY_DEBUG_DUMP_RDF)))
-				debugRdfDump(records.getRdfData());
-			*/
+		try {
+			session = acquireSession();
+			
+			Node rootNode = session.getRootNode();
+			if (rootNode.hasNode(ROOT_NODE_NAME)) {
+				Node odnNode = rootNode.getNode(ROOT_NODE_NAME);
+				int removedCount = 0;
+				for (String id : ids) {
+					String nodeName = createNodeName(id);
+					if (odnNode.hasNode(nodeName)) {
+						odnNode.getNode(nodeName).remove();
+						removedCount++;
+					}
+				}
+				
+				session.save();
+				
+				logger.info("removed " + removedCount + " of " + ids.size()
+						+ " records from the Jackrabbit repository");
+			}
 		} catch (RepositoryException e) {
 			logger.error("repository exception", e);
 			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
@@ -236,7 +484,7 @@ public class JackrabbitRepository implements OdnRepositoryStoreInterface<List<Ja
 			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
 		} finally {
 			if (session != null)
-				session.logout();
+				releaseSession(session);
 		}
 
 		if (odnRepoException != null)
@@ -247,39 +495,158 @@ public class JackrabbitRepository implements OdnRepositoryStoreInterface<List<Ja
 	public JackrabbitItem retrieve(String id) throws IllegalArgumentException,
 			OdnRepositoryException {
 		
-		JackrabbitItem result = null;
+		Vector<String> ids = new Vector<String>();
+		ids.add(id);
+		
+		return retrieveAll(ids).get(id);
+	}
 
-		/* TODO:
-		ModifiableSolrParams params = new ModifiableSolrParams();
-		params.set("q", "id:" + id);
+	/**
+	 * Convert given node into Jackrabbit item.
+	 * 
+	 * @param node
+	 *            node holding the record
+	 * @return item with the properties of the node (and with the content hash
+	 *         stored along with it, if any)
+	 */
+	private JackrabbitItem createJackrabbitItem(Node node)
+			throws RepositoryException {
+		
+		JackrabbitItem item = new JackrabbitItem();
+		
+		item.setId(getString(node, "id"));
+		if (node.hasProperty("type"))
+			item.setType(JackrabbitItemType.valueOf(getString(node, "type")));
+		item.setName(getString(node, "name"));
+		item.setLegalForm(getString(node, "legalForm"));
+		item.setSeat(getString(node, "seat"));
+		item.setIco(getString(node, "ico"));
+		item.setDateFrom(getDate(node, "dateFrom"));
+		item.setDateTo(getDate(node, "dateTo"));
+		item.setDonorName(getString(node, "donorName"));
+		item.setDonorSurname(getString(node, "donorSurname"));
+		item.setDonationValueCents(getCents(node, "donationValueCents", "donationValue"));
+		if (node.hasProperty("currency"))
+			item.setCurrency(Currency.valueOf(getString(node, "currency")));
+		item.setDonorAddress(getString(node, "donorAddress"));
+		item.setDonorPsc(getString(node, "donorPsc"));
+		item.setDonorCity(getString(node, "donorCity"));
+		item.setRecipientParty(getString(node, "recipientParty"));
+		item.setYear(getString(node, "year"));
+		item.setAcceptDate(getDate(node, "acceptDate"));
+		item.setNote(getString(node, "note"));
+		item.setBulletinId(getString(node, "bulletinId"));
+		item.setProcurementId(getString(node, "procurementId"));
+		item.setProcurementSubject(getString(node, "procurementSubject"));
+		item.setPriceCents(getCents(node, "priceCents", "price"));
+		if (node.hasProperty("vatIncluded"))
+			item.setVatIncluded(node.getProperty("vatIncluded").getBoolean());
+		item.setCustomerIco(getString(node, "customerIco"));
+		item.setSupplierIco(getString(node, "supplierIco"));
+		
+		// note: nodes stored before content hashes were introduced do not
+		// have it, their hash is computed when needed
+		if (node.hasProperty(PROPERTY_CONTENT_HASH))
+			item.setContentHash(node.getProperty(PROPERTY_CONTENT_HASH).getLong());
+		
+		return item;
+	}
+	
+	/**
+	 * Retrieve records with given IDs from Jackrabbit repository, using one
+	 * JCR-SQL2 query per {@link #RETRIEVE_BATCH_SIZE} IDs.
+	 * 
+	 * @param ids
+	 *            IDs of the records to retrieve
+	 * 
+	 * @return map from ID to record, records which were not found are not
+	 *         present in the map
+	 *
+	 * @throws IllegalArgumentException
+	 *             when some of the given arguments is not valid
+	 * @throws OdnRepositoryException
+	 *             when query fails or when multiple records with same ID are
+	 *             found
+	 */
+	@Override
+	public Map<String, JackrabbitItem> retrieveAll(Collection<String> ids)
+			throws IllegalArgumentException, OdnRepositoryException {
+		
+		Map<String, JackrabbitItem> result = new HashMap<String, JackrabbitItem>();
+		
+		if (!enabled || ids.isEmpty())
+			// disabled => nothing to retrieve
+			return result;
+		
+		OdnRepositoryException odnRepoException = null;
+		Session session = null;
 
 		try {
-			QueryResponse response = solrServer.query(params);
-			List<SolrItem> records = response.getBeans(SolrItem.class);
+			session = acquireSession();
 			
-			// having multiple records with same ID in the repository is an ERROR
-			if (records.size() > 1)
-				throw new OdnRepositoryException("unable to retrieve record ("
-						+ records.size() + " items found)");
+			QueryManager queryManager = session.getWorkspace().getQueryManager();
 			
-			// one match or no match are expected, so return the match or return {@code null}
-			if (records.size() == 1)
-				result = records.get(0);
-		} catch (SolrServerException e) {
-			logger.error("SOLR server exception", e);
-			throw new OdnRepositoryException(e.getMessage(), e);
+			Iterator<String> idIterator = ids.iterator();
+			while (idIterator.hasNext()) {
+				StringBuilder statement = new StringBuilder(
+						"SELECT * FROM [nt:unstructured] AS item WHERE ISDESCENDANTNODE(item, [/"
+								+ ROOT_NODE_NAME + "]) AND (");
+				int batchSize = 0;
+				while (idIterator.hasNext() && batchSize < RETRIEVE_BATCH_SIZE) {
+					if (batchSize > 0)
+						statement.append(" OR ");
+					statement.append("item.[id] = '");
+					statement.append(idIterator.next().replace("'", "''"));
+					statement.append('\'');
+					batchSize++;
+				}
+				statement.append(')');
+				
+				Query query = queryManager.createQuery(statement.toString(),
+						Query.JCR_SQL2);
+				NodeIterator nodes = query.execute().getNodes();
+				while (nodes.hasNext()) {
+					JackrabbitItem record = createJackrabbitItem(nodes.nextNode());
+					
+					// having multiple records with same ID in the repository is an ERROR
+					if (result.put(record.getId(), record) != null)
+						throw new OdnRepositoryException(
+								"unable to retrieve record (multiple items with ID "
+										+ record.getId() + " found)");
+				}
+			}
+			
+			logger.debug("retrieved " + result.size() + " of " + ids.size()
+					+ " requested records from Jackrabbit repository");
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} catch (NamingException e) {
+			logger.error("naming exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} catch (MalformedURLException e) {
+			logger.error("malformed URL exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} finally {
+			if (session != null)
+				releaseSession(session);
 		}
-		*/
 
+		if (odnRepoException != null)
+			throw odnRepoException;
+		
 		return result;
 	}
 
 	@Override
 	public void shutDown() throws OdnRepositoryException {
-		if (jackrabbitSession != null)
-			jackrabbitSession.logout();
+		synchronized (idleSessions) {
+			for (Session session : idleSessions)
+				session.logout();
+			idleSessions.clear();
+		}
 		
-		jackrabbitSession = null;
+		repository = null;
 		instance = null;
 	}
 
@@ -18,20 +18,41 @@
 
 package sk.opendata.odn.repository.sesame;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.List;
+
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+
 /**
  * This class holds everything what is necessary to push some RDF data into
  * Sesame repository.
+ * 
+ * RDF data are either RDF statements ready to be added to the repository or
+ * RDF document (RDF/XML, N-Triples, binary RDF, ...) kept as serialized bytes,
+ * which takes less memory than a {@code String} and can be passed to the
+ * repository as a stream. Textual formats are encoded in UTF-8.
  */
 public class RdfData {
-	private String rdfData;
+	public final static String ENCODING = "UTF-8";
+	
+	private byte[] rdfData;
+	private RDFFormat rdfFormat = RDFFormat.RDFXML;
+	private List<Statement> statements;
 	private String rdfBaseURI;
 	private String propKey;
+	private Collection<String> subjects;
 	
 	/**
 	 * Construct contained holding data necessary to perform storage operation.
 	 * 
 	 * @param rdfData
-	 *            RDF data to store
+	 *            RDF document to store
+	 * @param rdfFormat
+	 *            format of the RDF document
 	 * @param rdfBaseURI
 	 *            base URI of the RDF data
 	 * @param propKey
@@ -39,20 +60,126 @@ public class RdfData {
 	 *            other settings from properties, ({@code null} means
 	 *            "no context", etc.)
 	 */
-	public RdfData(String rdfData, String rdfBaseURI,
+	public RdfData(byte[] rdfData, RDFFormat rdfFormat, String rdfBaseURI,
+			String propKey) {
+		
+		this.rdfData = rdfData;
+		this.rdfFormat = rdfFormat;
+		this.rdfBaseURI = rdfBaseURI;
+		this.propKey = propKey;
+	}
+	
+	/**
+	 * Construct contained holding data necessary to perform storage operation.
+	 * 
+	 * @param rdfData
+	 *            RDF data to store (encoded in UTF-8)
+	 * @param rdfBaseURI
+	 *            base URI of the RDF data
+	 * @param propKey
+	 *            property name used to retrieve context(s) of the RDF data and
+	 *            other settings from properties, ({@code null} means
+	 *            "no context", etc.)
+	 */
+	public RdfData(byte[] rdfData, String rdfBaseURI,
 			String propKey) {
 		
 		this.rdfData = rdfData;
 		this.rdfBaseURI = rdfBaseURI;
 		this.propKey = propKey;
 	}
+	
+	/**
+	 * Construct contained holding data necessary to perform storage operation.
+	 * 
+	 * @param statements
+	 *            RDF statements to store
+	 * @param rdfBaseURI
+	 *            base URI of the RDF data
+	 * @param propKey
+	 *            property name used to retrieve context(s) of the RDF data and
+	 *            other settings from properties, ({@code null} means
+	 *            "no context", etc.)
+	 */
+	public RdfData(List<Statement> statements, String rdfBaseURI,
+			String propKey) {
+		
+		this.statements = statements;
+		this.rdfBaseURI = rdfBaseURI;
+		this.propKey = propKey;
+	}
+	
+	/**
+	 * Construct contained holding data necessary to perform storage operation.
+	 * 
+	 * @param rdfData
+	 *            RDF data to store
+	 * @param rdfBaseURI
+	 *            base URI of the RDF data
+	 * @param propKey
+	 *            property name used to retrieve context(s) of the RDF data and
+	 *            other settings from properties, ({@code null} means
+	 *            "no context", etc.)
+	 */
+	public RdfData(String rdfData, String rdfBaseURI,
+			String propKey) {
+		
+		this(encode(rdfData), rdfBaseURI, propKey);
+	}
+	
+	private static byte[] encode(String rdfData) {
+		try {
+			return rdfData.getBytes(ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
 
+	/**
+	 * @return RDF document (as text, thus not suitable for binary RDF) or
+	 *         {@code null} if the data are held as RDF statements
+	 */
 	public String getRdfData() {
-		return rdfData;
+		if (rdfData == null)
+			return null;
+		
+		try {
+			return new String(rdfData, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
 	}
 
 	public void setRdfData(String rdfData) {
-		this.rdfData = rdfData;
+		this.rdfData = encode(rdfData);
+	}
+	
+	public byte[] getRdfBytes() {
+		return rdfData;
+	}
+	
+	/**
+	 * @return format of the RDF document
+	 */
+	public RDFFormat getRdfFormat() {
+		return rdfFormat;
+	}
+	
+	/**
+	 * @return RDF statements or {@code null} if the data are held as RDF
+	 *         document
+	 */
+	public List<Statement> getStatements() {
+		return statements;
+	}
+	
+	/**
+	 * @return stream of RDF document
+	 */
+	public InputStream getRdfStream() {
+		return new ByteArrayInputStream(rdfData);
 	}
 
 	public String getRdfBaseURI() {
@@ -70,4 +197,17 @@ public class RdfData {
 	public void setPropKey(String rdfContextsKey) {
 		this.propKey = rdfContextsKey;
 	}
+
+	/**
+	 * @return URIs of the subjects whose previous statements are removed
+	 *         from the repository before the data are added (i.e. of the
+	 *         updated records), or {@code null} if nothing should be removed
+	 */
+	public Collection<String> getSubjects() {
+		return subjects;
+	}
+
+	public void setSubjects(Collection<String> subjects) {
+		this.subjects = subjects;
+	}
 }
@@ -0,0 +1,229 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository.sesame;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Vector;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+
+import sk.opendata.odn.repository.OdnRepositoryException;
+
+/**
+ * Registry of versioned contexts used by full reloads (see
+ * {@link SesameRepository#openSession(boolean)}).
+ * 
+ * Full reload stores the records into a fresh context (a "version") instead
+ * of the contexts configured for the records. Once the reload is finished,
+ * the version is published in place of previous versions: registry context
+ * holds, for each published version, the name of the records (i.e. the key
+ * used to configure their contexts) and contexts it is published as, say:
+ * 
+ * <pre>
+ * &lt;http://opendata.sk/odn/versions/organizations/20130101-120000-000&gt;
+ *     odnctx:dataset "organizations" ;
+ *     odnctx:publishedAs &lt;http://opendata.sk/datanest/organizations/&gt; ,
+ *                        &lt;http://opendata.sk/datanest/&gt; .
+ * </pre>
+ * 
+ * Readers thus select the contexts to query using the registry, for example:
+ * 
+ * <pre>
+ * SELECT ?s ?p ?o WHERE {
+ *     GRAPH &lt;http://opendata.sk/odn/contexts&gt; {
+ *         ?version odnctx:publishedAs &lt;http://opendata.sk/datanest/&gt;
+ *     }
+ *     GRAPH ?version { ?s ?p ?o }
+ * }
+ * </pre>
+ * 
+ * Since registry is switched in one transaction, readers see either the old
+ * version or the new one, never the partially loaded one.
+ * 
+ * Records stored before their first version is published are removed from
+ * the configured contexts in that transaction (see
+ * {@link SesameRepository#clearConfiguredContexts(RepositoryConnection, String, URI)}),
+ * thus readers should always resolve the contexts using the registry (see
+ * {@code doc/README.RDF}).
+ */
+public class SesameContextRegistry {
+
+	public final static String NS_ODN_CONTEXTS = "http://opendata.sk/odn/contexts#";
+	public final static String PREDICATE_DATASET = NS_ODN_CONTEXTS + "dataset";
+	public final static String PREDICATE_PUBLISHED_AS = NS_ODN_CONTEXTS + "publishedAs";
+	public final static String VERSION_FORMAT = "yyyyMMdd-HHmmss-SSS";
+
+	private String registryContext;
+	private String versionPrefix;
+	private double minSizeRatio;
+
+
+	/**
+	 * @param registryContext
+	 *            context holding the registry
+	 * @param versionPrefix
+	 *            prefix of the version contexts
+	 * @param minSizeRatio
+	 *            new version is not published if it is smaller than this
+	 *            ratio of the size of currently published version
+	 */
+	public SesameContextRegistry(String registryContext, String versionPrefix,
+			double minSizeRatio) {
+		this.registryContext = registryContext;
+		this.versionPrefix = versionPrefix;
+		this.minSizeRatio = minSizeRatio;
+	}
+
+	/**
+	 * Create a context for new version of given records.
+	 * 
+	 * @param key
+	 *            name of the records (key used to configure their contexts)
+	 * @param valueFactory
+	 *            value factory to use
+	 * @return context of new version
+	 */
+	public URI createVersion(String key, ValueFactory valueFactory) {
+		return valueFactory.createURI(versionPrefix + key + "/"
+				+ new SimpleDateFormat(VERSION_FORMAT).format(new Date()));
+	}
+
+	/**
+	 * Get currently published version(s) of given records.
+	 * 
+	 * @param connection
+	 *            connection to the repository
+	 * @param key
+	 *            name of the records
+	 * @return contexts of published versions (usually one, empty if the
+	 *         records were never reloaded)
+	 * 
+	 * @throws RepositoryException
+	 *             when registry can not be read
+	 */
+	public List<URI> getPublishedVersions(RepositoryConnection connection,
+			String key) throws RepositoryException {
+
+		ValueFactory valueFactory = connection.getValueFactory();
+		Vector<URI> versions = new Vector<URI>();
+
+		RepositoryResult<Statement> result = connection.getStatements(null,
+				valueFactory.createURI(PREDICATE_DATASET),
+				valueFactory.createLiteral(key), false,
+				valueFactory.createURI(registryContext));
+		try {
+			while (result.hasNext()) {
+				Resource version = result.next().getSubject();
+				if (version instanceof URI && !versions.contains(version))
+					versions.add((URI) version);
+			}
+		} finally {
+			result.close();
+		}
+
+		return versions;
+	}
+
+	/**
+	 * Check whether new version of given records can be published: it has to
+	 * be non-empty and not much smaller than currently published version.
+	 * 
+	 * @param connection
+	 *            connection to the repository
+	 * @param key
+	 *            name of the records
+	 * @param version
+	 *            context of the new version
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when the version is not valid
+	 * @throws RepositoryException
+	 *             when size of the versions can not be determined
+	 */
+	public void validate(RepositoryConnection connection, String key,
+			URI version) throws OdnRepositoryException, RepositoryException {
+
+		long size = connection.size(version);
+		if (size <= 0)
+			throw new OdnRepositoryException("new version of '" + key
+					+ "' (" + version + ") is empty");
+
+		List<URI> publishedVersions = getPublishedVersions(connection, key);
+		if (publishedVersions.isEmpty())
+			return;
+
+		long publishedSize = connection.size(publishedVersions
+				.toArray(new Resource[publishedVersions.size()]));
+		if (size < minSizeRatio * publishedSize)
+			throw new OdnRepositoryException("new version of '" + key
+					+ "' (" + version + ", " + size
+					+ " statements) is too small compared to published one ("
+					+ publishedSize + " statements)");
+	}
+
+	/**
+	 * Publish given version of the records in place of currently published
+	 * version(s), within current transaction of given connection.
+	 * 
+	 * @param connection
+	 *            connection to the repository
+	 * @param key
+	 *            name of the records
+	 * @param version
+	 *            context of the new version
+	 * @param aliases
+	 *            contexts the version is published as
+	 * @return contexts of previously published versions (to be dropped once
+	 *         the transaction is committed)
+	 * 
+	 * @throws RepositoryException
+	 *             when registry can not be updated
+	 */
+	public List<URI> publish(RepositoryConnection connection, String key,
+			URI version, URI[] aliases) throws RepositoryException {
+
+		ValueFactory valueFactory = connection.getValueFactory();
+		URI registry = valueFactory.createURI(registryContext);
+
+		List<URI> previousVersions = getPublishedVersions(connection, key);
+		for (URI previousVersion : previousVersions)
+			connection.remove(previousVersion, null, null, registry);
+
+		Literal dataset = valueFactory.createLiteral(key);
+		connection.add(version, valueFactory.createURI(PREDICATE_DATASET),
+				dataset, registry);
+		URI publishedAs = valueFactory.createURI(PREDICATE_PUBLISHED_AS);
+		for (Value alias : aliases)
+			connection.add(version, publishedAs, alias, registry);
+
+		return previousVersions;
+	}
+
+}
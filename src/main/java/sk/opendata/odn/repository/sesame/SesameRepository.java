@@ -18,43 +18,120 @@
 
 package sk.opendata.odn.repository.sesame;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.StringReader;
-
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openrdf.model.Resource;
 import org.openrdf.model.URI;
 import org.openrdf.model.ValueFactory;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.UpdateExecutionException;
+import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.http.HTTPRepository;
+import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.ntriples.NTriplesUtil;
+import org.openrdf.sail.memory.MemoryStore;
+import org.openrdf.sail.nativerdf.NativeStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import sk.opendata.odn.repository.OdnRepositoryException;
-import sk.opendata.odn.repository.OdnRepositoryStoreInterface;
+import sk.opendata.odn.repository.OdnRepositoryRemoveInterface;
+import sk.opendata.odn.repository.OdnRepositorySessionInterface;
+import sk.opendata.odn.repository.OdnRepositoryStoreSession;
 import sk.opendata.odn.utils.ApplicationProperties;
 
 /**
  * Sesame repository for Open Data Node.
  */
-public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
+public class SesameRepository implements OdnRepositorySessionInterface<RdfData>, OdnRepositoryRemoveInterface<RdfData> {
 
 	public final static String SESAME_REPOSITORY_PROPERTIES_NAME = "/repo-sesame.properties";
 	public final static String PREFIX_KEY_REPO = "sesame.repo.";
 	public final static String KEY_SERVER = PREFIX_KEY_REPO + "server";
 	public final static String KEY_REPO_ENABLED = PREFIX_KEY_REPO + "enabled";
 	public final static String KEY_ID = PREFIX_KEY_REPO + "id";
+	public final static String KEY_TYPE = PREFIX_KEY_REPO + "type";
+	public final static String KEY_DATA_DIR = PREFIX_KEY_REPO + "data_dir";
+	public final static String KEY_INDEXES = PREFIX_KEY_REPO + "indexes";
+	public final static String DEFAULT_DATA_SUBDIR = ".odn/sesame";
 	public final static String PREFIX_KEY_CONTEXTS = "sesame.contexts.";
 	public final static String PREFIX_KEY_RDF_DUMP = "sesame.rdf_dump.";
+	public final static String KEY_UPLOAD_FORMAT = "sesame.upload_format";
+	public final static String PREFIX_KEY_RELOAD = "sesame.reload.";
+	public final static String KEY_RELOAD_REGISTRY_CONTEXT = PREFIX_KEY_RELOAD + "registry_context";
+	public final static String KEY_RELOAD_VERSION_PREFIX = PREFIX_KEY_RELOAD + "version_prefix";
+	public final static String KEY_RELOAD_MIN_SIZE_RATIO = PREFIX_KEY_RELOAD + "min_size_ratio";
+	/**
+	 * How long to wait for contexts being dropped when shutting down.
+	 */
+	public final static long DROP_SHUTDOWN_TIMEOUT_SECONDS = 60;
+	
+	/**
+	 * Kind of Sesame repository used.
+	 */
+	public enum RepositoryType {
+		/** remote repository on a Sesame server */
+		HTTP,
+		/** embedded native store (on disk) */
+		NATIVE,
+		/** embedded in-memory store (say for tests) */
+		MEMORY;
+	}
+	
+	/**
+	 * Form in which RDF serializers pass the data to this repository.
+	 */
+	public enum UploadFormat {
+		/** RDF/XML document, parsed by Sesame server */
+		RDFXML(RDFFormat.RDFXML),
+		/** N-Triples document, simpler to parse than RDF/XML */
+		NTRIPLES(RDFFormat.NTRIPLES),
+		/** Sesame binary RDF, smallest and fastest to parse */
+		BINARY(RDFFormat.BINARY),
+		/** RDF statements built directly from the records */
+		STATEMENTS(null);
+		
+		private RDFFormat rdfFormat;
+		
+		private UploadFormat(RDFFormat rdfFormat) {
+			this.rdfFormat = rdfFormat;
+		}
+		
+		/**
+		 * @return format of the uploaded document or {@code null} if
+		 *         statements are uploaded
+		 */
+		public RDFFormat getRdfFormat() {
+			return rdfFormat;
+		}
+	}
 
 	private static Logger logger = LoggerFactory.getLogger(SesameRepository.class);
 	private ApplicationProperties srProperties = null;
 	private boolean enabled = false;
-	private HTTPRepository sesameRepo = null;
+	private UploadFormat uploadFormat = UploadFormat.RDFXML;
+	private Repository sesameRepo = null;
+	private SesameContextRegistry contextRegistry = null;
+	private ExecutorService dropExecutor = null;
 
 	private static SesameRepository instance = null;
 
@@ -71,6 +148,23 @@ public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
 		enabled = Boolean.valueOf(srProperties.getProperty(KEY_REPO_ENABLED));
 		if (!enabled)
 			logger.info("Sesame repository disabled");
+		String uploadFormatProperty = srProperties.getProperty(KEY_UPLOAD_FORMAT);
+		if (uploadFormatProperty != null && !uploadFormatProperty.isEmpty())
+			uploadFormat = UploadFormat.valueOf(uploadFormatProperty.trim()
+					.toUpperCase());
+		contextRegistry = new SesameContextRegistry(
+				srProperties.getProperty(KEY_RELOAD_REGISTRY_CONTEXT),
+				srProperties.getProperty(KEY_RELOAD_VERSION_PREFIX),
+				Double.valueOf(srProperties.getProperty(
+						KEY_RELOAD_MIN_SIZE_RATIO, "0")));
+	}
+	
+	/**
+	 * @return form in which RDF serializers should pass the data to this
+	 *         repository
+	 */
+	public UploadFormat getUploadFormat() {
+		return uploadFormat;
 	}
 
 	/**
@@ -89,32 +183,57 @@ public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
 	}
 
 	/**
-	 * Initialize Sesame repository.
+	 * Initialize Sesame repository: either proxy for a remote repository on a
+	 * Sesame server or embedded store (see {@link RepositoryType}).
 	 * 
-	 * @return instance of proxy for a remote repository on a Sesame server
+	 * @return instance of the repository
 	 * @throws RepositoryException
 	 *             when initialization fails
 	 */
-	private HTTPRepository initRepo() throws RepositoryException {
+	private Repository initRepo() throws RepositoryException {
 
 		enabled = Boolean.valueOf(srProperties.getProperty(KEY_REPO_ENABLED));
-		String repoServer = srProperties.getProperty(KEY_SERVER);
+		RepositoryType repoType = RepositoryType.valueOf(srProperties
+				.getProperty(KEY_TYPE, "http").trim().toUpperCase());
 		String repoID = srProperties.getProperty(KEY_ID);
-
-		// TODO: indexes and other configuration parameters (as needed)
-		HTTPRepository repo = new HTTPRepository(repoServer, repoID);
+		String indexes = srProperties.getProperty(KEY_INDEXES, "").trim();
+		String dataDirProperty = srProperties.getProperty(KEY_DATA_DIR, "").trim();
+		File dataDir = dataDirProperty.isEmpty() ? new File(new File(
+				System.getProperty("user.home"), DEFAULT_DATA_SUBDIR), repoID)
+				: new File(dataDirProperty);
+
+		Repository repo;
+		String description;
+		switch (repoType) {
+		case NATIVE:
+			NativeStore nativeStore = new NativeStore(dataDir);
+			if (!indexes.isEmpty())
+				nativeStore.setTripleIndexes(indexes);
+			repo = new SailRepository(nativeStore);
+			description = "native store in '" + dataDir.getAbsolutePath()
+					+ "'" + (indexes.isEmpty() ? "" : ", indexes " + indexes);
+			break;
+		case MEMORY:
+			// note: data are not persisted, indexes are not applicable
+			repo = new SailRepository(new MemoryStore());
+			description = "memory store";
+			break;
+		default:
+			String repoServer = srProperties.getProperty(KEY_SERVER);
+			repo = new HTTPRepository(repoServer, repoID);
+			description = "'" + repoServer + "', '" + repoID + "'";
+		}
 		repo.initialize();
 
 		sesameRepo = repo;
-		logger.info("Sesame repository initialized ('" + repoServer
-				+ "', '" + repoID + "')");
+		logger.info("Sesame repository initialized (" + description + ")");
 
 		return repo;
 	}
 
-	private synchronized HTTPRepository getRepo() throws RepositoryException {
+	synchronized Repository getRepo() throws RepositoryException {
 
-		HTTPRepository repo = sesameRepo;
+		Repository repo = sesameRepo;
 
 		if (repo == null)
 			repo = initRepo();
@@ -122,19 +241,24 @@ public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
 		return repo;
 	}
 
-	private void rdfDump(String fn, String rdfData) {
+	private void rdfDump(String fn, RdfData rdfData) {
 		try {
 			File dumpFile = new File(fn);
-			BufferedWriter out = new BufferedWriter(new FileWriter(dumpFile));
-			out.write(rdfData);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(dumpFile));
+			if (rdfData.getStatements() != null)
+				Rio.write(rdfData.getStatements(), out, RDFFormat.RDFXML);
+			else
+				out.write(rdfData.getRdfBytes());
 			out.close();
 			logger.info("RDF dump saved to file " + dumpFile);
 		} catch (IOException e) {
 			logger.error("IO exception", e);
+		} catch (RDFHandlerException e) {
+			logger.error("RDF handler exception", e);
 		}
 	}
 
-	private URI[] determineRdfContexts(String rdfContextsKey, ValueFactory valueFactory) {
+	URI[] determineRdfContexts(String rdfContextsKey, ValueFactory valueFactory) {
 		if (rdfContextsKey == null || rdfContextsKey.isEmpty())
 			// null/empty key name => null property => no contexts
 			return null;
@@ -158,9 +282,337 @@ public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
 		return result;
 	}
 	
+	/**
+	 * Determine contexts to store given records into: currently published
+	 * version of the records (see {@link SesameContextRegistry}) if they
+	 * were reloaded before, contexts configured for the records otherwise.
+	 * 
+	 * @param connection
+	 *            connection to the Sesame repository
+	 * @param rdfContextsKey
+	 *            property name used to retrieve context(s) of the RDF data
+	 * @return contexts or {@code null} if there are no contexts configured
+	 * 
+	 * @throws RepositoryException
+	 *             when context registry can not be read
+	 */
+	URI[] determineStoreContexts(RepositoryConnection connection,
+			String rdfContextsKey) throws RepositoryException {
+		
+		URI[] contexts = determineRdfContexts(rdfContextsKey,
+				connection.getValueFactory());
+		if (contexts == null)
+			return null;
+		
+		List<URI> versions = contextRegistry.getPublishedVersions(connection,
+				rdfContextsKey);
+		if (!versions.isEmpty())
+			return versions.toArray(new URI[versions.size()]);
+		
+		return contexts;
+	}
+	
+	/**
+	 * Append SPARQL update operations removing all statements about subjects
+	 * matched by given pattern from given contexts, including the statements
+	 * about blank nodes they refer to (like the address of an organization).
+	 * 
+	 * Note: only blank nodes referred to directly by the subjects are
+	 * removed, RDF serializers do not produce nested ones.
+	 * 
+	 * @param update
+	 *            SPARQL update to append the operations to
+	 * @param subjectPattern
+	 *            SPARQL pattern binding {@code ?s} to the subjects to remove
+	 * @param contexts
+	 *            contexts to remove the statements from ({@code null} means
+	 *            all the contexts)
+	 */
+	private static void appendRemoveOperations(StringBuilder update,
+			String subjectPattern, URI[] contexts) {
+		
+		// note: SPARQL update can not address the "null" context, without
+		// contexts the statements are removed from all the contexts (which
+		// is the same unless contexts are configured for other records)
+		URI[] removeContexts = contexts;
+		if (contexts == null || contexts.length == 0)
+			removeContexts = new URI[] { null };
+		
+		for (URI context : removeContexts) {
+			String with = context == null ? "" : "WITH "
+					+ NTriplesUtil.toNTriplesString(context);
+			if (update.length() > 0)
+				update.append(" ;\n");
+			// blank nodes first, while the subjects still refer to them
+			update.append(with);
+			update.append(" DELETE { ?b ?p ?o } WHERE { ");
+			update.append(subjectPattern);
+			update.append(" ?s ?sp ?b FILTER isBlank(?b) ?b ?p ?o } ;\n");
+			update.append(with);
+			update.append(" DELETE { ?s ?p ?o } WHERE { ");
+			update.append(subjectPattern);
+			update.append(" ?s ?p ?o }");
+		}
+	}
+	
+	/**
+	 * Build SPARQL update removing all statements about given subjects from
+	 * given contexts (see
+	 * {@link #appendRemoveOperations(StringBuilder, String, URI[])}).
+	 * 
+	 * @param subjects
+	 *            subjects to remove
+	 * @param contexts
+	 *            contexts to remove the statements from ({@code null} means
+	 *            all the contexts)
+	 * @param valueFactory
+	 *            factory used to create URIs of the subjects
+	 * @return SPARQL update, two operations (blank nodes, subjects) for each
+	 *         context
+	 */
+	static String buildRemoveUpdate(Collection<String> subjects,
+			URI[] contexts, ValueFactory valueFactory) {
+		
+		StringBuilder values = new StringBuilder(64 * subjects.size() + 16);
+		values.append("VALUES ?s {");
+		for (String subject : subjects) {
+			values.append(' ');
+			values.append(NTriplesUtil.toNTriplesString(valueFactory
+					.createURI(subject)));
+		}
+		values.append(" }");
+		
+		StringBuilder update = new StringBuilder(2 * values.length() + 512);
+		appendRemoveOperations(update, values.toString(), contexts);
+		
+		return update.toString();
+	}
+	
+	/**
+	 * Execute given SPARQL update using given connection (within its current
+	 * transaction, if any).
+	 * 
+	 * @throws RepositoryException
+	 *             when the update fails
+	 */
+	private static void executeUpdate(RepositoryConnection connection,
+			String update) throws RepositoryException {
+		
+		try {
+			connection.prepareUpdate(QueryLanguage.SPARQL, update).execute();
+		} catch (MalformedQueryException e) {
+			// not expected, URIs are escaped
+			throw new RepositoryException(e.getMessage(), e);
+		} catch (UpdateExecutionException e) {
+			throw new RepositoryException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Determine contexts configured for given records which are not
+	 * configured for any other records (as opposed to contexts like
+	 * {@code http://opendata.sk/datanest/} shared by several datasets).
+	 * 
+	 * @param rdfContextsKey
+	 *            property name used to retrieve context(s) of the RDF data
+	 * @param valueFactory
+	 *            factory used to create URIs of the contexts
+	 * @return own contexts of the records (empty if there are none)
+	 */
+	List<URI> determineOwnContexts(String rdfContextsKey,
+			ValueFactory valueFactory) {
+		
+		List<URI> ownContexts = new Vector<URI>();
+		URI[] contexts = determineRdfContexts(rdfContextsKey, valueFactory);
+		if (contexts == null)
+			return ownContexts;
+		ownContexts.addAll(Arrays.asList(contexts));
+		
+		for (String property : srProperties.stringPropertyNames()) {
+			if (!property.startsWith(PREFIX_KEY_CONTEXTS)
+					|| property.equals(PREFIX_KEY_CONTEXTS + rdfContextsKey))
+				continue;
+			URI[] otherContexts = determineRdfContexts(property
+					.substring(PREFIX_KEY_CONTEXTS.length()), valueFactory);
+			if (otherContexts != null)
+				ownContexts.removeAll(Arrays.asList(otherContexts));
+		}
+		
+		return ownContexts;
+	}
+	
+	/**
+	 * Remove given records from the contexts configured for them, once their
+	 * first reloaded version is published (see {@link SesameContextRegistry})
+	 * and thus readers are supposed to query the version instead, within
+	 * current transaction of given connection.
+	 * 
+	 * Own contexts of the records (see
+	 * {@link #determineOwnContexts(String, ValueFactory)}) are cleared. From
+	 * shared contexts, statements about the subjects found in own contexts or
+	 * in the new version are removed (by one SPARQL update), so that records
+	 * of other datasets stay there.
+	 * 
+	 * @param connection
+	 *            connection to the Sesame repository
+	 * @param rdfContextsKey
+	 *            property name used to retrieve context(s) of the RDF data
+	 * @param version
+	 *            context of the published version
+	 * 
+	 * @throws RepositoryException
+	 *             when Sesame "remove" operation fails
+	 */
+	void clearConfiguredContexts(RepositoryConnection connection,
+			String rdfContextsKey, URI version) throws RepositoryException {
+		
+		ValueFactory valueFactory = connection.getValueFactory();
+		URI[] contexts = determineRdfContexts(rdfContextsKey, valueFactory);
+		if (contexts == null)
+			return;
+		
+		List<URI> ownContexts = determineOwnContexts(rdfContextsKey,
+				valueFactory);
+		List<URI> sharedContexts = new Vector<URI>(Arrays.asList(contexts));
+		sharedContexts.removeAll(ownContexts);
+		
+		StringBuilder update = new StringBuilder(1024);
+		if (!sharedContexts.isEmpty()) {
+			StringBuilder sources = new StringBuilder(NTriplesUtil
+					.toNTriplesString(version));
+			for (URI ownContext : ownContexts) {
+				sources.append(' ');
+				sources.append(NTriplesUtil.toNTriplesString(ownContext));
+			}
+			appendRemoveOperations(update,
+					"{ SELECT DISTINCT ?s WHERE { VALUES ?g { " + sources
+							+ " } GRAPH ?g { ?s ?x ?y } FILTER isIRI(?s) } }",
+					sharedContexts.toArray(new URI[sharedContexts.size()]));
+		}
+		// note: after the shared contexts, own ones tell the subjects
+		for (URI ownContext : ownContexts) {
+			if (update.length() > 0)
+				update.append(" ;\n");
+			update.append("CLEAR SILENT GRAPH ");
+			update.append(NTriplesUtil.toNTriplesString(ownContext));
+		}
+		
+		long timeStart = System.currentTimeMillis();
+		executeUpdate(connection, update.toString());
+		logger.info("removed '" + rdfContextsKey + "' from configured contexts "
+				+ Arrays.asList(contexts) + " in "
+				+ (System.currentTimeMillis() - timeStart) + " ms");
+	}
+	
+	/**
+	 * Remove previous version of given records (i.e. all statements about
+	 * their subjects, see {@link RdfData#getSubjects()}) from given contexts
+	 * using given connection (within its current transaction, if any).
+	 * 
+	 * All the subjects are removed by one SPARQL update (see
+	 * {@link #buildRemoveUpdate(Collection, URI[], ValueFactory)}), i.e. in
+	 * one request when using remote repository.
+	 * 
+	 * @param connection
+	 *            connection to the Sesame repository
+	 * @param records
+	 *            records which are going to be stored
+	 * @param contexts
+	 *            contexts to remove the records from ({@code null} means
+	 *            all the contexts)
+	 * 
+	 * @throws RepositoryException
+	 *             when Sesame "remove" operation fails
+	 */
+	private void removeSubjects(RepositoryConnection connection,
+			RdfData records, URI[] contexts) throws RepositoryException {
+		
+		if (records.getSubjects() == null || records.getSubjects().isEmpty())
+			return;
+		
+		executeUpdate(connection, buildRemoveUpdate(records.getSubjects(),
+				contexts, connection.getValueFactory()));
+		
+		logger.debug("removed previous version of "
+				+ records.getSubjects().size()
+				+ " RDF subjects from the Sesame repository");
+	}
+	
+	/**
+	 * Add given records into given contexts using given connection (within
+	 * its current transaction, if any).
+	 * 
+	 * @param connection
+	 *            connection to the Sesame repository
+	 * @param records
+	 *            records to store (in RDF format with additional info)
+	 * @param contexts
+	 *            contexts to add the records into ({@code null} means
+	 *            "no context")
+	 * @param replace
+	 *            whether to remove previous version of the records first
+	 *            (not needed when the contexts are known to be empty, e.g.
+	 *            new version created by reload)
+	 * 
+	 * @throws RepositoryException
+	 *             when Sesame "add" operation fails
+	 * @throws RDFParseException
+	 *             when RDF data can not be parsed
+	 * @throws IOException
+	 *             when RDF data can not be read
+	 */
+	void add(RepositoryConnection connection, RdfData records,
+			URI[] contexts, boolean replace) throws RepositoryException,
+			RDFParseException, IOException {
+		
+		String rdfDumpFn = srProperties.getProperty(PREFIX_KEY_RDF_DUMP
+				+ records.getPropKey());
+		
+		if (replace)
+			removeSubjects(connection, records, contexts);
+
+		if (records.getStatements() != null) {
+			// statements built directly from the records: no parsing
+			if (contexts != null && contexts.length > 0)
+				connection.add(records.getStatements(), contexts);
+			else
+				connection.add(records.getStatements());
+			
+			logger.info("pushed " + records.getStatements().size()
+					+ " RDF statements into the Sesame repository");
+		}
+		else {
+			if (contexts != null && contexts.length > 0) {
+				// why we duplicate the 'add()' statements:
+				// 'getStatements(null, null, null, true);' is not the same as
+				// 'getStatements(null, null, null, true, (Resource)null);' -
+				// see
+				// http://www.openrdf.org/doc/sesame2/2.3.2/users/userguide.html#d0e1218
+				connection.add(records.getRdfStream(),
+						records.getRdfBaseURI(), records.getRdfFormat(),
+						contexts);
+			} else {
+				connection.add(records.getRdfStream(),
+						records.getRdfBaseURI(), records.getRdfFormat());
+			}
+			
+			logger.info("pushed " + records.getRdfBytes().length
+					+ " bytes of RDF (" + records.getRdfFormat().getName()
+					+ ") into the Sesame repository");
+		}
+
+		if (rdfDumpFn != null && !rdfDumpFn.isEmpty())
+			rdfDump(rdfDumpFn, records);
+	}
+	
 	/**
 	 * Store given record into Sesame repository with given name.
 	 * 
+	 * Records are stored using new connection, committed immediately
+	 * (replacing previous version of the records in one transaction). See
+	 * {@link #openSession(boolean)} for storing multiple batches of records using
+	 * one connection.
+	 * 
 	 * @param records
 	 *            records to store (in RDF format with additional info)
 	 * 
@@ -169,8 +621,6 @@ public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
 	 * @throws OdnRepositoryException
 	 *             when error occurs while connecting to the Sesame repository
 	 *             or when Sesame "add" operation fails
-	 * @throws RepositoryException
-	 *             when initialization fails
 	 */
 	@Override
 	public void store(RdfData records)
@@ -184,36 +634,15 @@ public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
 		RepositoryConnection connection = null;
 
 		try {
-			HTTPRepository repo = getRepo();
+			Repository repo = getRepo();
 			if (repo == null)
 				throw new IllegalArgumentException("Sesame repository not found");
 
-			URI[] contexts = determineRdfContexts(records.getPropKey(),
-					repo.getValueFactory());
-			String rdfDumpFn = srProperties.getProperty(PREFIX_KEY_RDF_DUMP
-					+ records.getPropKey());
-
 			connection = repo.getConnection();
-
-			if (contexts != null && contexts.length > 0) {
-				// why we duplicate the 'add()' statements:
-				// 'getStatements(null, null, null, true);' is not the same as
-				// 'getStatements(null, null, null, true, (Resource)null);' -
-				// see
-				// http://www.openrdf.org/doc/sesame2/2.3.2/users/userguide.html#d0e1218
-				connection.add(new StringReader(records.getRdfData()),
-						records.getRdfBaseURI(), RDFFormat.RDFXML,
-						contexts);
-			} else {
-				connection.add(new StringReader(records.getRdfData()),
-						records.getRdfBaseURI(), RDFFormat.RDFXML);
-			}
-
-			logger.info("pushed " + records.getRdfData().length()
-					+ " characters of RDF into the Sesame repository");
-
-			if (rdfDumpFn != null && !rdfDumpFn.isEmpty())
-				rdfDump(rdfDumpFn, records.getRdfData());
+			connection.begin();
+			add(connection, records, determineStoreContexts(connection,
+					records.getPropKey()), true);
+			connection.commit();
 		} catch (RepositoryException e) {
 			logger.error("repository exception", e);
 			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
@@ -226,6 +655,63 @@ public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
 		} finally {
 			if (connection != null)
 				try {
+					if (connection.isActive())
+						connection.rollback();
+					connection.close();
+				} catch (RepositoryException e) {
+					logger.error("repository exception in 'finally' statement",
+							e);
+				}
+		}
+
+		if (odnRepoException != null)
+			throw odnRepoException;
+	}
+
+	/**
+	 * Remove records with given subjects (see {@link RdfData#getSubjects()},
+	 * statements of given RDF data are ignored) from Sesame repository, in
+	 * one transaction.
+	 * 
+	 * @param records
+	 *            subjects of the records to remove, along with the property
+	 *            key determining the contexts
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnRepositoryException
+	 *             when error occurs while connecting to the Sesame repository
+	 *             or when Sesame "remove" operation fails
+	 */
+	@Override
+	public void remove(RdfData records)
+			throws IllegalArgumentException, OdnRepositoryException {
+
+		if (!enabled)
+			// disabled => nothing to remove
+			return;
+		
+		OdnRepositoryException odnRepoException = null;
+		RepositoryConnection connection = null;
+
+		try {
+			Repository repo = getRepo();
+			if (repo == null)
+				throw new IllegalArgumentException("Sesame repository not found");
+
+			connection = repo.getConnection();
+			connection.begin();
+			removeSubjects(connection, records, determineStoreContexts(
+					connection, records.getPropKey()));
+			connection.commit();
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} finally {
+			if (connection != null)
+				try {
+					if (connection.isActive())
+						connection.rollback();
 					connection.close();
 				} catch (RepositoryException e) {
 					logger.error("repository exception in 'finally' statement",
@@ -237,10 +723,131 @@ public class SesameRepository implements OdnRepositoryStoreInterface<RdfData> {
 			throw odnRepoException;
 	}
 
+	/**
+	 * Open a session keeping one connection to the Sesame repository, in
+	 * which records are stored in explicit transactions.
+	 * 
+	 * Note: Sesame HTTP client sends the whole transaction to the server on
+	 * commit, thus it is held in memory until then (when using remote
+	 * repository).
+	 * 
+	 * In reload mode, records are stored into new version of their contexts,
+	 * invisible to the readers until the session is published. Published
+	 * version then replaces previous one (see {@link SesameContextRegistry}).
+	 * If the session is closed without being published, new version is
+	 * dropped.
+	 * 
+	 * @param reload
+	 *            whether the records stored in the session replace all
+	 *            records stored previously
+	 * @return new session (doing nothing if the repository is disabled)
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when error occurs while connecting to the Sesame repository
+	 *             or when transaction can not be started
+	 */
+	@Override
+	public OdnRepositoryStoreSession<RdfData> openSession(boolean reload)
+			throws OdnRepositoryException {
+
+		if (!enabled)
+			// disabled => do not store anything
+			return new SesameStoreSession(this, null, false);
+		
+		OdnRepositoryException odnRepoException = null;
+		RepositoryConnection connection = null;
+
+		try {
+			connection = getRepo().getConnection();
+			connection.begin();
+			logger.debug("Sesame session opened" + (reload ? " (reload)" : ""));
+			return new SesameStoreSession(this, connection, reload);
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		}
+
+		if (connection != null)
+			try {
+				connection.close();
+			} catch (RepositoryException e) {
+				logger.error("repository exception while closing connection",
+						e);
+			}
+
+		throw odnRepoException;
+	}
+
+	SesameContextRegistry getContextRegistry() {
+		return contextRegistry;
+	}
+	
+	/**
+	 * Drop given contexts (i.e. remove all statements in them) in the
+	 * background, one after another.
+	 * 
+	 * @param contexts
+	 *            contexts to drop
+	 */
+	synchronized void dropContexts(final List<URI> contexts) {
+		if (contexts.isEmpty())
+			return;
+		
+		if (dropExecutor == null)
+			dropExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "sesame-context-drop");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		
+		dropExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				RepositoryConnection connection = null;
+				try {
+					long timeStart = System.currentTimeMillis();
+					connection = getRepo().getConnection();
+					connection.clear(contexts.toArray(new Resource[contexts.size()]));
+					logger.info("dropped contexts " + contexts + " in "
+							+ (System.currentTimeMillis() - timeStart) + " ms");
+				} catch (RepositoryException e) {
+					logger.error("repository exception while dropping contexts "
+							+ contexts, e);
+				} finally {
+					if (connection != null)
+						try {
+							connection.close();
+						} catch (RepositoryException e) {
+							logger.error("repository exception in 'finally' statement",
+									e);
+						}
+				}
+			}
+		});
+	}
+	
 	@Override
 	public void shutDown() throws OdnRepositoryException {
 		RepositoryException repoException = null;
 		
+		synchronized (this) {
+			if (dropExecutor != null) {
+				dropExecutor.shutdown();
+				try {
+					if (!dropExecutor.awaitTermination(
+							DROP_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+						logger.warn("dropping of contexts not finished before shutdown");
+				} catch (InterruptedException e) {
+					logger.warn("interrupted while waiting for contexts being dropped");
+					Thread.currentThread().interrupt();
+				}
+				dropExecutor = null;
+			}
+		}
+		
 		try {
 			if (sesameRepo != null)
 				sesameRepo.shutDown();
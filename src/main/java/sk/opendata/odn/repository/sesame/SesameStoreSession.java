@@ -0,0 +1,247 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository.sesame;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.openrdf.model.URI;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sk.opendata.odn.repository.OdnRepositoryException;
+import sk.opendata.odn.repository.OdnRepositoryStoreSession;
+
+/**
+ * Session storing RDF data into Sesame repository using one connection and
+ * explicit transactions (see {@link SesameRepository#openSession(boolean)}).
+ * 
+ * Contexts to store the records into are determined once for each kind of
+ * records (i.e. their property key). In reload mode, new version of the
+ * contexts is created for each of them (see {@link SesameContextRegistry}).
+ */
+public class SesameStoreSession implements OdnRepositoryStoreSession<RdfData> {
+
+	private static Logger logger = LoggerFactory.getLogger(SesameStoreSession.class);
+	private SesameRepository repository;
+	// note: 'null' when the repository is disabled
+	private RepositoryConnection connection;
+	private boolean reload;
+	private int storeCount = 0;
+	// note: 'null' value means "no context"
+	private Map<String, URI[]> contexts = new HashMap<String, URI[]>();
+	// versions created by reload, not published yet
+	private Map<String, URI> versions = new HashMap<String, URI>();
+
+	SesameStoreSession(SesameRepository repository,
+			RepositoryConnection connection, boolean reload) {
+		this.repository = repository;
+		this.connection = connection;
+		this.reload = reload;
+	}
+
+	private URI[] getContexts(String key) throws RepositoryException {
+		if (contexts.containsKey(key))
+			return contexts.get(key);
+
+		URI[] keyContexts;
+		if (!reload)
+			keyContexts = repository.determineStoreContexts(connection, key);
+		else if (repository.determineRdfContexts(key,
+				connection.getValueFactory()) == null) {
+			logger.warn("no contexts configured for '" + key
+					+ "', records are not reloaded but added");
+			keyContexts = null;
+		}
+		else {
+			URI version = repository.getContextRegistry().createVersion(key,
+					connection.getValueFactory());
+			versions.put(key, version);
+			keyContexts = new URI[] { version };
+			logger.info("reloading '" + key + "' into " + version);
+		}
+
+		contexts.put(key, keyContexts);
+		return keyContexts;
+	}
+
+	@Override
+	public void store(RdfData records) throws IllegalArgumentException,
+			OdnRepositoryException {
+
+		if (connection == null)
+			return;
+
+		try {
+			URI[] keyContexts = getContexts(records.getPropKey());
+			// new version created by reload is empty, nothing to replace
+			repository.add(connection, records, keyContexts,
+					!versions.containsKey(records.getPropKey()));
+			storeCount++;
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		} catch (RDFParseException e) {
+			logger.error("RDF parser exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		} catch (IOException e) {
+			logger.error("IO exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void commit() throws OdnRepositoryException {
+		if (connection == null)
+			return;
+
+		try {
+			long timeStart = System.currentTimeMillis();
+			connection.commit();
+			logger.info("committed " + storeCount
+					+ " batches into the Sesame repository in "
+					+ (System.currentTimeMillis() - timeStart) + " ms");
+			storeCount = 0;
+			connection.begin();
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void rollback() throws OdnRepositoryException {
+		if (connection == null)
+			return;
+
+		try {
+			if (connection.isActive())
+				connection.rollback();
+			if (storeCount > 0)
+				logger.info("rolled back " + storeCount
+						+ " batches not committed into the Sesame repository");
+			storeCount = 0;
+			connection.begin();
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Commit remaining records and, in reload mode, publish new versions of
+	 * the contexts in place of previous ones, which are then dropped in the
+	 * background.
+	 * 
+	 * When the records are published for the first time, records stored
+	 * into configured contexts before are removed from them (see
+	 * {@link SesameRepository#clearConfiguredContexts(RepositoryConnection, String, URI)}),
+	 * in the same transaction.
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when commit fails or when some of the new versions is not
+	 *             valid (see
+	 *             {@link SesameContextRegistry#validate(RepositoryConnection, String, URI)}
+	 *             )
+	 */
+	@Override
+	public void publish() throws OdnRepositoryException {
+		commit();
+
+		if (connection == null || versions.isEmpty())
+			return;
+
+		SesameContextRegistry registry = repository.getContextRegistry();
+		Vector<URI> previousVersions = new Vector<URI>();
+
+		try {
+			for (Map.Entry<String, URI> version : versions.entrySet())
+				registry.validate(connection, version.getKey(),
+						version.getValue());
+
+			for (Map.Entry<String, URI> version : versions.entrySet()) {
+				List<URI> previous = registry.publish(connection,
+						version.getKey(), version.getValue(),
+						repository.determineRdfContexts(version.getKey(),
+								connection.getValueFactory()));
+				if (previous.isEmpty())
+					// first reload: records stored before are no longer
+					// read from configured contexts, clear them
+					repository.clearConfiguredContexts(connection,
+							version.getKey(), version.getValue());
+				previousVersions.addAll(previous);
+				logger.info("published " + version.getValue() + " in place of "
+						+ (previous.isEmpty() ? "configured contexts" : previous));
+			}
+			connection.commit();
+			versions.clear();
+			connection.begin();
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+
+		repository.dropContexts(previousVersions);
+	}
+
+	@Override
+	public void close() throws OdnRepositoryException {
+		if (connection == null)
+			return;
+
+		OdnRepositoryException odnRepoException = null;
+
+		try {
+			if (connection.isActive()) {
+				connection.rollback();
+				if (storeCount > 0)
+					logger.warn("session closed, " + storeCount
+							+ " batches not committed into the Sesame repository rolled back");
+			}
+		} catch (RepositoryException e) {
+			logger.error("repository exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} finally {
+			try {
+				connection.close();
+			} catch (RepositoryException e) {
+				logger.error("repository exception in 'finally' statement", e);
+			}
+			connection = null;
+		}
+
+		if (!versions.isEmpty()) {
+			logger.warn("reload not published, dropping "
+					+ versions.values());
+			repository.dropContexts(new Vector<URI>(versions.values()));
+			versions.clear();
+		}
+
+		if (odnRepoException != null)
+			throw odnRepoException;
+	}
+
+}
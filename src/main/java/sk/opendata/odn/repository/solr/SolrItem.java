@@ -18,18 +18,17 @@
 
 package sk.opendata.odn.repository.solr;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Date;
+import java.util.List;
+import java.util.Vector;
 
-import org.apache.commons.beanutils.BeanUtils;
-import org.apache.commons.beanutils.PropertyUtils;
-import org.apache.commons.lang3.builder.CompareToBuilder;
-import org.apache.solr.client.solrj.beans.Field;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
 
 import sk.opendata.odn.model.AbstractRecord;
-import sk.opendata.odn.model.Currency;
+import sk.opendata.odn.repository.AbstractItem;
+import sk.opendata.odn.repository.ItemMapper;
 import sk.opendata.odn.serialization.OdnSerializationException;
 
 /**
@@ -44,8 +43,10 @@ import sk.opendata.odn.serialization.OdnSerializationException;
  * <li>data are harvested, parsed, ... and stored in a relevant bean
  * {@code sk.opendata.odn.model.<Some>Record}</li>
  * <li>{@code SolrItem} is created from the "record bean" using
- * appropriate {@code SolrItem} constructor</li>
- * <li>"SOLR items" are collected in list and pushed to SOLR</li>
+ * {@code ItemMapper} (fields are shared with other repositories, see
+ * {@code AbstractItem})</li>
+ * <li>"SOLR items" are collected in list, converted into SOLR documents and
+ * pushed to SOLR</li>
  * </ol>
  *
  * TODO:
@@ -67,94 +68,13 @@ import sk.opendata.odn.serialization.OdnSerializationException;
  * 
  * Hint: Maybe {@code @FieldObject} annotation in upcoming SOLR 3.6.0 will help.
  */
-public class SolrItem implements Comparable<SolrItem> {
+public class SolrItem extends AbstractItem {
 	
-	private static Logger logger = LoggerFactory.getLogger(SolrItem.class);
-	
-	// common fields:
-	@Field
-	private String id;
-	@Field
-	private String type;	// TODO: Use 'SolrItemType' - see TODO note in the class javadoc
-	// "organization record" fields: should match what is available in
-	// 'OrganizationRecord' and we need only those fields which are going to be
-	// used in SOLR index
-	// note: for now, to avoid changing schema, we're taking advantage of
-	// dynamic field definitions.
-	@Field
-	private String name;
-	@Field("legal_form")
-	private String legalForm;
-	@Field
-	private String seat;
-	@Field
-	private String ico;
-	@Field("date_from")
-	private Date dateFrom;
-	@Field("date_to")
-	private Date dateTo;
-	// "political party donation record" fields: should match what is available
-	// in 'PoliticalPartyDonationRecord' and we need only those fields which are
-	// going to be used in SOLR index
-	// note: for now, to avoid changing schema, we're taking advantage of
-	// dynamic field definitions.
-	@Field("donor_name")
-	private String donorName;
-	@Field("donor_surname")
-	private String donorSurname;
-	//private String donorCompany;	- we will map it to 'name' from OrganizationRecord as it is organization name too
-	//private String donorIco;	- we will map it to 'ico' from OrganizationRecord as it is ICO of organization too
-	@Field("donation_value")
-	private float donationValue;
-	@Field
-	private String currency;	// TODO: Use 'Currency' - see TODO note in the class javadoc
-	@Field("donor_address")
-	private String donorAddress;
-	@Field("donor_psc")
-	private String donorPsc;	// TODO: we use "string" in SOLR schema => make sure we use same form by filtering out spaces (i.e. to prevent cases like "058 01" and "05801" being considered different PSC)
-	@Field("donor_city")
-	private String donorCity;
-	@Field("recipient_party")
-	private String recipientParty;
-	@Field("year")
-	private String year;
-	@Field("accept_date")
-	private Date acceptDate;
-	@Field("note")
-	private String note;
-	// "procurement record" fields: should match what is available in
-	// 'ProcurementRecord' and we need only those fields which are going to be
-	// used in SOLR index
-	// note: for now, to avoid changing schema, we're taking advantage of
-	// dynamic field definitions.
-	//private String note;	- same name as field in PoliticalPartyDonationRecord
-	//private String year;	- same name as field in PoliticalPartyDonationRecord
-	@Field("bulletin_id")
-	private String bulletinId;
-	@Field("procurement_id")
-	private String procurementId;
-	@Field("procurement_subject")
-	private String procurementSubject;
-	@Field("price")
-	private float price;
-	//private Currency currency;	- same name as field in PoliticalPartyDonationRecord
-	@Field("vat_included")
-	private boolean isVatIncluded;
-	@Field("customer_ico")
-	private String customerIco;
-	@Field("supplier_ico")
-	private String supplierIco;
-	
-
 	/**
 	 * Create SOLR item from given record.
 	 * 
 	 * @param source
 	 *            record - source of data
-	 * @param type
-	 *            type of the record
-	 * @param id
-	 *            ID of the record
 	 * 
 	 * @return SOLR item created from given data
 	 * 
@@ -164,261 +84,155 @@ public class SolrItem implements Comparable<SolrItem> {
 	public static SolrItem createSolrItem(AbstractRecord source)
 			throws OdnSerializationException {
 
-		SolrItem solrItem = null;
-		
-		try {
-			solrItem = new SolrItem();
-			PropertyUtils.copyProperties(solrItem, source);
-			solrItem.type = SolrItemType.getType(source.getClass()).toString();
-			solrItem.id = source.getId();
-		} catch (IllegalAccessException e) {
-			logger.error("illegal access exception", e);
-			throw new OdnSerializationException(e.getMessage(), e);
-		} catch (InvocationTargetException e) {
-			logger.error("invocation target exception", e);
-			throw new OdnSerializationException(e.getMessage(), e);
-		} catch (NoSuchMethodException e) {
-			logger.error("no such method exception", e);
-			throw new OdnSerializationException(e.getMessage(), e);
-		}
+		SolrItem solrItem = new SolrItem();
+		ItemMapper.copyFields(source, solrItem);
+		solrItem.setType(SolrItemType.getType(source.getClass()));
 		
 		return solrItem;
 	}
 	
-	
-	public String toString() {
-		try {
-			return BeanUtils.describe(this).toString();
-		} catch (IllegalAccessException e) {
-			logger.error("illegal access exception", e);
-		} catch (InvocationTargetException e) {
-			logger.error("invocation target exception", e);
-		} catch (NoSuchMethodException e) {
-			logger.error("no such method exception", e);
-		}
+	/**
+	 * Convert this item into SOLR document.
+	 * 
+	 * Note: Same as what {@code DocumentObjectBinder} does with the
+	 * {@code @Field} annotations, just without the reflection.
+	 * 
+	 * @return SOLR document with the fields of this item
+	 */
+	public SolrInputDocument toSolrInputDocument() {
+		SolrInputDocument document = new SolrInputDocument();
 		
-		return super.toString();
-	}
-
-
-	@Override
-	public int compareTo(SolrItem o) {
-		return CompareToBuilder.reflectionCompare(this, o);
-	}
-
-
-	public String getId() {
-		return id;
-	}
-
-	public void setId(String id) {
-		this.id = id;
-	}
-
-	public SolrItemType getType() {
-		return SolrItemType.valueOf(type);
-	}
-
-	public void setType(SolrItemType type) {
-		this.type = type.toString();
-	}
-
-	public String getName() {
-		return name;
-	}
-
-	public void setName(String name) {
-		this.name = name;
-	}
-
-	public String getLegalForm() {
-		return legalForm;
-	}
-
-	public void setLegalForm(String legalForm) {
-		this.legalForm = legalForm;
-	}
-
-	public String getSeat() {
-		return seat;
-	}
-
-	public void setSeat(String seat) {
-		this.seat = seat;
-	}
-
-	public String getIco() {
-		return ico;
-	}
-
-	public void setIco(String ico) {
-		this.ico = ico;
-	}
-
-	public Date getDateFrom() {
-		return dateFrom;
-	}
-
-	public void setDateFrom(Date dateFrom) {
-		this.dateFrom = dateFrom;
-	}
-
-	public Date getDateTo() {
-		return dateTo;
-	}
-
-	public void setDateTo(Date dateTo) {
-		this.dateTo = dateTo;
-	}
-
-	public String getDonorName() {
-		return donorName;
-	}
-
-	public void setDonorName(String donorName) {
-		this.donorName = donorName;
-	}
-
-	public String getDonorSurname() {
-		return donorSurname;
-	}
-
-	public void setDonorSurname(String donorSurname) {
-		this.donorSurname = donorSurname;
-	}
-
-	public float getDonationValue() {
-		return donationValue;
-	}
-
-	public void setDonationValue(float donationValue) {
-		this.donationValue = donationValue;
-	}
-
-	public String getDonorAddress() {
-		return donorAddress;
-	}
-
-	public void setDonorAddress(String donorAddress) {
-		this.donorAddress = donorAddress;
-	}
-
-	public String getDonorPsc() {
-		return donorPsc;
-	}
-
-	public void setDonorPsc(String donorPsc) {
-		this.donorPsc = donorPsc;
-	}
-
-	public String getDonorCity() {
-		return donorCity;
-	}
-
-	public void setDonorCity(String donorCity) {
-		this.donorCity = donorCity;
-	}
-
-	public String getRecipientParty() {
-		return recipientParty;
-	}
-
-	public void setRecipientParty(String recipientParty) {
-		this.recipientParty = recipientParty;
-	}
-
-	public String getYear() {
-		return year;
-	}
-
-	public void setYear(String year) {
-		this.year = year;
-	}
-
-	public Date getAcceptDate() {
-		return acceptDate;
-	}
-
-	public void setAcceptDate(Date acceptDate) {
-		this.acceptDate = acceptDate;
-	}
-
-	public String getNote() {
-		return note;
-	}
-
-	public void setNote(String note) {
-		this.note = note;
-	}
-
-	public String getBulletinId() {
-		return bulletinId;
-	}
-
-	public void setBulletinId(String bulletinId) {
-		this.bulletinId = bulletinId;
-	}
-
-	public String getProcurementId() {
-		return procurementId;
-	}
-
-	public void setProcurementId(String procurementId) {
-		this.procurementId = procurementId;
-	}
-
-	public String getProcurementSubject() {
-		return procurementSubject;
-	}
-
-	public void setProcurementSubject(String procurementSubject) {
-		this.procurementSubject = procurementSubject;
-	}
-
-	public float getPrice() {
-		return price;
-	}
-
-	public void setPrice(float price) {
-		this.price = price;
-	}
-
-	public Currency getCurrency() {
-		if (currency == null)
-			return null;
+		addField(document, FIELD_ID, getId());
+		addField(document, FIELD_TYPE, getTypeName());
+		addField(document, FIELD_NAME, getName());
+		addField(document, FIELD_LEGAL_FORM, getLegalForm());
+		addField(document, FIELD_SEAT, getSeat());
+		addField(document, FIELD_ICO, getIco());
+		addField(document, FIELD_DATE_FROM, getDateFrom());
+		addField(document, FIELD_DATE_TO, getDateTo());
+		addField(document, FIELD_DONOR_NAME, getDonorName());
+		addField(document, FIELD_DONOR_SURNAME, getDonorSurname());
+		document.addField(FIELD_DONATION_VALUE_CENTS, getDonationValueCents());
+		addField(document, FIELD_CURRENCY, getCurrencyName());
+		addField(document, FIELD_DONOR_ADDRESS, getDonorAddress());
+		addField(document, FIELD_DONOR_PSC, getDonorPsc());
+		addField(document, FIELD_DONOR_CITY, getDonorCity());
+		addField(document, FIELD_RECIPIENT_PARTY, getRecipientParty());
+		addField(document, FIELD_YEAR, getYear());
+		addField(document, FIELD_ACCEPT_DATE, getAcceptDate());
+		addField(document, FIELD_NOTE, getNote());
+		addField(document, FIELD_BULLETIN_ID, getBulletinId());
+		addField(document, FIELD_PROCUREMENT_ID, getProcurementId());
+		addField(document, FIELD_PROCUREMENT_SUBJECT, getProcurementSubject());
+		document.addField(FIELD_PRICE_CENTS, getPriceCents());
+		document.addField(FIELD_VAT_INCLUDED, isVatIncluded());
+		addField(document, FIELD_CUSTOMER_ICO, getCustomerIco());
+		addField(document, FIELD_SUPPLIER_ICO, getSupplierIco());
 		
-		return Currency.parse(currency);
+		return document;
 	}
-
-	public void setCurrency(Currency currency) {
-		if (currency == null)
-			this.currency = null;
-		else
-			this.currency = currency.toString();
+	
+	private static void addField(SolrInputDocument document, String name,
+			Object value) {
+		
+		// note: SOLR does not store 'null' values anyway
+		if (value != null)
+			document.addField(name, value);
 	}
-
-	public boolean isVatIncluded() {
-		return isVatIncluded;
+	
+	/**
+	 * Create SOLR item from SOLR document (as returned by a query).
+	 * 
+	 * Note: Same as what {@code DocumentObjectBinder} does with the
+	 * {@code @Field} annotations, just without the reflection.
+	 * 
+	 * @param document
+	 *            SOLR document
+	 * 
+	 * @return SOLR item with the fields of given document
+	 */
+	public static SolrItem createSolrItem(SolrDocument document) {
+		SolrItem solrItem = new SolrItem();
+		
+		solrItem.setId((String) document.getFirstValue(FIELD_ID));
+		solrItem.setTypeName((String) document.getFirstValue(FIELD_TYPE));
+		solrItem.setName((String) document.getFirstValue(FIELD_NAME));
+		solrItem.setLegalForm((String) document.getFirstValue(FIELD_LEGAL_FORM));
+		solrItem.setSeat((String) document.getFirstValue(FIELD_SEAT));
+		solrItem.setIco((String) document.getFirstValue(FIELD_ICO));
+		solrItem.setDateFrom((Date) document.getFirstValue(FIELD_DATE_FROM));
+		solrItem.setDateTo((Date) document.getFirstValue(FIELD_DATE_TO));
+		solrItem.setDonorName((String) document.getFirstValue(FIELD_DONOR_NAME));
+		solrItem.setDonorSurname((String) document.getFirstValue(FIELD_DONOR_SURNAME));
+		Long donationValueCents = (Long) document.getFirstValue(FIELD_DONATION_VALUE_CENTS);
+		if (donationValueCents != null)
+			solrItem.setDonationValueCents(donationValueCents);
+		solrItem.setCurrencyName((String) document.getFirstValue(FIELD_CURRENCY));
+		solrItem.setDonorAddress((String) document.getFirstValue(FIELD_DONOR_ADDRESS));
+		solrItem.setDonorPsc((String) document.getFirstValue(FIELD_DONOR_PSC));
+		solrItem.setDonorCity((String) document.getFirstValue(FIELD_DONOR_CITY));
+		solrItem.setRecipientParty((String) document.getFirstValue(FIELD_RECIPIENT_PARTY));
+		solrItem.setYear((String) document.getFirstValue(FIELD_YEAR));
+		solrItem.setAcceptDate((Date) document.getFirstValue(FIELD_ACCEPT_DATE));
+		solrItem.setNote((String) document.getFirstValue(FIELD_NOTE));
+		solrItem.setBulletinId((String) document.getFirstValue(FIELD_BULLETIN_ID));
+		solrItem.setProcurementId((String) document.getFirstValue(FIELD_PROCUREMENT_ID));
+		solrItem.setProcurementSubject((String) document.getFirstValue(FIELD_PROCUREMENT_SUBJECT));
+		Long priceCents = (Long) document.getFirstValue(FIELD_PRICE_CENTS);
+		if (priceCents != null)
+			solrItem.setPriceCents(priceCents);
+		Boolean isVatIncluded = (Boolean) document.getFirstValue(FIELD_VAT_INCLUDED);
+		if (isVatIncluded != null)
+			solrItem.setVatIncluded(isVatIncluded);
+		solrItem.setCustomerIco((String) document.getFirstValue(FIELD_CUSTOMER_ICO));
+		solrItem.setSupplierIco((String) document.getFirstValue(FIELD_SUPPLIER_ICO));
+		
+		return solrItem;
 	}
-
-	public void setVatIncluded(boolean isVatIncluded) {
-		this.isVatIncluded = isVatIncluded;
+	
+	/**
+	 * Create SOLR items from SOLR documents (i.e. replacement of
+	 * {@code QueryResponse.getBeans(SolrItem.class)}).
+	 * 
+	 * @param documents
+	 *            SOLR documents
+	 * 
+	 * @return SOLR items with the fields of given documents
+	 */
+	public static List<SolrItem> createSolrItems(SolrDocumentList documents) {
+		Vector<SolrItem> solrItems = new Vector<SolrItem>(documents.size());
+		for (SolrDocument document : documents)
+			solrItems.add(createSolrItem(document));
+		
+		return solrItems;
 	}
-
-	public String getCustomerIco() {
-		return customerIco;
+	
+	/**
+	 * Convert given items into SOLR documents.
+	 * 
+	 * @param solrItems
+	 *            SOLR items
+	 * 
+	 * @return SOLR documents with the fields of given items
+	 */
+	public static List<SolrInputDocument> toSolrInputDocuments(
+			List<SolrItem> solrItems) {
+		
+		Vector<SolrInputDocument> documents = new Vector<SolrInputDocument>(
+				solrItems.size());
+		for (SolrItem solrItem : solrItems)
+			documents.add(solrItem.toSolrInputDocument());
+		
+		return documents;
 	}
 
-	public void setCustomerIco(String customerIco) {
-		this.customerIco = customerIco;
-	}
 
-	public String getSupplierIco() {
-		return supplierIco;
+	public SolrItemType getType() {
+		return SolrItemType.valueOf(getTypeName());
 	}
 
-	public void setSupplierIco(String supplierIco) {
-		this.supplierIco = supplierIco;
+	public void setType(SolrItemType type) {
+		setTypeName(type.toString());
 	}
 
 }
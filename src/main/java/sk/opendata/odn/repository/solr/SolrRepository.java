@@ -22,33 +22,90 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Vector;
 
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
-import org.openrdf.repository.RepositoryException;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import sk.opendata.odn.repository.OdnRepositoryException;
-import sk.opendata.odn.repository.OdnRepositoryStoreInterface;
+import sk.opendata.odn.repository.OdnRepositoryRemoveInterface;
+import sk.opendata.odn.repository.OdnRepositoryRetrieveInterface;
+import sk.opendata.odn.repository.OdnRepositorySessionInterface;
+import sk.opendata.odn.repository.OdnRepositoryStoreSession;
 import sk.opendata.odn.utils.ApplicationProperties;
 
 /**
  * SOLR repository for Open Data Node.
  */
-public class SolrRepository implements OdnRepositoryStoreInterface<List<SolrItem>> {
+public class SolrRepository implements OdnRepositorySessionInterface<List<SolrItem>>, OdnRepositoryRetrieveInterface<SolrItem>, OdnRepositoryRemoveInterface<Collection<String>> {
 
 	public final static String SOLR_REPOSITORY_PROPERTIES_NAME = "/repo-solr.properties";
 	public final static String KEY_DEBUG_DUMP = "solr.debug.dump";
 	public final static String KEY_REPO_URL = "solr.repo.url";
 	public final static String KEY_REPO_ENABLED = "solr.repo.enabled";
+	public final static String KEY_COMMIT_WITHIN = "solr.commit.within_ms";
+	public final static String KEY_COMMIT_DURING_HARVEST = "solr.commit.during_harvest";
+	public final static String KEY_STREAMING_ENABLED = "solr.streaming.enabled";
+	public final static String KEY_STREAMING_QUEUE_SIZE = "solr.streaming.queue_size";
+	public final static String KEY_STREAMING_THREADS = "solr.streaming.threads";
+	public final static String KEY_STREAMING_JAVABIN = "solr.streaming.javabin";
+	/**
+	 * How the documents are committed while harvesting (see
+	 * {@link SolrRepository#openSession(boolean)}). At the end of the harvest,
+	 * documents are always committed with a hard commit.
+	 * 
+	 * Note: Once the session is committed, harvester commits the fingerprints
+	 * of the documents and does not store them again, thus session commit
+	 * has to be durable (relying on 'commitWithin' is not enough, documents
+	 * not committed yet are lost if SOLR crashes).
+	 */
+	public enum CommitPolicy {
+		/**
+		 * soft commit: documents visible, but not flushed to the disk, thus
+		 * durable only when the server keeps transaction log ('updateLog',
+		 * SOLR 4.0 and newer)
+		 */
+		SOFT,
+		/** hard commit: documents flushed to the disk and visible */
+		HARD;
+	}
+	
+	/**
+	 * Maximum number of IDs we put into one query. Note: SOLR by default
+	 * allows at most 1024 clauses in one boolean query (see
+	 * 'maxBooleanClauses' in 'solrconfig.xml').
+	 */
+	public final static int RETRIEVE_BATCH_SIZE = 1000;
 
 	private static Logger logger = LoggerFactory.getLogger(SolrRepository.class);
 	private ApplicationProperties srProperties = null;
 	private boolean enabled = false;
 	private SolrServer solrServer = null;
+	// note: same as 'solrServer' unless streaming is enabled
+	private SolrServer updateServer = null;
+	private ConcurrentUpdateSolrServer streamingServer = null;
+	private List<Throwable> streamingErrors = new Vector<Throwable>();
+	private int commitWithin = 0;
+	private CommitPolicy commitPolicy = CommitPolicy.HARD;
 
 	private static SolrRepository instance = null;
 
@@ -68,12 +125,60 @@ public class SolrRepository implements OdnRepositoryStoreInterface<List<SolrItem
 		if (enabled) {
 			String solrServerUrl = srProperties.getProperty(KEY_REPO_URL);
 			solrServer = new HttpSolrServer(solrServerUrl);
-			logger.info("SOLR index '" + solrServerUrl + "' initialized");
+			updateServer = solrServer;
+			if (Boolean.valueOf(srProperties.getProperty(KEY_STREAMING_ENABLED)))
+				initStreaming(solrServerUrl);
+			commitWithin = Integer.valueOf(srProperties.getProperty(
+					KEY_COMMIT_WITHIN, "0"));
+			String commitPolicyProperty = srProperties
+					.getProperty(KEY_COMMIT_DURING_HARVEST);
+			if (commitPolicyProperty != null && !commitPolicyProperty.isEmpty())
+				commitPolicy = CommitPolicy.valueOf(commitPolicyProperty.trim()
+						.toUpperCase());
+			logger.info("SOLR index '" + solrServerUrl + "' initialized (commit within "
+					+ commitWithin + " ms, " + commitPolicy.toString().toLowerCase()
+					+ " commits during harvest)");
 		}
 		else
 			logger.info("SOLR index disabled");
 	}
 
+	/**
+	 * Initialize streaming of the updates: documents are queued and sent to
+	 * SOLR by multiple threads, each of them streaming the queued documents
+	 * in one request. Errors are collected and reported by
+	 * {@link #flush()}.
+	 * 
+	 * @param solrServerUrl
+	 *            URL of the SOLR index
+	 * 
+	 * @throws MalformedURLException
+	 *             when the URL is not valid
+	 */
+	private void initStreaming(String solrServerUrl)
+			throws MalformedURLException {
+		
+		int queueSize = Integer.valueOf(srProperties.getProperty(
+				KEY_STREAMING_QUEUE_SIZE, "20"));
+		int threadCount = Integer.valueOf(srProperties.getProperty(
+				KEY_STREAMING_THREADS, "4"));
+		
+		streamingServer = new ConcurrentUpdateSolrServer(solrServerUrl,
+				queueSize, threadCount) {
+			@Override
+			public void handleError(Throwable e) {
+				logger.error("SOLR streaming update failed", e);
+				streamingErrors.add(e);
+			}
+		};
+		if (Boolean.valueOf(srProperties.getProperty(KEY_STREAMING_JAVABIN)))
+			streamingServer.setRequestWriter(new BinaryRequestWriter());
+		updateServer = streamingServer;
+		
+		logger.info("SOLR updates streamed using " + threadCount
+				+ " threads (queue size " + queueSize + ")");
+	}
+	
 	/**
 	 * Get the instance of SOLR repository singleton.
 	 * 
@@ -104,9 +209,118 @@ public class SolrRepository implements OdnRepositoryStoreInterface<List<SolrItem
 		}
 	}
 
+	/**
+	 * Add given records into SOLR index, using 'commitWithin' if configured.
+	 * 
+	 * @param records
+	 *            records to add (as beans)
+	 * 
+	 * @throws SolrServerException
+	 *             when SOLR "add" operation fails
+	 * @throws IOException
+	 *             when error occurs while connecting to the SOLR index
+	 */
+	void add(List<SolrItem> records) throws SolrServerException, IOException {
+		// report failures of previous updates as soon as we know about them
+		checkStreamingErrors();
+		
+		// note: converting the items ourselves, 'addBeans()' would reflect
+		// over the '@Field' annotations of each item
+		List<SolrInputDocument> documents = SolrItem.toSolrInputDocuments(records);
+		if (commitWithin > 0)
+			updateServer.add(documents, commitWithin);
+		else
+			updateServer.add(documents);
+
+		logger.info((streamingServer != null ? "queued " : "pushed ")
+				+ records.size() + " documents of into the SOLR index");
+
+		if (Boolean.valueOf(srProperties.getProperty(KEY_DEBUG_DUMP)))
+			debugDump(records);
+	}
+	
+	/**
+	 * Throw the errors collected while streaming the updates (if any) and
+	 * forget them.
+	 * 
+	 * @throws SolrServerException
+	 *             when some of the updates failed
+	 */
+	private void checkStreamingErrors() throws SolrServerException {
+		if (streamingErrors.isEmpty())
+			return;
+		
+		Throwable firstError;
+		int errorCount;
+		synchronized (streamingErrors) {
+			firstError = streamingErrors.get(0);
+			errorCount = streamingErrors.size();
+			streamingErrors.clear();
+		}
+		
+		throw new SolrServerException(errorCount
+				+ " streaming update(s) failed, first error: "
+				+ firstError.getMessage(), firstError);
+	}
+	
+	/**
+	 * Wait until all queued updates are sent to SOLR (when streaming).
+	 * 
+	 * @throws SolrServerException
+	 *             when some of the updates failed
+	 */
+	void flush() throws SolrServerException {
+		if (streamingServer == null)
+			return;
+		
+		streamingServer.blockUntilFinished();
+		checkStreamingErrors();
+	}
+	
+	/**
+	 * Commit added documents (waiting for queued updates first).
+	 * 
+	 * @param soft
+	 *            whether to perform soft commit (documents become visible to
+	 *            searchers, but are not flushed to the disk)
+	 * 
+	 * @throws SolrServerException
+	 *             when SOLR "commit" operation fails
+	 * @throws IOException
+	 *             when error occurs while connecting to the SOLR index
+	 */
+	void commit(boolean soft) throws SolrServerException, IOException {
+		long timeStart = System.currentTimeMillis();
+		
+		flush();
+		
+		if (soft) {
+			UpdateRequest request = new UpdateRequest();
+			request.setAction(AbstractUpdateRequest.ACTION.COMMIT, false, false);
+			// note: SOLR older than 4.0 does not know soft commits, it
+			// ignores the parameter and performs hard commit
+			request.setParam("softCommit", "true");
+			request.process(solrServer);
+		}
+		else
+			solrServer.commit();
+		
+		logger.info((soft ? "soft" : "hard") + " commit of SOLR index took "
+				+ (System.currentTimeMillis() - timeStart) + " ms");
+	}
+	
+	CommitPolicy getCommitPolicy() {
+		return commitPolicy;
+	}
+	
 	/**
 	 * Store given record into SOLR index with given name.
 	 * 
+	 * Documents are committed within configured time ('commitWithin') or, if
+	 * not configured, immediately (using hard commit). See
+	 * {@link #openSession(boolean)} for storing multiple batches of records
+	 * without committing each of them.
+	 * 
 	 * @param records
 	 *            records to store (as beans)
 	 * 
@@ -114,9 +328,7 @@ public class SolrRepository implements OdnRepositoryStoreInterface<List<SolrItem
 	 *             if repository with given name does not exists
 	 * @throws OdnRepositoryException
 	 *             when error occurs while connecting to the SOLR index
-	 *             or when SOLR XXX "add" XXX operation fails
-	 * @throws RepositoryException
-	 *             when initialization fails
+	 *             or when SOLR "add" operation fails
 	 */
 	@Override
 	public void store(List<SolrItem> records)
@@ -129,14 +341,62 @@ public class SolrRepository implements OdnRepositoryStoreInterface<List<SolrItem
 		OdnRepositoryException odnRepoException = null;
 
 		try {
-			solrServer.addBeans(records);
-			solrServer.commit();
+			add(records);
+			if (commitWithin <= 0)
+				commit(false);
+			else
+				flush();
+		} catch (SolrServerException e) {
+			logger.error("SOLR server exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		} catch (IOException e) {
+			logger.error("SOLR server exception", e);
+			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
+		}
 
-			logger.info("pushed " + records.size()
-					+ " documents of into the SOLR index");
+		if (odnRepoException != null)
+			throw odnRepoException;
+	}
 
-			if (Boolean.valueOf(srProperties.getProperty(KEY_DEBUG_DUMP)))
-				debugDump(records);
+	/**
+	 * Remove documents with given IDs from SOLR index, using one request.
+	 * 
+	 * Removal is committed same way as {@link #store(List)} commits added
+	 * documents.
+	 * 
+	 * @param ids
+	 *            IDs of the records to remove
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnRepositoryException
+	 *             when error occurs while connecting to the SOLR index
+	 *             or when SOLR "delete" operation fails
+	 */
+	@Override
+	public void remove(Collection<String> ids)
+			throws IllegalArgumentException, OdnRepositoryException {
+		
+		if (!enabled || ids.isEmpty())
+			// disabled => nothing to remove
+			return;
+		
+		OdnRepositoryException odnRepoException = null;
+
+		try {
+			UpdateRequest request = new UpdateRequest();
+			request.deleteById(new ArrayList<String>(ids));
+			if (commitWithin > 0)
+				request.setCommitWithin(commitWithin);
+			request.process(updateServer);
+			
+			if (commitWithin <= 0)
+				commit(false);
+			else
+				flush();
+			
+			logger.info("removed " + ids.size()
+					+ " documents from the SOLR index");
 		} catch (SolrServerException e) {
 			logger.error("SOLR server exception", e);
 			odnRepoException = new OdnRepositoryException(e.getMessage(), e);
@@ -149,8 +409,118 @@ public class SolrRepository implements OdnRepositoryStoreInterface<List<SolrItem
 			throw odnRepoException;
 	}
 
+	/**
+	 * Open a session in which documents are added without being committed
+	 * after each batch. Session commits are performed according to
+	 * {@link #KEY_COMMIT_DURING_HARVEST} (see {@link CommitPolicy}), single
+	 * hard commit is performed when the session is published.
+	 * 
+	 * Note: Documents are replaced by their ID, thus reload does not need
+	 * any special handling (removal of the documents not present anymore is
+	 * not handled here, see {@link #remove(Collection)}).
+	 * 
+	 * @param reload
+	 *            ignored
+	 * @return new session (doing nothing if the repository is disabled)
+	 */
+	@Override
+	public OdnRepositoryStoreSession<List<SolrItem>> openSession(boolean reload) {
+		return new SolrStoreSession(enabled ? this : null);
+	}
+
+	@Override
+	public SolrItem retrieve(String id) throws IllegalArgumentException,
+			OdnRepositoryException {
+		
+		Vector<String> ids = new Vector<String>();
+		ids.add(id);
+		
+		return retrieveAll(ids).get(id);
+	}
+
+	/**
+	 * Retrieve records with given IDs from SOLR index, using one filter query
+	 * per {@link #RETRIEVE_BATCH_SIZE} IDs.
+	 * 
+	 * @param ids
+	 *            IDs of the records to retrieve
+	 * 
+	 * @return map from ID to record, records which were not found are not
+	 *         present in the map
+	 *
+	 * @throws IllegalArgumentException
+	 *             when some of the given arguments is not valid
+	 * @throws OdnRepositoryException
+	 *             when SOLR query fails or when multiple records with same ID
+	 *             are found
+	 */
+	@Override
+	public Map<String, SolrItem> retrieveAll(Collection<String> ids)
+			throws IllegalArgumentException, OdnRepositoryException {
+		
+		Map<String, SolrItem> result = new HashMap<String, SolrItem>();
+		
+		if (!enabled || ids.isEmpty())
+			// disabled => nothing to retrieve
+			return result;
+		
+		Iterator<String> idIterator = ids.iterator();
+		while (idIterator.hasNext()) {
+			// build the filter query: id:("id1" OR "id2" OR ...)
+			StringBuilder filterQuery = new StringBuilder("id:(");
+			int batchSize = 0;
+			while (idIterator.hasNext() && batchSize < RETRIEVE_BATCH_SIZE) {
+				if (batchSize > 0)
+					filterQuery.append(" OR ");
+				filterQuery.append('"');
+				filterQuery.append(ClientUtils.escapeQueryChars(idIterator.next()));
+				filterQuery.append('"');
+				batchSize++;
+			}
+			filterQuery.append(')');
+			
+			ModifiableSolrParams params = new ModifiableSolrParams();
+			params.set("q", "*:*");
+			params.set("fq", filterQuery.toString());
+			params.set("rows", batchSize);
+			
+			try {
+				// note: POST so that we do not hit the limits on URL length
+				QueryResponse response = solrServer.query(params,
+						SolrRequest.METHOD.POST);
+				List<SolrItem> records = SolrItem.createSolrItems(response
+						.getResults());
+				
+				for (SolrItem record : records) {
+					// having multiple records with same ID in the repository is an ERROR
+					if (result.put(record.getId(), record) != null)
+						throw new OdnRepositoryException(
+								"unable to retrieve record (multiple items with ID "
+										+ record.getId() + " found)");
+				}
+			} catch (SolrServerException e) {
+				logger.error("SOLR server exception", e);
+				throw new OdnRepositoryException(e.getMessage(), e);
+			}
+		}
+		
+		logger.debug("retrieved " + result.size() + " of " + ids.size()
+				+ " requested records from SOLR index");
+		
+		return result;
+	}
+
 	@Override
 	public void shutDown() throws OdnRepositoryException {
+		if (streamingServer != null) {
+			streamingServer.blockUntilFinished();
+			streamingServer.shutdown();
+			if (!streamingErrors.isEmpty())
+				logger.warn(streamingErrors.size()
+						+ " streaming update(s) failed before shutdown");
+		}
+		streamingServer = null;
+		updateServer = null;
 		solrServer = null;
 		instance = null;
 	}
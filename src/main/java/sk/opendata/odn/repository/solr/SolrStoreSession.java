@@ -0,0 +1,119 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository.solr;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sk.opendata.odn.repository.OdnRepositoryException;
+import sk.opendata.odn.repository.OdnRepositoryStoreSession;
+
+/**
+ * Session adding documents into SOLR index without committing each batch
+ * (see {@link SolrRepository#openSession(boolean)}).
+ * 
+ * Note: SOLR transactions are not isolated (commit commits everything added
+ * by anyone), thus rollback is not attempted: documents not committed are
+ * committed by next commit or by 'commitWithin'. Since documents are
+ * replaced by their ID, storing them again in next harvest does no harm.
+ */
+public class SolrStoreSession implements OdnRepositoryStoreSession<List<SolrItem>> {
+
+	private static Logger logger = LoggerFactory.getLogger(SolrStoreSession.class);
+	// note: 'null' when the repository is disabled
+	private SolrRepository repository;
+
+	SolrStoreSession(SolrRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public void store(List<SolrItem> records) throws IllegalArgumentException,
+			OdnRepositoryException {
+
+		if (repository == null)
+			return;
+
+		try {
+			repository.add(records);
+		} catch (SolrServerException e) {
+			logger.error("SOLR server exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		} catch (IOException e) {
+			logger.error("SOLR server exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+	}
+
+	private void commit(boolean soft) throws OdnRepositoryException {
+		try {
+			repository.commit(soft);
+		} catch (SolrServerException e) {
+			logger.error("SOLR server exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		} catch (IOException e) {
+			logger.error("SOLR server exception", e);
+			throw new OdnRepositoryException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Commit according to configured commit policy (see
+	 * {@link SolrRepository.CommitPolicy}). When streaming, wait until all
+	 * the documents are sent to SOLR first, so that failures are reported
+	 * before the documents are considered stored.
+	 * 
+	 * Note: Documents are committed explicitly (not left to 'commitWithin'),
+	 * since harvester considers them stored once this method returns.
+	 */
+	@Override
+	public void commit() throws OdnRepositoryException {
+		if (repository == null)
+			return;
+
+		commit(repository.getCommitPolicy() == SolrRepository.CommitPolicy.SOFT);
+	}
+
+	@Override
+	public void rollback() {
+		// not supported, see class comment
+	}
+
+	/**
+	 * Perform hard commit.
+	 */
+	@Override
+	public void publish() throws OdnRepositoryException {
+		if (repository == null)
+			return;
+
+		commit(false);
+	}
+
+	@Override
+	public void close() {
+		repository = null;
+	}
+
+}
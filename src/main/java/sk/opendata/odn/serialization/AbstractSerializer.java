@@ -18,10 +18,15 @@
 
 package sk.opendata.odn.serialization;
 
+import java.util.Collection;
 import java.util.List;
 
+import sk.opendata.odn.repository.AutoCommitStoreSession;
 import sk.opendata.odn.repository.OdnRepositoryException;
+import sk.opendata.odn.repository.OdnRepositoryRemoveInterface;
+import sk.opendata.odn.repository.OdnRepositorySessionInterface;
 import sk.opendata.odn.repository.OdnRepositoryStoreInterface;
+import sk.opendata.odn.repository.OdnRepositoryStoreSession;
 
 /**
  * Stuff common to all OpenData.sk serializers.
@@ -72,6 +77,117 @@ public abstract class AbstractSerializer<SerializationInputType, SerializationOu
 	public abstract SerializationOutputType serialize(List<SerializationInputType> records)
 			throws OdnSerializationException;
 
+	/**
+	 * Serialize given harvested records into the form which is passed to the
+	 * repository.
+	 * 
+	 * Serialization is separated from storing (see
+	 * {@link #storeSerialized(Object)}) so that harvester can serialize next
+	 * batch of records while previous one is being stored.
+	 * 
+	 * @param records
+	 *            list of records to serialize
+	 * @return records converted to the form accepted by the repository
+	 * 
+	 * @throws OdnSerializationException
+	 *             when serialization fails
+	 */
+	public abstract RepositoryStoreType serializeForStore(
+			List<SerializationInputType> records)
+			throws OdnSerializationException;
+
+	/**
+	 * Serialize given harvested records into the form which is passed to the
+	 * repository, knowing which of them are updated (i.e. their previous
+	 * version may be stored in the repository).
+	 * 
+	 * By default, updated records are not distinguished, which is fine for
+	 * repositories overwriting the records by their ID. Override this method
+	 * if the repository has to remove previous version of the records
+	 * explicitly.
+	 * 
+	 * @param records
+	 *            list of records to serialize
+	 * @param updatedRecords
+	 *            records (subset of {@code records}) whose previous version
+	 *            has to be replaced
+	 * @return records converted to the form accepted by the repository
+	 * 
+	 * @throws OdnSerializationException
+	 *             when serialization fails
+	 */
+	public RepositoryStoreType serializeForStore(
+			List<SerializationInputType> records,
+			List<SerializationInputType> updatedRecords)
+			throws OdnSerializationException {
+		
+		return serializeForStore(records);
+	}
+
+	/**
+	 * Store records serialized by {@link #serializeForStore(List)}.
+	 * 
+	 * @param data
+	 *            serialized records
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnRepositoryException
+	 *             when we fail to store given data into repository
+	 */
+	public void storeSerialized(RepositoryStoreType data)
+			throws IllegalArgumentException, OdnRepositoryException {
+		
+		getRepository().store(data);
+	}
+
+	/**
+	 * Open a session in which records serialized by
+	 * {@link #serializeForStore(List)} are stored in transactions. If the
+	 * repository does not support sessions, records are stored immediately.
+	 * 
+	 * @param reload
+	 *            whether the records stored in the session replace all
+	 *            records stored previously (see
+	 *            {@link OdnRepositorySessionInterface#openSession(boolean)},
+	 *            ignored if the repository does not support sessions)
+	 * @return new session
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when session can not be opened
+	 */
+	@SuppressWarnings("unchecked")
+	public OdnRepositoryStoreSession<RepositoryStoreType> openSession(
+			boolean reload) throws OdnRepositoryException {
+		
+		if (getRepository() instanceof OdnRepositorySessionInterface)
+			return ((OdnRepositorySessionInterface<RepositoryStoreType>) getRepository())
+					.openSession(reload);
+		
+		return new AutoCommitStoreSession<RepositoryStoreType>(getRepository());
+	}
+
+	/**
+	 * Store records serialized by {@link #serializeForStore(List)} using
+	 * given session.
+	 * 
+	 * @param data
+	 *            serialized records
+	 * @param session
+	 *            session opened by {@link #openSession(boolean)}
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnRepositoryException
+	 *             when we fail to store given data into repository
+	 */
+	public void storeSerialized(RepositoryStoreType data,
+			OdnRepositoryStoreSession<RepositoryStoreType> session)
+			throws IllegalArgumentException, OdnRepositoryException {
+		
+		session.store(data);
+	}
+
 	/**
 	 * Serialize and store given records.
 	 * 
@@ -85,10 +201,40 @@ public abstract class AbstractSerializer<SerializationInputType, SerializationOu
 	 * @throws OdnRepositoryException
 	 *             when we fail to store given data into repository
 	 */
-	public abstract void store(List<SerializationInputType> records)
+	public void store(List<SerializationInputType> records)
 			throws IllegalArgumentException, OdnSerializationException,
-			OdnRepositoryException;
+			OdnRepositoryException {
+		
+		storeSerialized(serializeForStore(records));
+	}
 
+
+	/**
+	 * Remove records with given IDs (i.e. records which are no longer present
+	 * in the source) from the repository.
+	 * 
+	 * By default, IDs are passed to the repository as they are, if it
+	 * supports removal (see {@link OdnRepositoryRemoveInterface}). Override
+	 * this method if the repository identifies the records differently.
+	 * 
+	 * @param ids
+	 *            IDs of the records to remove
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository with given name does not exists
+	 * @throws OdnSerializationException
+	 *             when records to remove can not be determined
+	 * @throws OdnRepositoryException
+	 *             when we fail to remove the records from repository
+	 */
+	@SuppressWarnings("unchecked")
+	public void remove(List<String> ids) throws IllegalArgumentException,
+			OdnSerializationException, OdnRepositoryException {
+		
+		if (getRepository() instanceof OdnRepositoryRemoveInterface)
+			((OdnRepositoryRemoveInterface<Collection<String>>) getRepository())
+					.remove(ids);
+	}
 	
 	public OdnRepositoryStoreInterface<RepositoryStoreType> getRepository() {
 		return repository;
@@ -22,6 +22,10 @@ public class OdnSerializationException extends Exception {
 
 	private static final long serialVersionUID = -5848499692836104814L;
 
+	public OdnSerializationException(String message) {
+		super(message);
+	}
+
 	public OdnSerializationException(String message, Throwable cause) {
 		super(message, cause);
 	}
@@ -0,0 +1,102 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.serialization.jackrabbit;
+
+import java.util.List;
+import java.util.Vector;
+
+import sk.opendata.odn.model.AbstractRecord;
+import sk.opendata.odn.repository.OdnRepositoryStoreInterface;
+import sk.opendata.odn.repository.jackrabbit.JackrabbitItem;
+import sk.opendata.odn.serialization.AbstractSerializer;
+import sk.opendata.odn.serialization.OdnSerializationException;
+
+/**
+ * This class is used by a Harvester to serialize various records into beans
+ * intended to be stored in Jackrabbit (the primary repository, holding our
+ * current copy of the records) and store them there.
+ * 
+ * Same as with SOLR, all types of records are converted into one type,
+ * {@code JackrabbitItem}, via {@code JackrabbitItem.createJackrabbitItem}.
+ * 
+ * @param <RecordType>
+ *            type of individual record which will be converted to Jackrabbit
+ *            bean
+ */
+public class JackrabbitSerializer<RecordType extends AbstractRecord> extends
+		AbstractSerializer<RecordType, List<JackrabbitItem>, List<JackrabbitItem>> {
+	
+	/**
+	 * Initialize serializer to use given repository.
+	 * 
+	 * @param repository
+	 *            repository to use for storage of record
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository is {@code null}
+	 */
+	public JackrabbitSerializer(
+			OdnRepositoryStoreInterface<List<JackrabbitItem>> repository)
+			throws IllegalArgumentException {
+	
+		super(repository);
+	}
+
+	/**
+	 * Serialize all given records into beans for Jackrabbit.
+	 * 
+	 * @param records
+	 *            list of records as harvested
+	 *
+	 * @return list of records suitable to be stored in Jackrabbit
+	 *
+	 * @throws OdnSerializationException
+	 *             when conversion into Jackrabbit beans fails
+	 */
+	@Override
+	public List<JackrabbitItem> serialize(List<RecordType> records)
+			throws OdnSerializationException {
+		
+		Vector<JackrabbitItem> jackrabbitItems = new Vector<JackrabbitItem>(
+				records.size());
+		for (RecordType record : records)
+			jackrabbitItems.add(JackrabbitItem.createJackrabbitItem(record));
+		
+		return jackrabbitItems;
+	}
+
+	/**
+	 * Serialize given records into beans for Jackrabbit.
+	 * 
+	 * @param records
+	 *            list of records as harvested
+	 * 
+	 * @return list of records suitable to be stored in Jackrabbit
+	 * 
+	 * @throws OdnSerializationException
+	 *             when conversion into Jackrabbit beans fails
+	 */
+	@Override
+	public List<JackrabbitItem> serializeForStore(List<RecordType> records)
+			throws OdnSerializationException {
+		
+		return serialize(records);
+	}
+}
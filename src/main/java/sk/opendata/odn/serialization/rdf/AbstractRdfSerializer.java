@@ -19,28 +19,32 @@
 
 package sk.opendata.odn.serialization.rdf;
 
-import java.io.StringWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.Vector;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Text;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.UnsupportedRDFormatException;
 
 import sk.opendata.odn.model.AbstractRecord;
+import sk.opendata.odn.repository.OdnRepositoryException;
+import sk.opendata.odn.repository.OdnRepositoryRemoveInterface;
 import sk.opendata.odn.repository.OdnRepositoryStoreInterface;
 import sk.opendata.odn.repository.sesame.RdfData;
+import sk.opendata.odn.repository.sesame.SesameRepository;
+import sk.opendata.odn.repository.sesame.SesameRepository.UploadFormat;
 import sk.opendata.odn.serialization.AbstractSerializer;
 import sk.opendata.odn.serialization.OdnSerializationException;
 
@@ -70,11 +74,14 @@ public abstract class AbstractRdfSerializer<RecordType extends AbstractRecord> e
 
 	public final static String ERR_CONVERSION = "unable to convert the data into RDF";
 	
-	protected final static SimpleDateFormat sdf = new SimpleDateFormat(
-			OPENDATA_DATE_FORMAT);
-
-	protected DocumentBuilder docBuilder;
-	protected Transformer transformer;
+	// note: 'SimpleDateFormat' is not thread safe and records may be
+	// serialized in parallel
+	protected final static ThreadLocal<SimpleDateFormat> sdf = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(OPENDATA_DATE_FORMAT);
+		}
+	};
 
 	/**
 	 * Initialize serializer to use given repository.
@@ -84,98 +91,380 @@ public abstract class AbstractRdfSerializer<RecordType extends AbstractRecord> e
 	 * 
 	 * @throws IllegalArgumentException
 	 *             if repository is {@code null}
-	 * @throws ParserConfigurationException
-	 *             when XML document builder fails to initialize
-	 * @throws TransformerConfigurationException
-	 *             when XML document transformer fails to initialize
 	 */
 	public AbstractRdfSerializer(OdnRepositoryStoreInterface<RdfData> repository)
-			throws IllegalArgumentException, ParserConfigurationException,
-			TransformerConfigurationException {
+			throws IllegalArgumentException {
 
 		super(repository);
+	}
 
-		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory
-				.newInstance();
-		docBuilder = docBuilderFactory.newDocumentBuilder();
+	/**
+	 * Format amount of money the same way as {@code DecimalFormat("#.##")}
+	 * does, i.e. "1234.5" for 123450 cents, but exactly.
+	 * 
+	 * @param cents
+	 *            amount in minor units (cents)
+	 * @return formatted amount
+	 */
+	protected static String formatCents(long cents) {
+		StringBuilder result = new StringBuilder(24);
+		if (cents < 0) {
+			result.append('-');
+			cents = -cents;
+		}
+		
+		result.append(cents / 100);
+		int fraction = (int) (cents % 100);
+		if (fraction != 0) {
+			result.append('.');
+			result.append((char) ('0' + fraction / 10));
+			if (fraction % 10 != 0)
+				result.append((char) ('0' + fraction % 10));
+		}
+		
+		return result.toString();
+	}
 
-		TransformerFactory transformerFactory = TransformerFactory
-				.newInstance();
-		transformer = transformerFactory.newTransformer();
-		// TODO: nice for debugging, but might hurt performance in production
-		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+	protected void appendTextNode(RdfXmlOutput output, String name,
+			String value) throws IOException {
+		
+		output.startElement(name);
+		output.text(value);
+		output.endElement();
 	}
 
-	protected Element appendTextNode(Document doc, String name, String value) {
-		Element element = doc.createElement(name);
-		Text textNode = doc.createTextNode(value);
-		element.appendChild(textNode);
-		return element;
+	protected void appendTypedTextNode(RdfXmlOutput output, String name,
+			String datatype, String value) throws IOException {
+		
+		output.startElement(name);
+		output.attribute("rdf:datatype", datatype);
+		output.text(value);
+		output.endElement();
 	}
 
-	protected Element appendResourceNode(Document doc, String name,
-			String attr, String value) {
+	protected void appendResourceNode(RdfXmlOutput output, String name,
+			String attr, String value) throws IOException {
 
-		Element element = doc.createElement(name);
-		element.setAttribute(attr, value);
-		return element;
+		output.startElement(name);
+		output.attribute(attr, value);
+		output.endElement();
 	}
 
 	/**
-	 * Serialize one given record into RDF and store the result in given
-	 * 'concept' (which in turn is in given 'doc').
-	 * 
-	 * @param doc
-	 *            XML document we are serializing into
-	 * @param rdfElement
-	 *            XML document element into which to append the serialization of
-	 *            given record
+	 * Serialize one given record into RDF, passing it to given output (into
+	 * the 'rdf:RDF' element).
+	 * 
+	 * @param output
+	 *            receiver of the RDF/XML document we are serializing into
 	 * @param record
 	 *            record to serialize into RDF
+	 * 
+	 * @throws IOException
+	 *             when writing fails
 	 */
-	public abstract void serializeRecord(Document doc, Element rdfElement,
+	public abstract void serializeRecord(RdfXmlOutput output, RecordType record)
+			throws IOException;
+
+	/**
+	 * Add the subjects described by given record, i.e. the {@code rdf:about}
+	 * URIs of the nodes serialized by
+	 * {@link #serializeRecord(RdfXmlOutput, AbstractRecord)}, so that the
+	 * previous version of the record can be removed without serializing it.
+	 * 
+	 * @param subjects
+	 *            collection to add the subjects to
+	 * @param record
+	 *            record to add the subjects of
+	 */
+	protected abstract void addSubjects(Collection<String> subjects,
 			RecordType record);
 
 	/**
 	 * Override this method if you need to add custom RDF NS elements to the XML
 	 * document.
 	 * 
-	 * @param rdfElement
-	 *            RDF element of the XML document
+	 * @param output
+	 *            receiver of the RDF/XML document, with the RDF element just
+	 *            started (thus namespaces can be added as attributes)
 	 */
-	public void addCustomRdfNsElements(Element rdfElement) {
+	public void addCustomRdfNsElements(RdfXmlOutput output) {
 		// nothing to do if there are no custom elements needed
 	}
 	
-	@Override
-	public String serialize(List<RecordType> records)
+	/**
+	 * Serialize given records into RDF/XML document passed to given output.
+	 * 
+	 * @param records
+	 *            records to serialize
+	 * @param output
+	 *            receiver of the document
+	 * 
+	 * @throws IOException
+	 *             when writing fails
+	 */
+	protected void serialize(List<RecordType> records, RdfXmlOutput output)
+			throws IOException {
+		
+		output.startElement("rdf:RDF");
+		output.attribute("xmlns:rdf", NS_RDF);
+		output.attribute("xmlns:dc", NS_DC);
+		output.attribute("xmlns:locn", NS_LOCN);
+		output.attribute("xmlns:org", NS_ORG);
+		output.attribute("xmlns:rov", NS_ROV);
+		output.attribute("xmlns:skos", NS_SKOS);
+		output.attribute("xmlns:opendata", NS_OPENDATA);
+		addCustomRdfNsElements(output);
+		
+		for (RecordType record : records)
+			serializeRecord(output, record);
+		
+		output.endElement();
+	}
+	
+	/**
+	 * Serialize given records into RDF/XML document written into given
+	 * stream (in UTF-8). Records are written one by one as they are
+	 * serialized, no document is built in memory.
+	 * 
+	 * @param records
+	 *            records to serialize
+	 * @param out
+	 *            stream to write the document into
+	 * 
+	 * @throws OdnSerializationException
+	 *             when writing fails
+	 */
+	public void serialize(List<RecordType> records, OutputStream out)
 			throws OdnSerializationException {
 		
-		Document doc = docBuilder.newDocument();
+		RdfXmlWriter writer = new RdfXmlWriter(out);
+		try {
+			writer.startDocument();
+			serialize(records, writer);
+			writer.endDocument();
+		} catch (IOException e) {
+			throw new OdnSerializationException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Serialize given records directly into RDF statements (i.e. without
+	 * producing RDF/XML text which would then need to be parsed).
+	 * 
+	 * @param records
+	 *            records to serialize
+	 * @param baseUri
+	 *            base URI used to resolve relative URIs
+	 * @return RDF statements
+	 * 
+	 * @throws OdnSerializationException
+	 *             when serialization fails
+	 */
+	public List<Statement> serializeToStatements(List<RecordType> records,
+			String baseUri) throws OdnSerializationException {
+		
+		RdfStatementBuilder builder = new RdfStatementBuilder(baseUri,
+				ValueFactoryImpl.getInstance());
+		try {
+			serialize(records, builder);
+		} catch (IOException e) {
+			throw new OdnSerializationException(e.getMessage(), e);
+		} catch (IllegalArgumentException e) {
+			throw new OdnSerializationException(e.getMessage(), e);
+		}
 		
-		Element rdfElement = doc.createElementNS(NS_RDF, "rdf:RDF");
-		rdfElement.setAttribute("xmlns:rdf", NS_RDF);
-		rdfElement.setAttribute("xmlns:dc", NS_DC);
-		rdfElement.setAttribute("xmlns:locn", NS_LOCN);
-		rdfElement.setAttribute("xmlns:org", NS_ORG);
-		rdfElement.setAttribute("xmlns:rov", NS_ROV);
-		rdfElement.setAttribute("xmlns:skos", NS_SKOS);
-		rdfElement.setAttribute("xmlns:opendata", NS_OPENDATA);
-		addCustomRdfNsElements(rdfElement);
-		doc.appendChild(rdfElement);
+		return builder.getStatements();
+	}
+	
+	/**
+	 * Serialize given records directly into RDF document in given format
+	 * (other than RDF/XML, see {@link #serialize(List, OutputStream)} for
+	 * that).
+	 * 
+	 * @param records
+	 *            records to serialize
+	 * @param baseUri
+	 *            base URI used to resolve relative URIs
+	 * @param rdfFormat
+	 *            format of the document
+	 * @param out
+	 *            stream to write the document into
+	 * 
+	 * @throws OdnSerializationException
+	 *             when serialization fails
+	 */
+	public void serialize(List<RecordType> records, String baseUri,
+			RDFFormat rdfFormat, OutputStream out)
+			throws OdnSerializationException {
 		
+		try {
+			RDFWriter rdfWriter = Rio.createWriter(rdfFormat, out);
+			rdfWriter.startRDF();
+			serialize(records, new RdfStatementBuilder(baseUri,
+					ValueFactoryImpl.getInstance(), rdfWriter));
+			rdfWriter.endRDF();
+		} catch (UnsupportedRDFormatException e) {
+			throw new OdnSerializationException(e.getMessage(), e);
+		} catch (RDFHandlerException e) {
+			throw new OdnSerializationException(e.getMessage(), e);
+		} catch (IOException e) {
+			throw new OdnSerializationException(e.getMessage(), e);
+		} catch (IllegalArgumentException e) {
+			throw new OdnSerializationException(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Serialize given records, all of them treated as updated (see
+	 * {@link #serializeForStore(List, List)}).
+	 */
+	@Override
+	public RdfData serializeForStore(List<RecordType> records)
+			throws OdnSerializationException {
+		
+		return serializeForStore(records, records);
+	}
+	
+	/**
+	 * Serialize given records using
+	 * {@link #createRdfData(List, List, String, String)}.
+	 */
+	@Override
+	public abstract RdfData serializeForStore(List<RecordType> records,
+			List<RecordType> updatedRecords) throws OdnSerializationException;
+	
+	/**
+	 * Collect subjects described by given records (see
+	 * {@link #addSubjects(Collection, AbstractRecord)}).
+	 * 
+	 * @param records
+	 *            records to collect the subjects of
+	 * @return URIs of the subjects
+	 */
+	protected Set<String> collectSubjects(List<RecordType> records) {
+		Set<String> subjects = new LinkedHashSet<String>();
 		for (RecordType record : records)
-			serializeRecord(doc, rdfElement, record);
-		
-		StringWriter sw = new StringWriter();
-        StreamResult result = new StreamResult(sw);
-        DOMSource source = new DOMSource(doc);
-        try {
-			transformer.transform(source, result);
-		} catch (TransformerException e) {
+			addSubjects(subjects, record);
+		
+		return subjects;
+	}
+	
+	/**
+	 * Serialize given records into the form expected by the repository: RDF
+	 * statements or RDF document in given format (see
+	 * {@link SesameRepository#KEY_UPLOAD_FORMAT}).
+	 * 
+	 * Subjects of updated records are passed along, so that the repository
+	 * can replace their previous version (see {@link RdfData#getSubjects()}).
+	 * New records (say all of them when loading the data for the first time)
+	 * do not need that.
+	 * 
+	 * @param records
+	 *            records to serialize
+	 * @param updatedRecords
+	 *            records (subset of {@code records}) whose previous version
+	 *            has to be removed
+	 * @param baseUri
+	 *            base URI of the RDF data
+	 * @param contextsKey
+	 *            property name used to retrieve context(s) of the RDF data
+	 * @return serialized records
+	 * 
+	 * @throws OdnSerializationException
+	 *             when serialization fails
+	 */
+	protected RdfData createRdfData(List<RecordType> records,
+			List<RecordType> updatedRecords, String baseUri,
+			String contextsKey) throws OdnSerializationException {
+		
+		UploadFormat uploadFormat = UploadFormat.RDFXML;
+		if (getRepository() instanceof SesameRepository)
+			uploadFormat = ((SesameRepository) getRepository()).getUploadFormat();
+		
+		// the document is kept in bytes rather than streamed into the
+		// repository: batches are serialized ahead of storing (see
+		// AbstractHarvester), by other threads than the one holding the
+		// repository connection, and the document has to be readable
+		// again for the RDF dump; 'STATEMENTS' avoids the document entirely
+		RdfData rdfData;
+		ByteArrayOutputStream out;
+		switch (uploadFormat) {
+		case STATEMENTS:
+			rdfData = new RdfData(serializeToStatements(records, baseUri),
+					baseUri, contextsKey);
+			break;
+		case RDFXML:
+			out = new ByteArrayOutputStream();
+			serialize(records, out);
+			rdfData = new RdfData(out.toByteArray(), baseUri, contextsKey);
+			break;
+		default:
+			out = new ByteArrayOutputStream();
+			serialize(records, baseUri, uploadFormat.getRdfFormat(), out);
+			rdfData = new RdfData(out.toByteArray(),
+					uploadFormat.getRdfFormat(), baseUri, contextsKey);
+		}
+		rdfData.setSubjects(collectSubjects(updatedRecords));
+		
+		return rdfData;
+	}
+	
+	/**
+	 * Remove records with given subjects from the repository (see
+	 * {@link RdfData#getSubjects()}).
+	 * 
+	 * @param subjects
+	 *            URIs of the subjects describing the records
+	 * @param baseUri
+	 *            base URI of the RDF data
+	 * @param contextsKey
+	 *            property name used to retrieve context(s) of the RDF data
+	 * 
+	 * @throws OdnRepositoryException
+	 *             when we fail to remove the records from repository
+	 */
+	@SuppressWarnings("unchecked")
+	protected void removeSubjects(Collection<String> subjects, String baseUri,
+			String contextsKey) throws OdnRepositoryException {
+		
+		if (subjects.isEmpty()
+				|| !(getRepository() instanceof OdnRepositoryRemoveInterface))
+			return;
+		
+		RdfData rdfData = new RdfData(new Vector<Statement>(), baseUri,
+				contextsKey);
+		rdfData.setSubjects(subjects);
+		((OdnRepositoryRemoveInterface<RdfData>) getRepository())
+				.remove(rdfData);
+	}
+	
+	/**
+	 * Serialize given records into RDF/XML document encoded in UTF-8.
+	 * 
+	 * @param records
+	 *            records to serialize
+	 * @return RDF/XML document
+	 * 
+	 * @throws OdnSerializationException
+	 *             when serialization fails
+	 */
+	protected byte[] serializeToBytes(List<RecordType> records)
+			throws OdnSerializationException {
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serialize(records, out);
+		
+		return out.toByteArray();
+	}
+	
+	@Override
+	public String serialize(List<RecordType> records)
+			throws OdnSerializationException {
+		
+		try {
+			return new String(serializeToBytes(records), RdfXmlWriter.ENCODING);
+		} catch (UnsupportedEncodingException e) {
 			throw new OdnSerializationException(e.getMessage(), e);
 		}
-        
-		return sw.toString();
 	}
 }
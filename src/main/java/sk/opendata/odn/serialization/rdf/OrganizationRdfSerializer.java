@@ -19,17 +19,21 @@
 
 package sk.opendata.odn.serialization.rdf;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Vector;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import sk.opendata.odn.harvester.diff.RecordKeyIndex;
 import sk.opendata.odn.model.OrganizationRecord;
 import sk.opendata.odn.repository.OdnRepositoryException;
+import sk.opendata.odn.repository.OdnRepositoryRetrieveInterface;
 import sk.opendata.odn.repository.OdnRepositoryStoreInterface;
+import sk.opendata.odn.repository.jackrabbit.JackrabbitItem;
 import sk.opendata.odn.repository.sesame.RdfData;
 import sk.opendata.odn.serialization.OdnSerializationException;
 
@@ -58,6 +62,11 @@ public class OrganizationRdfSerializer extends AbstractRdfSerializer<Organizatio
 	public final static String ORG_SCHEMA_AGENCY = "Ministry of Interior, Slovak Republic";
 	public final static String IDENTIFIERS_TYPE_URI = "http://data.gov.sk/def/interior/identifier/ico";
 	
+	private static Logger logger = LoggerFactory.getLogger(OrganizationRdfSerializer.class);
+	
+	private OdnRepositoryRetrieveInterface<JackrabbitItem> primaryRepository = null;
+	private RecordKeyIndex keyIndex = null;
+	
 	/**
 	 * Initialize serializer to use given repository.
 	 * 
@@ -66,89 +75,180 @@ public class OrganizationRdfSerializer extends AbstractRdfSerializer<Organizatio
 	 * 
 	 * @throws IllegalArgumentException
 	 *             if repository is {@code null}
-	 * @throws ParserConfigurationException
-	 *             when XML document builder fails to initialize
-	 * @throws TransformerConfigurationException
-	 *             when XML document transformer fails to initialize
 	 */
 	public OrganizationRdfSerializer(
 			OdnRepositoryStoreInterface<RdfData> repository)
-			throws IllegalArgumentException, ParserConfigurationException,
-			TransformerConfigurationException {
+			throws IllegalArgumentException {
+	
+		super(repository);
+	}
+	
+	/**
+	 * Initialize serializer to use given repository, looking up the removed
+	 * records in given primary repository (see {@link #remove(List)}).
+	 * 
+	 * @param repository
+	 *            repository to use for storage of record
+	 * @param primaryRepository
+	 *            repository holding our current copy of the records
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if repository is {@code null}
+	 */
+	public OrganizationRdfSerializer(
+			OdnRepositoryStoreInterface<RdfData> repository,
+			OdnRepositoryRetrieveInterface<JackrabbitItem> primaryRepository)
+			throws IllegalArgumentException {
 	
 		super(repository);
+		this.primaryRepository = primaryRepository;
 	}
 	
 	@Override
-	public void addCustomRdfNsElements(Element rdfElement) {
-		rdfElement.setAttribute("xmlns:adms", NS_ADMS);
-		rdfElement.setAttribute("xmlns:dcterms", NS_DCTERMS);
+	public void addCustomRdfNsElements(RdfXmlOutput output) {
+		output.attribute("xmlns:adms", NS_ADMS);
+		output.attribute("xmlns:dcterms", NS_DCTERMS);
 	}
 	
 	@Override
-	public void serializeRecord(Document doc, Element rdfElement, OrganizationRecord record) {
+	public void serializeRecord(RdfXmlOutput output, OrganizationRecord record)
+			throws IOException {
+		
 		// *** organization ***
-		Element concept1 = doc.createElement(TAG_NAME_ORG_REGORG);
-		concept1.setAttribute("rdf:about", ORGANIZATIONS_BASE_URI + record.getIco());
+		output.startElement(TAG_NAME_ORG_REGORG);
+		output.attribute("rdf:about", ORGANIZATIONS_BASE_URI + record.getIco());
 
-		concept1.appendChild(appendTextNode(doc, "rov:legalName", record.getName()));
-	    concept1.appendChild(appendResourceNode(doc, "dc:source", "rdf:resource", record.getSource()));
-	    concept1.appendChild(appendTextNode(doc, "dc:type", record.getLegalForm()));
+		appendTextNode(output, "rov:legalName", record.getName());
+	    appendResourceNode(output, "dc:source", "rdf:resource", record.getSource());
+	    appendTextNode(output, "dc:type", record.getLegalForm());
 	    if (record.getDateFrom() != null) {
-	    	String dateFrom = sdf.format(record.getDateFrom());
-	        concept1.appendChild(appendTextNode(doc, "opendata:dateFrom", dateFrom));
+	    	String dateFrom = sdf.get().format(record.getDateFrom());
+	        appendTextNode(output, "opendata:dateFrom", dateFrom);
 	    }
 	    if (record.getDateTo() != null) {
-	    	String dateTo = sdf.format(record.getDateTo());
-	        concept1.appendChild(appendTextNode(doc, "opendata:dateTo", dateTo));
+	    	String dateTo = sdf.get().format(record.getDateTo());
+	        appendTextNode(output, "opendata:dateTo", dateTo);
 	    }
-	    //concept.appendChild(appendTextNode(doc, "opendata:seat", record.getSeat()));
-	    Element fullAddress = appendTextNode(doc, "locn:fullAddress", record.getSeat());
-	    fullAddress.setAttribute("rdf:datatype", "xsd:string");
-	    Element address = doc.createElement("locn:address");
+	    //appendTextNode(output, "opendata:seat", record.getSeat());
+	    output.startElement("org:registeredSite");
+	    output.startElement("locn:address");
 	    // TODO: does the fullAddress have to contain also the organization name
 	    // (i.e. is it as written on envelope)?public final static String 
-	    address.appendChild(fullAddress);
+	    appendTypedTextNode(output, "locn:fullAddress", "xsd:string", record.getSeat());
 	    // TODO: parse out PSC from full address
-	    //address.appendChild(appendTextNode(doc, "locn:postCode", record.getSeat()));
-	    Element primarySite = doc.createElement("org:registeredSite");
-	    primarySite.appendChild(address);
-	    concept1.appendChild(primarySite);
-		concept1.appendChild(appendResourceNode(
-				doc,
+	    //appendTextNode(output, "locn:postCode", record.getSeat());
+	    output.endElement();
+	    output.endElement();
+		appendResourceNode(
+				output,
 				"opendata:ico",
 				"rdf:resource",
-				IDENTIFIERS_BASE_URI + record.getIco()));
+				IDENTIFIERS_BASE_URI + record.getIco());
 		
-		rdfElement.appendChild(concept1);
+		output.endElement();
 		
 		// *** organization's ICO ***
-		Element concept2 = doc.createElement(TAG_NAME_ADMS_IDENTIFIER);
-		concept2.setAttribute("rdf:about", IDENTIFIERS_BASE_URI + record.getIco());
+		output.startElement(TAG_NAME_ADMS_IDENTIFIER);
+		output.attribute("rdf:about", IDENTIFIERS_BASE_URI + record.getIco());
 
-	    Element notation = appendTextNode(doc, "skos:notation", record.getIco());
-	    notation.setAttribute("rdf:datatype", "xsd:string");
-	    concept2.appendChild(notation);
+	    appendTypedTextNode(output, "skos:notation", "xsd:string", record.getIco());
 		
-	    Element schemaAgency = appendTextNode(doc, "adms:schemaAgency", ORG_SCHEMA_AGENCY);
-	    schemaAgency.setAttribute("rdf:datatype", "xsd:string");
-	    concept2.appendChild(schemaAgency);
+	    appendTypedTextNode(output, "adms:schemaAgency", "xsd:string", ORG_SCHEMA_AGENCY);
 		
-	    concept2.appendChild(appendResourceNode(doc, "dcterms:type", "rdf:resource", IDENTIFIERS_TYPE_URI));
+	    appendResourceNode(output, "dcterms:type", "rdf:resource", IDENTIFIERS_TYPE_URI);
 		
-		rdfElement.appendChild(concept2);
+		output.endElement();
+	}
+	
+	/**
+	 * Set the index of ICOs of stored records (by record ID), used to remove
+	 * the records by their ICO (see {@link #remove(List)}) and to remove
+	 * previous version of updated records whose ICO changed.
+	 * 
+	 * @param keyIndex
+	 *            index maintained by the harvester ({@code null} if not
+	 *            available)
+	 */
+	public void setKeyIndex(RecordKeyIndex keyIndex) {
+		this.keyIndex = keyIndex;
+	}
+	
+	private static void addSubjects(Collection<String> subjects, String ico) {
+		subjects.add(ORGANIZATIONS_BASE_URI + ico);
+		subjects.add(IDENTIFIERS_BASE_URI + ico);
 	}
 	
 	@Override
-	public void store(List<OrganizationRecord> records)
-			throws IllegalArgumentException, OdnSerializationException,
-			OdnRepositoryException {
+	protected void addSubjects(Collection<String> subjects,
+			OrganizationRecord record) {
 		
-		RdfData rdfData = new RdfData(
-				serialize(records),
+		addSubjects(subjects, record.getIco());
+	}
+	
+	/**
+	 * Serialize given records. If the ICO of an updated record changed since
+	 * it was stored (see {@link #setKeyIndex(RecordKeyIndex)}), subjects
+	 * given by the previous ICO are removed as well.
+	 */
+	@Override
+	public RdfData serializeForStore(List<OrganizationRecord> records,
+			List<OrganizationRecord> updatedRecords) throws OdnSerializationException {
+		
+		RdfData rdfData = createRdfData(
+				records,
+				updatedRecords,
 				ORGANIZATIONS_BASE_URI,
 				OPENDATA_ORGANIZATIONS_CONTEXTS_KEY);
-		getRepository().store(rdfData);
+		
+		if (keyIndex != null)
+			for (OrganizationRecord record : updatedRecords) {
+				String previousIco = keyIndex.get(record.getId());
+				if (previousIco != null && !previousIco.equals(record.getIco()))
+					addSubjects(rdfData.getSubjects(), previousIco);
+			}
+		
+		return rdfData;
+	}
+
+	/**
+	 * Remove records with given IDs from the repository.
+	 * 
+	 * Organizations are described by their ICO, not by the record ID, thus
+	 * the ICO is taken from the index of stored records (see
+	 * {@link #setKeyIndex(RecordKeyIndex)}). Records not found there (say
+	 * stored before the index was introduced) are looked up in the primary
+	 * repository, if any. Records not found at all can not be removed.
+	 */
+	@Override
+	public void remove(List<String> ids) throws IllegalArgumentException,
+			OdnSerializationException, OdnRepositoryException {
+		
+		Vector<String> subjects = new Vector<String>(2 * ids.size());
+		Vector<String> unknownIds = new Vector<String>();
+		for (String id : ids) {
+			String ico = keyIndex != null ? keyIndex.get(id) : null;
+			if (ico != null)
+				addSubjects(subjects, ico);
+			else
+				unknownIds.add(id);
+		}
+		
+		int unknownCount = unknownIds.size();
+		if (unknownCount > 0 && primaryRepository != null) {
+			Map<String, JackrabbitItem> currentCopies = primaryRepository
+					.retrieveAll(unknownIds);
+			for (JackrabbitItem item : currentCopies.values())
+				addSubjects(subjects, item.getIco());
+			unknownCount -= currentCopies.size();
+		}
+		
+		if (unknownCount > 0)
+			logger.warn(unknownCount
+					+ " removed organizations with unknown ICO, "
+					+ "unable to remove them from RDF repository");
+		
+		removeSubjects(subjects, ORGANIZATIONS_BASE_URI,
+				OPENDATA_ORGANIZATIONS_CONTEXTS_KEY);
 	}
 
 }
@@ -19,16 +19,10 @@
 
 package sk.opendata.odn.serialization.rdf;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
-import java.util.Locale;
-
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import java.util.Vector;
 
 import sk.opendata.odn.model.PoliticalPartyDonationRecord;
 import sk.opendata.odn.repository.OdnRepositoryException;
@@ -49,8 +43,6 @@ public class PoliticalPartyDonationRdfSerializer extends AbstractRdfSerializer<P
 	public final static String OPENDATA_PPD_BASE_URI = "http://opendata.sk/dataset/political_party_donations/";
 	public final static String OPENDATA_PPD_CONTEXTS_KEY = "political_party_donations";
 	
-	private final static DecimalFormat donationValueFormat = new DecimalFormat(
-			"#.##", new DecimalFormatSymbols(Locale.US));
 	
 	/**
 	 * Initialize serializer to use given repository.
@@ -60,23 +52,20 @@ public class PoliticalPartyDonationRdfSerializer extends AbstractRdfSerializer<P
 	 * 
 	 * @throws IllegalArgumentException
 	 *             if repository is {@code null}
-	 * @throws ParserConfigurationException
-	 *             when XML document builder fails to initialize
-	 * @throws TransformerConfigurationException
-	 *             when XML document transformer fails to initialize
 	 */
 	public PoliticalPartyDonationRdfSerializer(
 			OdnRepositoryStoreInterface<RdfData> repository)
-			throws IllegalArgumentException, ParserConfigurationException,
-			TransformerConfigurationException {
+			throws IllegalArgumentException {
 	
 		super(repository);
 	}
 	
 	@Override
-	public void serializeRecord(Document doc, Element rdfElement, PoliticalPartyDonationRecord record) {
-		Element concept = doc.createElement(TAG_NAME_SKOS_CONCEPT);
-		concept.setAttribute("rdf:about", OPENDATA_PPD_BASE_URI + record.getId());
+	public void serializeRecord(RdfXmlOutput output, PoliticalPartyDonationRecord record)
+			throws IOException {
+		
+		output.startElement(TAG_NAME_SKOS_CONCEPT);
+		output.attribute("rdf:about", OPENDATA_PPD_BASE_URI + record.getId());
 
 		// TODO: this is a) ugly and b) "suspect" (i.e. I feel like it's not
 		// entirely "in the spirit" of RDF => re-think, re-research, ...
@@ -90,72 +79,95 @@ public class PoliticalPartyDonationRdfSerializer extends AbstractRdfSerializer<P
 		if (record.getName() != null)
 			label.append(record.getName()).append(" ");
 		label.append(" - ");
-		label.append(donationValueFormat.format(record.getDonationValue()));
+		label.append(formatCents(record.getDonationValueCents()));
 		label.append(" - ");
 		label.append(record.getRecipientParty());
-	    concept.appendChild(appendTextNode(doc, "skos:prefLabel",
-	    		label.toString().trim()));
+	    appendTextNode(output, "skos:prefLabel",
+	    		label.toString().trim());
 	    
-		concept.appendChild(appendResourceNode(
-				doc,
+		appendResourceNode(
+				output,
 				"dc:source",
 				"rdf:resource",
 				"http://datanest.fair-play.sk/datasets/32/records/"
-						+ record.getDatanestId()));
+						+ record.getDatanestId());
 		// TODO: use FOAF for people and Good Relations for companies
 		// and use only URIs or something ... as a link - we have or will have
 		// organizations and people repository so the main point twill be the URI,
 		// subsequent data will be useful for clean-up when proper link could not
 		// be found automatically
 		if (record.getDonorName() != null)
-			concept.appendChild(appendTextNode(doc, "opendata:donorName",
-					record.getDonorName()));
+			appendTextNode(output, "opendata:donorName",
+					record.getDonorName());
 		if (record.getDonorSurname() != null)
-			concept.appendChild(appendTextNode(doc, "opendata:donorSurname",
-					record.getDonorSurname()));
+			appendTextNode(output, "opendata:donorSurname",
+					record.getDonorSurname());
 		if (record.getDonorTitle() != null)
-			concept.appendChild(appendTextNode(doc, "opendata:donorTitle",
-					record.getDonorTitle()));
+			appendTextNode(output, "opendata:donorTitle",
+					record.getDonorTitle());
 		if (record.getName() != null)
-			concept.appendChild(appendTextNode(doc, "opendata:donorCompanyName",
-					record.getName()));
+			appendTextNode(output, "opendata:donorCompanyName",
+					record.getName());
 		if (record.getIco() != null) {
-			concept.appendChild(appendResourceNode(
-					doc,
+			appendResourceNode(
+					output,
 					"opendata:donorCompany",
 					"rdf:resource",
-					OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI + record.getIco()));
+					OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI + record.getIco());
 		}
 		// TODO: adresa, mesto a PSC darcu
 		
-		concept.appendChild(appendTextNode(doc, "opendata:giftValue",
-				donationValueFormat.format(record.getDonationValue())));
-		concept.appendChild(appendTextNode(doc, "opendata:giftCurrency",
-				record.getCurrency().getCurrencyCode()));
-		concept.appendChild(appendTextNode(doc, "opendata:recipientParty",
-				record.getRecipientParty()));
+		appendTextNode(output, "opendata:giftValue",
+				formatCents(record.getDonationValueCents()));
+		appendTextNode(output, "opendata:giftCurrency",
+				record.getCurrency().getCurrencyCode());
+		appendTextNode(output, "opendata:recipientParty",
+				record.getRecipientParty());
 		if (record.getAcceptDate() != null) {
-			String acceptDate = sdf.format(record.getAcceptDate());
-			concept.appendChild(appendTextNode(doc, "opendata:acceptDate",
-					acceptDate));
+			String acceptDate = sdf.get().format(record.getAcceptDate());
+			appendTextNode(output, "opendata:acceptDate",
+					acceptDate);
 	    }
 		if (record.getNote() != null)
-			concept.appendChild(appendTextNode(doc, "opendata:xNote",
-					record.getNote()));
+			appendTextNode(output, "opendata:xNote",
+					record.getNote());
+		
+		output.endElement();
+	}
+	
+	@Override
+	protected void addSubjects(Collection<String> subjects,
+			PoliticalPartyDonationRecord record) {
 		
-		rdfElement.appendChild(concept);
+		subjects.add(OPENDATA_PPD_BASE_URI + record.getId());
 	}
 	
 	@Override
-	public void store(List<PoliticalPartyDonationRecord> records)
-			throws IllegalArgumentException, OdnSerializationException,
-			OdnRepositoryException {
+	public RdfData serializeForStore(
+			List<PoliticalPartyDonationRecord> records,
+			List<PoliticalPartyDonationRecord> updatedRecords)
+			throws OdnSerializationException {
 		
-		RdfData rdfData = new RdfData(
-				serialize(records),
+		return createRdfData(
+				records,
+				updatedRecords,
 				OPENDATA_PPD_BASE_URI,
 				OPENDATA_PPD_CONTEXTS_KEY);
-		getRepository().store(rdfData);
 	}
 
+	/**
+	 * Remove records with given IDs from the repository, i.e. all statements
+	 * about {@code OPENDATA_PPD_BASE_URI + id}.
+	 */
+	@Override
+	public void remove(List<String> ids) throws IllegalArgumentException,
+			OdnSerializationException, OdnRepositoryException {
+		
+		Vector<String> subjects = new Vector<String>(ids.size());
+		for (String id : ids)
+			subjects.add(OPENDATA_PPD_BASE_URI + id);
+		
+		removeSubjects(subjects, OPENDATA_PPD_BASE_URI,
+				OPENDATA_PPD_CONTEXTS_KEY);
+	}
 }
@@ -19,16 +19,10 @@
 
 package sk.opendata.odn.serialization.rdf;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
-import java.util.Locale;
-
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import java.util.Vector;
 
 import sk.opendata.odn.model.ProcurementRecord;
 import sk.opendata.odn.repository.OdnRepositoryException;
@@ -50,8 +44,6 @@ public class ProcurementRdfSerializer extends AbstractRdfSerializer<ProcurementR
 	public final static String OPENDATA_PROCUREMENTS_BASE_URI = "http://opendata.sk/dataset/procurements/";
 	public final static String OPENDATA_PROCUREMENTS_CONTEXTS_KEY = "procurements";
 	
-	private final static DecimalFormat priceFormat = new DecimalFormat(
-			"#.##", new DecimalFormatSymbols(Locale.US));
 	
 	
 	/**
@@ -62,76 +54,94 @@ public class ProcurementRdfSerializer extends AbstractRdfSerializer<ProcurementR
 	 * 
 	 * @throws IllegalArgumentException
 	 *             if repository is {@code null}
-	 * @throws ParserConfigurationException
-	 *             when XML document builder fails to initialize
-	 * @throws TransformerConfigurationException
-	 *             when XML document transformer fails to initialize
 	 */
 	public ProcurementRdfSerializer(
 			OdnRepositoryStoreInterface<RdfData> repository)
-			throws IllegalArgumentException, ParserConfigurationException,
-			TransformerConfigurationException {
+			throws IllegalArgumentException {
 	
 		super(repository);
 	}
 	
 	@Override
-	public void addCustomRdfNsElements(Element rdfElement) {
-		rdfElement.setAttribute("xmlns:pc", NS_PROCUREMENT);
+	public void addCustomRdfNsElements(RdfXmlOutput output) {
+		output.attribute("xmlns:pc", NS_PROCUREMENT);
 	}
 	
 	@Override
-	public void serializeRecord(Document doc, Element rdfElement, ProcurementRecord record) {
-		Element concept = doc.createElement(TAG_NAME_SKOS_CONCEPT);
-		concept.setAttribute("rdf:about", OPENDATA_PROCUREMENTS_BASE_URI + record.getId());
+	public void serializeRecord(RdfXmlOutput output, ProcurementRecord record)
+			throws IOException {
+		
+		output.startElement(TAG_NAME_SKOS_CONCEPT);
+		output.attribute("rdf:about", OPENDATA_PROCUREMENTS_BASE_URI + record.getId());
 
 		// TODO: verify, that it is indeed a form of unique name identifying
 		// single procurement
-	    concept.appendChild(appendTextNode(doc, "skos:prefLabel", record.getProcurementId()));
+	    appendTextNode(output, "skos:prefLabel", record.getProcurementId());
 	    // TODO: hardcoded strings are not nice ... meaning the URL mainly but ...
-	    concept.appendChild(appendResourceNode(doc, "dc:source", "rdf:resource",
-	    		"http://datanest.fair-play.sk/datasets/2/records/" + record.getDatanestId()));
-		concept.appendChild(appendTextNode(doc,
-				"opendata:procurementSubject", record.getProcurementSubject()));
-		concept.appendChild(appendTextNode(doc, "pc:price",
-				priceFormat.format(record.getPrice())));
+	    appendResourceNode(output, "dc:source", "rdf:resource",
+	    		"http://datanest.fair-play.sk/datasets/2/records/" + record.getDatanestId());
+		appendTextNode(output,
+				"opendata:procurementSubject", record.getProcurementSubject());
+		appendTextNode(output, "pc:price",
+				formatCents(record.getPriceCents()));
 		// sometimes the currency is not filled in the source (so far only for
 		// cases where the price was 0)
 		if (record.getCurrency() != null)
-			concept.appendChild(appendTextNode(doc, "opendata:currency",
-					record.getCurrency().getCurrencyCode()));
-		concept.appendChild(appendTextNode(doc, "opendata:xIsVatIncluded",
-				Boolean.toString(record.isVatIncluded())));
+			appendTextNode(output, "opendata:currency",
+					record.getCurrency().getCurrencyCode());
+		appendTextNode(output, "opendata:xIsVatIncluded",
+				Boolean.toString(record.isVatIncluded()));
 		// TODO: use 'opendata:customer' child inside 'pc:buyerProfile' instead
-		concept.appendChild(appendResourceNode(
-				doc,
+		appendResourceNode(
+				output,
 				"opendata:customer",
 				"rdf:resource",
-				OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI + record.getCustomerIco()));
+				OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI + record.getCustomerIco());
 		// TODO: use 'opendata:customer' child inside 'pc:Supplier' instead
-		concept.appendChild(appendResourceNode(
-				doc,
+		appendResourceNode(
+				output,
 				"opendata:supplier",
 				"rdf:resource",
-				OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI + record.getSupplierIco()));
+				OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI + record.getSupplierIco());
 		
 		for (String scrapNote : record.getScrapNotes())
-			concept.appendChild(appendTextNode(doc, "opendata:xScrapNote",
-					scrapNote));
+			appendTextNode(output, "opendata:xScrapNote",
+					scrapNote);
+		
+		output.endElement();
+	}
+	
+	@Override
+	protected void addSubjects(Collection<String> subjects,
+			ProcurementRecord record) {
 		
-		rdfElement.appendChild(concept);
+		subjects.add(OPENDATA_PROCUREMENTS_BASE_URI + record.getId());
 	}
 	
 	@Override
-	public void store(List<ProcurementRecord> records)
-			throws IllegalArgumentException, OdnSerializationException,
-			OdnRepositoryException {
+	public RdfData serializeForStore(List<ProcurementRecord> records,
+			List<ProcurementRecord> updatedRecords) throws OdnSerializationException {
 		
-		RdfData rdfData = new RdfData(
-				serialize(records),
+		return createRdfData(
+				records,
+				updatedRecords,
 				OPENDATA_PROCUREMENTS_BASE_URI,
 				OPENDATA_PROCUREMENTS_CONTEXTS_KEY);
-		getRepository().store(rdfData);
 	}
 
+	/**
+	 * Remove records with given IDs from the repository, i.e. all statements
+	 * about {@code OPENDATA_PROCUREMENTS_BASE_URI + id}.
+	 */
+	@Override
+	public void remove(List<String> ids) throws IllegalArgumentException,
+			OdnSerializationException, OdnRepositoryException {
+		
+		Vector<String> subjects = new Vector<String>(ids.size());
+		for (String id : ids)
+			subjects.add(OPENDATA_PROCUREMENTS_BASE_URI + id);
+		
+		removeSubjects(subjects, OPENDATA_PROCUREMENTS_BASE_URI,
+				OPENDATA_PROCUREMENTS_CONTEXTS_KEY);
+	}
 }
@@ -0,0 +1,277 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ * Rastislav Senderak <rastislav.senderak@eea.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.opendata.odn.serialization.rdf;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import info.aduna.net.ParsedURI;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * Interprets RDF/XML document produced by RDF serializers directly as RDF
+ * statements, without writing it as text and parsing it again.
+ * 
+ * Only the subset of RDF/XML our serializers use is supported: node
+ * elements (typed or {@code rdf:Description}) identified by
+ * {@code rdf:about} or blank, property elements with {@code rdf:resource},
+ * with (optionally typed) text or with nested node elements. URIs are
+ * resolved against the base URI the same way Sesame RDF/XML parser does, so
+ * the statements are the same as if the document was parsed.
+ * 
+ * Statements are either collected (see {@link #getStatements()}) or passed
+ * to an {@link RDFHandler} as they are built, say to a Sesame RDF writer to
+ * write them in other format than RDF/XML.
+ */
+public class RdfStatementBuilder implements RdfXmlOutput {
+
+	private final static String PREFIX_XMLNS = "xmlns:";
+	private final static String ATTR_ABOUT = "rdf:about";
+	private final static String ATTR_RESOURCE = "rdf:resource";
+	private final static String ATTR_DATATYPE = "rdf:datatype";
+	private final static String TAG_NAME_RDF = "rdf:RDF";
+	private final static String TAG_NAME_DESCRIPTION = "rdf:Description";
+
+	/**
+	 * Element being built.
+	 */
+	private static class Frame {
+		private String name;
+		private boolean isNode;
+		private boolean started = false;
+		private Map<String, String> attributes = new HashMap<String, String>();
+		// node element: subject
+		private Resource subject;
+		// property element: predicate, text and whether object is a node
+		private URI predicate;
+		private StringBuilder text;
+		private boolean hasNode = false;
+
+		private Frame(String name, boolean isNode) {
+			this.name = name;
+			this.isNode = isNode;
+		}
+	}
+
+	private ValueFactory valueFactory;
+	private ParsedURI baseUri;
+	private Map<String, String> namespaces = new HashMap<String, String>();
+	private Vector<Frame> frames = new Vector<Frame>();
+	private Vector<Statement> statements = new Vector<Statement>();
+	private RDFHandler handler = null;
+
+
+	/**
+	 * @param baseUri
+	 *            base URI used to resolve relative URIs
+	 * @param valueFactory
+	 *            factory used to create the statements
+	 */
+	public RdfStatementBuilder(String baseUri, ValueFactory valueFactory) {
+		this.baseUri = new ParsedURI(baseUri);
+		this.baseUri.normalize();
+		this.valueFactory = valueFactory;
+	}
+
+	/**
+	 * @param baseUri
+	 *            base URI used to resolve relative URIs
+	 * @param valueFactory
+	 *            factory used to create the statements
+	 * @param handler
+	 *            handler to pass the statements (and namespaces) to, instead
+	 *            of collecting them (note: {@code startRDF()} and
+	 *            {@code endRDF()} are up to the caller)
+	 */
+	public RdfStatementBuilder(String baseUri, ValueFactory valueFactory,
+			RDFHandler handler) {
+		
+		this(baseUri, valueFactory);
+		this.handler = handler;
+	}
+
+	/**
+	 * @return statements built so far (empty if they are passed to a handler)
+	 */
+	public List<Statement> getStatements() {
+		return statements;
+	}
+
+	@Override
+	public void startElement(String name) throws IOException {
+		Frame parent = frames.isEmpty() ? null : frames.lastElement();
+		if (parent != null)
+			startFrame(parent);
+
+		// striped syntax: nodes and properties alternate, 'rdf:RDF'
+		// contains nodes
+		boolean isNode = parent == null ? false : !parent.isNode;
+		if (parent != null && parent.name.equals(TAG_NAME_RDF))
+			isNode = true;
+
+		frames.add(new Frame(name, isNode));
+	}
+
+	@Override
+	public void attribute(String name, String value)
+			throws IllegalStateException {
+
+		if (frames.isEmpty() || frames.lastElement().started)
+			throw new IllegalStateException("attribute " + name
+					+ " outside of start tag");
+
+		frames.lastElement().attributes.put(name, value == null ? "" : value);
+	}
+
+	@Override
+	public void text(String text) throws IOException {
+		if (text == null || text.isEmpty())
+			return;
+
+		Frame frame = frames.lastElement();
+		startFrame(frame);
+		if (frame.isNode || frame.text == null)
+			throw new IllegalStateException("unexpected text in element "
+					+ frame.name);
+		frame.text.append(text);
+	}
+
+	@Override
+	public void endElement() throws IOException {
+		Frame frame = frames.lastElement();
+		startFrame(frame);
+		frames.remove(frames.size() - 1);
+
+		if (frame.isNode || frame.predicate == null)
+			return;
+
+		Frame node = frames.lastElement();
+		String resource = frame.attributes.get(ATTR_RESOURCE);
+		String datatype = frame.attributes.get(ATTR_DATATYPE);
+		Value object;
+		if (resource != null)
+			object = resolve(resource);
+		else if (frame.hasNode)
+			// object was added when the nested node started
+			return;
+		else if (datatype != null)
+			object = valueFactory.createLiteral(frame.text.toString(),
+					resolve(datatype));
+		else
+			object = valueFactory.createLiteral(frame.text.toString());
+
+		add(node.subject, frame.predicate, object);
+	}
+
+	/**
+	 * Process the start tag of given element (which is the last one open)
+	 * once all its attributes are known.
+	 */
+	private void startFrame(Frame frame) throws IOException {
+		if (frame.started)
+			return;
+		frame.started = true;
+
+		if (frame.name.equals(TAG_NAME_RDF)) {
+			for (Map.Entry<String, String> attribute : frame.attributes
+					.entrySet())
+				if (attribute.getKey().startsWith(PREFIX_XMLNS)) {
+					String prefix = attribute.getKey().substring(
+							PREFIX_XMLNS.length());
+					namespaces.put(prefix, attribute.getValue());
+					if (handler != null)
+						try {
+							handler.handleNamespace(prefix, attribute.getValue());
+						} catch (RDFHandlerException e) {
+							throw new IOException(e.getMessage(), e);
+						}
+				}
+			return;
+		}
+
+		Frame parent = frames.get(frames.size() - 2);
+		if (frame.isNode) {
+			String about = frame.attributes.get(ATTR_ABOUT);
+			frame.subject = about != null ? resolve(about) : valueFactory
+					.createBNode();
+			if (!frame.name.equals(TAG_NAME_DESCRIPTION))
+				add(frame.subject, RDF.TYPE, expand(frame.name));
+
+			if (!parent.isNode && parent.predicate != null) {
+				// nested node is the object of the parent property
+				Frame parentNode = frames.get(frames.size() - 3);
+				add(parentNode.subject, parent.predicate, frame.subject);
+				parent.hasNode = true;
+			}
+		}
+		else {
+			frame.predicate = expand(frame.name);
+			frame.text = new StringBuilder();
+		}
+	}
+
+	private void add(Resource subject, URI predicate, Value object)
+			throws IOException {
+		
+		Statement statement = valueFactory.createStatement(subject, predicate,
+				object);
+		if (handler == null) {
+			statements.add(statement);
+			return;
+		}
+		
+		try {
+			handler.handleStatement(statement);
+		} catch (RDFHandlerException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private URI expand(String qualifiedName) {
+		int colon = qualifiedName.indexOf(':');
+		String namespace = colon < 0 ? null : namespaces.get(qualifiedName
+				.substring(0, colon));
+		if (namespace == null)
+			throw new IllegalArgumentException("namespace of " + qualifiedName
+					+ " not declared");
+
+		return valueFactory.createURI(namespace,
+				qualifiedName.substring(colon + 1));
+	}
+
+	private URI resolve(String uri) {
+		ParsedURI parsedUri = new ParsedURI(uri);
+		if (parsedUri.isRelative())
+			parsedUri = baseUri.resolve(parsedUri);
+
+		return valueFactory.createURI(parsedUri.toString());
+	}
+
+}
@@ -0,0 +1,78 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ * Rastislav Senderak <rastislav.senderak@eea.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.opendata.odn.serialization.rdf;
+
+import java.io.IOException;
+
+/**
+ * Receiver of RDF/XML document produced by RDF serializers, element by
+ * element.
+ * 
+ * Implementations either write the document as text (see
+ * {@link RdfXmlWriter}) or interpret it directly as RDF statements (see
+ * {@link RdfStatementBuilder}).
+ */
+public interface RdfXmlOutput {
+
+	/**
+	 * Start new element. Attributes of the element are to be added right
+	 * after the start.
+	 * 
+	 * @param name
+	 *            qualified name of the element
+	 * 
+	 * @throws IOException
+	 *             when writing fails
+	 */
+	public void startElement(String name) throws IOException;
+
+	/**
+	 * Add an attribute to the element just started.
+	 * 
+	 * @param name
+	 *            qualified name of the attribute
+	 * @param value
+	 *            value of the attribute ({@code null} is same as empty)
+	 * 
+	 * @throws IllegalStateException
+	 *             when there is no element just started
+	 */
+	public void attribute(String name, String value)
+			throws IllegalStateException;
+
+	/**
+	 * Add the text content of current element.
+	 * 
+	 * @param text
+	 *            text to add ({@code null} is same as empty text)
+	 * 
+	 * @throws IOException
+	 *             when writing fails
+	 */
+	public void text(String text) throws IOException;
+
+	/**
+	 * End current element.
+	 * 
+	 * @throws IOException
+	 *             when writing fails
+	 */
+	public void endElement() throws IOException;
+
+}
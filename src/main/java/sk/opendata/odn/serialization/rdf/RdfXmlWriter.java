@@ -0,0 +1,259 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ * Rastislav Senderak <rastislav.senderak@eea.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package sk.opendata.odn.serialization.rdf;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Vector;
+
+/**
+ * Streaming writer of (RDF/)XML documents.
+ * 
+ * Elements are written into the output stream as they come, so memory used
+ * does not depend on the size of the document. Output is same as the one
+ * we've got from the XML {@code Transformer} (with indenting turned on)
+ * serializing a DOM document, namely:
+ * - each start tag is on new line (no indentation), end tag too if the
+ *   element contains other elements
+ * - attributes are sorted by name, except for the declaration of the
+ *   namespace of the element itself which goes first
+ * - elements without content are written as empty-element tags
+ * - characters are escaped the same way
+ * 
+ * Note: Mixed content (i.e. text and elements in one element) is not
+ * expected.
+ */
+public class RdfXmlWriter implements RdfXmlOutput {
+
+	public final static String ENCODING = "UTF-8";
+	public final static String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\""
+			+ ENCODING + "\" standalone=\"no\"?>";
+
+	private final static Comparator<String[]> ATTRIBUTE_COMPARATOR = new Comparator<String[]>() {
+		@Override
+		public int compare(String[] attribute1, String[] attribute2) {
+			return attribute1[0].compareTo(attribute2[0]);
+		}
+	};
+
+	private Writer out;
+	// names of the open elements and whether they contain other elements
+	private Vector<String> openElements = new Vector<String>();
+	private Vector<Boolean> hasChildElements = new Vector<Boolean>();
+	// start tag of last open element is not finished yet (attributes can
+	// still be added)
+	private boolean startTagOpen = false;
+	private Vector<String[]> attributes = new Vector<String[]>();
+
+
+	/**
+	 * @param out
+	 *            stream to write the document into (in UTF-8)
+	 */
+	public RdfXmlWriter(OutputStream out) {
+		try {
+			this.out = new BufferedWriter(new OutputStreamWriter(out, ENCODING));
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Write the XML declaration.
+	 * 
+	 * @throws IOException
+	 *             when writing fails
+	 */
+	public void startDocument() throws IOException {
+		out.write(XML_DECLARATION);
+	}
+
+	/**
+	 * Close all open elements and flush the output.
+	 * 
+	 * @throws IOException
+	 *             when writing fails
+	 */
+	public void endDocument() throws IOException {
+		while (!openElements.isEmpty())
+			endElement();
+		out.write('\n');
+		out.flush();
+	}
+
+	@Override
+	public void startElement(String name) throws IOException {
+		finishStartTag();
+		if (!hasChildElements.isEmpty())
+			hasChildElements.set(hasChildElements.size() - 1, Boolean.TRUE);
+
+		out.write('\n');
+		out.write('<');
+		out.write(name);
+		openElements.add(name);
+		hasChildElements.add(Boolean.FALSE);
+		startTagOpen = true;
+	}
+
+	@Override
+	public void attribute(String name, String value)
+			throws IllegalStateException {
+
+		if (!startTagOpen)
+			throw new IllegalStateException("attribute " + name
+					+ " outside of start tag");
+		attributes.add(new String[] { name, value });
+	}
+
+	@Override
+	public void text(String text) throws IOException {
+		if (text == null || text.isEmpty())
+			return;
+
+		finishStartTag();
+		escape(text, false);
+	}
+
+	@Override
+	public void endElement() throws IOException {
+		String name = openElements.remove(openElements.size() - 1);
+		boolean hadChildElements = hasChildElements.remove(hasChildElements
+				.size() - 1);
+
+		if (startTagOpen) {
+			writeAttributes(name);
+			out.write("/>");
+			startTagOpen = false;
+			return;
+		}
+
+		if (hadChildElements)
+			out.write('\n');
+		out.write("</");
+		out.write(name);
+		out.write('>');
+	}
+
+	private void finishStartTag() throws IOException {
+		if (!startTagOpen)
+			return;
+
+		writeAttributes(openElements.lastElement());
+		out.write('>');
+		startTagOpen = false;
+	}
+
+	private void writeAttributes(String elementName) throws IOException {
+		int colon = elementName.indexOf(':');
+		String ownNamespace = "xmlns"
+				+ (colon >= 0 ? ":" + elementName.substring(0, colon) : "");
+
+		Collections.sort(attributes, ATTRIBUTE_COMPARATOR);
+		for (String[] attribute : attributes)
+			if (attribute[0].equals(ownNamespace))
+				writeAttribute(attribute);
+		for (String[] attribute : attributes)
+			if (!attribute[0].equals(ownNamespace))
+				writeAttribute(attribute);
+
+		attributes.clear();
+	}
+
+	private void writeAttribute(String[] attribute) throws IOException {
+		out.write(' ');
+		out.write(attribute[0]);
+		out.write("=\"");
+		if (attribute[1] != null)
+			escape(attribute[1], true);
+		out.write('"');
+	}
+
+	private void escape(String text, boolean inAttribute) throws IOException {
+		int length = text.length();
+		int start = 0;
+
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			String replacement = null;
+			int characterReference = -1;
+
+			switch (c) {
+			case '&':
+				replacement = "&amp;";
+				break;
+			case '<':
+				replacement = "&lt;";
+				break;
+			case '>':
+				replacement = "&gt;";
+				break;
+			case '"':
+				if (inAttribute)
+					replacement = "&quot;";
+				break;
+			case '\t':
+			case '\n':
+				if (inAttribute)
+					characterReference = c;
+				break;
+			case '\r':
+				characterReference = c;
+				break;
+			default:
+				if (c < 0x20 || (c >= 0x7f && c <= 0x9f))
+					characterReference = c;
+				else if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(text.charAt(i + 1))) {
+					out.write(text, start, i - start);
+					characterReference = Character.toCodePoint(c,
+							text.charAt(++i));
+					writeCharacterReference(characterReference);
+					start = i + 1;
+					continue;
+				}
+			}
+
+			if (replacement == null && characterReference < 0)
+				continue;
+
+			out.write(text, start, i - start);
+			if (replacement != null)
+				out.write(replacement);
+			else
+				writeCharacterReference(characterReference);
+			start = i + 1;
+		}
+
+		out.write(text, start, length - start);
+	}
+
+	private void writeCharacterReference(int codePoint) throws IOException {
+		out.write("&#");
+		out.write(Integer.toString(codePoint));
+		out.write(';');
+	}
+
+}
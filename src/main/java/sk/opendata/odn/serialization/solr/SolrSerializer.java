@@ -22,7 +22,6 @@ import java.util.List;
 import java.util.Vector;
 
 import sk.opendata.odn.model.AbstractRecord;
-import sk.opendata.odn.repository.OdnRepositoryException;
 import sk.opendata.odn.repository.OdnRepositoryStoreInterface;
 import sk.opendata.odn.repository.solr.SolrItem;
 import sk.opendata.odn.serialization.AbstractSerializer;
@@ -83,19 +82,20 @@ public class SolrSerializer<RecordType extends AbstractRecord> extends
 	}
 
 	/**
-	 * Serialize and store given organization record.
+	 * Serialize given records into beans for SOLR.
 	 * 
 	 * @param records
-	 *            list of organization records to serialize and store
+	 *            list of records as harvested
+	 * 
+	 * @return list of records suitable to be pushed into SOLR
 	 * 
-	 * @throws OdnRepositoryException
-	 *             when we fail to store given data into repository
 	 * @throws OdnSerializationException
 	 *             when conversion into SOLR beans fails
 	 */
-	public void store(List<RecordType> records)
-			throws OdnSerializationException, OdnRepositoryException {
+	@Override
+	public List<SolrItem> serializeForStore(List<RecordType> records)
+			throws OdnSerializationException {
 		
-		getRepository().store(serialize(records));
+		return serialize(records);
 	}
 }
@@ -160,7 +160,8 @@ public class ResultPanel extends Panel {
 		
 		// obtain results
 		QueryResponse queryResponse = solrRepository.getSolrServer().query(solrQuery);
-		List<SolrItem> responseItems = queryResponse.getBeans(SolrItem.class);
+		List<SolrItem> responseItems = SolrItem.createSolrItems(queryResponse
+				.getResults());
 		
 		// update the display
 		resultList.addAll(responseItems);
@@ -0,0 +1,130 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.utils;
+
+import java.util.Date;
+
+/**
+ * Builds stable 64-bit hash (FNV-1a) of the content of an item, field by
+ * field.
+ * 
+ * Hash does not depend on JVM, so it can be stored along with the item and
+ * compared with the hash of a newly harvested item later (or used as an
+ * ETag, see {@link #toString(long)}).
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * long hash = new ContentHash().append(id).append(priceCents).toLong();
+ * </pre>
+ */
+public class ContentHash {
+
+	public final static long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	public final static long FNV_PRIME = 0x100000001b3L;
+
+	// note: markers make "null" different from empty string and "a","bc"
+	// different from "ab","c"
+	private final static int NULL_MARKER = 0x00;
+	private final static int VALUE_MARKER = 0x01;
+
+	private long hash = FNV_OFFSET_BASIS;
+
+
+	private void hashByte(int b) {
+		hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+	}
+
+	private void hashInt(int value) {
+		hashByte(value >>> 24);
+		hashByte(value >>> 16);
+		hashByte(value >>> 8);
+		hashByte(value);
+	}
+
+	private void hashLong(long value) {
+		hashInt((int) (value >>> 32));
+		hashInt((int) value);
+	}
+
+	public ContentHash append(String value) {
+		if (value == null) {
+			hashByte(NULL_MARKER);
+			return this;
+		}
+
+		hashByte(VALUE_MARKER);
+		hashInt(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			hashByte(c >>> 8);
+			hashByte(c);
+		}
+
+		return this;
+	}
+
+	public ContentHash append(Date value) {
+		if (value == null) {
+			hashByte(NULL_MARKER);
+			return this;
+		}
+
+		hashByte(VALUE_MARKER);
+		hashLong(value.getTime());
+
+		return this;
+	}
+
+	public ContentHash append(long value) {
+		hashByte(VALUE_MARKER);
+		hashLong(value);
+
+		return this;
+	}
+
+	public ContentHash append(boolean value) {
+		hashByte(VALUE_MARKER);
+		hashByte(value ? 1 : 0);
+
+		return this;
+	}
+
+	/**
+	 * @return hash of all the appended values
+	 */
+	public long toLong() {
+		return hash;
+	}
+
+	/**
+	 * Format given hash as a string (usable as an ETag).
+	 * 
+	 * @param hash
+	 *            hash as returned by {@link #toLong()}
+	 * @return hash as 16 hexadecimal digits
+	 */
+	public static String toString(long hash) {
+		String hex = Long.toHexString(hash);
+
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+}
@@ -0,0 +1,238 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.utils;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Parsing of dates and numbers as found in harvested data.
+ * 
+ * Unlike {@code SimpleDateFormat} and {@code DecimalFormat}, functions here
+ * keep no state, so they can be called from multiple threads at once, and
+ * they do not allocate anything except the result.
+ * 
+ * Same as with {@code Format.parse(String)}, text following the parsed value
+ * is ignored.
+ */
+public class ParseUtil {
+
+	private final static long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+	// note: more digits do not fit into 'long'
+	private final static int MAX_DIGITS = 18;
+
+	// note: dates are in local time, same as with 'SimpleDateFormat'
+	private final static TimeZone timeZone = TimeZone.getDefault();
+
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\u00a0' || c == '\t';
+	}
+
+	private static boolean isLeapYear(long year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	private static int daysInMonth(long year, int month) {
+		switch (month) {
+		case 2:
+			return isLeapYear(year) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * @return number of days since 1970-01-01 (proleptic Gregorian calendar)
+	 */
+	private static long daysSinceEpoch(long year, int month, int day) {
+		if (month <= 2)
+			year--;
+		long era = (year >= 0 ? year : year - 399) / 400;
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * Convert local midnight of given day into UTC.
+	 */
+	private static long localMidnightToUtc(long days) {
+		long local = days * MILLIS_PER_DAY;
+		int offset = timeZone.getOffset(local - timeZone.getRawOffset());
+		long utc = local - offset;
+
+		// daylight saving time might have started or ended between the
+		// guess and the result
+		int actualOffset = timeZone.getOffset(utc);
+		if (actualOffset != offset
+				&& timeZone.getOffset(local - actualOffset) == actualOffset)
+			utc = local - actualOffset;
+
+		return utc;
+	}
+
+	/**
+	 * Parse date in format {@code yyyy-MM-dd} (as used by Datanest).
+	 * 
+	 * Note: Parsing is strict, i.e. dates like "2011-02-30" are not accepted.
+	 * 
+	 * @param source
+	 *            string to parse
+	 * @return midnight (local time) of the parsed day
+	 * 
+	 * @throws ParseException
+	 *             when given string is not a valid date
+	 */
+	public static Date parseDate(String source) throws ParseException {
+		int length = source.length();
+		int position = 0;
+
+		long year = 0;
+		int start = position;
+		while (position < length && isDigit(source.charAt(position))
+				&& position - start < 9)
+			year = year * 10 + (source.charAt(position++) - '0');
+		if (position == start || position >= length
+				|| source.charAt(position) != '-')
+			throw new ParseException("unparseable date: \"" + source + "\"",
+					position);
+		position++;
+
+		int month = 0;
+		start = position;
+		while (position < length && isDigit(source.charAt(position))
+				&& position - start < 2)
+			month = month * 10 + (source.charAt(position++) - '0');
+		if (position == start || position >= length
+				|| source.charAt(position) != '-' || month < 1 || month > 12)
+			throw new ParseException("unparseable date: \"" + source + "\"",
+					position);
+		position++;
+
+		int day = 0;
+		start = position;
+		while (position < length && isDigit(source.charAt(position))
+				&& position - start < 2)
+			day = day * 10 + (source.charAt(position++) - '0');
+		if (position == start || day < 1 || day > daysInMonth(year, month))
+			throw new ParseException("unparseable date: \"" + source + "\"",
+					position);
+
+		return new Date(localMidnightToUtc(daysSinceEpoch(year, month, day)));
+	}
+
+	/**
+	 * Parse decimal amount of money into minor units (cents), exactly.
+	 * 
+	 * Spaces (and non-breaking spaces) are accepted as grouping separators.
+	 * Amount with more than two decimal places is rounded (half up).
+	 * 
+	 * @param source
+	 *            string to parse, like "1 234,56" (Slovak format) or
+	 *            "1234.56"
+	 * @param decimalSeparator
+	 *            decimal separator used in the source ({@code ','} or
+	 *            {@code '.'})
+	 * @return amount in cents
+	 * 
+	 * @throws ParseException
+	 *             when given string does not start with a number (leading
+	 *             spaces are ignored) or when the number has too many digits
+	 */
+	public static long parseCents(String source, char decimalSeparator)
+			throws ParseException {
+		
+		int length = source.length();
+		int position = 0;
+
+		while (position < length && isSpace(source.charAt(position)))
+			position++;
+
+		boolean negative = false;
+		if (position < length
+				&& (source.charAt(position) == '-' || source.charAt(position) == '+')) {
+			negative = source.charAt(position) == '-';
+			position++;
+		}
+
+		long cents = 0;
+		int digits = 0;
+		int scale = -1;
+		boolean roundUp = false;
+		int start = position;
+		while (position < length) {
+			char c = source.charAt(position);
+			if (isDigit(c)) {
+				if (scale < 2) {
+					// note: leading zeros do not count
+					if (cents > 0 || c != '0')
+						digits++;
+					if (digits > MAX_DIGITS - 2)
+						throw new ParseException("too many digits: \"" + source
+								+ "\"", position);
+					cents = cents * 10 + (c - '0');
+					if (scale >= 0)
+						scale++;
+				} else if (scale == 2) {
+					// first digit which does not fit, the rest is ignored
+					roundUp = c >= '5';
+					scale++;
+				}
+			} else if (scale < 0 && isSpace(c) && position > start
+					&& position + 1 < length
+					&& isDigit(source.charAt(position + 1))) {
+				// grouping separator - only between digits
+			} else if (scale < 0 && c == decimalSeparator && position > start
+					&& position + 1 < length
+					&& isDigit(source.charAt(position + 1))) {
+				scale = 0;
+			} else
+				break;
+			position++;
+		}
+
+		if (position == start)
+			throw new ParseException("unparseable number: \"" + source + "\"",
+					position);
+
+		// missing decimal places
+		for (int i = Math.max(scale, 0); i < 2; i++)
+			cents *= 10;
+		if (roundUp)
+			cents++;
+
+		return negative ? -cents : cents;
+	}
+
+}
@@ -0,0 +1,219 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Vector;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestHttpDownloader {
+
+	private final static String ETAG = "\"v1\"";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private HttpDownloader downloader;
+	private byte[] content;
+	// requests received by the server: "<Range> <If-Range> <Accept-Encoding>"
+	private Vector<String> requests = new Vector<String>();
+
+	@Before
+	public void setUp() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 10000; i++)
+			builder.append(i).append(",row ").append(i).append('\n');
+		content = builder.toString().getBytes("UTF-8");
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.start();
+		downloader = new HttpDownloader(1000, 1000, 2, 2);
+	}
+
+	@After
+	public void tearDown() {
+		downloader.shutdown();
+		server.stop(0);
+	}
+
+	private URL createUrl(String path, HttpHandler handler) throws IOException {
+		server.createContext(path, handler);
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+
+	private void logRequest(HttpExchange exchange) {
+		requests.add(exchange.getRequestHeaders().getFirst("Range") + " "
+				+ exchange.getRequestHeaders().getFirst("If-Range") + " "
+				+ exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+	}
+
+	private static void send(HttpExchange exchange, int status, byte[] data,
+			int from, int to) throws IOException {
+		exchange.sendResponseHeaders(status, data.length - from);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(data, from, to - from);
+			out.flush();
+		} finally {
+			// note: with bytes missing, the connection stalls until the
+			// client times out
+			try {
+				out.close();
+			} catch (IOException e) {
+				// expected when connection is cut
+			}
+			exchange.close();
+		}
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(data);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static byte[] read(File file) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(file);
+		byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) != -1)
+			bytes.write(buffer, 0, count);
+		in.close();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		final byte[] compressed = gzip(content);
+		URL url = createUrl("/gzip", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				logRequest(exchange);
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				exchange.getResponseHeaders().set("ETag", ETAG);
+				send(exchange, 200, compressed, 0, compressed.length);
+			}
+		});
+
+		File target = new File(folder.getRoot(), "source.dump");
+		HttpDownloader.Result result = downloader.download(url, target, null, 0);
+		assertEquals("requests", "null null gzip", requests.get(0));
+		assertEquals("etag", ETAG, result.getEtag());
+		assertEquals("length", content.length, result.getLength());
+		assertArrayEquals("content", content, read(target));
+		assertTrue("partial file removed", !new File(target.getPath()
+				+ HttpDownloader.PARTIAL_FILE_SUFFIX).exists());
+	}
+
+	@Test
+	public void testResume() throws IOException {
+		URL url = createUrl("/resume", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				logRequest(exchange);
+				exchange.getResponseHeaders().set("ETag", ETAG);
+				String range = exchange.getRequestHeaders().getFirst("Range");
+				if (range == null)
+					// download stalls in the middle of the document
+					send(exchange, 200, content, 0, content.length / 2);
+				else {
+					int from = Integer.parseInt(range.substring(6, range.length() - 1));
+					exchange.getResponseHeaders().set("Content-Range", "bytes "
+							+ from + "-" + (content.length - 1) + "/" + content.length);
+					send(exchange, 206, content, from, content.length);
+				}
+			}
+		});
+
+		File target = new File(folder.getRoot(), "source.dump");
+		downloader.download(url, target, null, 0);
+		assertEquals("requests", 2, requests.size());
+		assertEquals("resumed", "bytes=" + content.length / 2 + "- " + ETAG
+				+ " gzip", requests.get(1));
+		assertArrayEquals("content", content, read(target));
+	}
+
+	@Test
+	public void testNotModified() throws IOException {
+		URL url = createUrl("/not-modified", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				logRequest(exchange);
+				assertEquals(ETAG, exchange.getRequestHeaders().getFirst("If-None-Match"));
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+			}
+		});
+
+		File target = new File(folder.getRoot(), "source.dump");
+		assertNull("not modified", downloader.download(url, target, ETAG, 0));
+		assertTrue("nothing downloaded", !target.exists());
+	}
+
+	@Test
+	public void testChecksumMismatch() throws IOException {
+		URL url = createUrl("/corrupted", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				logRequest(exchange);
+				// MD5 of empty content
+				exchange.getResponseHeaders().set("Content-MD5", "1B2M2Y8AsgTpgAmY7PhCfg==");
+				send(exchange, 200, content, 0, content.length);
+			}
+		});
+
+		File target = new File(folder.getRoot(), "source.dump");
+		try {
+			downloader.download(url, target, null, 0);
+			fail("checksum mismatch expected");
+		} catch (IOException e) {
+			// expected
+		}
+		assertTrue("corrupted download removed", !new File(target.getPath()
+				+ HttpDownloader.PARTIAL_FILE_SUFFIX).exists());
+	}
+
+}
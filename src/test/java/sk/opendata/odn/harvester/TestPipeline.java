@@ -0,0 +1,130 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class TestPipeline {
+
+	private final static int ITEM_COUNT = 100;
+
+	private static class CountingSource implements Pipeline.Source<Integer> {
+		private int next = 0;
+
+		@Override
+		public Integer next() {
+			return next < ITEM_COUNT ? next++ : null;
+		}
+	}
+
+	private static class Doubler implements Pipeline.Stage<Integer, Integer> {
+		@Override
+		public Integer process(Integer item) {
+			return item * 2;
+		}
+	}
+
+	private static class Collector implements Pipeline.Stage<Integer, Void> {
+		private List<Integer> items = Collections.synchronizedList(new Vector<Integer>());
+
+		@Override
+		public Void process(Integer item) throws InterruptedException {
+			// slow stage => others have to wait for it
+			Thread.sleep(1);
+			items.add(item);
+			return null;
+		}
+	}
+
+	@Test
+	public void testOrder() throws ExecutionException, InterruptedException {
+		Pipeline pipeline = new Pipeline("test");
+		Collector collector = new Collector();
+
+		Pipeline.Link<Integer> source = pipeline.source("source",
+				new CountingSource(), 2);
+		Pipeline.Link<Integer> doubled = pipeline.stage("double", source, 1,
+				2, new Doubler());
+		pipeline.sink("collect", doubled, 1, collector);
+		pipeline.run();
+
+		assertEquals("item count", ITEM_COUNT, collector.items.size());
+		for (int i = 0; i < ITEM_COUNT; i++)
+			assertEquals("item " + i, Integer.valueOf(i * 2),
+					collector.items.get(i));
+		assertTrue("statistics",
+				pipeline.getStatistics().startsWith("source: 100 items"));
+	}
+
+	@Test
+	public void testMultipleThreads() throws ExecutionException,
+			InterruptedException {
+		Pipeline pipeline = new Pipeline("test");
+		Collector collector = new Collector();
+
+		Pipeline.Link<Integer> source = pipeline.source("source",
+				new CountingSource(), 2);
+		Pipeline.Link<Integer> doubled = pipeline.stage("double", source, 4,
+				2, new Doubler());
+		pipeline.sink("collect", doubled, 3, collector);
+		pipeline.run();
+
+		Vector<Integer> items = new Vector<Integer>(collector.items);
+		Collections.sort(items);
+		assertEquals("item count", ITEM_COUNT, items.size());
+		for (int i = 0; i < ITEM_COUNT; i++)
+			assertEquals("item " + i, Integer.valueOf(i * 2), items.get(i));
+	}
+
+	@Test
+	public void testFailure() throws InterruptedException {
+		Pipeline pipeline = new Pipeline("test");
+
+		Pipeline.Link<Integer> source = pipeline.source("source",
+				new CountingSource(), 2);
+		Pipeline.Link<Integer> doubled = pipeline.stage("fail", source, 1, 2,
+				new Pipeline.Stage<Integer, Integer>() {
+					@Override
+					public Integer process(Integer item) throws IOException {
+						if (item == 10)
+							throw new IOException("failure");
+						return item;
+					}
+				});
+		pipeline.sink("collect", doubled, 1, new Collector());
+
+		try {
+			pipeline.run();
+			fail("execution exception expected");
+		} catch (ExecutionException e) {
+			assertTrue("cause", e.getCause() instanceof IOException);
+		}
+	}
+
+}
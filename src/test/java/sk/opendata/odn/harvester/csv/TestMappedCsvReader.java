@@ -0,0 +1,224 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Vector;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import sk.opendata.odn.harvester.diff.RowDigestWriter;
+import au.com.bytecode.opencsv.CSVReader;
+
+public class TestMappedCsvReader {
+
+	private final static String TEST_CSV =
+			"id,name,note\n"
+			+ "1,simple,\n"
+			+ "2,\"quoted, with comma\",\"doubled \"\"quotes\"\"\"\r\n"
+			+ "3,\"escaped \\\"quote\\\" and \\\\ backslash\",lone \\ backslash\n"
+			+ "4,\"multi\r\nline\",Žltý kôň úpel ďábelské ódy\n"
+			+ "\n"
+			+ "5,  \"leading space\",in\"side\"quotes\r"
+			+ "6,,\n"
+			+ "7,last,row without line break";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File writeCsv(String content) throws IOException {
+		File file = folder.newFile("test.csv");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes(MappedCsvReader.ENCODING));
+		out.close();
+
+		return file;
+	}
+
+	private Vector<String[]> readWithOpencsv(File file) throws IOException {
+		Vector<String[]> rows = new Vector<String[]>();
+
+		CSVReader reader = new CSVReader(new InputStreamReader(
+				new FileInputStream(file), MappedCsvReader.ENCODING));
+		String[] row;
+		while ((row = reader.readNext()) != null)
+			rows.add(row);
+		reader.close();
+
+		return rows;
+	}
+
+	private void compareWithOpencsv(int windowSize) throws IOException {
+		File file = writeCsv(TEST_CSV);
+		Vector<String[]> expectedRows = readWithOpencsv(file);
+
+		MappedCsvReader reader = new MappedCsvReader(file, windowSize);
+		for (String[] expected : expectedRows) {
+			CsvRow row = reader.readNext();
+			assertArrayEquals("row", expected, row.toArray());
+			assertEquals("fingerprint", RowDigestWriter.hashRow(expected),
+					row.fingerprint());
+		}
+		assertNull("end of document", reader.readNext());
+		reader.close();
+	}
+
+	@Test
+	public void testSameAsOpencsv() throws IOException {
+		compareWithOpencsv(MappedCsvReader.DEFAULT_WINDOW_SIZE);
+	}
+
+	@Test
+	public void testSmallWindow() throws IOException {
+		// rows do not fit into the window => remapping and window enlarging
+		compareWithOpencsv(4);
+	}
+
+	/**
+	 * Read the document split at given offsets (after the header) the same
+	 * way as {@code ParallelDumpScraper} does and compare it with opencsv.
+	 */
+	private void readRanges(File file, Vector<String[]> expectedRows,
+			long... splitOffsets) throws IOException {
+		// skip the header, as harvesters do
+		MappedCsvReader reader = new MappedCsvReader(file);
+		reader.readNext();
+		long dataStart = reader.getOffset();
+		reader.close();
+
+		Vector<Long> starts = new Vector<Long>();
+		starts.add(dataStart);
+		for (long splitOffset : splitOffsets) {
+			long lineStart = MappedCsvReader.nextLineStart(file, splitOffset);
+			if (lineStart > starts.lastElement())
+				starts.add(lineStart);
+		}
+		starts.add(Math.max(file.length(), starts.lastElement()));
+
+		int rowIndex = 1;
+		boolean inQuotes = false;
+		for (int range = 0; range + 1 < starts.size(); range++) {
+			MappedCsvReader.RangeScan scan = MappedCsvReader.scanRange(file,
+					starts.get(range), starts.get(range + 1));
+			long firstRow = range == 0 ? dataStart : scan
+					.getFirstRowStart(inQuotes);
+			inQuotes = scan.endsInQuotes(inQuotes);
+
+			reader = new MappedCsvReader(file, firstRow,
+					starts.get(range + 1), 4);
+			CsvRow row;
+			while ((row = reader.readNext()) != null)
+				assertArrayEquals("row " + rowIndex + " (split at "
+						+ starts + ")", expectedRows.get(rowIndex++),
+						row.toArray());
+			reader.close();
+		}
+		assertEquals("all rows read (split at " + starts + ")",
+				expectedRows.size(), rowIndex);
+	}
+
+	@Test
+	public void testRanges() throws IOException {
+		File file = writeCsv(TEST_CSV);
+		Vector<String[]> expectedRows = readWithOpencsv(file);
+
+		long size = file.length();
+		readRanges(file, expectedRows, size / 3, 2 * size / 3);
+	}
+
+	@Test
+	public void testRangesSplitAnywhere() throws IOException {
+		// split also inside of quoted values spanning multiple lines
+		File file = writeCsv(TEST_CSV
+				+ "\n8,\"multi\n\"\"9\"\",\n\r\nline\",x\n9,\"a\rb\",\"c\\\"\n\"\n");
+		Vector<String[]> expectedRows = readWithOpencsv(file);
+
+		readRanges(file, expectedRows);
+		for (long offset = 1; offset < file.length(); offset++)
+			readRanges(file, expectedRows, offset);
+		for (long offset = 1; offset + 4 < file.length(); offset++)
+			readRanges(file, expectedRows, offset, offset + 2, offset + 4);
+	}
+
+	@Test
+	public void testNextLineStart() throws IOException {
+		File file = writeCsv("a\r\nb\rc\n");
+
+		long[] expected = { 0, 3, 3, 3, 5, 5, 7, 7 };
+		for (int offset = 0; offset < expected.length; offset++)
+			assertEquals("line start after " + offset, expected[offset],
+					MappedCsvReader.nextLineStart(file, offset));
+		assertEquals("beyond the end", 7,
+				MappedCsvReader.nextLineStart(file, 100));
+	}
+
+	@Test
+	public void testResumeFromOffset() throws IOException {
+		File file = writeCsv(TEST_CSV);
+		Vector<String[]> expectedRows = readWithOpencsv(file);
+
+		// header and few rows "harvested" before the interruption
+		MappedCsvReader reader = new MappedCsvReader(file, 4);
+		for (int i = 0; i < 4; i++)
+			reader.readNext();
+		long checkpoint = reader.getOffset();
+		reader.close();
+
+		reader = new MappedCsvReader(file, checkpoint, Long.MAX_VALUE, 4);
+		int rowIndex = 4;
+		CsvRow row;
+		while ((row = reader.readNext()) != null)
+			assertArrayEquals("row " + rowIndex,
+					expectedRows.get(rowIndex++), row.toArray());
+		reader.close();
+		assertEquals("all rows read", expectedRows.size(), rowIndex);
+	}
+
+	@Test
+	public void testLazyColumns() throws IOException {
+		File file = writeCsv(TEST_CSV);
+
+		MappedCsvReader reader = new MappedCsvReader(file);
+		reader.readNext();
+		CsvRow row = reader.readNext();
+		assertEquals("size", 3, row.size());
+		assertEquals("column", "simple", row.get(1));
+		assertTrue("empty column", row.isEmpty(2));
+		try {
+			row.get(3);
+			fail("index out of bounds expected");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// expected
+		}
+		reader.close();
+	}
+
+}
@@ -0,0 +1,91 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.datanest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestAdaptiveBatchSizer {
+
+	@Test
+	public void testFixed() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100);
+		assertEquals("fast", 100, sizer.update(100, 100, 1000, 0));
+		assertEquals("slow", 100, sizer.update(100, 100, 1000, 60000));
+	}
+
+	@Test
+	public void testIncreaseAndDecrease() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 100, 2000, 1000, 0);
+		assertEquals("additive increase", 1190, sizer.update(1000, 1000, 0, 10));
+		assertEquals("not full batch", 1190, sizer.update(500, 500, 0, 10));
+		assertEquals("multiplicative decrease", 595, sizer.update(1190, 1190, 0, 5000));
+		assertEquals("batch scraped before decrease", 595, sizer.update(1190, 1190, 0, 5000));
+		assertEquals("decrease again", 297, sizer.update(595, 595, 0, 5000));
+	}
+
+	@Test
+	public void testLimits() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(5000, 100, 2000, 1000, 0);
+		assertEquals("initial size limited", 2000, sizer.getBatchSize());
+		assertEquals("maximum", 2000, sizer.update(2000, 2000, 0, 10));
+		for (int i = 0; i < 10; i++)
+			sizer.update(sizer.getBatchSize(), 0, 0, 5000);
+		assertEquals("minimum", 100, sizer.getBatchSize());
+	}
+
+	@Test
+	public void testPayload() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 100, 2000, 1000, 100000);
+		// 1000 bytes per record => at most 100 records
+		assertEquals("too big", 100, sizer.update(1000, 200, 200000, 10));
+		// 200 bytes per record => at most 500 records
+		assertEquals("estimated payload", 290, sizer.update(100, 50, 10000, 10));
+	}
+
+	@Test
+	public void testCommitTime() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 100, 2000, 1000, 0);
+		sizer.stored(1000, 1000, 0, 100);
+		sizer.stored(1000, 1000, 0, 100);
+		assertEquals("not adjusted before commit", 1000, sizer.getBatchSize());
+		// 100 + 3000 / 2 ms per batch, halved only once (the second batch
+		// was scraped before the decrease)
+		assertEquals("slow commit", 500, sizer.committed(3000));
+		sizer.stored(500, 500, 0, 100);
+		sizer.stored(500, 500, 0, 100);
+		assertEquals("fast commit", 690, sizer.committed(1000));
+		assertEquals("nothing to commit", 690, sizer.committed(5000));
+	}
+
+	@Test
+	public void testUncommittedPayload() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 100, 2000, 1000, 100000);
+		assertFalse("nothing stored", sizer.isCommitNeeded(200000));
+		sizer.stored(1000, 100, 60000, 10);
+		assertFalse("below limit", sizer.isCommitNeeded(40000));
+		assertTrue("over limit", sizer.isCommitNeeded(40001));
+		sizer.committed(10);
+		assertFalse("committed", sizer.isCommitNeeded(40001));
+	}
+
+}
@@ -52,7 +52,7 @@ public class TestPoliticalPartyDonationsDatanestHarvester {
 		fullRecord[PoliticalPartyDonationsDatanestHarvester.ATTR_INDEX_DONOR_ICO] = PoliticalPartyDonationTestData.TEST_DONOR_ICO;
 		fullRecord[PoliticalPartyDonationsDatanestHarvester.ATTR_INDEX_DONOR_CITY] = PoliticalPartyDonationTestData.TEST_DONOR_CITY;
 		fullRecord[PoliticalPartyDonationsDatanestHarvester.ATTR_INDEX_DONOR_PSC] = PoliticalPartyDonationTestData.TEST_DONOR_PSC_COMMON_FORM;
-		fullRecord[PoliticalPartyDonationsDatanestHarvester.ATTR_INDEX_DONATION_VALUE] = PoliticalPartyDonationTestData.TEST_DONATION_VALUE.toString();
+		fullRecord[PoliticalPartyDonationsDatanestHarvester.ATTR_INDEX_DONATION_VALUE] = PoliticalPartyDonationTestData.TEST_DONATION_VALUE;
 		fullRecord[PoliticalPartyDonationsDatanestHarvester.ATTR_INDEX_DONATION_CURRENCY] = PoliticalPartyDonationTestData.TEST_DONATION_CURRENCY.toString();
 		fullRecord[PoliticalPartyDonationsDatanestHarvester.ATTR_INDEX_ACCEPT_DATE] = PoliticalPartyDonationTestData.TEST_ACCEPT_DATE;
 		fullRecord[PoliticalPartyDonationsDatanestHarvester.ATTR_INDEX_NOTE] = PoliticalPartyDonationTestData.TEST_EMPTY_STRING;
@@ -78,7 +78,7 @@ public class TestPoliticalPartyDonationsDatanestHarvester {
 			assertEquals("donor city", PoliticalPartyDonationTestData.TEST_DONOR_CITY, record.getDonorCity());
 			assertEquals("donor PSC", PoliticalPartyDonationTestData.TEST_DONOR_PSC_ODN_STORAGE_FORM, record.getDonorPsc());
 			
-			assertEquals("donation value", PoliticalPartyDonationTestData.TEST_DONATION_VALUE.floatValue(), record.getDonationValue(), 0.001f);
+			assertEquals("donation value", PoliticalPartyDonationTestData.TEST_DONATION_VALUE_CENTS, record.getDonationValueCents());
 			assertEquals("donation currency", PoliticalPartyDonationTestData.TEST_DONATION_CURRENCY, record.getCurrency());
 			
 			Calendar acceptDate = Calendar.getInstance();
@@ -85,7 +85,7 @@ public class TestProcurementsDatanestHarvester {
 			assertEquals("customer ICO", ProcurementTestData.TEST_CUSTOMER_ICO, record.getCustomerIco());
 			assertEquals("supplier ICO", ProcurementTestData.TEST_CUSTOMER_ICO, record.getSupplierIco());
 			
-			assertEquals("price", ProcurementTestData.TEST_PRICE, record.getPrice(), 0.001f);
+			assertEquals("price", ProcurementTestData.TEST_PRICE_CENTS, record.getPriceCents());
 			assertEquals("currency", ProcurementTestData.TEST_CURRENCY, record.getCurrency());
 
 			assertEquals("number of scrap notes", 0, record.getScrapNotes().size());
@@ -103,7 +103,7 @@ public class TestProcurementsDatanestHarvester {
 		try {
 			ProcurementRecord record = harvester.scrapOneRecord(recordWithPriceIssue2);
 			
-			assertEquals("price", 28000000f, record.getPrice(), 0.001f);
+			assertEquals("price", 2800000000L, record.getPriceCents());
 		} catch (ParseException e) {
 			fail("exception occured: " + e);
 		}
@@ -119,7 +119,7 @@ public class TestProcurementsDatanestHarvester {
 		try {
 			ProcurementRecord record = harvester.scrapOneRecord(recordWithEmptyPrice);
 			
-			assertEquals("price", 0f, record.getPrice(), 0.001f);
+			assertEquals("price", 0, record.getPriceCents());
 			assertEquals("number of scrap notes", 1, record.getScrapNotes().size());
 			assertEquals("scrap note", ProcurementsDatanestHarvester.SC_MISSING_PRICE, record.getScrapNotes().get(0));
 		} catch (ParseException e) {
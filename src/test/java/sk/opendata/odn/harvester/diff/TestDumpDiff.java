@@ -0,0 +1,92 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestDumpDiff {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File writeDigests(String name, String[][] rows, int runSize) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		RowDigestWriter writer = new RowDigestWriter(file, runSize);
+		for (String[] row : rows)
+			writer.add(row[0], RowDigestWriter.hashRow(row));
+		writer.close();
+
+		return file;
+	}
+
+	@Test
+	public void testHashRow() {
+		assertEquals("same rows",
+				RowDigestWriter.hashRow(new String[] { "1", "abc" }),
+				RowDigestWriter.hashRow(new String[] { "1", "abc" }));
+		assertFalse("columns shifted",
+				RowDigestWriter.hashRow(new String[] { "1", "ab", "c" }) ==
+				RowDigestWriter.hashRow(new String[] { "1", "a", "bc" }));
+	}
+
+	@Test
+	public void testDiff() throws IOException {
+		String[][] previousRows = {
+				{ "3", "unchanged" },
+				{ "1", "to be changed" },
+				{ "7", "to be removed" },
+				{ "5", "unchanged" },
+				{ "2", "unchanged" },
+		};
+		String[][] currentRows = {
+				{ "2", "unchanged" },
+				{ "1", "changed" },
+				{ "9", "new" },
+				{ "5", "unchanged" },
+				{ "3", "unchanged" },
+				{ "4", "new" },
+		};
+
+		// small runs to exercise also the merging of the sorted runs
+		File previous = writeDigests("previous", previousRows, 2);
+		File current = writeDigests("current", currentRows, 4);
+
+		DumpDiff diff = DumpDiff.diff(previous, current);
+
+		assertEquals("new", 2, diff.getNewIds().size());
+		assertTrue("new", diff.getNewIds().contains("4"));
+		assertTrue("new", diff.getNewIds().contains("9"));
+		assertEquals("changed", 1, diff.getChangedIds().size());
+		assertTrue("changed", diff.isNewOrChanged("1"));
+		assertEquals("removed", 1, diff.getRemovedIds().size());
+		assertEquals("removed", "7", diff.getRemovedIds().get(0));
+		assertEquals("unchanged", 3, diff.getUnchangedCount());
+		assertFalse("unchanged", diff.isNewOrChanged("3"));
+	}
+
+}
@@ -0,0 +1,90 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFingerprintIndex {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCommitAndReopen() throws IOException {
+		File logFile = new File(folder.getRoot(), "fingerprints.log");
+
+		FingerprintIndex index = new FingerprintIndex(logFile);
+		index.put("org_1", 1L);
+		index.put("org_2", -2L);
+		index.commit();
+		index.put("org_3", 3L);
+		index.remove("org_1");
+		assertEquals("staged change visible", Long.valueOf(3L), index.get("org_3"));
+		assertNull("staged removal visible", index.get("org_1"));
+		index.commit();
+		// not committed => lost
+		index.put("org_4", 4L);
+		index.close();
+
+		index = new FingerprintIndex(logFile);
+		assertEquals("size", 2, index.size());
+		assertNull("removed", index.get("org_1"));
+		assertEquals("negative hash", Long.valueOf(-2L), index.get("org_2"));
+		assertEquals("committed", Long.valueOf(3L), index.get("org_3"));
+		assertNull("not committed", index.get("org_4"));
+		index.close();
+	}
+
+	@Test
+	public void testUncommittedTail() throws IOException {
+		File logFile = new File(folder.getRoot(), "fingerprints.log");
+
+		FingerprintIndex index = new FingerprintIndex(logFile);
+		index.put("org_1", 1L);
+		index.commit();
+		index.close();
+
+		// simulate a crash in the middle of a commit
+		FileWriter out = new FileWriter(logFile, true);
+		out.write("org_2\t2\norg_3\t3");
+		out.close();
+
+		index = new FingerprintIndex(logFile);
+		assertNull("uncommitted", index.get("org_2"));
+		index.put("org_4", 4L);
+		index.commit();
+		index.close();
+
+		index = new FingerprintIndex(logFile);
+		assertEquals("size", 2, index.size());
+		assertEquals("committed", Long.valueOf(1L), index.get("org_1"));
+		assertEquals("committed after crash", Long.valueOf(4L), index.get("org_4"));
+		index.close();
+	}
+
+}
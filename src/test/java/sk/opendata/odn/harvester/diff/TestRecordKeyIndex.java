@@ -0,0 +1,60 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.harvester.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestRecordKeyIndex {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCommitAndReopen() throws IOException {
+		File logFile = new File(folder.getRoot(), "keys.log");
+
+		RecordKeyIndex index = new RecordKeyIndex(logFile);
+		index.put("org_1", "17321204");
+		index.put("org_2", "40212371");
+		index.put("org_3", "not\tindexed");
+		index.commit();
+		index.close();
+		// still usable once closed
+		index.put("org_2", "");
+		index.commit();
+		assertNull("empty key not indexed", index.get("org_2"));
+		index.close();
+
+		index = new RecordKeyIndex(logFile);
+		assertEquals("size", 1, index.size());
+		assertEquals("committed", "17321204", index.get("org_1"));
+		assertNull("removed", index.get("org_2"));
+		assertNull("key with separator not indexed", index.get("org_3"));
+		index.close();
+	}
+
+}
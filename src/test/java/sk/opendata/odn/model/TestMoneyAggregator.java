@@ -0,0 +1,88 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestMoneyAggregator {
+
+	@Test
+	public void testAggregation() {
+		MoneyAggregator aggregator = new MoneyAggregator(1000, 10000);
+		aggregator.add(999, Currency.EUR);
+		aggregator.add(1000, Currency.EUR);
+		aggregator.add(20000, Currency.EUR);
+		aggregator.add(500, Currency.SKK);
+		aggregator.add(700, null);
+
+		assertEquals("count", 3, aggregator.getCount(Currency.EUR));
+		assertEquals("sum", 21999, aggregator.getSumCents(Currency.EUR));
+		assertEquals("average", 7333, aggregator.getAverageCents(Currency.EUR));
+		assertEquals("minimum", 999, aggregator.getMinimumCents(Currency.EUR));
+		assertEquals("maximum", 20000, aggregator.getMaximumCents(Currency.EUR));
+		assertEquals("bucket 0", 1, aggregator.getBucketCount(Currency.EUR, 0));
+		assertEquals("bucket 1", 1, aggregator.getBucketCount(Currency.EUR, 1));
+		assertEquals("bucket 2", 1, aggregator.getBucketCount(Currency.EUR, 2));
+
+		assertEquals("other currency", 500, aggregator.getSumCents(Currency.SKK));
+		assertEquals("no currency", 700, aggregator.getSumCents(Currency.UNDEFINED));
+		assertEquals("no amounts", 0, aggregator.getAverageCents(Currency.USD));
+		assertEquals("no amounts", 0, aggregator.getMinimumCents(Currency.USD));
+	}
+
+	@Test
+	public void testExactSum() {
+		MoneyAggregator aggregator = new MoneyAggregator();
+		float floatSum = 0;
+		for (int i = 0; i < 1000000; i++) {
+			aggregator.add(10, Currency.EUR);
+			floatSum += 0.1f;
+		}
+
+		assertEquals("exact sum", 10000000, aggregator.getSumCents(Currency.EUR));
+		// which is not the case with floats
+		assertEquals("float sum", false, floatSum == 100000f);
+	}
+
+	@Test
+	public void testMerge() {
+		MoneyAggregator first = new MoneyAggregator(100);
+		MoneyAggregator second = new MoneyAggregator(100);
+		first.add(50, Currency.EUR);
+		second.add(150, Currency.EUR);
+		second.add(-5, Currency.EUR);
+		first.add(second);
+
+		assertEquals("count", 3, first.getCount(Currency.EUR));
+		assertEquals("sum", 195, first.getSumCents(Currency.EUR));
+		assertEquals("minimum", -5, first.getMinimumCents(Currency.EUR));
+		assertEquals("maximum", 150, first.getMaximumCents(Currency.EUR));
+		assertEquals("bucket 0", 2, first.getBucketCount(Currency.EUR, 0));
+		assertEquals("bucket 1", 1, first.getBucketCount(Currency.EUR, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBucketLimits() {
+		new MoneyAggregator(100, 100);
+	}
+
+}
@@ -0,0 +1,111 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository.jackrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import sk.opendata.odn.model.Currency;
+import sk.opendata.odn.model.ProcurementRecord;
+import sk.opendata.odn.serialization.OdnSerializationException;
+import sk.opendata.odn.utils.ContentHash;
+import sk.opendata.odn.utils.tests.ProcurementTestData;
+
+public class TestJackrabbitItem {
+
+	private static ProcurementRecord createRecord() {
+		ProcurementRecord record = new ProcurementRecord();
+		record.setId(ProcurementTestData.TEST_ID);
+		record.setDatanestId(ProcurementTestData.TEST_DATANEST_ID);
+		record.setYear(ProcurementTestData.TEST_YEAR);
+		record.setProcurementId(ProcurementTestData.TEST_PROCUREMENT_ID);
+		record.setPriceCents(ProcurementTestData.TEST_PRICE_CENTS);
+		record.setCurrency(ProcurementTestData.TEST_CURRENCY);
+		record.setCustomerIco(ProcurementTestData.TEST_CUSTOMER_ICO);
+		record.setSupplierIco(ProcurementTestData.TEST_SUPPLIER_ICO);
+
+		return record;
+	}
+
+	@Test
+	public void testEquals() throws OdnSerializationException {
+		JackrabbitItem item = JackrabbitItem.createJackrabbitItem(createRecord());
+		JackrabbitItem sameItem = JackrabbitItem.createJackrabbitItem(createRecord());
+
+		assertEquals("same items", 0, item.compareTo(sameItem));
+		assertEquals("same items", item, sameItem);
+		assertEquals("same hashes", item.getContentHash(), sameItem.getContentHash());
+		assertEquals("same hash codes", item.hashCode(), sameItem.hashCode());
+
+		// note: hash is cached => has to be updated after the modification
+		sameItem.setCurrency(Currency.SKK);
+		assertFalse("modified item", item.equals(sameItem));
+		assertTrue("modified item", item.getContentHash() != sameItem.getContentHash());
+		assertTrue("modified item", item.compareTo(sameItem) != 0);
+
+		sameItem.setCurrency(ProcurementTestData.TEST_CURRENCY);
+		assertEquals("restored item", item, sameItem);
+	}
+
+	@Test
+	public void testStoredHash() throws OdnSerializationException {
+		JackrabbitItem item = JackrabbitItem.createJackrabbitItem(createRecord());
+		JackrabbitItem storedItem = JackrabbitItem.createJackrabbitItem(createRecord());
+
+		// stored hash is used as is (i.e. not computed again) ...
+		storedItem.setContentHash(item.getContentHash() + 1);
+		assertFalse("different stored hash", item.equals(storedItem));
+
+		// ... until the item is modified
+		storedItem.setNote(null);
+		assertEquals("hash computed again", item.getContentHash(),
+				storedItem.getContentHash());
+	}
+
+	@Test
+	public void testNullAndEmptyDiffer() throws OdnSerializationException {
+		JackrabbitItem item = JackrabbitItem.createJackrabbitItem(createRecord());
+		JackrabbitItem otherItem = JackrabbitItem.createJackrabbitItem(createRecord());
+		otherItem.setNote(ProcurementTestData.TEST_EMPTY_STRING);
+
+		assertFalse("null vs. empty note", item.equals(otherItem));
+		assertTrue("null vs. empty note", item.getContentHash() != otherItem.getContentHash());
+	}
+
+	@Test
+	public void testStableHash() {
+		Calendar date = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		date.clear();
+		date.set(2013, 8, 1);
+
+		long hash = new ContentHash().append("id").append((String) null)
+				.append(date.getTime()).append(125L).append(true).toLong();
+
+		// hash has to be same in every JVM (it may be stored)
+		assertEquals("hash", "c1f11e5b5d4271e8", ContentHash.toString(hash));
+	}
+
+}
@@ -0,0 +1,125 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository.sesame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+import sk.opendata.odn.repository.OdnRepositoryException;
+
+public class TestSesameContextRegistry {
+
+	private final static String REGISTRY = "http://opendata.sk/odn/contexts";
+	private final static String KEY = "organizations";
+
+	private SailRepository repository;
+	private RepositoryConnection connection;
+	private ValueFactory valueFactory;
+	private SesameContextRegistry registry;
+
+	@Before
+	public void setUp() throws Exception {
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		connection = repository.getConnection();
+		valueFactory = connection.getValueFactory();
+		registry = new SesameContextRegistry(REGISTRY,
+				"http://opendata.sk/odn/versions/", 0.5);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		connection.close();
+		repository.shutDown();
+	}
+
+	private URI loadVersion(String name, int statementCount) throws Exception {
+		URI version = valueFactory.createURI("http://opendata.sk/odn/versions/"
+				+ KEY + "/" + name);
+		for (int i = 0; i < statementCount; i++)
+			connection.add(valueFactory.createURI("http://example.org/" + i),
+					valueFactory.createURI("http://example.org/p"),
+					valueFactory.createLiteral(name), version);
+
+		return version;
+	}
+
+	@Test
+	public void testPublish() throws Exception {
+		URI[] aliases = new URI[] {
+				valueFactory.createURI("http://opendata.sk/datanest/organizations/"),
+				valueFactory.createURI("http://opendata.sk/datanest/") };
+
+		URI first = loadVersion("1", 10);
+		registry.validate(connection, KEY, first);
+		assertTrue("nothing published before",
+				registry.publish(connection, KEY, first, aliases).isEmpty());
+		assertEquals("published", first,
+				registry.getPublishedVersions(connection, KEY).get(0));
+		assertTrue("alias", connection.hasStatement(first,
+				valueFactory.createURI(SesameContextRegistry.PREDICATE_PUBLISHED_AS),
+				aliases[1], false, valueFactory.createURI(REGISTRY)));
+
+		URI second = loadVersion("2", 8);
+		registry.validate(connection, KEY, second);
+		List<URI> previous = registry.publish(connection, KEY, second, aliases);
+		assertEquals("previous versions", 1, previous.size());
+		assertEquals("previous version", first, previous.get(0));
+		List<URI> published = registry.getPublishedVersions(connection, KEY);
+		assertEquals("published versions", 1, published.size());
+		assertEquals("published version", second, published.get(0));
+		assertEquals("registry entries", 3,
+				connection.size(valueFactory.createURI(REGISTRY)));
+	}
+
+	@Test
+	public void testValidate() throws Exception {
+		URI empty = loadVersion("empty", 0);
+		try {
+			registry.validate(connection, KEY, empty);
+			fail("empty version should not be valid");
+		} catch (OdnRepositoryException e) {
+			// expected
+		}
+
+		URI first = loadVersion("1", 10);
+		registry.publish(connection, KEY, first, new URI[0]);
+		URI small = loadVersion("small", 4);
+		try {
+			registry.validate(connection, KEY, small);
+			fail("too small version should not be valid");
+		} catch (OdnRepositoryException e) {
+			// expected
+		}
+	}
+
+}
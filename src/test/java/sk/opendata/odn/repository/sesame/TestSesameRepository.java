@@ -0,0 +1,294 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository.sesame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Vector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.repository.RepositoryConnection;
+
+import sk.opendata.odn.repository.OdnRepositoryStoreSession;
+import sk.opendata.odn.utils.ApplicationProperties;
+
+public class TestSesameRepository {
+
+	private final static String KEY = "organizations";
+	private final static String BASE_URI = "http://example.org/";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ApplicationProperties properties;
+	private Properties originalProperties = new Properties();
+	private SesameRepository repository;
+
+	@Before
+	public void setUp() throws Exception {
+		properties = ApplicationProperties
+				.getInstance(SesameRepository.SESAME_REPOSITORY_PROPERTIES_NAME);
+		originalProperties.putAll(properties);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (repository != null)
+			repository.shutDown();
+		properties.clear();
+		properties.putAll(originalProperties);
+	}
+
+	private void openRepository(String type) throws Exception {
+		properties.setProperty(SesameRepository.KEY_REPO_ENABLED, "true");
+		properties.setProperty(SesameRepository.KEY_TYPE, type);
+		properties.setProperty(SesameRepository.KEY_DATA_DIR, folder
+				.getRoot().getAbsolutePath());
+		properties.setProperty(SesameRepository.KEY_INDEXES, "spoc,posc,cspo");
+		// make sure we get fresh instance with the properties above
+		SesameRepository.getInstance().shutDown();
+		repository = SesameRepository.getInstance();
+	}
+
+	private RdfData createRdfData(String value, int statementCount) {
+		ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+		Vector<Statement> statements = new Vector<Statement>();
+		for (int i = 0; i < statementCount; i++)
+			statements.add(valueFactory.createStatement(
+					valueFactory.createURI(BASE_URI + i),
+					valueFactory.createURI(BASE_URI + "p"),
+					valueFactory.createLiteral(value)));
+
+		return new RdfData(statements, BASE_URI, KEY);
+	}
+
+	private boolean hasValue(String value) throws Exception {
+		RepositoryConnection connection = repository.getRepo().getConnection();
+		try {
+			return connection.hasStatement(null, null,
+					connection.getValueFactory().createLiteral(value), false);
+		} finally {
+			connection.close();
+		}
+	}
+
+	private long size(Resource... contexts) throws Exception {
+		RepositoryConnection connection = repository.getRepo().getConnection();
+		try {
+			return connection.size(contexts);
+		} finally {
+			connection.close();
+		}
+	}
+
+	private List<URI> getPublishedVersions() throws Exception {
+		RepositoryConnection connection = repository.getRepo().getConnection();
+		try {
+			return repository.getContextRegistry().getPublishedVersions(
+					connection, KEY);
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void testNativeStore() throws Exception {
+		openRepository("native");
+
+		repository.store(createRdfData("a", 3));
+		// note: stored into both contexts configured for organizations
+		assertEquals("statements stored", 2 * 3, size());
+		assertTrue("data stored in data directory",
+				new File(folder.getRoot(), "triples-cspo.dat").isFile());
+	}
+
+	@Test
+	public void testSession() throws Exception {
+		openRepository("memory");
+
+		OdnRepositoryStoreSession<RdfData> session = repository.openSession(false);
+		session.store(createRdfData("a", 3));
+		session.commit();
+		session.store(createRdfData("b", 2));
+		session.close();
+
+		assertEquals("only committed statements stored", 2 * 3, size());
+	}
+
+	@Test
+	public void testReplace() throws Exception {
+		openRepository("memory");
+
+		RdfData rdfData = createRdfData("a", 3);
+		rdfData.setSubjects(Arrays.asList(BASE_URI + "0", BASE_URI + "1",
+				BASE_URI + "2"));
+		repository.store(rdfData);
+		assertEquals("statements stored", 2 * 3, size());
+
+		// updated record with a blank node (like organization's address)
+		ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+		URI subject = valueFactory.createURI(BASE_URI + "1");
+		URI predicate = valueFactory.createURI(BASE_URI + "p");
+		BNode address = valueFactory.createBNode();
+		rdfData = new RdfData(Arrays.asList(
+				valueFactory.createStatement(subject, predicate,
+						valueFactory.createLiteral("b")),
+				valueFactory.createStatement(subject, predicate, address),
+				valueFactory.createStatement(address, predicate,
+						valueFactory.createLiteral("c"))),
+				BASE_URI, KEY);
+		rdfData.setSubjects(Arrays.asList(subject.toString()));
+		repository.store(rdfData);
+		assertEquals("previous version replaced", 2 * (2 + 3), size());
+		assertTrue("new version stored", hasValue("b"));
+
+		// and once again, blank node of previous version has to go as well
+		rdfData = createRdfData("d", 2);
+		rdfData.setSubjects(Arrays.asList(BASE_URI + "0", BASE_URI + "1"));
+		repository.store(rdfData);
+		assertEquals("previous versions replaced", 2 * 3, size());
+		assertFalse("blank node removed", hasValue("c"));
+		assertTrue("record not stored again kept", hasValue("a"));
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		openRepository("memory");
+
+		repository.store(createRdfData("a", 3));
+		assertEquals("statements stored", 2 * 3, size());
+
+		RdfData removed = new RdfData(new Vector<Statement>(), BASE_URI, KEY);
+		removed.setSubjects(Arrays.asList(BASE_URI + "0", BASE_URI + "2",
+				BASE_URI + "unknown"));
+		repository.remove(removed);
+		assertEquals("records removed from both contexts", 2 * 1, size());
+	}
+
+	@Test
+	public void testRemoveWithoutContexts() throws Exception {
+		openRepository("memory");
+
+		RdfData rdfData = createRdfData("a", 3);
+		rdfData.setPropKey(null);
+		repository.store(rdfData);
+		assertEquals("statements stored", 3, size());
+
+		RdfData removed = new RdfData(new Vector<Statement>(), BASE_URI, null);
+		removed.setSubjects(Arrays.asList(BASE_URI + "0"));
+		repository.remove(removed);
+		assertEquals("record removed", 2, size());
+	}
+
+	@Test
+	public void testFirstReload() throws Exception {
+		openRepository("memory");
+		ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+		URI ownContext = valueFactory.createURI("http://opendata.sk/datanest/organizations/");
+		URI sharedContext = valueFactory.createURI("http://opendata.sk/datanest/");
+
+		// stored before the first reload, into configured contexts
+		repository.store(createRdfData("a", 3));
+		RdfData otherDataset = new RdfData(Arrays.asList(valueFactory
+				.createStatement(valueFactory.createURI(BASE_URI + "other"),
+						valueFactory.createURI(BASE_URI + "p"),
+						valueFactory.createLiteral("x"))), BASE_URI,
+				"procurements");
+		repository.store(otherDataset);
+		assertEquals("shared context", 3 + 1, size(sharedContext));
+
+		OdnRepositoryStoreSession<RdfData> session = repository.openSession(true);
+		session.store(createRdfData("b", 2));
+		session.publish();
+		session.close();
+
+		assertEquals("published version", 2, size(getPublishedVersions()
+				.get(0)));
+		assertEquals("own context cleared", 0, size(ownContext));
+		assertEquals("only other dataset left in shared context", 1,
+				size(sharedContext));
+		assertFalse("records stored before removed", hasValue("a"));
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		openRepository("memory");
+
+		OdnRepositoryStoreSession<RdfData> session = repository.openSession(true);
+		session.store(createRdfData("a", 3));
+		session.commit();
+		session.store(createRdfData("a", 3));
+		session.publish();
+		session.close();
+
+		List<URI> versions = getPublishedVersions();
+		assertEquals("published versions", 1, versions.size());
+		URI firstVersion = versions.get(0);
+		assertEquals("first version", 3, size(firstVersion));
+
+		// incremental harvest goes into published version
+		repository.store(createRdfData("b", 1));
+		assertEquals("first version updated", 4, size(firstVersion));
+
+		// not published => dropped, first version stays published
+		session = repository.openSession(true);
+		session.store(createRdfData("c", 4));
+		session.commit();
+		session.close();
+		assertEquals("first version still published", firstVersion,
+				getPublishedVersions().get(0));
+
+		// note: versions are named by time
+		Thread.sleep(2);
+		session = repository.openSession(true);
+		session.store(createRdfData("d", 4));
+		session.publish();
+		session.close();
+		URI secondVersion = getPublishedVersions().get(0);
+		assertTrue("second version published", !firstVersion.equals(secondVersion));
+
+		assertEquals("second version", 4, size(secondVersion));
+
+		// previous versions are dropped in the background
+		long timeout = System.currentTimeMillis() + 10000;
+		while (size() > 4 + 3 && System.currentTimeMillis() < timeout)
+			Thread.sleep(10);
+		assertEquals("first and unpublished version dropped", 0,
+				size(firstVersion));
+		assertEquals("only second version and registry left", 4 + 3, size());
+	}
+
+}
@@ -0,0 +1,76 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.repository.solr;
+
+import java.util.Vector;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import sk.opendata.odn.model.AbstractRecord;
+
+/**
+ * Compares the speed of SOLR item mappers with reflection.
+ * 
+ * Not a part of the default test run (timings depend on the machine), run
+ * using {@code mvn test -Dtest=BenchmarkSolrItemMapper}.
+ */
+public class BenchmarkSolrItemMapper {
+
+	private final static int BENCHMARK_RECORDS = 10000;
+	private final static int BENCHMARK_ROUNDS = 3;
+
+	private static Logger logger = LoggerFactory.getLogger(BenchmarkSolrItemMapper.class);
+
+	private final TestSolrItemMapper conversions = new TestSolrItemMapper();
+
+	private long benchmark(Vector<AbstractRecord> records, boolean useMapper)
+			throws Exception {
+
+		long bestNanos = Long.MAX_VALUE;
+		for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+			long timeStart = System.nanoTime();
+			for (AbstractRecord record : records) {
+				if (useMapper)
+					conversions.mapperToDocument(record);
+				else
+					conversions.reflectionToDocument(record);
+			}
+			bestNanos = Math.min(bestNanos, System.nanoTime() - timeStart);
+		}
+
+		return bestNanos;
+	}
+
+	@Test
+	public void benchmarkMappersAndReflection() throws Exception {
+		Vector<AbstractRecord> records = TestSolrItemMapper
+				.createRecords(BENCHMARK_RECORDS);
+
+		// note: first rounds serve also as a warm-up
+		long reflectionNanos = benchmark(records, false);
+		long mapperNanos = benchmark(records, true);
+
+		logger.info("SOLR documents for " + records.size()
+				+ " records: reflection " + reflectionNanos / 1000000
+				+ " ms, mappers " + mapperNanos / 1000000 + " ms");
+	}
+
+}
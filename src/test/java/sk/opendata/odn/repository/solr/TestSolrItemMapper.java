@@ -0,0 +1,159 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.repository.solr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.Vector;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.junit.Test;
+
+import sk.opendata.odn.model.AbstractRecord;
+import sk.opendata.odn.model.Currency;
+import sk.opendata.odn.model.OrganizationRecord;
+import sk.opendata.odn.model.PoliticalPartyDonationRecord;
+import sk.opendata.odn.model.ProcurementRecord;
+
+public class TestSolrItemMapper {
+
+	private final DocumentObjectBinder binder = new DocumentObjectBinder();
+
+	static Vector<AbstractRecord> createRecords(int count) {
+		Calendar date = Calendar.getInstance();
+		date.set(2013, 8, 1);
+		Vector<AbstractRecord> records = new Vector<AbstractRecord>(count);
+
+		for (int i = 0; i < count; i++) {
+			switch (i % 3) {
+			case 0:
+				OrganizationRecord organization = new OrganizationRecord();
+				organization.setId("org_" + i);
+				organization.setDatanestId(String.valueOf(i));
+				organization.setName("Organization " + i);
+				organization.setLegalForm("s.r.o.");
+				organization.setSeat("Bratislava");
+				organization.setIco(String.valueOf(10000000 + i));
+				organization.setDateFrom(date.getTime());
+				records.add(organization);
+				break;
+			case 1:
+				PoliticalPartyDonationRecord donation = new PoliticalPartyDonationRecord();
+				donation.setId("donation_" + i);
+				donation.setDonorName("Jan");
+				donation.setDonorSurname("Novak " + i);
+				donation.setDonationValueCents(125L * i);
+				donation.setCurrency(Currency.EUR);
+				donation.setDonorPsc("83105");
+				donation.setRecipientParty("Party " + (i % 7));
+				donation.setYear("2010");
+				donation.setAcceptDate(date.getTime());
+				records.add(donation);
+				break;
+			default:
+				ProcurementRecord procurement = new ProcurementRecord();
+				procurement.setId("procurement_" + i);
+				procurement.setProcurementId(i + " - VUP");
+				procurement.setProcurementSubject("Subject " + i);
+				procurement.setPriceCents(250L * i);
+				procurement.setCurrency(Currency.SKK);
+				procurement.setVatIncluded(i % 2 == 0);
+				procurement.setCustomerIco("17321204");
+				procurement.setSupplierIco(String.valueOf(40000000 + i));
+				records.add(procurement);
+				break;
+			}
+		}
+
+		return records;
+	}
+
+	/**
+	 * How the documents were created before the mappers: reflection both
+	 * when creating the item and when converting it into SOLR document.
+	 */
+	SolrInputDocument reflectionToDocument(AbstractRecord record)
+			throws Exception {
+
+		SolrItem solrItem = new SolrItem();
+		PropertyUtils.copyProperties(solrItem, record);
+		solrItem.setType(SolrItemType.getType(record.getClass()));
+		solrItem.setId(record.getId());
+
+		return binder.toSolrInputDocument(solrItem);
+	}
+
+	SolrInputDocument mapperToDocument(AbstractRecord record)
+			throws Exception {
+
+		return SolrItem.createSolrItem(record).toSolrInputDocument();
+	}
+
+	private static SolrDocument toSolrDocument(SolrInputDocument inputDocument) {
+		SolrDocument document = new SolrDocument();
+		for (SolrInputField field : inputDocument)
+			document.setField(field.getName(), field.getValue());
+
+		return document;
+	}
+
+	@Test
+	public void testSameAsReflection() throws Exception {
+		for (AbstractRecord record : createRecords(6)) {
+			SolrInputDocument expected = reflectionToDocument(record);
+			SolrInputDocument actual = mapperToDocument(record);
+
+			int fieldCount = 0;
+			for (SolrInputField field : expected) {
+				if (field.getValue() == null)
+					continue;
+				assertEquals(record.getId() + ": " + field.getName(),
+						field.getValue(), actual.getFieldValue(field.getName()));
+				fieldCount++;
+			}
+			assertEquals(record.getId() + ": number of fields", fieldCount,
+					actual.size());
+
+			SolrDocument document = toSolrDocument(actual);
+			assertEquals(record.getId() + ": item from document",
+					binder.getBean(SolrItem.class, document).toString(),
+					SolrItem.createSolrItem(document).toString());
+		}
+	}
+
+	@Test
+	public void testExactAmounts() throws Exception {
+		ProcurementRecord record = new ProcurementRecord();
+		record.setId("procurement");
+		// 1 234 567,89 is 1234567.875 as a float
+		record.setPriceCents(123456789L);
+
+		SolrInputDocument document = mapperToDocument(record);
+		assertEquals(123456789L, document.getFieldValue(SolrItem.FIELD_PRICE_CENTS));
+		assertEquals(123456789L, SolrItem.createSolrItem(toSolrDocument(document))
+				.getPriceCents());
+	}
+
+}
@@ -1,21 +1,31 @@
 package sk.opendata.odn.serialization.rdf;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Vector;
 
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import sk.opendata.odn.harvester.diff.RecordKeyIndex;
 import sk.opendata.odn.model.OrganizationRecord;
+import sk.opendata.odn.repository.sesame.RdfData;
 import sk.opendata.odn.repository.sesame.SesameRepository;
 import sk.opendata.odn.serialization.OdnSerializationException;
 import sk.opendata.odn.utils.tests.OrganizationTestData;
 
 public class TestOrganizationRdfSerializer {
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	private final static OrganizationRecord record = new OrganizationRecord();
 	private final static Vector<OrganizationRecord> records = new Vector<OrganizationRecord>();
 	private static SesameRepository repository;
@@ -81,4 +91,38 @@ public class TestOrganizationRdfSerializer {
 		}
 	}
 
+	@Test
+	public void testUpdatedSubjects() throws Exception {
+		RdfData rdfData = rdfSerializer.serializeForStore(records,
+				new Vector<OrganizationRecord>());
+		assertTrue("no subjects of new records", rdfData.getSubjects()
+				.isEmpty());
+
+		rdfData = rdfSerializer.serializeForStore(records, records);
+		assertEquals("subjects of updated records", Arrays.asList(
+				"http://data.gov.sk/id/interior/organization/17321204",
+				"http://data.gov.sk/id/interior/identifier/17321204"),
+				new Vector<String>(rdfData.getSubjects()));
+	}
+
+	@Test
+	public void testChangedIco() throws Exception {
+		RecordKeyIndex keyIndex = new RecordKeyIndex(new File(
+				folder.getRoot(), "keys.log"));
+		keyIndex.put(OrganizationTestData.TEST_ID, "12345678");
+		rdfSerializer.setKeyIndex(keyIndex);
+		try {
+			RdfData rdfData = rdfSerializer.serializeForStore(records, records);
+			assertEquals("subjects of previous and current ICO", Arrays.asList(
+					"http://data.gov.sk/id/interior/organization/17321204",
+					"http://data.gov.sk/id/interior/identifier/17321204",
+					"http://data.gov.sk/id/interior/organization/12345678",
+					"http://data.gov.sk/id/interior/identifier/12345678"),
+					new Vector<String>(rdfData.getSubjects()));
+		} finally {
+			rdfSerializer.setKeyIndex(null);
+			keyIndex.close();
+		}
+	}
+
 }
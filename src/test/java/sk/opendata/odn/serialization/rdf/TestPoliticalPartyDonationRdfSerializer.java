@@ -50,7 +50,7 @@ public class TestPoliticalPartyDonationRdfSerializer {
 		date.set(2013, 8, 1);
 		record.setAcceptDate(date.getTime());
 		record.setCurrency(PoliticalPartyDonationTestData.TEST_DONATION_CURRENCY);
-		record.setDonationValue(PoliticalPartyDonationTestData.TEST_DONATION_VALUE);
+		record.setDonationValueCents(PoliticalPartyDonationTestData.TEST_DONATION_VALUE_CENTS);
 		record.setDonorName(PoliticalPartyDonationTestData.TEST_DONOR_NAME);
 		record.setDonorSurname(PoliticalPartyDonationTestData.TEST_DONOR_SURNAME);
 		record.setDonorTitle(PoliticalPartyDonationTestData.TEST_DONOR_TITLE);
@@ -3,6 +3,7 @@ package sk.opendata.odn.serialization.rdf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Vector;
 
@@ -10,6 +11,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import sk.opendata.odn.model.ProcurementRecord;
+import sk.opendata.odn.repository.sesame.RdfData;
 import sk.opendata.odn.repository.sesame.SesameRepository;
 import sk.opendata.odn.serialization.OdnSerializationException;
 import sk.opendata.odn.utils.tests.ProcurementTestData;
@@ -50,7 +52,7 @@ public class TestProcurementRdfSerializer {
 		record.setDatanestId(ProcurementTestData.TEST_DATANEST_ID);
 		record.setCurrency(ProcurementTestData.TEST_CURRENCY);
 		record.setCustomerIco(ProcurementTestData.TEST_CUSTOMER_ICO);
-		record.setPrice(ProcurementTestData.TEST_PRICE);
+		record.setPriceCents(ProcurementTestData.TEST_PRICE_CENTS);
 		record.setProcurementId(ProcurementTestData.TEST_PROCUREMENT_ID);
 		record.setProcurementSubject(ProcurementTestData.TEST_PROCUREMENT_SUBJECT);
 		record.setSupplierIco(ProcurementTestData.TEST_SUPPLIER_ICO);
@@ -72,4 +74,13 @@ public class TestProcurementRdfSerializer {
 		}
 	}
 
+	@Test
+	public void testUpdatedSubjects() throws Exception {
+		RdfData rdfData = rdfSerializer.serializeForStore(records, records);
+		// note: same as 'rdf:about' in TEST_RESULT
+		assertEquals("subjects of updated records", Arrays.asList(
+				"http://opendata.sk/dataset/procurements/procurement_0"),
+				new Vector<String>(rdfData.getSubjects()));
+	}
+
 }
@@ -0,0 +1,108 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.serialization.rdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.util.ModelUtil;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.Rio;
+
+import sk.opendata.odn.model.OrganizationRecord;
+import sk.opendata.odn.repository.sesame.SesameRepository;
+import sk.opendata.odn.utils.tests.OrganizationTestData;
+
+public class TestRdfStatementBuilder {
+
+	private Vector<OrganizationRecord> createRecords() {
+		OrganizationRecord record = new OrganizationRecord();
+		record.setDateFrom(Calendar.getInstance().getTime());
+		record.setIco(OrganizationTestData.TEST_ICO);
+		record.setId(OrganizationTestData.TEST_ID);
+		record.setLegalForm(OrganizationTestData.TEST_LEGAL_FORM);
+		record.setName(OrganizationTestData.TEST_NAME + " & <co>");
+		record.setSeat(OrganizationTestData.TEST_SEAT);
+		// relative URI, to be resolved against base URI
+		record.setSource("records/0");
+		Vector<OrganizationRecord> records = new Vector<OrganizationRecord>();
+		records.add(record);
+
+		return records;
+	}
+
+	private Model parseRdfXml(OrganizationRdfSerializer rdfSerializer,
+			Vector<OrganizationRecord> records) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		rdfSerializer.serialize(records, out);
+		return Rio.parse(new ByteArrayInputStream(out.toByteArray()),
+				OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI,
+				RDFFormat.RDFXML);
+	}
+
+	@Test
+	public void testSameAsParsed() throws Exception {
+		Vector<OrganizationRecord> records = createRecords();
+		OrganizationRdfSerializer rdfSerializer = new OrganizationRdfSerializer(
+				SesameRepository.getInstance());
+		List<Statement> statements = rdfSerializer.serializeToStatements(
+				records, OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI);
+
+		Model parsed = parseRdfXml(rdfSerializer, records);
+
+		assertEquals("statement count", parsed.size(), statements.size());
+		assertTrue("same statements", ModelUtil.equals(parsed, statements));
+	}
+
+	private void compareWithRdfXml(RDFFormat rdfFormat) throws Exception {
+		Vector<OrganizationRecord> records = createRecords();
+		OrganizationRdfSerializer rdfSerializer = new OrganizationRdfSerializer(
+				SesameRepository.getInstance());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		rdfSerializer.serialize(records,
+				OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI, rdfFormat, out);
+		Model serialized = Rio.parse(new ByteArrayInputStream(out.toByteArray()),
+				OrganizationRdfSerializer.ORGANIZATIONS_BASE_URI, rdfFormat);
+		Model parsed = parseRdfXml(rdfSerializer, records);
+
+		assertEquals("statement count", parsed.size(), serialized.size());
+		assertTrue("same statements", ModelUtil.equals(parsed, serialized));
+	}
+
+	@Test
+	public void testNTriples() throws Exception {
+		compareWithRdfXml(RDFFormat.NTRIPLES);
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		compareWithRdfXml(RDFFormat.BINARY);
+	}
+
+}
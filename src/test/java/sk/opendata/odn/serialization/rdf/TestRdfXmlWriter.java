@@ -0,0 +1,249 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package sk.opendata.odn.serialization.rdf;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Vector;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import sk.opendata.odn.model.AbstractRecord;
+import sk.opendata.odn.model.Currency;
+import sk.opendata.odn.model.OrganizationRecord;
+import sk.opendata.odn.model.PoliticalPartyDonationRecord;
+import sk.opendata.odn.model.ProcurementRecord;
+import sk.opendata.odn.repository.sesame.SesameRepository;
+import sk.opendata.odn.utils.tests.OrganizationTestData;
+import sk.opendata.odn.utils.tests.PoliticalPartyDonationTestData;
+import sk.opendata.odn.utils.tests.ProcurementTestData;
+
+public class TestRdfXmlWriter {
+
+	private final static String SPECIAL_CHARACTERS = "a&b<c>d\"e'f\ng\rh\ti\u00e9\ud83d\ude00";
+
+	// as produced by XML 'Transformer' from equivalent DOM document
+	private final static String TEST_RESULT = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+			+ "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:aa=\"a\" xmlns:zz=\"z\">\n"
+			+ "<x:C aa:b=\"1\" rdf:about=\"a&amp;b&lt;c&gt;d&quot;e'f&#10;g&#13;h&#9;i\u00e9&#128512;\">\n"
+			+ "<x:t>a&amp;b&lt;c&gt;d\"e'f\ng&#13;h\ti\u00e9&#128512;]]&gt;</x:t>\n"
+			+ "<x:empty/>\n"
+			+ "<x:ctrl>a&#1;b&#127;c&#133;d e</x:ctrl>\n"
+			+ "</x:C>\n"
+			+ "<x:D>\n"
+			+ "<x:E/>\n"
+			+ "</x:D>\n"
+			+ "</rdf:RDF>\n";
+
+	@Test
+	public void testSameAsTransformer() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RdfXmlWriter writer = new RdfXmlWriter(out);
+
+		writer.startDocument();
+		writer.startElement("rdf:RDF");
+		writer.attribute("xmlns:zz", "z");
+		writer.attribute("xmlns:rdf", AbstractRdfSerializer.NS_RDF);
+		writer.attribute("xmlns:aa", "a");
+
+		writer.startElement("x:C");
+		writer.attribute("rdf:about", SPECIAL_CHARACTERS);
+		writer.attribute("aa:b", "1");
+		writer.startElement("x:t");
+		writer.text(SPECIAL_CHARACTERS + "]]>");
+		writer.endElement();
+		writer.startElement("x:empty");
+		writer.text("");
+		writer.endElement();
+		writer.startElement("x:ctrl");
+		writer.text("a\u0001b\u007fc\u0085d e");
+		writer.endElement();
+		writer.endElement();
+
+		writer.startElement("x:D");
+		writer.startElement("x:E");
+		writer.endDocument();
+
+		assertEquals("result", TEST_RESULT, out.toString(RdfXmlWriter.ENCODING));
+	}
+
+	@Test
+	public void testOrganizationsSameAsDom() throws Exception {
+		Vector<OrganizationRecord> records = new Vector<OrganizationRecord>();
+		Calendar date = Calendar.getInstance();
+		date.set(2013, 8, 1);
+		for (String name : new String[] { OrganizationTestData.TEST_NAME,
+				OrganizationTestData.TEST_NAME_WITH_SPECIAL_CHARS,
+				SPECIAL_CHARACTERS, OrganizationTestData.TEST_EMPTY_STRING }) {
+			OrganizationRecord record = new OrganizationRecord();
+			record.setId(OrganizationTestData.TEST_ID + records.size());
+			record.setIco(OrganizationTestData.TEST_ICO + records.size());
+			record.setName(name);
+			record.setLegalForm(OrganizationTestData.TEST_LEGAL_FORM);
+			record.setSeat(name + ", " + OrganizationTestData.TEST_SEAT);
+			record.setDateFrom(date.getTime());
+			record.setDateTo(date.getTime());
+			record.setSource(OrganizationTestData.TEST_SOURCE);
+			records.add(record);
+		}
+
+		assertSameAsDom(new OrganizationRdfSerializer(
+				SesameRepository.getInstance()), records);
+	}
+
+	@Test
+	public void testProcurementsSameAsDom() throws Exception {
+		Vector<ProcurementRecord> records = new Vector<ProcurementRecord>();
+		for (String subject : new String[] {
+				ProcurementTestData.TEST_PROCUREMENT_SUBJECT,
+				SPECIAL_CHARACTERS, ProcurementTestData.TEST_EMPTY_STRING }) {
+			ProcurementRecord record = new ProcurementRecord();
+			record.setId(ProcurementTestData.TEST_ID + records.size());
+			record.setDatanestId(ProcurementTestData.TEST_DATANEST_ID);
+			record.setProcurementId(ProcurementTestData.TEST_PROCUREMENT_ID);
+			record.setProcurementSubject(subject);
+			record.setPriceCents(ProcurementTestData.TEST_PRICE_CENTS
+					* records.size());
+			// currency is missing in some of the source data
+			record.setCurrency(records.isEmpty() ? null
+					: ProcurementTestData.TEST_CURRENCY);
+			record.setCustomerIco(ProcurementTestData.TEST_CUSTOMER_ICO);
+			record.setSupplierIco(ProcurementTestData.TEST_SUPPLIER_ICO);
+			record.addScrapNote(subject);
+			records.add(record);
+		}
+
+		assertSameAsDom(new ProcurementRdfSerializer(
+				SesameRepository.getInstance()), records);
+	}
+
+	@Test
+	public void testDonationsSameAsDom() throws Exception {
+		Vector<PoliticalPartyDonationRecord> records = new Vector<PoliticalPartyDonationRecord>();
+		Calendar date = Calendar.getInstance();
+		date.set(2013, 8, 1);
+		for (String donorName : new String[] {
+				PoliticalPartyDonationTestData.TEST_DONOR_NAME,
+				SPECIAL_CHARACTERS,
+				PoliticalPartyDonationTestData.TEST_EMPTY_STRING }) {
+			PoliticalPartyDonationRecord record = new PoliticalPartyDonationRecord();
+			record.setId(PoliticalPartyDonationTestData.TEST_ID
+					+ records.size());
+			record.setDatanestId(PoliticalPartyDonationTestData.TEST_DATANEST_ID);
+			record.setDonorName(donorName);
+			record.setDonorSurname(PoliticalPartyDonationTestData.TEST_DONOR_SURNAME);
+			record.setDonorTitle(PoliticalPartyDonationTestData.TEST_DONOR_TITLE);
+			record.setName(PoliticalPartyDonationTestData.TEST_DONOR_COMPANY);
+			record.setIco(PoliticalPartyDonationTestData.TEST_DONOR_ICO);
+			record.setDonationValueCents(-PoliticalPartyDonationTestData.TEST_DONATION_VALUE_CENTS
+					* records.size());
+			record.setCurrency(Currency.EUR);
+			record.setRecipientParty(PoliticalPartyDonationTestData.TEST_RECIPIENT_PARTY);
+			record.setAcceptDate(date.getTime());
+			records.add(record);
+		}
+
+		assertSameAsDom(new PoliticalPartyDonationRdfSerializer(
+				SesameRepository.getInstance()), records);
+	}
+
+	private static <RecordType extends AbstractRecord> void assertSameAsDom(
+			AbstractRdfSerializer<RecordType> serializer,
+			List<RecordType> records) throws Exception {
+
+		DomOutput domOutput = new DomOutput();
+		serializer.serialize(records, domOutput);
+
+		assertEquals("result", domOutput.transform(),
+				serializer.serialize(records));
+	}
+
+	/**
+	 * Builds DOM document out of the serialized elements and transforms it
+	 * into text the way serializers did it before {@link RdfXmlWriter}.
+	 */
+	private static class DomOutput implements RdfXmlOutput {
+
+		private Document doc;
+		private Node current;
+
+		public DomOutput() throws Exception {
+			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+					.newDocument();
+			current = doc;
+		}
+
+		@Override
+		public void startElement(String name) {
+			Element element;
+			if (current == doc)
+				element = doc.createElementNS(AbstractRdfSerializer.NS_RDF,
+						name);
+			else
+				element = doc.createElement(name);
+			current.appendChild(element);
+			current = element;
+		}
+
+		@Override
+		public void attribute(String name, String value) {
+			((Element) current).setAttribute(name, value == null ? ""
+					: value);
+		}
+
+		@Override
+		public void text(String text) {
+			if (text != null)
+				current.appendChild(doc.createTextNode(text));
+		}
+
+		@Override
+		public void endElement() {
+			current = current.getParentNode();
+		}
+
+		public String transform() throws Exception {
+			Transformer transformer = TransformerFactory.newInstance()
+					.newTransformer();
+			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+
+			StringWriter sw = new StringWriter();
+			transformer.transform(new DOMSource(doc), new StreamResult(sw));
+
+			return sw.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+/* Copyright (C) 2011 Peter Hanecak <hanecak@opendata.sk>
+ *
+ * This file is part of Open Data Node.
+ *
+ * Open Data Node is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Open Data Node is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Open Data Node.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package sk.opendata.odn.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+import org.junit.Test;
+
+public class TestParseUtil {
+
+	private final static String[] INVALID_DATES = { "", "L991/07/1T",
+			"1991-07", "1991-13-01", "1991-00-01", "1991-02-29", "-07-17",
+			"1991--17" };
+	private final static String[] INVALID_DECIMALS = { "", "L.25", ",25", " ",
+			"-", "1234567890123456789" };
+
+	private static void assertInvalidDate(String source) {
+		try {
+			ParseUtil.parseDate(source);
+			fail("parse exception expected for \"" + source + "\"");
+		} catch (ParseException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSameAsSimpleDateFormat() throws ParseException {
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+		Calendar day = Calendar.getInstance();
+		day.clear();
+		day.set(1899, 0, 1);
+
+		while (day.get(Calendar.YEAR) < 2101) {
+			String source = sdf.format(day.getTime());
+			assertEquals(source, sdf.parse(source), ParseUtil.parseDate(source));
+			day.add(Calendar.DAY_OF_MONTH, 1);
+		}
+
+		assertEquals("trailing text", sdf.parse("2011-12-06"),
+				ParseUtil.parseDate("2011-12-06 00:00:00"));
+		assertEquals("single digits", sdf.parse("2011-02-03"),
+				ParseUtil.parseDate("2011-2-3"));
+		assertEquals("leap year", sdf.parse("2000-02-29"),
+				ParseUtil.parseDate("2000-02-29"));
+	}
+
+	@Test
+	public void testInvalidDates() {
+		for (String source : INVALID_DATES)
+			assertInvalidDate(source);
+	}
+
+	@Test
+	public void testParseCents() throws ParseException {
+		assertEquals(125, ParseUtil.parseCents("1,25 ", ','));
+		assertEquals(2800000000L, ParseUtil.parseCents("28 000 000,00 ", ','));
+		assertEquals(150, ParseUtil.parseCents("1,5", ','));
+		assertEquals(100, ParseUtil.parseCents("1", ','));
+		assertEquals(-1250, ParseUtil.parseCents("-12,5", ','));
+		assertEquals(125, ParseUtil.parseCents("1.25", '.'));
+		assertEquals("rounding", 13, ParseUtil.parseCents("0,125", ','));
+		assertEquals("rounding", 12, ParseUtil.parseCents("0,1249", ','));
+		// more than float can hold exactly
+		assertEquals(123456789012345L,
+				ParseUtil.parseCents("1 234 567 890 123,45", ','));
+
+		for (String source : INVALID_DECIMALS)
+			try {
+				ParseUtil.parseCents(source, ',');
+				fail("parse exception expected for \"" + source + "\"");
+			} catch (ParseException e) {
+				// expected
+			}
+	}
+
+}
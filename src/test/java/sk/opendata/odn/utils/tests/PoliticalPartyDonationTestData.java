@@ -18,7 +18,8 @@ public class PoliticalPartyDonationTestData {
 	public final static String TEST_DONOR_CITY = "Bratislava";
 	public final static String TEST_DONOR_PSC_COMMON_FORM = "831 05";
 	public final static String TEST_DONOR_PSC_ODN_STORAGE_FORM = "83105";
-	public final static Float TEST_DONATION_VALUE = 1.25f;
+	public final static String TEST_DONATION_VALUE = "1.25";
+	public final static long TEST_DONATION_VALUE_CENTS = 125;
 	public final static String TEST_INVALID_DONATION_VALUE = "L.25";
 	public final static Currency TEST_DONATION_CURRENCY = Currency.EUR;
 	public final static String TEST_ACCEPT_DATE = "1991-07-17";
@@ -16,7 +16,7 @@ public class ProcurementTestData {
 	public final static String TEST_CUSTOMER_ICO = "17321204";
 	public final static String TEST_SUPPLIER_ICO = "40212371";
 	public final static String TEST_PRICE_STRING = "1,25 ";
-	public final static float TEST_PRICE = 1.25f;
+	public final static long TEST_PRICE_CENTS = 125;
 	public final static String TEST_INVALID_PRICE = "L.25";
 	public final static String TEST_PRICE_ISSUE_2 = "28 000 000,00 ";
 	public final static Currency TEST_CURRENCY = Currency.EUR;